@@ -34,6 +34,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 import java.util.stream.Collectors;
 
 import javax.swing.JOptionPane;
@@ -66,6 +68,7 @@ import org.weasis.core.api.service.BundleTools;
 import org.weasis.core.api.util.GzipManager;
 import org.weasis.core.api.util.NetworkUtil;
 import org.weasis.core.api.util.StringUtil;
+import org.weasis.core.api.util.ThreadUtil;
 import org.weasis.core.ui.docking.UIManager;
 import org.weasis.core.ui.editor.image.ViewCanvas;
 import org.weasis.dicom.codec.TagD;
@@ -98,7 +101,8 @@ public class AcquireManager {
 
     private static final AcquireManager instance = new AcquireManager();
     private static final Map<String, AcquireImageInfo> imagesInfoByUID = new HashMap<>();
-    private static final Map<URI, AcquireImageInfo> imagesInfoByURI = new HashMap<>();
+    // Read concurrently by the import tasks
+    private static final Map<URI, AcquireImageInfo> imagesInfoByURI = new ConcurrentHashMap<>();
 
     private AcquireImageInfo currentAcquireImageInfo = null;
     private ViewCanvas<ImageElement> currentView = null;
@@ -143,6 +147,19 @@ public class AcquireManager {
         return getAcquireImageInfo(image);
     }
 
+    /**
+     * Build a bounded executor for processing the images in parallel (decoding, transformation and encoding). The
+     * number of threads is limited because each task may hold a full image in native memory.
+     *
+     * @param name
+     *            the name of the threads
+     * @return the executor, it must be shut down by the caller
+     */
+    static ExecutorService buildImageProcessingExecutor(String name) {
+        int nThreads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+        return ThreadUtil.buildNewFixedThreadExecutor(nThreads, name);
+    }
+
     public static List<AcquireImageInfo> findbySeries(SeriesGroup seriesGroup) {
         return getAcquireImageInfoList().stream()
             .filter(i -> i.getSeries() != null && i.getSeries().equals(seriesGroup)).collect(Collectors.toList());
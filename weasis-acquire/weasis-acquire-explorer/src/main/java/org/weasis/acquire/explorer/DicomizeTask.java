@@ -14,6 +14,10 @@ import java.io.File;
 import java.util.Collection;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import javax.swing.SwingWorker;
 
@@ -26,8 +30,9 @@ import org.weasis.core.api.util.FileUtil;
 
 /**
  * Do the process of convert to JPEG and dicomize given image collection to a temporary folder. All the job is done
- * outside of the EDT instead of setting AcquireImageStatus change. But, full process progression can still be listened
- * with propertyChange notification of this workerTask.
+ * outside of the EDT instead of setting AcquireImageStatus change. The images are processed in parallel by a bounded
+ * pool of threads. But, full process progression can still be listened with propertyChange notification of this
+ * workerTask.
  *
  * @version $Rev$ $Date$
  */
@@ -47,36 +52,58 @@ public class DicomizeTask extends SwingWorker<File, AcquireImageInfo> {
 
         File exportDirDicom =
             FileUtil.createTempDir(AppProperties.buildAccessibleTempDirectory("tmp", "dicomize", "dcm")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
-        File exportDirImage =
-            FileUtil.createTempDir(AppProperties.buildAccessibleTempDirectory("tmp", "dicomize", "img")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
 
         final int nbImageToProcess = toDicomize.size();
         int nbImageProcessed = 0;
 
+        ExecutorService executor = AcquireManager.buildImageProcessingExecutor("Dicomize"); //$NON-NLS-1$
         try {
             Transform2Dicom.buildStudySeriesDate(toDicomize, AcquireManager.GLOBAL);
 
             String seriesInstanceUID = UIDUtils.createUID(); // Global series for all PR
 
+            CompletionService<AcquireImageInfo> completion = new ExecutorCompletionService<>(executor);
             for (AcquireImageInfo imageInfo : toDicomize) {
-                if (!Transform2Dicom.dicomize(imageInfo, exportDirDicom, exportDirImage, seriesInstanceUID)) {
-                    FileUtil.recursiveDelete(exportDirDicom);
+                completion.submit(
+                    () -> Transform2Dicom.dicomize(imageInfo, exportDirDicom, seriesInstanceUID) ? imageInfo : null);
+            }
+
+            for (int i = 0; i < nbImageToProcess; i++) {
+                AcquireImageInfo imageInfo = completion.take().get();
+                if (imageInfo == null || isCancelled()) {
+                    cancelAndDelete(executor, exportDirDicom);
                     return null;
                 }
                 setProgress(++nbImageProcessed * 100 / nbImageToProcess);
                 publish(imageInfo);
             }
+        } catch (InterruptedException e) {
+            LOGGER.warn("Dicomize process interruption"); //$NON-NLS-1$
+            cancelAndDelete(executor, exportDirDicom);
+            Thread.currentThread().interrupt();
+            return null;
         } catch (Exception ex) {
             LOGGER.error("Dicomize process", ex); //$NON-NLS-1$
-            FileUtil.recursiveDelete(exportDirDicom);
+            cancelAndDelete(executor, exportDirDicom);
             return null;
         } finally {
-            FileUtil.recursiveDelete(exportDirImage);
+            executor.shutdown();
         }
 
         return exportDirDicom;
     }
 
+    private static void cancelAndDelete(ExecutorService executor, File exportDirDicom) {
+        executor.shutdownNow();
+        try {
+            // Do not delete the folder while a task is still writing into it
+            executor.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        FileUtil.recursiveDelete(exportDirDicom);
+    }
+
     @Override
     protected void process(List<AcquireImageInfo> chunks) {
         chunks.stream().forEach(AcquireImageInfo.changeStatus(AcquireImageStatus.SUBMITTED));
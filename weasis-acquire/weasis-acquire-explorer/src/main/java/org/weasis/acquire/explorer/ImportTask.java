@@ -15,6 +15,8 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import javax.swing.SwingWorker;
 
@@ -55,16 +57,27 @@ public class ImportTask extends SwingWorker<List<AcquireImageInfo>, AcquireImage
 
         List<AcquireImageInfo> imagesToProcess = new ArrayList<>(imagesToImport.size());
 
-        for (ImageElement imageElement : imagesToImport) {
-            try {
-                AcquireImageInfo imageInfo = AcquireManager.findByImage(imageElement);
-                if (imageInfo != null) {
-                    imagesToProcess.add(imageInfo);
+        // Decode the images in parallel, the results are kept in the order of the collection
+        ExecutorService executor = AcquireManager.buildImageProcessingExecutor("Image Import"); //$NON-NLS-1$
+        try {
+            List<Future<AcquireImageInfo>> tasks = new ArrayList<>(nbImageToProcess);
+            for (ImageElement imageElement : imagesToImport) {
+                tasks.add(executor.submit(() -> AcquireManager.findByImage(imageElement)));
+            }
+
+            for (Future<AcquireImageInfo> task : tasks) {
+                try {
+                    AcquireImageInfo imageInfo = task.get();
+                    if (imageInfo != null) {
+                        imagesToProcess.add(imageInfo);
+                    }
+                } catch (ExecutionException ex) {
+                    LOGGER.error("ImportTask process", ex.getCause()); //$NON-NLS-1$
                 }
-            } catch (Exception ex) {
-                LOGGER.error("ImportTask process", ex); //$NON-NLS-1$
+                setProgress(++nbImageProcessed * 100 / nbImageToProcess);
             }
-            setProgress(++nbImageProcessed * 100 / nbImageToProcess);
+        } finally {
+            executor.shutdownNow();
         }
 
         return imagesToProcess;
@@ -13,15 +13,21 @@ package org.weasis.acquire.explorer.dicom;
 import java.awt.Rectangle;
 import java.awt.geom.Point2D;
 import java.io.File;
+import java.io.IOException;
 import java.time.LocalDateTime;
 import java.util.Collection;
+import java.util.Date;
 import java.util.Objects;
 import java.util.Optional;
 
 import org.dcm4che3.data.Attributes;
 import org.dcm4che3.data.Tag;
+import org.dcm4che3.data.UID;
 import org.dcm4che3.data.VR;
+import org.dcm4che3.io.DicomOutputStream;
 import org.dcm4che3.util.UIDUtils;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
 import org.opencv.core.MatOfInt;
 import org.opencv.imgcodecs.Imgcodecs;
 import org.slf4j.Logger;
@@ -43,7 +49,6 @@ import org.weasis.dicom.codec.utils.DicomMediaUtils;
 import org.weasis.dicom.explorer.pr.DicomPrSerializer;
 import org.weasis.dicom.tool.Dicomizer;
 import org.weasis.opencv.data.PlanarImage;
-import org.weasis.opencv.op.ImageProcessor;
 
 public final class Transform2Dicom {
 
@@ -55,103 +60,158 @@ public final class Transform2Dicom {
     /**
      * Do the encoding of the given image in a standard lossy JPEG format with optionally doing some pre-processing
      * operations (like resize, flip, crop, zoom, contrast ...) if any postProcessOperation have been set in the
-     * AcquireImageInfo. The temporary image file is then encapsulated in a standard DICOM format according to the
-     * proper Dicom attributes set in the AcquireImageInfo. This Dicom is written in the exportDirDicom with its
+     * AcquireImageInfo. The JPEG stream is encoded in memory and then encapsulated in a standard DICOM format according
+     * to the proper Dicom attributes set in the AcquireImageInfo. This Dicom is written in the exportDirDicom with its
      * sopInstanceUID as filename.
      *
+     * This method can be called concurrently for different images.
      *
      * @param imageInfo
      * @param exportDirDicom
-     * @param exportDirImage
      * @param seriesInstanceUID
      *            Global series for all PR
      * @return
      */
-
-    public static boolean dicomize(AcquireImageInfo imageInfo, File exportDirDicom, File exportDirImage,
-        String seriesInstanceUID) {
+    public static boolean dicomize(AcquireImageInfo imageInfo, File exportDirDicom, String seriesInstanceUID) {
 
         ImageElement imageElement = imageInfo.getImage();
         String sopInstanceUID = Objects.requireNonNull((String) imageElement.getTagValue(TagD.getUID(Level.INSTANCE)));
 
-        // Transform to JPEG
+        Attributes attrs = imageInfo.getAttributes();
+        synchronized (AcquireManager.GLOBAL) {
+            DicomMediaUtils.fillAttributes(AcquireManager.GLOBAL.getTagEntrySetIterator(), attrs);
+        }
+        synchronized (imageInfo.getSeries()) {
+            DicomMediaUtils.fillAttributes(imageInfo.getSeries().getTagEntrySetIterator(), attrs);
+        }
+        DicomMediaUtils.fillAttributes(imageElement.getTagEntrySetIterator(), attrs);
+        // Spatial calibration
+        if (Unit.PIXEL != imageElement.getPixelSpacingUnit()) {
+            attrs.setString(Tag.PixelSpacingCalibrationDescription, VR.LO, "Used fiducial"); //$NON-NLS-1$
+            double unitRatio = imageElement.getPixelSize()
+                * Unit.MILLIMETER.getConversionRatio(imageElement.getPixelSpacingUnit().getConvFactor());
+            attrs.setDouble(Tag.PixelSpacing, VR.DS, unitRatio, unitRatio);
+        }
+
+        File dcmFile = new File(exportDirDicom, sopInstanceUID);
         File imgFile = imageElement.getFileCache().getOriginalFile().orElse(null);
         if (imgFile == null || !imageElement.getMimeType().contains("jpeg") //$NON-NLS-1$
             || !imageInfo.getCurrentValues().equals(imageInfo.getDefaultValues())) {
 
-            imgFile = new File(exportDirImage, sopInstanceUID + ".jpg"); //$NON-NLS-1$
+            // The operations (crop, rotation...) are applied once on the native image
             SimpleOpManager opManager = imageInfo.getPostProcessOpManager();
             PlanarImage transformedImage = imageElement.getImage(opManager, false);
-            
-            // TODO should be handled in the transformation
-            // Rectangle area = (Rectangle) opManager.getParamValue(CropOp.OP_NAME, CropOp.P_AREA);
-            // Integer rotationAngle = Optional
-            // .ofNullable((Integer) opManager.getParamValue(RotationOp.OP_NAME, RotationOp.P_ROTATE)).orElse(0);
-            // rotationAngle = rotationAngle % 360;
-            // if (area != null && rotationAngle != 0 && rotationAngle != 180) {
-            // transformedImage = TranslateDescriptor.create(transformedImage, (float) -area.getX(),
-            // (float) -area.getY(), null, null);
-            // }
-
-            MatOfInt map = new MatOfInt(Imgcodecs.IMWRITE_JPEG_QUALITY, 80);
-            if (!ImageProcessor.writeImage(transformedImage.toImageCV(), imgFile, map)) {
-                // out of memory ??
-                FileUtil.delete(imgFile);
-                LOGGER.error("Cannot Transform to jpeg {}", imageElement.getName()); //$NON-NLS-1$
+            if (transformedImage == null) {
+                LOGGER.error("Cannot transform the image {}", imageElement.getName()); //$NON-NLS-1$
                 return false;
             }
-        }
-
-        // Dicomize
-        if (imgFile.canRead()) {
-            Attributes attrs = imageInfo.getAttributes();
-            DicomMediaUtils.fillAttributes(AcquireManager.GLOBAL.getTagEntrySetIterator(), attrs);
-            DicomMediaUtils.fillAttributes(imageInfo.getSeries().getTagEntrySetIterator(), attrs);
-            DicomMediaUtils.fillAttributes(imageElement.getTagEntrySetIterator(), attrs);
-            // Spatial calibration
-            if (Unit.PIXEL != imageElement.getPixelSpacingUnit()) {
-                attrs.setString(Tag.PixelSpacingCalibrationDescription, VR.LO, "Used fiducial"); //$NON-NLS-1$
-                double unitRatio = imageElement.getPixelSize()
-                    * Unit.MILLIMETER.getConversionRatio(imageElement.getPixelSpacingUnit().getConvFactor());
-                attrs.setDouble(Tag.PixelSpacing, VR.DS, unitRatio, unitRatio);
-            }
-
+            Mat img = transformedImage.toMat();
+            MatOfByte buffer = new MatOfByte();
             try {
-                Dicomizer.jpeg(attrs, imgFile, new File(exportDirDicom, sopInstanceUID), false);
+                // Transform to JPEG in memory
+                if (!Imgcodecs.imencode(".jpg", img, buffer, new MatOfInt(Imgcodecs.IMWRITE_JPEG_QUALITY, 80))) { //$NON-NLS-1$
+                    LOGGER.error("Cannot Transform to jpeg {}", imageElement.getName()); //$NON-NLS-1$
+                    return false;
+                }
+                writeJpegDicom(attrs, buffer.toArray(), img.width(), img.height(), img.channels(), dcmFile);
             } catch (Exception e) {
+                FileUtil.delete(dcmFile);
                 LOGGER.error("Cannot Dicomize {}", imageElement.getName(), e); //$NON-NLS-1$
                 return false;
+            } finally {
+                buffer.release();
             }
-
-            // Presentation State
-            GraphicModel grModel = (GraphicModel) imageElement.getTagValue(TagW.PresentationModel);
-            if (grModel != null && grModel.hasSerializableGraphics()) {
-                Point2D offset = null;
-                Rectangle crop =
-                    (Rectangle) imageInfo.getPostProcessOpManager().getParamValue(CropOp.OP_NAME, CropOp.P_AREA);
-                if (crop != null) {
-                    Integer rotationAngle = Optional.ofNullable((Integer) imageInfo.getPostProcessOpManager()
-                        .getParamValue(RotationOp.OP_NAME, RotationOp.P_ROTATE)).orElse(0);
-                    rotationAngle = rotationAngle % 360;
-                    if (rotationAngle == 0 || rotationAngle == 180) {
-                        offset = new Point2D.Double(crop.getX(), crop.getY());
-                    } else {
-                        double factor = 2.0; // work only with 90 and 270 degrees
-                        offset = new Point2D.Double(crop.getX() * factor, crop.getY() * factor);
-                    }
-                }
-                String prUid = UIDUtils.createUID();
-                File outputFile = new File(exportDirDicom, prUid);
-                DicomPrSerializer.writePresentation(grModel, attrs, outputFile, seriesInstanceUID, prUid, offset);
+        } else if (imgFile.canRead()) {
+            // Dicomize the original JPEG file
+            try {
+                Dicomizer.jpeg(attrs, imgFile, dcmFile, false);
+            } catch (Exception e) {
+                LOGGER.error("Cannot Dicomize {}", imageElement.getName(), e); //$NON-NLS-1$
+                return false;
             }
         } else {
             LOGGER.error("Cannot read JPEG image {}", imageElement.getName()); //$NON-NLS-1$
             return false;
         }
 
+        // Presentation State
+        GraphicModel grModel = (GraphicModel) imageElement.getTagValue(TagW.PresentationModel);
+        if (grModel != null && grModel.hasSerializableGraphics()) {
+            Point2D offset = null;
+            Rectangle crop =
+                (Rectangle) imageInfo.getPostProcessOpManager().getParamValue(CropOp.OP_NAME, CropOp.P_AREA);
+            if (crop != null) {
+                Integer rotationAngle = Optional.ofNullable((Integer) imageInfo.getPostProcessOpManager()
+                    .getParamValue(RotationOp.OP_NAME, RotationOp.P_ROTATE)).orElse(0);
+                rotationAngle = rotationAngle % 360;
+                if (rotationAngle == 0 || rotationAngle == 180) {
+                    offset = new Point2D.Double(crop.getX(), crop.getY());
+                } else {
+                    double factor = 2.0; // work only with 90 and 270 degrees
+                    offset = new Point2D.Double(crop.getX() * factor, crop.getY() * factor);
+                }
+            }
+            String prUid = UIDUtils.createUID();
+            File outputFile = new File(exportDirDicom, prUid);
+            DicomPrSerializer.writePresentation(grModel, attrs, outputFile, seriesInstanceUID, prUid, offset);
+        }
+
         return true;
     }
 
+    /**
+     * Encapsulate a baseline JPEG stream (8 bits) into a DICOM file, without writing the JPEG into a file.
+     */
+    private static void writeJpegDicom(Attributes attrs, byte[] jpeg, int width, int height, int samples,
+        File dcmFile) throws IOException {
+        if (!attrs.containsValue(Tag.SOPClassUID)) {
+            attrs.setString(Tag.SOPClassUID, VR.UI, UID.VLPhotographicImageStorage);
+        }
+        ensureUID(attrs, Tag.StudyInstanceUID);
+        ensureUID(attrs, Tag.SeriesInstanceUID);
+        ensureUID(attrs, Tag.SOPInstanceUID);
+        if (!attrs.containsValue(Tag.InstanceCreationDate)) {
+            Date now = new Date();
+            attrs.setDate(Tag.InstanceCreationDate, VR.DA, now);
+            attrs.setDate(Tag.InstanceCreationTime, VR.TM, now);
+        }
+
+        attrs.setInt(Tag.SamplesPerPixel, VR.US, samples);
+        attrs.setInt(Tag.Rows, VR.US, height);
+        attrs.setInt(Tag.Columns, VR.US, width);
+        attrs.setInt(Tag.BitsAllocated, VR.US, 8);
+        attrs.setInt(Tag.BitsStored, VR.US, 8);
+        attrs.setInt(Tag.HighBit, VR.US, 7);
+        attrs.setInt(Tag.PixelRepresentation, VR.US, 0);
+        if (samples == 1) {
+            attrs.setString(Tag.PhotometricInterpretation, VR.CS, "MONOCHROME2"); //$NON-NLS-1$
+        } else {
+            attrs.setString(Tag.PhotometricInterpretation, VR.CS, "YBR_FULL_422"); //$NON-NLS-1$
+            attrs.setInt(Tag.PlanarConfiguration, VR.US, 0);
+        }
+        attrs.setString(Tag.LossyImageCompression, VR.CS, "01"); //$NON-NLS-1$
+
+        try (DicomOutputStream dos = new DicomOutputStream(dcmFile)) {
+            dos.writeDataset(attrs.createFileMetaInformation(UID.JPEGBaseline1), attrs);
+            dos.writeHeader(Tag.PixelData, VR.OB, -1);
+            // Empty basic offset table
+            dos.writeHeader(Tag.Item, null, 0);
+            // The fragment must have an even length
+            dos.writeHeader(Tag.Item, null, (jpeg.length + 1) & ~1);
+            dos.write(jpeg);
+            if ((jpeg.length & 1) != 0) {
+                dos.write(0);
+            }
+            dos.writeHeader(Tag.SequenceDelimitationItem, null, 0);
+        }
+    }
+
+    private static void ensureUID(Attributes attrs, int tag) {
+        if (!attrs.containsValue(tag)) {
+            attrs.setString(tag, VR.UI, UIDUtils.createUID());
+        }
+    }
+
     /**
      * Populates Date and Time for all Attributes in the imageInfo Collection with respect to the youngest. That is :
      * the first image content Date and Time would define the SerieDate and SerieTime within the current Serie, and so
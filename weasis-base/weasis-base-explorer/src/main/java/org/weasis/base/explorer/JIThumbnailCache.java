@@ -13,23 +13,34 @@ package org.weasis.base.explorer;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.LinkedHashMap;
+import java.util.Comparator;
 import java.util.Map;
-import java.util.Objects;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.imgcodecs.Imgcodecs;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.weasis.base.explorer.list.ThumbnailList;
+import org.weasis.core.api.gui.util.AppProperties;
 import org.weasis.core.api.gui.util.GuiExecutor;
 import org.weasis.core.api.image.util.ImageFiler;
 import org.weasis.core.api.media.data.ImageElement;
 import org.weasis.core.api.media.data.MediaElement;
+import org.weasis.core.api.util.SoftCache;
+import org.weasis.core.api.util.StringUtil;
 import org.weasis.core.api.util.ThreadUtil;
+import org.weasis.opencv.data.ImageCV;
 import org.weasis.opencv.data.PlanarImage;
 import org.weasis.opencv.op.ImageConversion;
 import org.weasis.opencv.op.ImageProcessor;
@@ -37,25 +48,48 @@ import org.weasis.opencv.op.ImageProcessor;
 public final class JIThumbnailCache {
     private static final Logger LOGGER = LoggerFactory.getLogger(JIThumbnailCache.class);
 
-    private final LinkedBlockingQueue<Runnable> queue = new LinkedBlockingQueue<>();
-    // Set only one concurrent thread. The time consuming part is in loading image thread (see ImageElement)
-    private final ExecutorService qExecutor =
-        new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, queue, ThreadUtil.getThreadFactory("Thumbnail Cache")); //$NON-NLS-1$
+    private static final int MAX_ICONS = 2000;
+    private static final long MAX_ICONS_BYTES = 64L * 1024 * 1024;
+    // Maximum number of thumbnails in the index on disk
+    private static final int MAX_INDEX_FILES = 50_000;
+    // Minimum size of an embedded EXIF thumbnail to be used instead of the image
+    private static final int MIN_EXIF_THUMBNAIL_SIZE = ThumbnailRenderer.ICON_DIM.width * 2 / 3;
 
-    private final Map<URI, ThumbnailIcon> cachedThumbnails;
+    private final PriorityBlockingQueue<Runnable> queue =
+        new PriorityBlockingQueue<>(64, (r1, r2) -> ((ThumbnailRunnable) r1).compareTo((ThumbnailRunnable) r2));
+    /*
+     * The JPEG files are decoded by the threads of the pool. The other files are read by the loading image thread (see
+     * ImageElement).
+     */
+    private final ExecutorService qExecutor;
 
-    public JIThumbnailCache() {
-        this.cachedThumbnails = Collections.synchronizedMap(new LinkedHashMap<URI, ThumbnailIcon>(80) {
+    private final SoftCache<URI, ThumbnailIcon> cachedThumbnails;
+    private final Map<URI, ThumbnailRunnable> pending = new ConcurrentHashMap<>();
+    // Visible range of each list: first index, last index and the generation of the range
+    private final Map<ThumbnailList<?>, int[]> visibleRanges = Collections.synchronizedMap(new WeakHashMap<>());
+    private final AtomicInteger generation = new AtomicInteger();
+    private final File indexDir;
 
-            private static final long serialVersionUID = 5981678679620794224L;
-            private static final int MAX_ENTRIES = 100;
+    public JIThumbnailCache() {
+        this(new File(AppProperties.WEASIS_PATH + File.separator + "data", "thumbnails")); //$NON-NLS-1$ //$NON-NLS-2$
+    }
 
-            @Override
-            @SuppressWarnings("rawtypes")
-            protected boolean removeEldestEntry(final Map.Entry eldest) {
-                return size() > MAX_ENTRIES;
-            }
-        });
+    /**
+     * @param indexDir
+     *            the directory where the thumbnails are persisted, no persistence when null
+     */
+    public JIThumbnailCache(File indexDir) {
+        int nbThreads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+        this.qExecutor = new ThreadPoolExecutor(nbThreads, nbThreads, 0L, TimeUnit.MILLISECONDS, queue,
+            ThreadUtil.getThreadFactory("Thumbnail Cache")); //$NON-NLS-1$
+        this.cachedThumbnails = new SoftCache<>(MAX_ICONS, MAX_ICONS_BYTES,
+            icon -> 4L * icon.getIconWidth() * icon.getIconHeight());
+        this.indexDir = indexDir != null && (indexDir.isDirectory() || indexDir.mkdirs()) ? indexDir : null;
+        if (this.indexDir != null) {
+            Thread cleaning = new Thread(this::pruneIndex, "Thumbnail Index Cleaning"); //$NON-NLS-1$
+            cleaning.setDaemon(true);
+            cleaning.start();
+        }
     }
 
     public synchronized void invalidate() {
@@ -63,15 +97,12 @@ public final class JIThumbnailCache {
     }
 
     public void removeInQueue(ImageElement imgElement) {
-        Runnable r = null;
-        for (Runnable runnable : queue) {
-            if (Objects.equals(imgElement, ((ThumbnailRunnable) runnable).getDiskObject())) {
-                r = runnable;
+        if (imgElement != null) {
+            ThumbnailRunnable r = pending.remove(imgElement.getMediaURI());
+            if (r != null) {
+                queue.remove(r);
             }
         }
-        if (r != null && !queue.remove(r)) {
-            LOGGER.error("Cannot remove thumbnail from the queue"); //$NON-NLS-1$
-        }
     }
 
     public ThumbnailIcon getThumbnailFor(final ImageElement diskObject,
@@ -93,40 +124,124 @@ public final class JIThumbnailCache {
 
     private void loadThumbnail(final ImageElement diskObject, final ThumbnailList<? extends MediaElement> thumbnailList,
         final int index) {
-        if ((index > thumbnailList.getLastVisibleIndex()) || (index < thumbnailList.getFirstVisibleIndex())) {
+        int[] range = updateVisibleRange(thumbnailList);
+        if ((index > range[1]) || (index < range[0])) {
             return;
         }
-        for (Runnable runnable : queue) {
-            if (diskObject.equals(((ThumbnailRunnable) runnable).getDiskObject())) {
+        URI uri = diskObject.getMediaURI();
+        ThumbnailRunnable previous = pending.get(uri);
+        if (previous != null) {
+            if (previous.generation == range[2] || !queue.remove(previous)) {
+                // Already in the queue with the current priority or already running
                 return;
             }
+            pending.remove(uri, previous);
         }
-        cleanPending();
-        ThumbnailRunnable runnable = new ThumbnailRunnable(diskObject, thumbnailList, index);
-        qExecutor.execute(runnable);
+        ThumbnailRunnable runnable = new ThumbnailRunnable(diskObject, thumbnailList, index, range[2]);
+        if (pending.putIfAbsent(uri, runnable) == null) {
+            qExecutor.execute(runnable);
+        }
+    }
+
+    /**
+     * Called from the renderer of the list (EDT). A new generation is given when the visible range has changed, the
+     * thumbnails of the last visible range are loaded first.
+     */
+    private int[] updateVisibleRange(ThumbnailList<? extends MediaElement> thumbnailList) {
+        int first = thumbnailList.getFirstVisibleIndex();
+        int last = thumbnailList.getLastVisibleIndex();
+        int[] range = visibleRanges.get(thumbnailList);
+        if (range == null || range[0] != first || range[1] != last) {
+            range = new int[] { first, last, generation.incrementAndGet() };
+            visibleRanges.put(thumbnailList, range);
+        }
+        return range;
+    }
+
+    private boolean isVisible(ThumbnailList<? extends MediaElement> thumbnailList, int index) {
+        int[] range = visibleRanges.get(thumbnailList);
+        return range == null || (index >= range[0] && index <= range[1]);
     }
 
-    private void cleanPending() {
-        for (Runnable runnable : queue) {
-            ThumbnailRunnable r = (ThumbnailRunnable) runnable;
-            int index = r.getIndex();
-            if ((index > r.getThumbnailList().getLastVisibleIndex())
-                || (index < r.getThumbnailList().getFirstVisibleIndex())) {
-                removeInQueue(r.getDiskObject());
+    private File getIndexFile(File file) {
+        if (indexDir == null || file == null) {
+            return null;
+        }
+        try {
+            // The file is indexed again when it has been modified
+            String key = file.getAbsolutePath() + "|" + file.lastModified() + "|" + file.length(); //$NON-NLS-1$ //$NON-NLS-2$
+            return new File(indexDir, StringUtil.bytesToMD5(key.getBytes(StandardCharsets.UTF_8)) + ".jpg"); //$NON-NLS-1$
+        } catch (Exception e) {
+            LOGGER.error("Cannot build the thumbnail key of {}", file, e); //$NON-NLS-1$
+            return null;
+        }
+    }
+
+    private void pruneIndex() {
+        File[] files = indexDir.listFiles();
+        if (files != null && files.length > MAX_INDEX_FILES) {
+            // Remove the oldest thumbnails (the date is updated when reading a thumbnail)
+            Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+            int nbToRemove = files.length - MAX_INDEX_FILES * 4 / 5;
+            for (int i = 0; i < nbToRemove; i++) {
+                if (!files[i].delete()) {
+                    LOGGER.warn("Cannot delete the thumbnail {}", files[i]); //$NON-NLS-1$
+                }
             }
         }
     }
 
-    class ThumbnailRunnable implements Runnable {
+    /**
+     * Read a JPEG thumbnail without decoding the full image: the thumbnail embedded in EXIF or a reduced decoding of
+     * the image.
+     */
+    private static PlanarImage readJpegThumbnail(File file) {
+        JpegHeader header = JpegHeader.read(file);
+        if (header == null) {
+            return null;
+        }
+        try {
+            byte[] exif = header.getExifThumbnail();
+            if (exif != null) {
+                Mat thumb = Imgcodecs.imdecode(new MatOfByte(exif), Imgcodecs.IMREAD_COLOR);
+                if (Math.max(thumb.width(), thumb.height()) >= MIN_EXIF_THUMBNAIL_SIZE) {
+                    return ImageCV.toImageCV(thumb);
+                }
+                thumb.release();
+            }
+            // The JPEG decoder can reduce the image by 2, 4 or 8 in the DCT domain
+            int maxSize = Math.max(header.getWidth(), header.getHeight());
+            int iconSize = Math.max(ThumbnailRenderer.ICON_DIM.width, ThumbnailRenderer.ICON_DIM.height);
+            int flag = Imgcodecs.IMREAD_COLOR;
+            if (maxSize >= iconSize * 8) {
+                flag = Imgcodecs.IMREAD_REDUCED_COLOR_8;
+            } else if (maxSize >= iconSize * 4) {
+                flag = Imgcodecs.IMREAD_REDUCED_COLOR_4;
+            } else if (maxSize >= iconSize * 2) {
+                flag = Imgcodecs.IMREAD_REDUCED_COLOR_2;
+            }
+            Mat img = Imgcodecs.imread(file.getPath(), flag);
+            if (img.width() > 0 && img.height() > 0) {
+                return ImageCV.toImageCV(img);
+            }
+        } catch (Exception | OutOfMemoryError e) {
+            LOGGER.error("Cannot read the JPEG thumbnail of {}", file, e); //$NON-NLS-1$
+        }
+        return null;
+    }
+
+    class ThumbnailRunnable implements Runnable, Comparable<ThumbnailRunnable> {
         final ImageElement diskObject;
         final ThumbnailList<? extends MediaElement> thumbnailList;
         final int index;
+        final int generation;
 
         public ThumbnailRunnable(ImageElement diskObject, ThumbnailList<? extends MediaElement> thumbnailList,
-            int index) {
+            int index, int generation) {
             this.diskObject = diskObject;
             this.thumbnailList = thumbnailList;
             this.index = index;
+            this.generation = generation;
         }
 
         public ImageElement getDiskObject() {
@@ -141,9 +256,30 @@ public final class JIThumbnailCache {
             return index;
         }
 
+        @Override
+        public int compareTo(ThumbnailRunnable o) {
+            // The last visible range first, then in the order of the list
+            int val = Integer.compare(o.generation, generation);
+            return val == 0 ? Integer.compare(index, o.index) : val;
+        }
+
         @Override
         public void run() {
+            URI uri = diskObject.getMediaURI();
+            try {
+                // Cancel the thumbnails which are no more visible
+                if (isVisible(thumbnailList, index)) {
+                    buildThumbnail(uri);
+                }
+            } finally {
+                pending.remove(uri, this);
+            }
+        }
+
+        private void buildThumbnail(URI uri) {
             PlanarImage img = null;
+            boolean indexed = false;
+            boolean fromImageElement = false;
 
             // Get the final that contain the thumbnail when the uncompress mode is activated
             File file = diskObject.getFile();
@@ -154,28 +290,45 @@ public final class JIThumbnailCache {
                 }
             }
 
+            File original = diskObject.getFileCache().getOriginalFile().orElse(null);
+            File indexFile = img == null ? getIndexFile(original) : null;
+            if (indexFile != null && indexFile.canRead()) {
+                img = ImageProcessor.readImage(indexFile);
+                indexed = img != null;
+                if (indexed && !indexFile.setLastModified(System.currentTimeMillis())) {
+                    LOGGER.debug("Cannot update the date of {}", indexFile); //$NON-NLS-1$
+                }
+            }
+
+            if (img == null && original != null) {
+                img = readJpegThumbnail(original);
+            }
+
             if (img == null) {
                 img = diskObject.getRenderedImage(diskObject.getImage(null));
+                fromImageElement = true;
             }
 
             if (img == null) {
                 return;
             }
 
-            final BufferedImage tIcon = ImageConversion
-                .toBufferedImage((PlanarImage) ImageProcessor.buildThumbnail(img, ThumbnailRenderer.ICON_DIM, true));
+            ImageCV thumb = ImageProcessor.buildThumbnail(img, ThumbnailRenderer.ICON_DIM, true);
+            final BufferedImage tIcon = ImageConversion.toBufferedImage((PlanarImage) thumb);
 
-            // Prevent to many files open on Linux (Ubuntu => 1024) and close image stream
-            diskObject.removeImageFromCache();
+            if (fromImageElement) {
+                // Prevent to many files open on Linux (Ubuntu => 1024) and close image stream
+                diskObject.removeImageFromCache();
+            }
+            if (indexFile != null && !indexed) {
+                ImageProcessor.writeImage(thumb, indexFile);
+            }
 
-            GuiExecutor.instance().execute(() -> {
-                if (tIcon != null) {
-                    cachedThumbnails.put(diskObject.getMediaURI(), new ThumbnailIcon(tIcon));
-                }
-                thumbnailList.getThumbnailListModel().notifyAsUpdated(index);
-            });
+            if (tIcon != null) {
+                cachedThumbnails.put(uri, new ThumbnailIcon(tIcon));
+            }
+            GuiExecutor.instance().execute(() -> thumbnailList.getThumbnailListModel().notifyAsUpdated(index));
         }
-
     }
 
 }
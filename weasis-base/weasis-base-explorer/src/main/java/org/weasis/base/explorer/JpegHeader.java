@@ -0,0 +1,200 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2018 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.base.explorer;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads only the beginning of a JPEG file: the image size (SOF marker) and the thumbnail embedded in the EXIF segment
+ * (APP1 marker), without decoding the image.
+ */
+final class JpegHeader {
+    private static final Logger LOGGER = LoggerFactory.getLogger(JpegHeader.class);
+
+    private static final int TAG_THUMBNAIL_OFFSET = 0x0201;
+    private static final int TAG_THUMBNAIL_LENGTH = 0x0202;
+
+    private final int width;
+    private final int height;
+    private final byte[] exifThumbnail;
+
+    private JpegHeader(int width, int height, byte[] exifThumbnail) {
+        this.width = width;
+        this.height = height;
+        this.exifThumbnail = exifThumbnail;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return the JPEG stream of the EXIF thumbnail or null
+     */
+    public byte[] getExifThumbnail() {
+        return exifThumbnail;
+    }
+
+    /**
+     * @param file
+     *            the image file
+     * @return the header or null if the file is not a JPEG file or when the size cannot be read
+     */
+    public static JpegHeader read(File file) {
+        try (InputStream stream = Files.newInputStream(file.toPath());
+                        DataInputStream in = new DataInputStream(new BufferedInputStream(stream))) {
+            if (in.readUnsignedByte() != 0xFF || in.readUnsignedByte() != 0xD8) {
+                return null;
+            }
+            byte[] exifThumbnail = null;
+            while (true) {
+                int marker = readMarker(in);
+                if (marker == 0xD9 || marker == 0xDA) {
+                    // End of image or start of scan: no more header
+                    return null;
+                }
+                if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD7)) {
+                    // Markers without length
+                    continue;
+                }
+                int length = in.readUnsignedShort() - 2;
+                if (length < 0) {
+                    return null;
+                }
+                if (marker == 0xE1 && exifThumbnail == null) {
+                    byte[] segment = new byte[length];
+                    in.readFully(segment);
+                    exifThumbnail = readExifThumbnail(segment);
+                } else if (isStartOfFrame(marker)) {
+                    // Sample precision, then height and width
+                    in.readUnsignedByte();
+                    int h = in.readUnsignedShort();
+                    int w = in.readUnsignedShort();
+                    return w > 0 && h > 0 ? new JpegHeader(w, h, exifThumbnail) : null;
+                } else {
+                    skipFully(in, length);
+                }
+            }
+        } catch (EOFException e) {
+            return null;
+        } catch (IOException e) {
+            LOGGER.debug("Cannot read the JPEG header of {}", file, e); //$NON-NLS-1$
+            return null;
+        }
+    }
+
+    private static int readMarker(DataInputStream in) throws IOException {
+        int b = in.readUnsignedByte();
+        if (b != 0xFF) {
+            throw new EOFException("Not a JPEG marker"); //$NON-NLS-1$
+        }
+        // Skip the fill bytes
+        while (b == 0xFF) {
+            b = in.readUnsignedByte();
+        }
+        return b;
+    }
+
+    private static boolean isStartOfFrame(int marker) {
+        // SOF0 to SOF15 except DHT (C4), JPG (C8) and DAC (CC)
+        return marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC;
+    }
+
+    private static void skipFully(DataInputStream in, int length) throws IOException {
+        int remaining = length;
+        while (remaining > 0) {
+            int skipped = in.skipBytes(remaining);
+            if (skipped <= 0) {
+                throw new EOFException();
+            }
+            remaining -= skipped;
+        }
+    }
+
+    /**
+     * The thumbnail is in the second IFD of the TIFF structure of the EXIF segment.
+     */
+    private static byte[] readExifThumbnail(byte[] segment) {
+        // "Exif" and two null bytes
+        if (segment.length < 14 || segment[0] != 'E' || segment[1] != 'x' || segment[2] != 'i' || segment[3] != 'f') {
+            return null;
+        }
+        int base = 6;
+        boolean littleEndian;
+        if (segment[base] == 'I' && segment[base + 1] == 'I') {
+            littleEndian = true;
+        } else if (segment[base] == 'M' && segment[base + 1] == 'M') {
+            littleEndian = false;
+        } else {
+            return null;
+        }
+        try {
+            long ifd0 = readInt(segment, base + 4, littleEndian);
+            int nbEntries = readShort(segment, base + (int) ifd0, littleEndian);
+            long ifd1 = readInt(segment, base + (int) ifd0 + 2 + 12 * nbEntries, littleEndian);
+            if (ifd1 <= 0 || ifd1 >= segment.length) {
+                return null;
+            }
+            nbEntries = readShort(segment, base + (int) ifd1, littleEndian);
+            long offset = -1;
+            long length = -1;
+            for (int i = 0; i < nbEntries; i++) {
+                int entry = base + (int) ifd1 + 2 + 12 * i;
+                int tag = readShort(segment, entry, littleEndian);
+                if (tag == TAG_THUMBNAIL_OFFSET) {
+                    offset = readInt(segment, entry + 8, littleEndian);
+                } else if (tag == TAG_THUMBNAIL_LENGTH) {
+                    length = readInt(segment, entry + 8, littleEndian);
+                }
+            }
+            if (offset <= 0 || length <= 0 || base + offset + length > segment.length) {
+                return null;
+            }
+            int start = base + (int) offset;
+            // Must be a JPEG stream
+            if ((segment[start] & 0xFF) != 0xFF || (segment[start + 1] & 0xFF) != 0xD8) {
+                return null;
+            }
+            return Arrays.copyOfRange(segment, start, start + (int) length);
+        } catch (ArrayIndexOutOfBoundsException e) {
+            // Corrupted EXIF
+            return null;
+        }
+    }
+
+    private static int readShort(byte[] b, int i, boolean littleEndian) {
+        if (littleEndian) {
+            return (b[i] & 0xFF) | (b[i + 1] & 0xFF) << 8;
+        }
+        return (b[i] & 0xFF) << 8 | (b[i + 1] & 0xFF);
+    }
+
+    private static long readInt(byte[] b, int i, boolean littleEndian) {
+        if (littleEndian) {
+            return (b[i] & 0xFFL) | (b[i + 1] & 0xFFL) << 8 | (b[i + 2] & 0xFFL) << 16 | (b[i + 3] & 0xFFL) << 24;
+        }
+        return (b[i] & 0xFFL) << 24 | (b[i + 1] & 0xFFL) << 16 | (b[i + 2] & 0xFFL) << 8 | (b[i + 3] & 0xFFL);
+    }
+}
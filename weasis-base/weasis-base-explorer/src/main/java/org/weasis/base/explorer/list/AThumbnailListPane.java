@@ -50,6 +50,8 @@ public abstract class AThumbnailListPane<E extends MediaElement> extends JScroll
     public void loadDirectory(Path dir) {
         JRootPane pane = getRootPane();
         Optional.ofNullable(pane).ifPresent(p -> p.setCursor(DefaultView2d.WAIT_CURSOR));
+        // Stop loading the previous directory
+        this.thumbnailList.getThumbnailListModel().cancelLoading();
         this.pool.execute(() -> {
             AThumbnailListPane.this.thumbnailList.getThumbnailListModel().setData(dir);
             AThumbnailListPane.this.thumbnailList.setChanged();
@@ -15,9 +15,11 @@ import java.nio.file.DirectoryStream;
 import java.nio.file.DirectoryStream.Filter;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.List;
 import java.util.Optional;
-import java.util.stream.StreamSupport;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.swing.AbstractListModel;
 import javax.swing.DefaultListModel;
@@ -28,6 +30,7 @@ import org.slf4j.LoggerFactory;
 import org.weasis.base.explorer.JIExplorerContext;
 import org.weasis.base.explorer.JIThumbnailCache;
 import org.weasis.base.explorer.TreeNode;
+import org.weasis.core.api.gui.util.GuiExecutor;
 import org.weasis.core.api.media.data.ImageElement;
 import org.weasis.core.api.media.data.MediaElement;
 import org.weasis.core.api.media.data.MediaReader;
@@ -38,8 +41,13 @@ public abstract class AThumbnailModel<E extends MediaElement> extends AbstractLi
     implements IThumbnailModel<E> {
     private static final Logger LOGGER = LoggerFactory.getLogger(AThumbnailModel.class);
 
+    // Number of elements added at once to the list
+    private static final int PAGE_SIZE = 256;
+
     protected JIExplorerContext reloadContext;
     protected boolean loading = false;
+    // Incremented for cancelling the current loading of a directory
+    private final AtomicInteger loadingId = new AtomicInteger();
 
     protected final JList<E> list;
     protected final DefaultListModel<E> listModel;
@@ -135,31 +143,67 @@ public abstract class AThumbnailModel<E extends MediaElement> extends AbstractLi
         return listModel.removeElement(obj);
     }
 
+    @Override
+    public void cancelLoading() {
+        loadingId.incrementAndGet();
+    }
+
     @Override
     public void loadContent(Path path, Filter<Path> filter) {
         if (path == null) {
             return;
         }
-        clear();
+        int id = loadingId.incrementAndGet();
+        GuiExecutor.instance().invokeAndWait(this::clear);
 
+        // First scan: only the paths, fast even for a large directory
+        List<Path> paths = new ArrayList<>();
         try (DirectoryStream<Path> stream = Files.newDirectoryStream(path, filter)) {
-            StreamSupport.stream(stream.spliterator(), false).sorted(Comparator.comparing(Path::getFileName))
-                .forEachOrdered(p -> {
-                    MediaReader media = ViewerPluginBuilder.getMedia(p.toFile());
-                    if (media != null) {
-                        MediaElement preview = media.getPreview();
-                        if (preview instanceof ImageElement) {
-                            preview.getFileCache().setRequireTransformation(true);
-                            addElement((E) preview);
-                        }
-
-                        if (getSize() == 1) {
-                            this.list.setSelectedIndex(0);
-                        }
-                    }
-                });
+            for (Path p : stream) {
+                if (id != loadingId.get()) {
+                    return;
+                }
+                paths.add(p);
+            }
         } catch (IOException e) {
             LOGGER.error("Building child directories", e); //$NON-NLS-1$
+            return;
+        }
+        paths.sort(Comparator.comparing(Path::getFileName));
+
+        // Second scan: build the media elements in the sorted order and display them by pages
+        List<E> page = new ArrayList<>(PAGE_SIZE);
+        for (Path p : paths) {
+            if (id != loadingId.get()) {
+                return;
+            }
+            MediaReader media = ViewerPluginBuilder.getMedia(p.toFile());
+            if (media != null) {
+                MediaElement preview = media.getPreview();
+                if (preview instanceof ImageElement) {
+                    preview.getFileCache().setRequireTransformation(true);
+                    page.add((E) preview);
+                }
+            }
+            if (page.size() >= PAGE_SIZE) {
+                addPage(page, id);
+                page = new ArrayList<>(PAGE_SIZE);
+            }
+        }
+        addPage(page, id);
+    }
+
+    private void addPage(List<E> page, int id) {
+        if (!page.isEmpty()) {
+            GuiExecutor.instance().invokeAndWait(() -> {
+                if (id == loadingId.get()) {
+                    boolean firstPage = listModel.isEmpty();
+                    page.forEach(this::addElement);
+                    if (firstPage) {
+                        this.list.setSelectedIndex(0);
+                    }
+                }
+            });
         }
     }
 
@@ -26,6 +26,11 @@ public interface IThumbnailModel<E> extends ListModel<E>, Serializable {
 
     void loadContent(Path path, Filter<Path> filter);
 
+    /**
+     * Stop the current loading of a directory
+     */
+    void cancelLoading();
+
     void reload();
 
     JIExplorerContext getReloadContext();
@@ -15,6 +15,7 @@ import java.awt.geom.AffineTransform;
 
 import org.weasis.core.api.image.measure.MeasurementsAdapter;
 import org.weasis.core.api.media.data.TagW;
+import org.weasis.opencv.data.LookupTableCV;
 import org.weasis.opencv.data.PlanarImage;
 
 /**
@@ -34,6 +35,14 @@ public interface MeasurableLayer {
 
     String getPixelValueUnit();
 
+    /**
+     * Returns the modality lookup table when the pixel values cannot be converted with the rescale slope and intercept
+     * (i.e. when a Modality LUT Sequence is defined).
+     *
+     * @return the modality lookup table or null
+     */
+    LookupTableCV getModalityLookup();
+
     Point getOffset();
 
     void setOffset(Point p);
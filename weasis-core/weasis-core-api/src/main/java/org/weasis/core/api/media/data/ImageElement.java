@@ -33,6 +33,7 @@ import org.weasis.core.api.image.ZoomOp;
 import org.weasis.core.api.image.measure.MeasurementsAdapter;
 import org.weasis.core.api.image.util.Unit;
 import org.weasis.core.api.util.ThreadUtil;
+import org.weasis.opencv.data.LookupTableCV;
 import org.weasis.opencv.data.PlanarImage;
 import org.weasis.opencv.op.ImageConversion;
 import org.weasis.opencv.op.ImageProcessor;
@@ -80,6 +81,20 @@ public class ImageElement extends MediaElement {
         return mCache.size();
     }
 
+    /**
+     * @return the native memory of the decoded images in cache (in bytes)
+     */
+    public static long getNativeCacheUsedMemory() {
+        return mCache.getUsedNativeMemory();
+    }
+
+    /**
+     * @return the maximum native memory of the decoded images in cache (in bytes)
+     */
+    public static long getNativeCacheMaxMemory() {
+        return mCache.getMaxNativeMemory();
+    }
+
     protected void findMinMaxValues(PlanarImage img, boolean exclude8bitImage) throws OutOfMemoryError {
         // This function can be called several times from the inner class Load.
         // Do not compute min and max it has already be done
@@ -141,6 +156,17 @@ public class ImageElement extends MediaElement {
         return minPixelValue == null ? 0.0 : minPixelValue;
     }
 
+    /**
+     * @param tagable
+     *            the tags overriding the image tags (e.g. a presentation state), can be null
+     * @param pixelPadding
+     *            indicates if the padding values are applied
+     * @return the lookup table converting the pixel values into modality values or null when not required
+     */
+    public LookupTableCV getModalityLookup(TagReadable tagable, boolean pixelPadding) {
+        return null;
+    }
+
     public int getRescaleWidth(int width) {
         return (int) Math.ceil(width * getRescaleX() - 0.5);
     }
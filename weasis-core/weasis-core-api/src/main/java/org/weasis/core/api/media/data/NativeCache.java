@@ -17,6 +17,7 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.weasis.opencv.data.PlanarImage;
 
@@ -24,11 +25,11 @@ public class NativeCache<K, V extends PlanarImage> extends AbstractMap<K, V> {
 
     protected final Map<K, V> hash;
     private final long maxNativeMemory;
-    private volatile long useNativeMemory;
+    private final AtomicLong useNativeMemory;
 
     public NativeCache(long maxNativeMemory) {
         this.maxNativeMemory = maxNativeMemory;
-        this.useNativeMemory = 0;
+        this.useNativeMemory = new AtomicLong();
         this.hash = Collections.synchronizedMap(new LinkedHashMap<>(64, 0.75f, true));
     }
 
@@ -38,7 +39,18 @@ public class NativeCache<K, V extends PlanarImage> extends AbstractMap<K, V> {
     }
 
     public boolean isMemoryAvailable() {
-        return useNativeMemory < maxNativeMemory;
+        return useNativeMemory.get() < maxNativeMemory;
+    }
+
+    /**
+     * @return the native memory of the cached images in bytes
+     */
+    public long getUsedNativeMemory() {
+        return useNativeMemory.get();
+    }
+
+    public long getMaxNativeMemory() {
+        return maxNativeMemory;
     }
 
     public void expungeStaleEntries() {
@@ -46,7 +58,7 @@ public class NativeCache<K, V extends PlanarImage> extends AbstractMap<K, V> {
             synchronized (hash) {
                 List<K> remKeys = new ArrayList<>();
                 // 5% of max memory + diff
-                long maxfreeSize = maxNativeMemory / 20 + (useNativeMemory - maxNativeMemory);
+                long maxfreeSize = maxNativeMemory / 20 + (useNativeMemory.get() - maxNativeMemory);
                 long freeSize = 0;
                 
                 for (Map.Entry<K, V> e : hash.entrySet()) {
@@ -59,7 +71,7 @@ public class NativeCache<K, V extends PlanarImage> extends AbstractMap<K, V> {
 
                 for (K key : remKeys) {
                     V val = hash.remove(key);
-                    useNativeMemory -= physicalBytes(val);
+                    useNativeMemory.addAndGet(-physicalBytes(val));
                     afterEntryRemove(key, val);
                 }
             }
@@ -80,15 +92,14 @@ public class NativeCache<K, V extends PlanarImage> extends AbstractMap<K, V> {
     public V put(K key, V value) {
         expungeStaleEntries();
         V result = hash.put(key, value);
-        useNativeMemory += physicalBytes(value);
-        useNativeMemory -= physicalBytes(result);
+        useNativeMemory.addAndGet(physicalBytes(value) - physicalBytes(result));
         return result;
     }
 
     @Override
     public V remove(Object key) {
         V val = hash.remove(key);
-        useNativeMemory -= physicalBytes(val);
+        useNativeMemory.addAndGet(-physicalBytes(val));
         afterEntryRemove((K) key, val);
         return val;
     }
@@ -96,7 +107,7 @@ public class NativeCache<K, V extends PlanarImage> extends AbstractMap<K, V> {
     @Override
     public void clear() {
         hash.clear();
-        useNativeMemory = 0;
+        useNativeMemory.set(0);
     }
 
     @Override
@@ -24,6 +24,7 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.Random;
 
@@ -50,6 +51,8 @@ public abstract class Series<E extends MediaElement> extends MediaSeriesGroupNod
     private PropertyChangeSupport propertyChange = null;
     protected final List<E> medias;
     protected final Map<Comparator<E>, List<E>> sortedMedias = new HashMap<>(6);
+    // Medias added since the last merge into the lists of sortedMedias
+    private final List<E> pendingMedias = new ArrayList<>();
     protected final Comparator<E> mediaOrder;
     protected SeriesImporter seriesLoader;
     private double fileSize;
@@ -89,8 +92,11 @@ public abstract class Series<E extends MediaElement> extends MediaSeriesGroupNod
     }
 
     protected void resetSortedMediasMap() {
-        if (!sortedMedias.isEmpty()) {
-            sortedMedias.clear();
+        synchronized (sortedMedias) {
+            if (!sortedMedias.isEmpty()) {
+                sortedMedias.clear();
+            }
+            pendingMedias.clear();
         }
     }
 
@@ -98,39 +104,91 @@ public abstract class Series<E extends MediaElement> extends MediaSeriesGroupNod
     public List<E> getSortedMedias(Comparator<E> comparator) {
         // Do not sort when it is the default order.
         if (comparator != null && !comparator.equals(mediaOrder)) {
-            List<E> sorted = sortedMedias.get(comparator);
-            if (sorted == null) {
-                sorted = new ArrayList<>(medias);
-                Collections.sort(sorted, comparator);
-                sortedMedias.put(comparator, sorted);
+            synchronized (sortedMedias) {
+                mergePendingMedias();
+                List<E> sorted = sortedMedias.get(comparator);
+                if (sorted == null) {
+                    List<E> list = new ArrayList<>(medias);
+                    Collections.sort(list, comparator);
+                    sorted = Collections.unmodifiableList(list);
+                    sortedMedias.put(comparator, sorted);
+                }
+                // Snapshot never modified, the insertions replace the list of the map
+                return sorted;
             }
-            return sorted;
         }
         return medias;
     }
 
+    /**
+     * Merge the medias added since the last call into copies of the lists already sorted (copy-on-write). A series
+     * loaded image by image does not require a full sort and each list is copied once per read, not once per
+     * insertion. Must be called while holding the lock of sortedMedias.
+     */
+    private void mergePendingMedias() {
+        if (pendingMedias.isEmpty()) {
+            return;
+        }
+        for (Entry<Comparator<E>, List<E>> entry : sortedMedias.entrySet()) {
+            Comparator<E> comparator = entry.getKey();
+            List<E> added = new ArrayList<>(pendingMedias);
+            Collections.sort(added, comparator);
+            List<E> sorted = entry.getValue();
+            List<E> list = new ArrayList<>(sorted.size() + added.size());
+            int i = 0;
+            int j = 0;
+            while (i < sorted.size() && j < added.size()) {
+                // Take the existing element when equal to keep the same order as a stable sort
+                if (comparator.compare(sorted.get(i), added.get(j)) <= 0) {
+                    list.add(sorted.get(i++));
+                } else {
+                    list.add(added.get(j++));
+                }
+            }
+            list.addAll(sorted.subList(i, sorted.size()));
+            list.addAll(added.subList(j, added.size()));
+            entry.setValue(Collections.unmodifiableList(list));
+        }
+        pendingMedias.clear();
+    }
+
     @Override
     public void add(E media) {
-        medias.add(media);
-        resetSortedMediasMap();
+        // Same lock as the sorted lists: a list cannot be rebuilt from medias before the media is pending
+        synchronized (sortedMedias) {
+            medias.add(media);
+            if (!sortedMedias.isEmpty()) {
+                pendingMedias.add(media);
+            }
+        }
     }
 
     @Override
     public void add(int index, E media) {
-        medias.add(index, media);
-        resetSortedMediasMap();
+        synchronized (sortedMedias) {
+            medias.add(index, media);
+            resetSortedMediasMap();
+        }
     }
 
     @Override
     public void addAll(Collection<? extends E> c) {
-        medias.addAll(c);
-        resetSortedMediasMap();
+        synchronized (sortedMedias) {
+            medias.addAll(c);
+            if (c.size() > medias.size() / 4) {
+                resetSortedMediasMap();
+            } else if (!sortedMedias.isEmpty()) {
+                pendingMedias.addAll(c);
+            }
+        }
     }
 
     @Override
     public void addAll(int index, Collection<? extends E> c) {
-        medias.addAll(index, c);
-        resetSortedMediasMap();
+        synchronized (sortedMedias) {
+            medias.addAll(index, c);
+            resetSortedMediasMap();
+        }
     }
 
     @Override
@@ -248,8 +306,10 @@ public abstract class Series<E extends MediaElement> extends MediaSeriesGroupNod
             m.dispose();
         });
 
-        medias.clear();
-        resetSortedMediasMap();
+        synchronized (sortedMedias) {
+            medias.clear();
+            resetSortedMediasMap();
+        }
 
         Optional.ofNullable((Thumbnail) getTagValue(TagW.Thumbnail)).ifPresent(t -> t.dispose());
         if (propertyChange != null) {
@@ -20,6 +20,12 @@ import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
 
+/**
+ * Map of soft references.
+ *
+ * @deprecated this map is not thread-safe and is not bounded, use {@link org.weasis.core.api.util.SoftCache}
+ */
+@Deprecated
 public class SoftHashMap<K, V> extends AbstractMap<K, V> implements Serializable {
     private static final long serialVersionUID = -1374929894464993435L;
 
@@ -175,6 +175,19 @@ public abstract class AbstractGraphicModel extends DefaultUUID implements Graphi
         }
     }
 
+    @Override
+    public void addGraphics(List<Graphic> graphics) {
+        if (graphics == null || graphics.isEmpty()) {
+            return;
+        }
+        synchronized (models) {
+            for (Graphic graphic : graphics) {
+                addGraphic(graphic);
+            }
+        }
+        fireChanged();
+    }
+
     @Override
     public void removeGraphic(Graphic graphic) {
         if (graphic != null) {
@@ -41,6 +41,15 @@ public interface GraphicModel extends UUIDable {
 
     void addGraphic(Graphic graphic);
 
+    /**
+     * Add all the graphics at once: the model is locked during the insertion, so the painting never sees a partial set
+     * of graphics, and the change listeners are notified only once.
+     *
+     * @param graphics
+     *            the graphics to add
+     */
+    void addGraphics(List<Graphic> graphics);
+
     Optional<GraphicLayer> findLayerByType(LayerType layer);
 
     void deleteByLayerType(LayerType type);
@@ -11,9 +11,11 @@
 package org.weasis.core.ui.model.graphic;
 
 import java.awt.Point;
+import java.awt.Rectangle;
 import java.awt.Shape;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Area;
+import java.awt.geom.RectangularShape;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -23,12 +25,16 @@ import org.weasis.core.api.image.util.MeasurableLayer;
 import org.weasis.core.api.media.data.TagW;
 import org.weasis.core.ui.model.utils.bean.MeasureItem;
 import org.weasis.core.ui.model.utils.bean.Measurement;
+import org.weasis.opencv.data.LookupTableCV;
 import org.weasis.opencv.data.PlanarImage;
-import org.weasis.opencv.op.ImageProcessor;
+import org.weasis.opencv.op.RoiStatistics;
 
 public abstract class AbstractDragGraphicArea extends AbstractDragGraphic implements GraphicArea {
     private static final long serialVersionUID = -3042328664891626708L;
 
+    // Maximum size of the ROI bounds for updating the statistics while dragging
+    private static final long MAX_LIVE_STATISTICS_PIXELS = 4096L * 4096L;
+
     public AbstractDragGraphicArea(Integer pointNumber) {
         super(pointNumber);
     }
@@ -54,19 +60,25 @@ public abstract class AbstractDragGraphicArea extends AbstractDragGraphic implem
             if (layer.hasContent() && isShapeValid()) {
                 ArrayList<MeasureItem> measVal = new ArrayList<>();
 
-                if (IMAGE_MIN.getComputed() || IMAGE_MAX.getComputed() || IMAGE_MEAN.getComputed() || IMAGE_STD.getComputed()) {
+                if (IMAGE_MIN.getComputed() || IMAGE_MAX.getComputed() || IMAGE_MEAN.getComputed()
+                    || IMAGE_MEDIAN.getComputed() || IMAGE_STD.getComputed() || IMAGE_SKEW.getComputed()
+                    || IMAGE_KURTOSIS.getComputed()) {
 
                     Double[] min = null;
                     Double[] max = null;
                     Double[] mean = null;
+                    Double[] median = null;
                     Double[] stdv = null;
+                    Double[] skew = null;
+                    Double[] kurtosis = null;
 
-                    if (releaseEvent && shape != null) {
+                    if (shape != null) {
                         PlanarImage image = layer.getSourceRenderedImage();
                         if (image == null) {
                             return null;
                         }
-                        AffineTransform transform = layer.getShapeTransform();
+                        AffineTransform transform =
+                            layer.getShapeTransform() == null ? null : new AffineTransform(layer.getShapeTransform());
                         Point offset = layer.getOffset();
                         if (offset != null) {
                             if (transform == null) {
@@ -75,39 +87,59 @@ public abstract class AbstractDragGraphicArea extends AbstractDragGraphic implem
                                 transform.translate(-offset.getX(), -offset.getY());
                             }
                         }
-                        Shape roi;
-                        if (transform != null) {
-                            // Rescale ROI, if needed
-                            roi = transform.createTransformedShape(shape);
-                        } else {
-                            roi = shape;
-                        }
-                        
-                        Integer paddingValue = (Integer) layer.getSourceTagValue(TagW.get("PixelPaddingValue")); //$NON-NLS-1$
-                        Integer paddingLimit = (Integer) layer.getSourceTagValue(TagW.get("PixelPaddingRangeLimit")); //$NON-NLS-1$
-                        double[][] extrema = ImageProcessor.meanStdDev(image.toMat(), roi ,paddingValue, paddingLimit);
-                        
-                        
-                        if (extrema == null || extrema.length < 1 || extrema[0].length < 1) {
-                            return Collections.emptyList();
+                        // Rescale ROI, if needed
+                        Shape roi = transformShape(shape, transform);
+
+                        Rectangle bounds = roi.getBounds();
+                        if (!Boolean.TRUE.equals(releaseEvent)
+                            && (long) bounds.width * bounds.height > MAX_LIVE_STATISTICS_PIXELS) {
+                            // Too large for being updated while dragging, computed when the mouse is released
+                            roi = null;
                         }
-                        min = new Double[extrema[0].length];
-                        max = new Double[extrema[0].length];
-                        mean = new Double[extrema[0].length];
-                        stdv = new Double[extrema[0].length];
-
-                        // LOGGER.error("Basic stats [ms]: {}", System.currentTimeMillis() - startTime);
-                        // unit = pixelValue * rescale slope + rescale intercept
-                        // FIXME do not handle modality lookup table!
-                        Double slopeVal = (Double) layer.getSourceTagValue(TagW.get("RescaleSlope")); //$NON-NLS-1$
-                        Double interceptVal = (Double) layer.getSourceTagValue(TagW.get("RescaleIntercept")); //$NON-NLS-1$
-                        double slope = slopeVal == null ? 1.0f : slopeVal.doubleValue();
-                        double intercept = interceptVal == null ? 0.0f : interceptVal.doubleValue();
-                        for (int i = 0; i < extrema[0].length; i++) {
-                            min[i] = extrema[0][i] * slope + intercept;
-                            max[i] = extrema[1][i] * slope + intercept;
-                            mean[i] = extrema[2][i] * slope + intercept;
-                            stdv[i] = extrema[3][i];
+
+                        RoiStatistics stats = null;
+                        if (roi != null) {
+                            Integer paddingValue = (Integer) layer.getSourceTagValue(TagW.get("PixelPaddingValue")); //$NON-NLS-1$
+                            Integer paddingLimit =
+                                (Integer) layer.getSourceTagValue(TagW.get("PixelPaddingRangeLimit")); //$NON-NLS-1$
+                            LookupTableCV modalityLookup = layer.getModalityLookup();
+                            stats = RoiStatistics.compute(image.toMat(), roi, paddingValue, paddingLimit,
+                                modalityLookup);
+                            if (stats == null) {
+                                return Collections.emptyList();
+                            }
+
+                            int channels = stats.getChannels();
+                            min = new Double[channels];
+                            max = new Double[channels];
+                            mean = new Double[channels];
+                            median = new Double[channels];
+                            stdv = new Double[channels];
+                            skew = new Double[channels];
+                            kurtosis = new Double[channels];
+
+                            // The modality LUT is already applied to the values, otherwise
+                            // unit = pixelValue * rescale slope + rescale intercept
+                            double slope = 1.0;
+                            double intercept = 0.0;
+                            if (modalityLookup == null) {
+                                Double slopeVal = (Double) layer.getSourceTagValue(TagW.get("RescaleSlope")); //$NON-NLS-1$
+                                Double interceptVal =
+                                    (Double) layer.getSourceTagValue(TagW.get("RescaleIntercept")); //$NON-NLS-1$
+                                slope = slopeVal == null ? 1.0 : slopeVal.doubleValue();
+                                intercept = interceptVal == null ? 0.0 : interceptVal.doubleValue();
+                            }
+                            for (int i = 0; i < channels; i++) {
+                                double v1 = stats.getMin()[i] * slope + intercept;
+                                double v2 = stats.getMax()[i] * slope + intercept;
+                                min[i] = Math.min(v1, v2);
+                                max[i] = Math.max(v1, v2);
+                                mean[i] = stats.getMean()[i] * slope + intercept;
+                                median[i] = stats.getMedian()[i] * slope + intercept;
+                                stdv[i] = stats.getStd()[i] * Math.abs(slope);
+                                skew[i] = slope < 0.0 ? -stats.getSkewness()[i] : stats.getSkewness()[i];
+                                kurtosis[i] = stats.getKurtosis()[i];
+                            }
                         }
                     }
 
@@ -121,10 +153,19 @@ public abstract class AbstractDragGraphicArea extends AbstractDragGraphic implem
                     if (IMAGE_MEAN.getComputed()) {
                         addMeasure(measVal, IMAGE_MEAN, mean, unit);
                     }
+                    if (IMAGE_MEDIAN.getComputed()) {
+                        addMeasure(measVal, IMAGE_MEDIAN, median, unit);
+                    }
                     if (IMAGE_STD.getComputed()) {
                         addMeasure(measVal, IMAGE_STD, stdv, unit);
                     }
-                    
+                    if (IMAGE_SKEW.getComputed()) {
+                        addMeasure(measVal, IMAGE_SKEW, skew, null);
+                    }
+                    if (IMAGE_KURTOSIS.getComputed()) {
+                        addMeasure(measVal, IMAGE_KURTOSIS, kurtosis, null);
+                    }
+
                     Double suv = (Double) layer.getSourceTagValue(TagW.SuvFactor);
                     if (Objects.nonNull(suv)) {
                         unit = "SUVbw"; //$NON-NLS-1$
@@ -140,6 +181,10 @@ public abstract class AbstractDragGraphicArea extends AbstractDragGraphic implem
                             measVal.add(new MeasureItem(IMAGE_MEAN,
                                 mean == null || mean[0] == null ? null : mean[0] * suv, unit));
                         }
+                        if (IMAGE_MEDIAN.getComputed()) {
+                            measVal.add(new MeasureItem(IMAGE_MEDIAN,
+                                median == null || median[0] == null ? null : median[0] * suv, unit));
+                        }
                     }
                 }
                 return measVal;
@@ -148,6 +193,20 @@ public abstract class AbstractDragGraphicArea extends AbstractDragGraphic implem
         return Collections.emptyList();
     }
 
+    private static Shape transformShape(Shape shape, AffineTransform transform) {
+        if (transform == null) {
+            return shape;
+        }
+        if ((transform.getType() & ~AffineTransform.TYPE_TRANSLATION) == 0 && shape instanceof RectangularShape) {
+            // Keep rectangles and ellipses, their spans are computed without flattening the outline
+            RectangularShape s = (RectangularShape) ((RectangularShape) shape).clone();
+            s.setFrame(s.getX() + transform.getTranslateX(), s.getY() + transform.getTranslateY(), s.getWidth(),
+                s.getHeight());
+            return s;
+        }
+        return transform.createTransformedShape(shape);
+    }
+
     private static void addMeasure(ArrayList<MeasureItem> measVal, Measurement measure, Double[] val, String unit) {
         if (val == null) {
             measVal.add(new MeasureItem(measure, null, unit));
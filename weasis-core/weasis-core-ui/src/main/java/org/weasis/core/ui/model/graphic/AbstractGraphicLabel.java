@@ -38,6 +38,9 @@ import org.weasis.core.ui.editor.image.ViewCanvas;
 import org.weasis.core.ui.model.utils.imp.DefaultGraphicLabel;
 
 public abstract class AbstractGraphicLabel implements GraphicLabel {
+    private static final BasicStroke OUTLINE_STROKE = new BasicStroke(2f, BasicStroke.CAP_BUTT, BasicStroke.JOIN_ROUND);
+    private static final BasicStroke TEXT_STROKE = new BasicStroke(1f, BasicStroke.CAP_BUTT, BasicStroke.JOIN_ROUND);
+
     protected String[] labels;
     protected Rectangle2D labelBounds;
     protected Double labelWidth;
@@ -263,7 +266,24 @@ public abstract class AbstractGraphicLabel implements GraphicLabel {
         g2d.setPaint(oldPaint);
     }
 
+    /**
+     * Draw a text with a black outline. The text is drawn from an image of the cache when the transform of the graphics
+     * is a translation.
+     */
     public static void paintColorFontOutline(Graphics2D g2, String str, float x, float y, Color color) {
+        if (OutlinedTextCache.paint(g2, str, x, y, color)) {
+            // Same state of the graphics as after drawing the outline
+            g2.setPaint(color);
+            if (RenderingHints.VALUE_TEXT_ANTIALIAS_ON
+                .equals(g2.getRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING))) {
+                g2.setStroke(TEXT_STROKE);
+            }
+        } else {
+            drawFontOutline(g2, str, x, y, color);
+        }
+    }
+
+    static void drawFontOutline(Graphics2D g2, String str, float x, float y, Color color) {
         g2.setPaint(Color.BLACK);
 
         if (RenderingHints.VALUE_TEXT_ANTIALIAS_ON.equals(g2.getRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING))) {
@@ -271,10 +291,10 @@ public abstract class AbstractGraphicLabel implements GraphicLabel {
             AffineTransform textAt = new AffineTransform();
             textAt.translate(x, y);
             Shape outline = layout.getOutline(textAt);
-            g2.setStroke(new BasicStroke(2f, BasicStroke.CAP_BUTT, BasicStroke.JOIN_ROUND));
+            g2.setStroke(OUTLINE_STROKE);
             g2.draw(outline);
             g2.setPaint(color);
-            g2.setStroke(new BasicStroke(1f, BasicStroke.CAP_BUTT, BasicStroke.JOIN_ROUND));
+            g2.setStroke(TEXT_STROKE);
             g2.fill(outline);
         } else {
             g2.drawString(str, x - 1f, y - 1f);
@@ -0,0 +1,167 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2018 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.core.ui.model.graphic;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.font.FontRenderContext;
+import java.awt.font.TextLayout;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.Objects;
+
+import org.weasis.core.api.util.SoftCache;
+
+/**
+ * Cache of the outlined texts rasterized in ARGB images.
+ *
+ * <ul>
+ * <li>The key is the string, the font, the color and the antialiasing hints.</li>
+ * <li>An image is used only when the transform of the graphics is a translation of whole pixels, otherwise the text
+ * must be drawn from its outline.</li>
+ * <li>The text is drawn at the nearest pixel of the given position.</li>
+ * </ul>
+ */
+final class OutlinedTextCache {
+
+    // The texts longer than this limit (e.g. free annotations) are not cached
+    static final int MAX_LENGTH = 256;
+    // Margin for the outline (stroke of 2 pixels or drawString with a shift of 1 pixel) and for the antialiasing
+    private static final int MARGIN = 2;
+
+    private static final SoftCache<Key, Sprite> CACHE =
+        new SoftCache<>(1000, 16L * 1024 * 1024, s -> s.image.getWidth() * s.image.getHeight() * 4L);
+
+    private OutlinedTextCache() {
+    }
+
+    /**
+     * Draw the text from the cache.
+     *
+     * @return false when the text cannot be drawn from an image, then it must be drawn directly
+     */
+    static boolean paint(Graphics2D g2, String str, float x, float y, Color color) {
+        if (str.length() > MAX_LENGTH || !isPixelTranslation(g2.getTransform())) {
+            return false;
+        }
+        Object textAntialias = g2.getRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING);
+        // LCD text cannot be rendered in a translucent image
+        if (textAntialias != null && !RenderingHints.VALUE_TEXT_ANTIALIAS_ON.equals(textAntialias)
+            && !RenderingHints.VALUE_TEXT_ANTIALIAS_OFF.equals(textAntialias)
+            && !RenderingHints.VALUE_TEXT_ANTIALIAS_DEFAULT.equals(textAntialias)) {
+            return false;
+        }
+        Key key = new Key(str, g2.getFont(), color, RenderingHints.VALUE_TEXT_ANTIALIAS_ON.equals(textAntialias),
+            RenderingHints.VALUE_ANTIALIAS_ON.equals(g2.getRenderingHint(RenderingHints.KEY_ANTIALIASING)),
+            g2.getFontRenderContext().usesFractionalMetrics());
+        Sprite sprite = CACHE.get(key);
+        if (sprite == null) {
+            sprite = new Sprite(key);
+            CACHE.put(key, sprite);
+        }
+        g2.drawImage(sprite.image, Math.round(x) + sprite.x, Math.round(y) + sprite.y, null);
+        return true;
+    }
+
+    static void clear() {
+        CACHE.clear();
+    }
+
+    static SoftCache<?, ?> getCache() {
+        return CACHE;
+    }
+
+    private static boolean isPixelTranslation(AffineTransform at) {
+        int type = at.getType();
+        if (type == AffineTransform.TYPE_IDENTITY) {
+            return true;
+        }
+        return type == AffineTransform.TYPE_TRANSLATION && at.getTranslateX() == Math.rint(at.getTranslateX())
+            && at.getTranslateY() == Math.rint(at.getTranslateY());
+    }
+
+    private static final class Key {
+        private final String text;
+        private final Font font;
+        private final Color color;
+        private final boolean textAntialias;
+        private final boolean antialias;
+        private final boolean fractionalMetrics;
+        private final int hash;
+
+        Key(String text, Font font, Color color, boolean textAntialias, boolean antialias,
+            boolean fractionalMetrics) {
+            this.text = text;
+            this.font = font;
+            this.color = color;
+            this.textAntialias = textAntialias;
+            this.antialias = antialias;
+            this.fractionalMetrics = fractionalMetrics;
+            this.hash = Objects.hash(text, font, color, textAntialias, antialias, fractionalMetrics);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return hash == other.hash && textAntialias == other.textAntialias && antialias == other.antialias
+                && fractionalMetrics == other.fractionalMetrics && text.equals(other.text)
+                && font.equals(other.font) && color.equals(other.color);
+        }
+    }
+
+    private static final class Sprite {
+        private final BufferedImage image;
+        // Position of the image relative to the baseline origin of the text
+        private final int x;
+        private final int y;
+
+        Sprite(Key key) {
+            FontRenderContext frc = new FontRenderContext(null, key.textAntialias, key.fractionalMetrics);
+            Rectangle bounds;
+            if (key.text.isEmpty()) {
+                bounds = new Rectangle();
+            } else {
+                bounds = new TextLayout(key.text, key.font, frc).getPixelBounds(frc, 0f, 0f);
+            }
+            bounds.grow(MARGIN, MARGIN);
+            this.x = bounds.x;
+            this.y = bounds.y;
+            this.image = new BufferedImage(bounds.width, bounds.height, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g = image.createGraphics();
+            try {
+                g.setFont(key.font);
+                g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, key.textAntialias
+                    ? RenderingHints.VALUE_TEXT_ANTIALIAS_ON : RenderingHints.VALUE_TEXT_ANTIALIAS_OFF);
+                g.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                    key.antialias ? RenderingHints.VALUE_ANTIALIAS_ON : RenderingHints.VALUE_ANTIALIAS_OFF);
+                g.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS, key.fractionalMetrics
+                    ? RenderingHints.VALUE_FRACTIONALMETRICS_ON : RenderingHints.VALUE_FRACTIONALMETRICS_OFF);
+                AbstractGraphicLabel.drawFontOutline(g, key.text, -x, -y, key.color);
+            } finally {
+                g.dispose();
+            }
+        }
+    }
+}
@@ -29,17 +29,20 @@ import org.weasis.core.api.image.ImageOpNode;
 import org.weasis.core.api.image.OpEventListener;
 import org.weasis.core.api.image.OpManager;
 import org.weasis.core.api.image.SimpleOpManager;
+import org.weasis.core.api.image.WindowOp;
 import org.weasis.core.api.image.ZoomOp;
 import org.weasis.core.api.image.measure.MeasurementsAdapter;
 import org.weasis.core.api.image.util.ImageLayer;
 import org.weasis.core.api.image.util.Unit;
 import org.weasis.core.api.media.data.ImageElement;
+import org.weasis.core.api.media.data.TagReadable;
 import org.weasis.core.api.media.data.TagW;
 import org.weasis.core.ui.editor.image.Canvas;
 import org.weasis.core.ui.model.layer.Layer;
 import org.weasis.core.ui.model.layer.LayerType;
 import org.weasis.core.ui.model.utils.ImageLayerChangeListener;
 import org.weasis.core.ui.model.utils.imp.DefaultUUID;
+import org.weasis.opencv.data.LookupTableCV;
 import org.weasis.opencv.data.PlanarImage;
 import org.weasis.opencv.op.ImageConversion;
 
@@ -465,6 +468,20 @@ public class RenderedImageLayer<E extends ImageElement> extends DefaultUUID impl
         return null;
     }
 
+    @Override
+    public LookupTableCV getModalityLookup() {
+        E imageElement = getSourceImage();
+        if (imageElement != null) {
+            TagReadable prTags = (TagReadable) disOpManager.getParamValue(WindowOp.OP_NAME, WindowOp.P_PR_ELEMENT);
+            if (imageElement.getTagValue(TagW.ModalityLUTData) != null
+                || (prTags != null && prTags.getTagValue(TagW.ModalityLUTData) != null)) {
+                // The padding values are excluded by the statistics
+                return imageElement.getModalityLookup(prTags, false);
+            }
+        }
+        return null;
+    }
+
     @Override
     public Point getOffset() {
         return offset;
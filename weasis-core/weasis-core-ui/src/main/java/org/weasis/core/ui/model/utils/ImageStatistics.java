@@ -20,6 +20,8 @@ public interface ImageStatistics {
     Measurement IMAGE_STD = new Measurement(Messages.getString("measure.stdev"), 4, false, true, false); //$NON-NLS-1$
     Measurement IMAGE_SKEW = new Measurement(Messages.getString("measure.skew"), 5, false, true, false); //$NON-NLS-1$
     Measurement IMAGE_KURTOSIS = new Measurement(Messages.getString("measure.kurtosis"), 6, false, true, false); //$NON-NLS-1$
+    Measurement IMAGE_MEDIAN = new Measurement(Messages.getString("measure.median"), 7, false, true, false); //$NON-NLS-1$
 
-    Measurement[] ALL_MEASUREMENTS = { IMAGE_MIN, IMAGE_MAX, IMAGE_MEAN, IMAGE_STD, IMAGE_SKEW, IMAGE_KURTOSIS };
+    Measurement[] ALL_MEASUREMENTS =
+        { IMAGE_MIN, IMAGE_MAX, IMAGE_MEAN, IMAGE_MEDIAN, IMAGE_STD, IMAGE_SKEW, IMAGE_KURTOSIS };
 }
@@ -61,6 +61,7 @@ public class ViewSetting {
             ImageStatistics.IMAGE_MEAN.setComputed(basicStatistics);
 
             ImageStatistics.IMAGE_STD.setComputed(moreStatistics);
+            ImageStatistics.IMAGE_MEDIAN.setComputed(moreStatistics);
             ImageStatistics.IMAGE_SKEW.setComputed(moreStatistics);
             ImageStatistics.IMAGE_KURTOSIS.setComputed(moreStatistics);
 
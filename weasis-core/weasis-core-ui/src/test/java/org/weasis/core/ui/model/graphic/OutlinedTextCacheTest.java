@@ -0,0 +1,101 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2018 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.core.ui.model.graphic;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class OutlinedTextCacheTest {
+    private static final String TEXT = "Series: 12 / Image: 34"; //$NON-NLS-1$
+
+    @Before
+    public void setUp() {
+        OutlinedTextCache.clear();
+        OutlinedTextCache.getCache().resetStatistics();
+    }
+
+    @Test
+    public void testSameRenderingAsOutline() {
+        BufferedImage direct = newImage();
+        Graphics2D g = createGraphics(direct, RenderingHints.VALUE_TEXT_ANTIALIAS_OFF);
+        AbstractGraphicLabel.drawFontOutline(g, TEXT, 10f, 30f, Color.WHITE);
+        g.dispose();
+
+        BufferedImage cached = newImage();
+        g = createGraphics(cached, RenderingHints.VALUE_TEXT_ANTIALIAS_OFF);
+        assertThat(OutlinedTextCache.paint(g, TEXT, 10f, 30f, Color.WHITE)).isTrue();
+        g.dispose();
+
+        for (int y = 0; y < direct.getHeight(); y++) {
+            for (int x = 0; x < direct.getWidth(); x++) {
+                assertThat(cached.getRGB(x, y)).isEqualTo(direct.getRGB(x, y));
+            }
+        }
+    }
+
+    @Test
+    public void testReuseImage() {
+        BufferedImage img = newImage();
+        Graphics2D g = createGraphics(img, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        for (int i = 0; i < 5; i++) {
+            AbstractGraphicLabel.paintColorFontOutline(g, TEXT, 10f, 30f + i, Color.WHITE);
+        }
+        assertThat(OutlinedTextCache.getCache().size()).isEqualTo(1);
+        assertThat(OutlinedTextCache.getCache().getHitCount()).isEqualTo(4);
+        // The paint is the text color as when drawing the outline
+        assertThat(g.getPaint()).isEqualTo(Color.WHITE);
+
+        // Another color is another image
+        AbstractGraphicLabel.paintColorFontOutline(g, TEXT, 10f, 30f, Color.RED);
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_OFF);
+        AbstractGraphicLabel.paintColorFontOutline(g, TEXT, 10f, 30f, Color.RED);
+        g.dispose();
+        assertThat(OutlinedTextCache.getCache().size()).isEqualTo(3);
+    }
+
+    @Test
+    public void testNoImageWithScaling() {
+        BufferedImage img = newImage();
+        Graphics2D g = createGraphics(img, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g.scale(2.0, 2.0);
+        assertThat(OutlinedTextCache.paint(g, TEXT, 10f, 30f, Color.WHITE)).isFalse();
+        g.dispose();
+
+        g = createGraphics(img, RenderingHints.VALUE_TEXT_ANTIALIAS_LCD_HRGB);
+        assertThat(OutlinedTextCache.paint(g, TEXT, 10f, 30f, Color.WHITE)).isFalse();
+        g.dispose();
+        assertThat(OutlinedTextCache.getCache().size()).isZero();
+    }
+
+    private static BufferedImage newImage() {
+        BufferedImage img = new BufferedImage(300, 50, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = img.createGraphics();
+        g.setPaint(Color.GRAY);
+        g.fillRect(0, 0, img.getWidth(), img.getHeight());
+        g.dispose();
+        return img;
+    }
+
+    private static Graphics2D createGraphics(BufferedImage img, Object textAntialias) {
+        Graphics2D g = img.createGraphics();
+        g.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 12));
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, textAntialias);
+        return g;
+    }
+}
@@ -0,0 +1,447 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2018 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.core.api.media.data;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compact map of tag values for the media elements.
+ *
+ * <ul>
+ * <li>The values are stored in two arrays sorted by the ordinal of the tag (no entry object and no hash table).</li>
+ * <li>The map can reference a read-only parent map (e.g. the tags shared by all the frames of a multi-frame instance).
+ * The values of the parent are read through and are not copied, the writes are always in the child map.</li>
+ * <li>A writable map can give a read-only copy of its values with {@link #getReadOnlyCopy()}. The arrays are shared
+ * until the next modification of the writable map (copy-on-write).</li>
+ * <li>The values of the tags registered with {@link #addInternedTags(TagW...)} (e.g. Modality, Series Instance UID,
+ * Pixel Spacing) are interned, so the same value is stored once for all the images. A shared array is copied when it is
+ * read.</li>
+ * </ul>
+ *
+ * This class is not thread safe, like {@link java.util.HashMap}. A read-only map can be read by several threads.
+ */
+public class TagMap extends AbstractMap<TagW, Object> {
+
+    private static final int MAX_INTERNED_ARRAYS = 4096;
+
+    private static final Object NULL = new Object();
+    private static final Object REMOVED = new Object();
+
+    private static final Map<TagW, Integer> ORDINALS = new ConcurrentHashMap<>();
+    private static volatile TagW[] ordinalTags = new TagW[256];
+    private static final Set<TagW> INTERNED_TAGS = ConcurrentHashMap.newKeySet();
+    private static final Map<DoubleArrayKey, SharedArray> INTERNED_ARRAYS = new ConcurrentHashMap<>();
+
+    private TagMap parent;
+    private int[] ordinals;
+    private Object[] values;
+    private int size;
+    // Number of visible entries, including those of the parent
+    private int count;
+    private boolean readOnly;
+    // The arrays are referenced by the read-only copy and must be copied before any modification
+    private TagMap readOnlyCopy;
+
+    public TagMap() {
+        this(null);
+    }
+
+    /**
+     * @param parent
+     *            the map of the shared values, can be null. It must be read-only. The values of this map override the
+     *            parent values.
+     */
+    public TagMap(TagMap parent) {
+        if (parent != null && !parent.readOnly) {
+            throw new IllegalArgumentException("The parent map must be read-only"); //$NON-NLS-1$
+        }
+        this.parent = parent;
+        this.ordinals = new int[8];
+        this.values = new Object[8];
+        this.size = 0;
+        this.count = parent == null ? 0 : parent.size();
+    }
+
+    public TagMap getParent() {
+        return parent;
+    }
+
+    /**
+     * Forbid any modification of this map. It is required before referencing this map as a parent.
+     */
+    public void setReadOnly() {
+        if (!readOnly) {
+            trimToSize();
+            readOnly = true;
+        }
+    }
+
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    /**
+     * Return a read-only map with the values of this map, which can be referenced as a parent. The arrays are shared
+     * and this map remains writable: they are copied at its next modification. The same copy is returned until then.
+     */
+    public TagMap getReadOnlyCopy() {
+        if (readOnly) {
+            return this;
+        }
+        if (readOnlyCopy == null) {
+            trimToSize();
+            TagMap copy = new TagMap(parent);
+            copy.ordinals = ordinals;
+            copy.values = values;
+            copy.size = size;
+            copy.count = count;
+            copy.readOnly = true;
+            readOnlyCopy = copy;
+        }
+        return readOnlyCopy;
+    }
+
+    private void checkWritable() {
+        if (readOnly) {
+            throw new UnsupportedOperationException("The tags are read-only"); //$NON-NLS-1$
+        }
+        if (readOnlyCopy != null) {
+            ordinals = ordinals.clone();
+            values = values.clone();
+            readOnlyCopy = null;
+        }
+    }
+
+    /**
+     * Register the tags which have often the same value in all the images (e.g. Modality, Study Instance UID, Pixel
+     * Spacing). Only the strings and the double arrays are interned. A unique value (e.g. SOP Instance UID) must not be
+     * registered.
+     */
+    public static void addInternedTags(TagW... tags) {
+        for (TagW tag : tags) {
+            if (tag != null) {
+                INTERNED_TAGS.add(tag);
+            }
+        }
+    }
+
+    static int ordinalOf(TagW tag) {
+        Integer val = ORDINALS.get(tag);
+        if (val == null) {
+            synchronized (ORDINALS) {
+                val = ORDINALS.get(tag);
+                if (val == null) {
+                    val = ORDINALS.size();
+                    TagW[] array = ordinalTags;
+                    if (val >= array.length) {
+                        array = Arrays.copyOf(array, array.length * 2);
+                    }
+                    array[val] = tag;
+                    ordinalTags = array;
+                    ORDINALS.put(tag, val);
+                }
+            }
+        }
+        return val;
+    }
+
+    /**
+     * @return the ordinal of the tag or -1 when the tag has never been stored, the lookups do not register the tags
+     */
+    private static int findOrdinal(TagW tag) {
+        Integer val = ORDINALS.get(tag);
+        return val == null ? -1 : val;
+    }
+
+    private static TagW tagOf(int ordinal) {
+        return ordinalTags[ordinal];
+    }
+
+    /**
+     * Share the equal values between all the images. Only the values of the registered tags are interned.
+     */
+    static Object intern(TagW tag, Object value) {
+        if (!(value instanceof String || value instanceof double[]) || !INTERNED_TAGS.contains(tag)) {
+            return value;
+        }
+        if (value instanceof String) {
+            return ((String) value).intern();
+        }
+        double[] array = (double[]) value;
+        DoubleArrayKey key = new DoubleArrayKey(array);
+        SharedArray interned = INTERNED_ARRAYS.get(key);
+        if (interned == null && INTERNED_ARRAYS.size() < MAX_INTERNED_ARRAYS) {
+            // Copy, the caller can still modify its array
+            SharedArray shared = new SharedArray(array.clone());
+            interned = INTERNED_ARRAYS.putIfAbsent(new DoubleArrayKey(shared.array), shared);
+            if (interned == null) {
+                interned = shared;
+            }
+        }
+        return interned == null ? value : interned;
+    }
+
+    private int indexOf(Object key) {
+        if (key instanceof TagW) {
+            int ordinal = findOrdinal((TagW) key);
+            if (ordinal >= 0) {
+                return Arrays.binarySearch(ordinals, 0, size, ordinal);
+            }
+        }
+        return -1;
+    }
+
+    private static Object mask(Object value) {
+        return value == null ? NULL : value;
+    }
+
+    private static Object unmask(Object value) {
+        if (value == NULL) {
+            return null;
+        }
+        if (value instanceof SharedArray) {
+            // The interned array must not be modified by the caller
+            return ((SharedArray) value).array.clone();
+        }
+        return value;
+    }
+
+    @Override
+    public int size() {
+        return count;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        int index = indexOf(key);
+        if (index >= 0) {
+            return values[index] != REMOVED;
+        }
+        return parent != null && parent.containsKey(key);
+    }
+
+    @Override
+    public Object get(Object key) {
+        int index = indexOf(key);
+        if (index >= 0) {
+            Object val = values[index];
+            return val == REMOVED ? null : unmask(val);
+        }
+        return parent == null ? null : parent.get(key);
+    }
+
+    @Override
+    public Object put(TagW key, Object value) {
+        if (key == null) {
+            throw new NullPointerException("Null key is not allowed"); //$NON-NLS-1$
+        }
+        checkWritable();
+        Object old = get(key);
+        int ordinal = ordinalOf(key);
+        int index = Arrays.binarySearch(ordinals, 0, size, ordinal);
+        Object val = mask(intern(key, value));
+        if (index >= 0) {
+            if (values[index] == REMOVED) {
+                count++;
+            }
+            values[index] = val;
+        } else {
+            if (parent == null || !parent.containsKey(key)) {
+                count++;
+            }
+            insert(-(index + 1), ordinal, val);
+        }
+        return old;
+    }
+
+    private void insert(int index, int ordinal, Object val) {
+        if (size == ordinals.length) {
+            int capacity = size + (size >> 1) + 1;
+            ordinals = Arrays.copyOf(ordinals, capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+        System.arraycopy(ordinals, index, ordinals, index + 1, size - index);
+        System.arraycopy(values, index, values, index + 1, size - index);
+        ordinals[index] = ordinal;
+        values[index] = val;
+        size++;
+    }
+
+    private void removeAt(int index) {
+        System.arraycopy(ordinals, index + 1, ordinals, index, size - index - 1);
+        System.arraycopy(values, index + 1, values, index, size - index - 1);
+        size--;
+        values[size] = null;
+    }
+
+    @Override
+    public Object remove(Object key) {
+        if (!(key instanceof TagW)) {
+            return null;
+        }
+        checkWritable();
+        Object old = get(key);
+        int index = indexOf(key);
+        boolean inParent = parent != null && parent.containsKey(key);
+        if (inParent) {
+            // Hide the parent value
+            if (index >= 0) {
+                if (values[index] != REMOVED) {
+                    values[index] = REMOVED;
+                    count--;
+                }
+            } else {
+                insert(-(index + 1), ordinalOf((TagW) key), REMOVED);
+                count--;
+            }
+        } else if (index >= 0) {
+            removeAt(index);
+            count--;
+        }
+        return old;
+    }
+
+    @Override
+    public void clear() {
+        checkWritable();
+        parent = null;
+        Arrays.fill(values, 0, size, null);
+        size = 0;
+        count = 0;
+    }
+
+    /**
+     * Release the unused capacity of the arrays.
+     */
+    public void trimToSize() {
+        if (size < ordinals.length) {
+            ordinals = Arrays.copyOf(ordinals, size);
+            values = Arrays.copyOf(values, size);
+        }
+    }
+
+    @Override
+    public Set<Entry<TagW, Object>> entrySet() {
+        return new AbstractSet<Entry<TagW, Object>>() {
+
+            @Override
+            public Iterator<Entry<TagW, Object>> iterator() {
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size() {
+                return TagMap.this.size();
+            }
+        };
+    }
+
+    private class EntryIterator implements Iterator<Entry<TagW, Object>> {
+        private final List<Entry<TagW, Object>> entries = new ArrayList<>(size);
+        private int next = 0;
+        private Entry<TagW, Object> current;
+
+        EntryIterator() {
+            for (int i = 0; i < size; i++) {
+                if (values[i] != REMOVED) {
+                    entries.add(new TagEntry(tagOf(ordinals[i]), unmask(values[i])));
+                }
+            }
+            if (parent != null) {
+                for (Entry<TagW, Object> e : parent.entrySet()) {
+                    if (indexOf(e.getKey()) < 0) {
+                        entries.add(new TagEntry(e.getKey(), e.getValue()));
+                    }
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < entries.size();
+        }
+
+        @Override
+        public Entry<TagW, Object> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            current = entries.get(next++);
+            return current;
+        }
+
+        @Override
+        public void remove() {
+            if (current == null) {
+                throw new IllegalStateException();
+            }
+            TagMap.this.remove(current.getKey());
+            current = null;
+        }
+    }
+
+    private class TagEntry extends SimpleEntry<TagW, Object> {
+        private static final long serialVersionUID = -3253706914513357582L;
+
+        TagEntry(TagW key, Object value) {
+            super(key, value);
+        }
+
+        @Override
+        public Object setValue(Object value) {
+            // Write in this map, never in the parent
+            TagMap.this.put(getKey(), value);
+            return super.setValue(value);
+        }
+    }
+
+    private static final class SharedArray {
+        private final double[] array;
+
+        SharedArray(double[] array) {
+            this.array = array;
+        }
+    }
+
+    private static final class DoubleArrayKey {
+        private final double[] array;
+        private final int hash;
+
+        DoubleArrayKey(double[] array) {
+            this.array = array;
+            this.hash = Arrays.hashCode(array);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof DoubleArrayKey && Arrays.equals(array, ((DoubleArrayKey) obj).array);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,319 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2018 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.core.api.util;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.ToLongFunction;
+
+/**
+ * Thread-safe cache of soft references.
+ *
+ * <ul>
+ * <li>The values can be collected by the GC when the memory is low, like in a cache of soft references.</li>
+ * <li>The cache is bounded by a maximum number of entries and by a maximum weight (e.g. the size in bytes of the
+ * values). When a bound is exceeded, the entries are evicted in the order of insertion, except those which have been
+ * read since the last eviction pass (second chance algorithm).</li>
+ * <li>No global lock: the entries are stored in a {@link ConcurrentHashMap} and the collected references are removed
+ * only when they are still mapped.</li>
+ * <li>The statistics (hits, misses, evictions and collected values) can be used to tune the bounds.</li>
+ * </ul>
+ *
+ * Null keys and null values are not allowed.
+ *
+ * @param <K>
+ *            the type of keys
+ * @param <V>
+ *            the type of values
+ */
+public class SoftCache<K, V> {
+
+    private final ConcurrentHashMap<K, ValueReference<K, V>> map = new ConcurrentHashMap<>();
+    private final Queue<ValueReference<K, V>> evictionQueue = new ConcurrentLinkedQueue<>();
+    // Approximate size of evictionQueue (ConcurrentLinkedQueue.size() is not a constant-time operation)
+    private final AtomicInteger evictionQueueSize = new AtomicInteger();
+    private final ReferenceQueue<V> queue = new ReferenceQueue<>();
+
+    private final int maxEntries;
+    private final long maxWeight;
+    private final ToLongFunction<? super V> weigher;
+    private final AtomicLong weight = new AtomicLong();
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+    private final LongAdder collectedCount = new LongAdder();
+
+    private volatile BiConsumer<? super K, ? super V> removalListener;
+
+    /**
+     * Build a cache bounded only by the number of entries. The weight of each entry is 1.
+     *
+     * @param maxEntries
+     *            the maximum number of entries
+     */
+    public SoftCache(int maxEntries) {
+        this(maxEntries, Long.MAX_VALUE, null);
+    }
+
+    /**
+     * @param maxEntries
+     *            the maximum number of entries
+     * @param maxWeight
+     *            the maximum of the sum of the weights
+     * @param weigher
+     *            the function giving the weight of a value, the weight is 1 when null
+     */
+    public SoftCache(int maxEntries, long maxWeight, ToLongFunction<? super V> weigher) {
+        if (maxEntries <= 0 || maxWeight <= 0) {
+            throw new IllegalArgumentException("The bounds of the cache must be positive"); //$NON-NLS-1$
+        }
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+    }
+
+    /**
+     * @param removalListener
+     *            the listener called when an entry is evicted or when its value has been collected by the GC (the value
+     *            is null in this case). It is not called by {@link #remove(Object)}, {@link #clear()} or when a value is
+     *            replaced.
+     */
+    public void setRemovalListener(BiConsumer<? super K, ? super V> removalListener) {
+        this.removalListener = removalListener;
+    }
+
+    public V get(K key) {
+        expungeStaleEntries();
+        ValueReference<K, V> ref = map.get(Objects.requireNonNull(key));
+        V value = ref == null ? null : ref.get();
+        if (value == null) {
+            missCount.increment();
+            if (ref != null) {
+                removeCollected(ref);
+            }
+        } else {
+            ref.accessed = true;
+            hitCount.increment();
+        }
+        return value;
+    }
+
+    public boolean containsKey(K key) {
+        expungeStaleEntries();
+        ValueReference<K, V> ref = map.get(Objects.requireNonNull(key));
+        return ref != null && ref.get() != null;
+    }
+
+    /**
+     * @return the previous value or null
+     */
+    public V put(K key, V value) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(value);
+        expungeStaleEntries();
+        long w = weigher == null ? 1L : Math.max(0L, weigher.applyAsLong(value));
+        ValueReference<K, V> ref = new ValueReference<>(key, value, w, queue);
+        weight.addAndGet(w);
+        ValueReference<K, V> old = map.put(key, ref);
+        offerToEvictionQueue(ref);
+        V oldValue = null;
+        if (old != null) {
+            weight.addAndGet(-old.weight);
+            oldValue = old.get();
+            old.clear();
+        }
+        evictIfRequired();
+        return oldValue;
+    }
+
+    /**
+     * @return the removed value or null
+     */
+    public V remove(K key) {
+        expungeStaleEntries();
+        ValueReference<K, V> ref = map.remove(Objects.requireNonNull(key));
+        if (ref == null) {
+            return null;
+        }
+        weight.addAndGet(-ref.weight);
+        V value = ref.get();
+        ref.clear();
+        return value;
+    }
+
+    public void clear() {
+        for (ValueReference<K, V> ref : map.values()) {
+            if (map.remove(ref.key, ref)) {
+                weight.addAndGet(-ref.weight);
+                ref.clear();
+            }
+        }
+        purgeEvictionQueue();
+        expungeStaleEntries();
+    }
+
+    /**
+     * @return the number of entries, including the values collected by the GC and not yet removed
+     */
+    public int size() {
+        expungeStaleEntries();
+        return map.size();
+    }
+
+    public long getWeight() {
+        return weight.get();
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * @return the number of entries removed for respecting the bounds of the cache
+     */
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    /**
+     * @return the number of values collected by the GC
+     */
+    public long getCollectedCount() {
+        return collectedCount.sum();
+    }
+
+    /**
+     * @return the ratio of hits between 0 and 1, or 1 when the cache has never been read
+     */
+    public double getHitRate() {
+        long hits = hitCount.sum();
+        long total = hits + missCount.sum();
+        return total == 0 ? 1.0 : (double) hits / total;
+    }
+
+    public void resetStatistics() {
+        hitCount.reset();
+        missCount.reset();
+        evictionCount.reset();
+        collectedCount.reset();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("SoftCache[size=%d, weight=%d, hits=%d, misses=%d, evictions=%d, collected=%d]", //$NON-NLS-1$
+            map.size(), weight.get(), getHitCount(), getMissCount(), getEvictionCount(), getCollectedCount());
+    }
+
+    /**
+     * Remove the entries of the values collected by the GC. This method is called by all the other methods.
+     */
+    public void expungeStaleEntries() {
+        Reference<? extends V> ref;
+        while ((ref = queue.poll()) != null) {
+            @SuppressWarnings("unchecked")
+            ValueReference<K, V> vref = (ValueReference<K, V>) ref;
+            removeCollected(vref);
+        }
+    }
+
+    private void removeCollected(ValueReference<K, V> ref) {
+        // Only the thread removing the mapping updates the weight and notifies the listener
+        if (map.remove(ref.key, ref)) {
+            weight.addAndGet(-ref.weight);
+            collectedCount.increment();
+            fireRemoval(ref.key, null);
+        }
+    }
+
+    private void offerToEvictionQueue(ValueReference<K, V> ref) {
+        evictionQueue.offer(ref);
+        // The replaced and removed references are skipped by the eviction, purge them when they are too many
+        if (evictionQueueSize.incrementAndGet() > 2 * map.size() + 16) {
+            purgeEvictionQueue();
+        }
+    }
+
+    private void purgeEvictionQueue() {
+        evictionQueue.removeIf(r -> {
+            boolean stale = map.get(r.key) != r;
+            if (stale) {
+                evictionQueueSize.decrementAndGet();
+            }
+            return stale;
+        });
+    }
+
+    private void evictIfRequired() {
+        // Each reference read since the last pass has a second chance, so the loop is limited to two passes
+        int limit = 2 * evictionQueueSize.get() + 1;
+        while ((map.size() > maxEntries || weight.get() > maxWeight) && limit-- > 0) {
+            ValueReference<K, V> ref = evictionQueue.poll();
+            if (ref == null) {
+                break;
+            }
+            evictionQueueSize.decrementAndGet();
+            if (map.get(ref.key) != ref) {
+                continue;
+            }
+            if (ref.accessed) {
+                ref.accessed = false;
+                offerToEvictionQueue(ref);
+            } else if (map.remove(ref.key, ref)) {
+                weight.addAndGet(-ref.weight);
+                evictionCount.increment();
+                V value = ref.get();
+                ref.clear();
+                fireRemoval(ref.key, value);
+            }
+        }
+    }
+
+    private void fireRemoval(K key, V value) {
+        BiConsumer<? super K, ? super V> listener = removalListener;
+        if (listener != null) {
+            listener.accept(key, value);
+        }
+    }
+
+    private static final class ValueReference<K, V> extends SoftReference<V> {
+        private final K key;
+        private final long weight;
+        private volatile boolean accessed;
+
+        ValueReference(K key, V value, long weight, ReferenceQueue<? super V> queue) {
+            super(value, queue);
+            this.key = key;
+            this.weight = weight;
+        }
+    }
+}
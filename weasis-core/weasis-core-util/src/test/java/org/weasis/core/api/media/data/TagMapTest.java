@@ -0,0 +1,132 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2018 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.core.api.media.data;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import org.weasis.core.api.media.data.TagW.TagType;
+
+public class TagMapTest {
+
+    @Test
+    public void testOverrideParent() {
+        TagMap base = new TagMap();
+        base.put(TagW.FilePath, "/tmp/file.dcm"); //$NON-NLS-1$
+        base.put(TagW.ImageWidth, 512);
+        base.put(TagW.SlicePosition, null);
+        base.setReadOnly();
+        assertEquals(3, base.size());
+
+        TagMap frame0 = new TagMap(base);
+        TagMap frame1 = new TagMap(base);
+        frame1.put(TagW.ImageWidth, 256);
+        frame1.put(TagW.OverlayBurninDataPath, "/tmp/overlay"); //$NON-NLS-1$
+        assertEquals(4, frame1.size());
+        assertEquals(256, frame1.get(TagW.ImageWidth));
+
+        // The writes of a frame are not visible in the other frames
+        frame0.put(TagW.HasOverlay, Boolean.TRUE);
+        assertEquals(512, frame0.get(TagW.ImageWidth));
+        assertFalse(frame1.containsKey(TagW.HasOverlay));
+        assertFalse(base.containsKey(TagW.HasOverlay));
+        assertEquals(4, frame0.size());
+
+        frame1.remove(TagW.FilePath);
+        frame1.remove(TagW.FilePath);
+        frame1.remove(TagW.OverlayBurninDataPath);
+        assertEquals(2, frame1.size());
+        assertFalse(frame1.containsKey(TagW.FilePath));
+        assertTrue(base.containsKey(TagW.FilePath));
+        frame1.put(TagW.FilePath, "/tmp/other.dcm"); //$NON-NLS-1$
+        assertEquals(3, frame1.size());
+        assertTrue(frame1.containsKey(TagW.SlicePosition));
+
+        Map<TagW, Object> copy = new HashMap<>(frame1);
+        assertEquals(frame1.size(), copy.size());
+        assertEquals(copy, frame1);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testReadOnly() {
+        TagMap base = new TagMap();
+        base.put(TagW.ImageWidth, 512);
+        base.setReadOnly();
+        base.put(TagW.ImageHeight, 512);
+    }
+
+    @Test
+    public void testReadOnlyCopy() {
+        TagMap instance = new TagMap();
+        instance.put(TagW.ImageWidth, 512);
+        TagMap copy = instance.getReadOnlyCopy();
+        assertTrue(copy.isReadOnly());
+        assertTrue(copy == instance.getReadOnlyCopy());
+        TagMap frame = new TagMap(copy);
+
+        // The instance remains writable, the copy and the frame keep the previous values
+        instance.put(TagW.ImageWidth, 256);
+        instance.put(TagW.ImageHeight, 128);
+        assertEquals(256, instance.get(TagW.ImageWidth));
+        assertEquals(2, instance.size());
+        assertEquals(512, copy.get(TagW.ImageWidth));
+        assertEquals(1, copy.size());
+        assertEquals(512, frame.get(TagW.ImageWidth));
+        assertFalse(frame.containsKey(TagW.ImageHeight));
+        assertEquals(256, instance.getReadOnlyCopy().get(TagW.ImageWidth));
+    }
+
+    @Test
+    public void testLookupUnknownTag() {
+        TagW tag = new TagW("TagMapTestUnknown", TagType.STRING); //$NON-NLS-1$
+        TagMap map = new TagMap();
+        assertNull(map.get(tag));
+        assertFalse(map.containsKey(tag));
+        assertNull(map.remove(tag));
+        assertEquals(0, map.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWritableParent() {
+        new TagMap(new TagMap());
+    }
+
+    @Test
+    public void testInternedArray() {
+        TagMap.addInternedTags(TagW.SlicePosition);
+        double[] position = { 1.0, 2.0, 3.0 };
+        TagMap map1 = new TagMap();
+        map1.put(TagW.SlicePosition, position);
+        TagMap map2 = new TagMap();
+        map2.put(TagW.SlicePosition, position.clone());
+
+        // The caller cannot modify the shared value
+        position[0] = 5.0;
+        double[] val = (double[]) map1.get(TagW.SlicePosition);
+        assertArrayEquals(new double[] { 1.0, 2.0, 3.0 }, val, 0.0);
+        val[1] = 7.0;
+        assertArrayEquals(new double[] { 1.0, 2.0, 3.0 }, (double[]) map2.get(TagW.SlicePosition), 0.0);
+        assertNotSame(map1.get(TagW.SlicePosition), map1.get(TagW.SlicePosition));
+
+        // Not a registered tag
+        map1.put(TagW.ImageOrientationPlane, position);
+        assertTrue(position == map1.get(TagW.ImageOrientationPlane));
+        assertNull(map1.get(TagW.ImageWidth));
+    }
+}
@@ -0,0 +1,182 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2018 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.core.api.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class SoftCacheTest {
+
+    @Test
+    public void testGetPutRemove() {
+        SoftCache<String, String> cache = new SoftCache<>(10);
+        assertNull(cache.get("a")); //$NON-NLS-1$
+        assertNull(cache.put("a", "1")); //$NON-NLS-1$ //$NON-NLS-2$
+        assertEquals("1", cache.get("a")); //$NON-NLS-1$ //$NON-NLS-2$
+        assertEquals("1", cache.put("a", "2")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        assertEquals(1, cache.size());
+        assertEquals(1, cache.getWeight());
+        assertTrue(cache.containsKey("a")); //$NON-NLS-1$
+        assertEquals("2", cache.remove("a")); //$NON-NLS-1$ //$NON-NLS-2$
+        assertFalse(cache.containsKey("a")); //$NON-NLS-1$
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getWeight());
+
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(0.5, cache.getHitRate(), 0.0);
+    }
+
+    @Test
+    public void testMaxEntries() {
+        SoftCache<Integer, String> cache = new SoftCache<>(3);
+        List<Integer> evicted = new ArrayList<>();
+        cache.setRemovalListener((k, v) -> evicted.add(k));
+        for (int i = 0; i < 3; i++) {
+            cache.put(i, String.valueOf(i));
+        }
+        // Second chance for the entry which has been read
+        assertEquals("0", cache.get(0)); //$NON-NLS-1$
+        cache.put(3, "3"); //$NON-NLS-1$
+
+        assertEquals(3, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(1, evicted.size());
+        assertEquals(Integer.valueOf(1), evicted.get(0));
+        assertNull(cache.get(1));
+        assertEquals("0", cache.get(0)); //$NON-NLS-1$
+        assertEquals("3", cache.get(3)); //$NON-NLS-1$
+    }
+
+    @Test
+    public void testMaxWeight() {
+        SoftCache<Integer, byte[]> cache = new SoftCache<>(100, 1000, v -> v.length);
+        cache.put(1, new byte[400]);
+        cache.put(2, new byte[400]);
+        assertEquals(800, cache.getWeight());
+        cache.put(3, new byte[400]);
+        assertEquals(2, cache.size());
+        assertEquals(800, cache.getWeight());
+        assertNull(cache.get(1));
+
+        // Replacing a value updates the weight
+        cache.put(2, new byte[100]);
+        assertEquals(500, cache.getWeight());
+
+        // A value larger than the budget is not kept
+        cache.put(4, new byte[2000]);
+        assertTrue(cache.getWeight() <= 1000);
+        assertNull(cache.get(4));
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getWeight());
+    }
+
+    @Test
+    public void testReplacedEntriesAreNotLeaked() {
+        SoftCache<Integer, String> cache = new SoftCache<>(10);
+        for (int i = 0; i < 10_000; i++) {
+            cache.put(i % 5, String.valueOf(i));
+        }
+        assertEquals(5, cache.size());
+        assertEquals(5, cache.getWeight());
+        assertEquals(0, cache.getEvictionCount());
+    }
+
+    @Test
+    public void testConcurrentAccess() throws Exception {
+        final int maxEntries = 64;
+        final int maxWeight = 64 * 1024;
+        final int threads = 8;
+        final int iterations = 50_000;
+        SoftCache<Integer, byte[]> cache = new SoftCache<>(maxEntries, maxWeight, v -> v.length);
+        Map<Integer, Boolean> removedKeys = new ConcurrentHashMap<>();
+        AtomicInteger removals = new AtomicInteger();
+        cache.setRemovalListener((k, v) -> {
+            removedKeys.put(k, Boolean.TRUE);
+            removals.incrementAndGet();
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> results = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final long seed = t;
+            results.add(executor.submit(() -> {
+                Random random = new Random(seed);
+                int errors = 0;
+                start.await();
+                for (int i = 0; i < iterations; i++) {
+                    int key = random.nextInt(256);
+                    int op = random.nextInt(10);
+                    if (op < 6) {
+                        byte[] val = cache.get(key);
+                        // The value must be the one built for this key
+                        if (val != null && (val.length == 0 || val[0] != (byte) key)) {
+                            errors++;
+                        }
+                    } else if (op < 9) {
+                        byte[] val = new byte[256 + random.nextInt(2048)];
+                        val[0] = (byte) key;
+                        cache.put(key, val);
+                    } else {
+                        cache.remove(key);
+                    }
+                }
+                return errors;
+            }));
+        }
+        start.countDown();
+        for (Future<Integer> f : results) {
+            assertEquals(Integer.valueOf(0), f.get(60, TimeUnit.SECONDS));
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        // Bounds are respected once the writers have finished
+        assertTrue(cache.size() <= maxEntries);
+        assertTrue(cache.getWeight() <= maxWeight);
+        assertTrue(cache.getWeight() >= 0);
+        assertEquals(removals.get(), cache.getEvictionCount() + cache.getCollectedCount());
+        assertTrue(cache.getHitCount() + cache.getMissCount() > 0);
+
+        // The weight is consistent with the remaining entries
+        long sum = 0;
+        for (int key = 0; key < 256; key++) {
+            byte[] val = cache.get(key);
+            if (val != null) {
+                sum += val.length;
+            }
+        }
+        assertEquals(sum, cache.getWeight());
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getWeight());
+    }
+}
@@ -15,6 +15,7 @@ import java.awt.image.DataBufferUShort;
 import java.awt.image.RenderedImage;
 import java.awt.image.SampleModel;
 import java.util.Collection;
+import java.util.EnumSet;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
@@ -30,10 +31,11 @@ import org.weasis.core.api.image.PseudoColorOp;
 import org.weasis.core.api.image.WindowOp;
 import org.weasis.core.api.image.util.Unit;
 import org.weasis.core.api.media.data.ImageElement;
-import org.weasis.core.api.media.data.SoftHashMap;
 import org.weasis.core.api.media.data.TagReadable;
 import org.weasis.core.api.media.data.TagW;
+import org.weasis.core.api.service.BundleTools;
 import org.weasis.core.api.util.LangUtil;
+import org.weasis.core.api.util.SoftCache;
 import org.weasis.dicom.codec.display.PresetWindowLevel;
 import org.weasis.dicom.codec.display.WindowAndPresetsOp;
 import org.weasis.dicom.codec.geometry.GeometryOfSlice;
@@ -49,10 +51,22 @@ public class DicomImageElement extends ImageElement {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(DicomImageElement.class);
 
-    private static final SoftHashMap<LutParameters, LookupTableCV> LUT_Cache = new SoftHashMap<>();
+    private static final SoftCache<LutParameters, LookupTableCV> LUT_Cache =
+        new SoftCache<>(512, 64L * 1024 * 1024, DicomImageElement::getLutSize);
+
+    private static final EnumSet<TransferSyntax> LOSSY_SYNTAXES = EnumSet.of(TransferSyntax.JPEG_LOSSY_8,
+        TransferSyntax.JPEG_LOSSY_12, TransferSyntax.JPEGLS_NEAR_LOSSLESS, TransferSyntax.JPEG2000,
+        TransferSyntax.JPEG2000_2, TransferSyntax.MPEG2, TransferSyntax.MPEG2_HIGH, TransferSyntax.MPEG_4,
+        TransferSyntax.MPEG_4_BD);
+
+    /*
+     * Min and max values by SOPInstanceUID and frame. When a series is opened again, the pixels are not scanned again.
+     */
+    private static final SoftCache<String, double[]> MIN_MAX_CACHE = new SoftCache<>(200_000);
 
     private volatile List<PresetWindowLevel> windowingPresetCollection = null;
     private volatile Collection<LutShape> lutShapeCollection = null;
+    private volatile SortKey sortKey = null;
 
     public DicomImageElement(DcmMediaReader mediaIO, Object key) {
         super(mediaIO, key);
@@ -60,6 +74,26 @@ public class DicomImageElement extends ImageElement {
         initPixelConfiguration();
     }
 
+    @Override
+    public void setTag(TagW tag, Object value) {
+        super.setTag(tag, value);
+        if (SortKey.isSortTag(tag)) {
+            sortKey = null;
+        }
+    }
+
+    /**
+     * @return the values for sorting the stack, computed once from the tags
+     */
+    SortKey getSortKey() {
+        SortKey key = sortKey;
+        if (key == null) {
+            key = new SortKey(this);
+            sortKey = key;
+        }
+        return key;
+    }
+
     public void initPixelConfiguration() {
         this.pixelSizeX = 1.0;
         this.pixelSizeY = 1.0;
@@ -334,6 +368,7 @@ public class DicomImageElement extends ImageElement {
 
     }
 
+    @Override
     public LookupTableCV getModalityLookup(TagReadable tagable, boolean pixelPadding) {
         return getModalityLookup(tagable, pixelPadding, false);
     }
@@ -421,6 +456,11 @@ public class DicomImageElement extends ImageElement {
         return modalityLookup;
     }
 
+    private static long getLutSize(LookupTableCV lut) {
+        int bytes = lut.getDataType() == DataBuffer.TYPE_BYTE ? 1 : 2;
+        return (long) lut.getNumEntries() * lut.getNumBands() * bytes;
+    }
+
     /**
      *
      * @param window
@@ -507,7 +547,6 @@ public class DicomImageElement extends ImageElement {
          */
 
         if (img != null && !isImageAvailable()) {
-            // Cannot trust SmallestImagePixelValue and LargestImagePixelValue values! So search min and max values
             int bitsStored = getBitsStored();
             int bitsAllocated = getBitsAllocated();
 
@@ -515,13 +554,20 @@ public class DicomImageElement extends ImageElement {
             maxPixelValue = null;
 
             boolean monochrome = isPhotometricInterpretationMonochrome();
-            if (monochrome) {
+            String cacheKey = getMinMaxCacheKey();
+            double[] cachedMinMax = cacheKey == null ? null : MIN_MAX_CACHE.get(cacheKey);
+            if (cachedMinMax != null) {
+                this.minPixelValue = cachedMinMax[0];
+                this.maxPixelValue = cachedMinMax[1];
+            } else if (monochrome) {
                 Integer paddingValue = getPaddingValue();
                 if (paddingValue != null) {
                     Integer paddingLimit = getPaddingLimit();
                     Integer paddingValueMin = (paddingLimit == null) ? paddingValue : Math.min(paddingValue, paddingLimit);
                     Integer paddingValueMax = (paddingLimit == null) ? paddingValue : Math.max(paddingValue, paddingLimit);
                     findMinMaxValues(img, paddingValueMin, paddingValueMax);
+                } else {
+                    findMinMaxValuesFromHeader(img, bitsStored);
                 }
             }
 
@@ -529,6 +575,10 @@ public class DicomImageElement extends ImageElement {
                 super.findMinMaxValues(img, !monochrome);
             }
 
+            if (cachedMinMax == null && cacheKey != null && isImageAvailable()) {
+                MIN_MAX_CACHE.put(cacheKey, new double[] { minPixelValue, maxPixelValue });
+            }
+
             if (bitsStored < bitsAllocated && isImageAvailable()) {
                 boolean isSigned = isPixelRepresentationSigned();
                 int minInValue = isSigned ? -(1 << (bitsStored - 1)) : 0;
@@ -555,6 +605,64 @@ public class DicomImageElement extends ImageElement {
         }
     }
 
+    private String getMinMaxCacheKey() {
+        String sopUID = TagD.getTagValue(this, Tag.SOPInstanceUID, String.class);
+        if (sopUID == null) {
+            return null;
+        }
+        return sopUID + "/" + getKey(); //$NON-NLS-1$
+    }
+
+    /**
+     * Sets Min/Max values from SmallestImagePixelValue and LargestImagePixelValue when the preference
+     * weasis.dicom.minmax.header is enabled (disabled by default). These values are often missing or stale, so they
+     * are used only when they are consistent with the image description. Images with padding values, with overlays in
+     * the unused bits or with lossy compressed pixels are always scanned.
+     *
+     * @param img
+     * @param bitsStored
+     */
+    private void findMinMaxValuesFromHeader(PlanarImage img, int bitsStored) {
+        if (!BundleTools.SYSTEM_PREFERENCES.getBooleanProperty("weasis.dicom.minmax.header", false) //$NON-NLS-1$
+            || img.channels() != 1 || isLossyCompressed()
+            || LangUtil.getNULLtoFalse((Boolean) getTagValue(TagW.HasOverlay))) {
+            return;
+        }
+        int dataType = ImageConversion.convertToDataType(img.type());
+        if (dataType != DataBuffer.TYPE_BYTE && dataType != DataBuffer.TYPE_USHORT
+            && dataType != DataBuffer.TYPE_SHORT) {
+            return;
+        }
+        Integer smallest = TagD.getTagValue(this, Tag.SmallestImagePixelValue, Integer.class);
+        Integer largest = TagD.getTagValue(this, Tag.LargestImagePixelValue, Integer.class);
+        if (smallest == null || largest == null || smallest >= largest) {
+            return;
+        }
+        boolean isSigned = isPixelRepresentationSigned();
+        int minInValue = isSigned ? -(1 << (bitsStored - 1)) : 0;
+        int maxInValue = isSigned ? (1 << (bitsStored - 1)) - 1 : (1 << bitsStored) - 1;
+        // Values clipped to the bits stored range cannot be trusted
+        if (largest >= maxInValue || (isSigned && smallest <= minInValue)) {
+            return;
+        }
+        this.minPixelValue = smallest.doubleValue();
+        this.maxPixelValue = largest.doubleValue();
+    }
+
+    private boolean isLossyCompressed() {
+        // The pixel values may have changed since the header values were computed
+        if ("01".equals(TagD.getTagValue(this, Tag.LossyImageCompression, String.class))) { //$NON-NLS-1$
+            return true;
+        }
+        String tsuid = TagD.getTagValue(this, Tag.TransferSyntaxUID, String.class);
+        for (TransferSyntax ts : LOSSY_SYNTAXES) {
+            if (ts.getTransferSyntaxUID().equals(tsuid)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Computes Min/Max values from Image excluding range of values provided
      *
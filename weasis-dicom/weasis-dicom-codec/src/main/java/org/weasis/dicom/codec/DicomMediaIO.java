@@ -23,7 +23,7 @@ import java.io.IOException;
 import java.io.ObjectOutput;
 import java.io.ObjectOutputStream;
 import java.io.RandomAccessFile;
-import java.lang.ref.Reference;
+import java.lang.ref.SoftReference;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.ByteOrder;
@@ -49,6 +49,7 @@ import javax.imageio.stream.ImageInputStream;
 import org.dcm4che3.data.Attributes;
 import org.dcm4che3.data.BulkData;
 import org.dcm4che3.data.Fragments;
+import org.dcm4che3.data.Sequence;
 import org.dcm4che3.data.Tag;
 import org.dcm4che3.data.UID;
 import org.dcm4che3.data.VR;
@@ -59,6 +60,7 @@ import org.dcm4che3.imageio.plugins.dcm.DicomImageReadParam;
 import org.dcm4che3.imageio.plugins.dcm.DicomImageReaderSpi;
 import org.dcm4che3.imageio.plugins.dcm.DicomMetaData;
 import org.dcm4che3.imageio.stream.ImageInputStreamAdapter;
+import org.dcm4che3.io.DicomInputHandler;
 import org.dcm4che3.io.DicomInputStream;
 import org.dcm4che3.io.DicomInputStream.IncludeBulkData;
 import org.dcm4che3.util.StreamUtils;
@@ -80,11 +82,12 @@ import org.weasis.core.api.media.data.MediaSeries;
 import org.weasis.core.api.media.data.MediaSeriesGroup;
 import org.weasis.core.api.media.data.Series;
 import org.weasis.core.api.media.data.SimpleTagable;
-import org.weasis.core.api.media.data.SoftHashMap;
 import org.weasis.core.api.media.data.TagView;
+import org.weasis.core.api.media.data.TagMap;
 import org.weasis.core.api.media.data.TagW;
 import org.weasis.core.api.service.BundleTools;
 import org.weasis.core.api.util.FileUtil;
+import org.weasis.core.api.util.SoftCache;
 import org.weasis.dicom.codec.TagD.Level;
 import org.weasis.dicom.codec.display.CornerDisplay;
 import org.weasis.dicom.codec.display.Modality;
@@ -93,6 +96,7 @@ import org.weasis.dicom.codec.display.ModalityView;
 import org.weasis.dicom.codec.geometry.ImageOrientation;
 import org.weasis.dicom.codec.utils.DicomImageUtils;
 import org.weasis.dicom.codec.utils.DicomMediaUtils;
+import org.weasis.dicom.codec.utils.FunctionalGroupIndex;
 import org.weasis.dicom.codec.utils.OverlayUtils;
 import org.weasis.dicom.codec.utils.PatientComparator;
 import org.weasis.opencv.data.ImageCV;
@@ -120,6 +124,17 @@ public class DicomMediaIO extends ImageReader implements DcmMediaReader {
     public static final String SERIES_XDSI = "xds-i/dicom"; //$NON-NLS-1$
 
     private static final AtomicInteger instanceID = new AtomicInteger(1);
+
+    /**
+     * Large sequences of the root dataset which are not required for building the model. They are skipped when reading
+     * the header and the complete dataset is read only when required (see {@link #getDicomObject()}).
+     */
+    private static final int[] SKIPPED_SEQUENCES = { Tag.ContentSequence, Tag.GraphicAnnotationSequence,
+        Tag.ROIContourSequence, Tag.DVHSequence, Tag.BeamSequence, Tag.IonBeamSequence, Tag.WaveformSequence };
+
+    static {
+        Arrays.sort(SKIPPED_SEQUENCES);
+    }
     public static final TagManager tagManager = new TagManager();
 
     static {
@@ -212,6 +227,15 @@ public class DicomMediaIO extends ImageReader implements DcmMediaReader {
 
         // TODO init with a profile
         DicomMediaUtils.enableAnonymizationProfile(true);
+
+        // Values often identical in all the images (not the unique values like SOPInstanceUID)
+        TagMap.addInternedTags(TagD.getTagFromIDs(Tag.PatientID, Tag.PatientName, Tag.PatientSex,
+            Tag.PatientBirthDate, Tag.IssuerOfPatientID, Tag.StudyInstanceUID, Tag.StudyDescription,
+            Tag.ReferringPhysicianName, Tag.InstitutionName, Tag.StationName, Tag.SeriesInstanceUID,
+            Tag.SeriesDescription, Tag.Modality, Tag.Manufacturer, Tag.ManufacturerModelName, Tag.BodyPartExamined,
+            Tag.FrameOfReferenceUID, Tag.SOPClassUID, Tag.TransferSyntaxUID, Tag.PhotometricInterpretation,
+            Tag.RescaleType, Tag.PixelSpacing, Tag.ImagerPixelSpacing, Tag.ImageOrientationPatient));
+        TagMap.addInternedTags(TagW.PatientPseudoUID, TagW.ImageOrientationPlane);
     }
 
     public static final Map<String, DicomSpecialElementFactory> DCM_ELEMENT_FACTORIES = new HashMap<>();
@@ -262,23 +286,24 @@ public class DicomMediaIO extends ImageReader implements DcmMediaReader {
 
     static final DicomImageReaderSpi dicomImageReaderSpi = new DicomImageReaderSpi();
 
-    private static final SoftHashMap<DicomMediaIO, DicomMetaData> HEADER_CACHE =
-        new SoftHashMap<DicomMediaIO, DicomMetaData>() {
+    private static final int MAX_CACHED_HEADERS = 2000;
+    private static final SoftCache<DicomMediaIO, DicomMetaData> HEADER_CACHE = new SoftCache<>(MAX_CACHED_HEADERS);
 
-            @Override
-            public void removeElement(Reference<? extends DicomMetaData> soft) {
-                DicomMediaIO key = reverseLookup.remove(soft);
-                if (key != null) {
-                    hash.remove(key);
-                    key.reset();
-                }
-            }
-        };
+    static {
+        // Release the stream of the reader when its header is no longer in the cache
+        HEADER_CACHE.setRemovalListener((reader, header) -> reader.reset());
+    }
 
     // The above softReference HEADER_CACHE shall be used instead of the following dcmMetadata variable to get access to
     // the current DicomObject unless it's virtual and then URI doesn't exit. This case appends when the dcmMetadata is
     // created within the application and is given to the ImageReader constructor
     private DicomMetaData dcmMetadata = null;
+    // False when some sequences have been skipped when reading the header
+    private volatile boolean completeHeader = true;
+    private final Object datasetLock = new Object();
+    private SoftReference<Attributes> dataset;
+    // Strong reference of the dataset modified in memory (KO), the changes must not be lost after a GC
+    private Attributes writableDataset;
 
     private BulkData pixeldata;
     private final VR.Holder pixeldataVR = new VR.Holder();
@@ -287,7 +312,8 @@ public class DicomMediaIO extends ImageReader implements DcmMediaReader {
 
     private URI uri;
     private int numberOfFrame;
-    private final Map<TagW, Object> tags;
+    private final TagMap tags;
+    private volatile FunctionalGroupIndex frameGroupIndex;
     private volatile MediaElement[] image = null;
     private volatile String mimeType;
     private final ArrayList<Integer> fragmentsPositions = new ArrayList<>();
@@ -318,7 +344,7 @@ public class DicomMediaIO extends ImageReader implements DcmMediaReader {
         super(dicomImageReaderSpi);
         this.uri = Objects.requireNonNull(uri);
         this.numberOfFrame = 0;
-        this.tags = new HashMap<>();
+        this.tags = new TagMap();
         this.mimeType = MIMETYPE;
         this.fileCache = new FileCache(this);
     }
@@ -356,6 +382,7 @@ public class DicomMediaIO extends ImageReader implements DcmMediaReader {
     public synchronized void replaceURI(URI uri) {
         if (!Objects.equals(this.uri, Objects.requireNonNull(uri))) {
             this.uri = uri;
+            clearDataset();
             reset();
         }
     }
@@ -454,7 +481,9 @@ public class DicomMediaIO extends ImageReader implements DcmMediaReader {
 
     @Override
     public void setTag(TagW tag, Object value) {
-        DicomMediaUtils.setTag(tags, tag, value);
+        synchronized (tags) {
+            DicomMediaUtils.setTag(tags, tag, value);
+        }
     }
 
     @Override
@@ -480,7 +509,7 @@ public class DicomMediaIO extends ImageReader implements DcmMediaReader {
             return;
         }
         // Get the dicom header
-        Attributes header = getDicomObject();
+        Attributes header = getDicomHeader();
         DicomMediaUtils.writeMetaData(group, header);
 
         // Series Group
@@ -536,6 +565,9 @@ public class DicomMediaIO extends ImageReader implements DcmMediaReader {
         DicomMediaUtils.computeSlicePositionVector(this);
         DicomMediaUtils.setShutter(this, header);
         DicomMediaUtils.computeSUVFactor(header, this, 0);
+
+        // Decode once the per-frame values, then the frames do not require the header anymore
+        frameGroupIndex = FunctionalGroupIndex.build(header, tags);
     }
 
     private void writeSharedFunctionalGroupsSequence(Attributes header) {
@@ -606,6 +638,10 @@ public class DicomMediaIO extends ImageReader implements DcmMediaReader {
                 DicomMediaUtils.getIntPixelValue(header, Tag.PixelPaddingValue, pixelRepresentation != 0, bitsStored));
             setTagNoNull(TagD.get(Tag.PixelPaddingRangeLimit), DicomMediaUtils.getIntPixelValue(header,
                 Tag.PixelPaddingRangeLimit, pixelRepresentation != 0, bitsStored));
+            setTagNoNull(TagD.get(Tag.SmallestImagePixelValue), DicomMediaUtils.getIntPixelValue(header,
+                Tag.SmallestImagePixelValue, pixelRepresentation != 0, bitsStored));
+            setTagNoNull(TagD.get(Tag.LargestImagePixelValue), DicomMediaUtils.getIntPixelValue(header,
+                Tag.LargestImagePixelValue, pixelRepresentation != 0, bitsStored));
 
             /*
              * * @see <a href=
@@ -709,7 +745,7 @@ public class DicomMediaIO extends ImageReader implements DcmMediaReader {
 
                 PlanarImage img = getUncacheImage(media, frame);
                 if (pmi == PhotometricInterpretation.PALETTE_COLOR) {
-                    img = DicomImageUtils.getRGBImageFromPaletteColorModel(img, getDicomObject());
+                    img = DicomImageUtils.getRGBImageFromPaletteColorModel(img, getDicomHeader());
                 }
 
                 /*
@@ -720,7 +756,7 @@ public class DicomMediaIO extends ImageReader implements DcmMediaReader {
                 if (overlayBitMask != null) {
                     if (media.getTagValue(TagW.OverlayBurninDataPath) == null) {
                         // Serialize overlay (from pixel data)
-                        Attributes ds = getDicomObject();
+                        Attributes ds = getDicomHeader();
                         int[] embeddedOverlayGroupOffsets = Overlays.getEmbeddedOverlayGroupOffsets(ds);
                         if (embeddedOverlayGroupOffsets.length > 0) {
                             FileOutputStream fileOut = null;
@@ -857,7 +893,7 @@ public class DicomMediaIO extends ImageReader implements DcmMediaReader {
             // TODO free memory
             img = ImageConversion.toMat(image);
             if (image.getColorModel() instanceof PaletteColorModel) {
-                img = DicomImageUtils.getRGBImageFromPaletteColorModel(img, getDicomObject());
+                img = DicomImageUtils.getRGBImageFromPaletteColorModel(img, getDicomHeader());
             }
 
             // TODO should be applied for all images
@@ -869,7 +905,7 @@ public class DicomMediaIO extends ImageReader implements DcmMediaReader {
             if (overlayBitMask != null) {
                 if (media.getTagValue(TagW.OverlayBurninDataPath) == null) {
                     // Serialize overlay (from pixel data)
-                    Attributes ds = getDicomObject();
+                    Attributes ds = getDicomHeader();
                     int[] embeddedOverlayGroupOffsets = Overlays.getEmbeddedOverlayGroupOffsets(ds);
 
                     // TODO remove if the output image is cache
@@ -995,18 +1031,31 @@ public class DicomMediaIO extends ImageReader implements DcmMediaReader {
 
     @Override
     public Map<TagW, Object> getMediaFragmentTags(Object key) {
-        if (key instanceof Integer) {
-            if ((Integer) key > 0) {
-                // Clone the shared tag
-                Map<TagW, Object> tagList = new HashMap<>(tags);
-                SimpleTagable tagable = new SimpleTagable(tagList);
-                if (DicomMediaUtils.writePerFrameFunctionalGroupsSequence(tagable, getDicomObject(), (Integer) key)) {
-                    DicomMediaUtils.computeSlicePositionVector(tagable);
-                }
-                return tagList;
+        // The tags of the instance are shared by all the frames, a later change of the instance tags is copied
+        TagMap shared;
+        synchronized (tags) {
+            shared = tags.getReadOnlyCopy();
+        }
+        // Reference the shared tags, only the values of the frame are stored
+        TagMap tagList = new TagMap(shared);
+        if (key instanceof Integer && (Integer) key > 0) {
+            SimpleTagable tagable = new SimpleTagable(tagList);
+            FunctionalGroupIndex index = frameGroupIndex;
+            boolean perFrame = index == null
+                ? DicomMediaUtils.writePerFrameFunctionalGroupsSequence(tagable, getDicomHeader(), (Integer) key)
+                : index.writeFrameTags(tagable, (Integer) key);
+            if (perFrame) {
+                DicomMediaUtils.computeSlicePositionVector(tagable);
             }
         }
-        return tags;
+        return tagList;
+    }
+
+    /**
+     * @return the index of the Per-frame Functional Groups Sequence or null if the instance has no such sequence
+     */
+    public FunctionalGroupIndex getFunctionalGroupIndex() {
+        return frameGroupIndex;
     }
 
     @Override
@@ -1209,8 +1258,42 @@ public class DicomMediaIO extends ImageReader implements DcmMediaReader {
         this.skipLargePrivate = skipLargePrivate;
     }
 
+    /**
+     * Get the complete DICOM dataset. When some large sequences have been skipped for building the model (e.g. the
+     * content of SR, the contours of RTSTRUCT), the file is read again and the dataset is kept in a soft reference.
+     * <p>
+     * The dataset of a Key Object Selection is modified by the application, it is always read completely and kept in
+     * a strong reference. The other datasets must be considered as read-only.
+     *
+     * @return the complete dataset or null when it cannot be read
+     * @see #getDicomHeader()
+     */
     @Override
     public Attributes getDicomObject() {
+        try {
+            DicomMetaData md = readMetaData();
+            if (md == dcmMetadata || (completeHeader && !isWritableDataset())) {
+                return md.getAttributes();
+            }
+            return readDataset();
+        } catch (Exception e) {
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.error("Cannot read DICOM:", e); //$NON-NLS-1$
+            } else {
+                LOGGER.error(e.getMessage());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get the DICOM header used for building the model. It contains all the attributes except some large sequences
+     * not required for displaying the images (see SKIPPED_SEQUENCES).
+     *
+     * @return the header or null when it cannot be read
+     * @see #getDicomObject()
+     */
+    public Attributes getDicomHeader() {
         try {
             DicomMetaData md = readMetaData();
             return md.getAttributes();
@@ -1236,9 +1319,49 @@ public class DicomMediaIO extends ImageReader implements DcmMediaReader {
         }
     }
 
+    private Attributes readDataset() throws IOException {
+        // Do not lock the reading of the header and the images
+        synchronized (datasetLock) {
+            Attributes ds = writableDataset;
+            if (ds == null && dataset != null) {
+                ds = dataset.get();
+            }
+            if (ds == null) {
+                Optional<File> file = fileCache.getOriginalFile();
+                if (!file.isPresent()) {
+                    throw new IllegalStateException("No DICOM file: " + uri); //$NON-NLS-1$
+                }
+                try (DicomInputStream din = new DicomInputStream(file.get())) {
+                    din.setIncludeBulkData(IncludeBulkData.URI);
+                    din.setBulkDataDescriptor(DicomCodec.BULKDATA_DESCRIPTOR);
+                    din.setURI(uri.toString());
+                    ds = din.readDataset(-1, -1);
+                }
+                if (isWritableDataset()) {
+                    writableDataset = ds;
+                } else {
+                    dataset = new SoftReference<>(ds);
+                }
+            }
+            return ds;
+        }
+    }
+
+    private boolean isWritableDataset() {
+        return SERIES_KO_MIMETYPE.equals(mimeType);
+    }
+
+    private void clearDataset() {
+        synchronized (datasetLock) {
+            dataset = null;
+            writableDataset = null;
+        }
+    }
+
     @Override
     public void dispose() {
         HEADER_CACHE.remove(this);
+        clearDataset();
         readingHeader = false;
         readingImage = false;
         reset();
@@ -1339,8 +1462,11 @@ public class DicomMediaIO extends ImageReader implements DcmMediaReader {
             dis.setBulkDataDescriptor(DicomCodec.BULKDATA_DESCRIPTOR);
             // avoid a copy of pixeldata into temporary file
             dis.setURI(uri.toString());
+            HeaderInputHandler handler = new HeaderInputHandler(dis);
+            dis.setDicomInputHandler(handler);
             Attributes fmi = dis.readFileMetaInformation();
             Attributes ds = dis.readDataset(-1, -1);
+            completeHeader = !handler.isSkipped();
             if (fmi == null) {
                 fmi = ds.createFileMetaInformation(dis.getTransferSyntax());
             }
@@ -1408,7 +1534,7 @@ public class DicomMediaIO extends ImageReader implements DcmMediaReader {
     }
 
     private ColorModel createColorModel(int bits, int dataType) {
-        return pmi.createColorModel(bits, dataType, getDicomObject());
+        return pmi.createColorModel(bits, dataType, getDicomHeader());
     }
 
     private boolean decodeJpeg2000(ImageInputStream iis) throws IOException {
@@ -1510,4 +1636,78 @@ public class DicomMediaIO extends ImageReader implements DcmMediaReader {
         }
     }
 
+
+    /**
+     * Skip the values of SKIPPED_SEQUENCES in the root dataset instead of decoding all their items.
+     */
+    private static final class HeaderInputHandler implements DicomInputHandler {
+        private final DicomInputHandler delegate;
+        private int skippedLevel = -1;
+        private boolean skipped = false;
+
+        HeaderInputHandler(DicomInputStream dis) {
+            this.delegate = dis;
+        }
+
+        boolean isSkipped() {
+            return skipped;
+        }
+
+        @Override
+        public void readValue(DicomInputStream dis, Attributes attrs) throws IOException {
+            int tag = dis.tag();
+            if (skippedLevel >= 0) {
+                // Inside a skipped sequence
+                if (dis.length() == -1) {
+                    delegate.readValue(dis, attrs);
+                } else {
+                    StreamUtils.skipFully(dis, dis.length());
+                }
+            } else if (dis.level() == 0 && dis.vr() == VR.SQ && Arrays.binarySearch(SKIPPED_SEQUENCES, tag) >= 0) {
+                skipped = true;
+                if (dis.length() == -1) {
+                    // Undefined length: the items must be parsed to find the end of the sequence
+                    skippedLevel = dis.level();
+                    try {
+                        delegate.readValue(dis, attrs);
+                    } finally {
+                        skippedLevel = -1;
+                    }
+                    attrs.remove(tag);
+                } else {
+                    StreamUtils.skipFully(dis, dis.length());
+                }
+            } else {
+                delegate.readValue(dis, attrs);
+            }
+        }
+
+        @Override
+        public void readValue(DicomInputStream dis, Sequence seq) throws IOException {
+            if (skippedLevel >= 0 && dis.length() != -1) {
+                StreamUtils.skipFully(dis, dis.length());
+            } else {
+                delegate.readValue(dis, seq);
+            }
+        }
+
+        @Override
+        public void readValue(DicomInputStream dis, Fragments frags) throws IOException {
+            if (skippedLevel >= 0) {
+                StreamUtils.skipFully(dis, dis.length());
+            } else {
+                delegate.readValue(dis, frags);
+            }
+        }
+
+        @Override
+        public void startDataset(DicomInputStream dis) throws IOException {
+            delegate.startDataset(dis);
+        }
+
+        @Override
+        public void endDataset(DicomInputStream dis) throws IOException {
+            delegate.endDataset(dis);
+        }
+    }
 }
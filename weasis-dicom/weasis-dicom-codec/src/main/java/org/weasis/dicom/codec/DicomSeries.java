@@ -10,10 +10,16 @@
  *******************************************************************************/
 package org.weasis.dicom.codec;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
 
 import org.dcm4che3.data.Tag;
 import org.slf4j.Logger;
@@ -23,13 +29,16 @@ import org.weasis.core.api.explorer.model.DataExplorerModel;
 import org.weasis.core.api.gui.util.Filter;
 import org.weasis.core.api.gui.util.MathUtil;
 import org.weasis.core.api.image.CvUtil;
+import org.weasis.core.api.media.data.ImageElement;
 import org.weasis.core.api.media.data.Series;
 import org.weasis.core.api.media.data.SeriesEvent;
 import org.weasis.core.api.media.data.TagView;
 import org.weasis.core.api.media.data.TagW;
 import org.weasis.core.api.util.FileUtil;
 import org.weasis.core.api.util.StringUtil;
+import org.weasis.core.api.util.ThreadUtil;
 import org.weasis.dicom.codec.TagD.Level;
+import org.weasis.opencv.data.PlanarImage;
 
 public class DicomSeries extends Series<DicomImageElement> {
     private static final Logger LOGGER = LoggerFactory.getLogger(DicomSeries.class);
@@ -37,7 +46,13 @@ public class DicomSeries extends Series<DicomImageElement> {
     static final TagView defaultTagView =
         new TagView(TagD.getTagFromIDs(Tag.SeriesDescription, Tag.SeriesNumber, Tag.SeriesTime));
 
-    private static volatile PreloadingTask preloadingTask;
+    private static final ExecutorService PRELOADER = ThreadUtil.buildNewSingleThreadExecutor("Series Preloader"); //$NON-NLS-1$
+    // Preloading tasks of the displayed series, guarded by the DicomSeries class lock
+    private static final Map<DicomSeries, PreloadingTask> preloadingTasks = new LinkedHashMap<>();
+    private static boolean preloaderScheduled = false;
+    private static int preloaderTurn = 0;
+    // Part of the native memory of the image cache that can be filled by the preloading
+    private static final double MAX_PRELOADING_MEMORY_RATIO = 0.8;
 
     public DicomSeries(String subseriesInstanceUID) {
         this(subseriesInstanceUID, null, defaultTagView);
@@ -125,6 +140,14 @@ public class DicomSeries extends Series<DicomImageElement> {
         return DicomMediaIO.SERIES_MIMETYPE;
     }
 
+    @Override
+    public void setOpen(boolean open) {
+        super.setOpen(open);
+        if (!open) {
+            stopPreloading(this);
+        }
+    }
+
     @Override
     public void dispose() {
         stopPreloading(this);
@@ -191,44 +214,124 @@ public class DicomSeries extends Series<DicomImageElement> {
         return (offset > 0) ? (bestIndex + offset) : bestIndex;
     }
 
+    /**
+     * Start or update the preloading of a displayed series. Several series can be preloaded at the same time, the
+     * native memory of the image cache is shared between them.
+     *
+     * @param series
+     *            the series
+     * @param imageList
+     *            the images in the order of the view
+     * @param currentIndex
+     *            the index of the displayed image
+     */
     public static synchronized void startPreloading(DicomSeries series, List<DicomImageElement> imageList,
         int currentIndex) {
         if (series != null && imageList != null) {
-            if (preloadingTask != null) {
-                if (preloadingTask.getSeries() == series) {
-                    return;
-                }
-                stopPreloading(preloadingTask.getSeries());
+            PreloadingTask task = preloadingTasks.get(series);
+            if (task == null) {
+                task = new PreloadingTask(series, imageList, currentIndex);
+                preloadingTasks.put(series, task);
+            } else {
+                task.setImageList(imageList, currentIndex);
             }
-            preloadingTask = new PreloadingTask(series, imageList, currentIndex);
-            preloadingTask.start();
+            schedulePreloading();
+        }
+    }
+
+    /**
+     * Update the preloading of a series when the displayed image has changed.
+     *
+     * @param series
+     *            the series
+     * @param currentImage
+     *            the displayed image
+     * @return false when the series is not preloaded or when the image is not in its list
+     */
+    public static synchronized boolean updatePreloading(DicomSeries series, DicomImageElement currentImage) {
+        PreloadingTask task = series == null ? null : preloadingTasks.get(series);
+        if (task != null && task.setCurrentImage(currentImage)) {
+            schedulePreloading();
+            return true;
         }
+        return false;
     }
 
     public static synchronized void stopPreloading(DicomSeries series) {
-        if (preloadingTask != null && preloadingTask.getSeries() == series) {
-            PreloadingTask moribund = preloadingTask;
-            preloadingTask = null;
-            if (moribund != null) {
-                moribund.setPreloading(false);
-                moribund.interrupt();
+        PreloadingTask moribund = preloadingTasks.remove(series);
+        if (moribund != null) {
+            moribund.setPreloading(false);
+        }
+    }
+
+    private static synchronized void schedulePreloading() {
+        if (!preloaderScheduled) {
+            preloaderScheduled = true;
+            PRELOADER.execute(DicomSeries::preload);
+        }
+    }
+
+    /**
+     * Get the next image to load, taking the series in turn. The preloading stops when the images in cache (displayed,
+     * preloaded or from other series) get near the capacity of the cache, so it never evicts the images of the window.
+     */
+    private static synchronized PreloadingTask nextPreloadingTask(DicomImageElement[] next) {
+        int nbTasks = preloadingTasks.size();
+        if (nbTasks > 0) {
+            long maxMemory = (long) (ImageElement.getNativeCacheMaxMemory() * MAX_PRELOADING_MEMORY_RATIO);
+            long freeMemory = maxMemory - ImageElement.getNativeCacheUsedMemory();
+            // Each series has an equal part of the native memory
+            long memoryBudget = maxMemory / nbTasks;
+            List<PreloadingTask> tasks = new ArrayList<>(preloadingTasks.values());
+            for (int i = 0; i < nbTasks; i++) {
+                PreloadingTask task = tasks.get((preloaderTurn + i) % nbTasks);
+                DicomImageElement img = task.nextImage(memoryBudget, freeMemory);
+                if (img != null) {
+                    preloaderTurn = (preloaderTurn + i + 1) % nbTasks;
+                    next[0] = img;
+                    return task;
+                }
             }
         }
+        preloaderScheduled = false;
+        return null;
     }
 
-    static class PreloadingTask extends Thread {
+    private static void preload() {
+        DicomImageElement[] next = new DicomImageElement[1];
+        PreloadingTask task;
+        while ((task = nextPreloadingTask(next)) != null) {
+            task.loadArrays(next[0]);
+        }
+    }
+
+    static class PreloadingTask {
+        // Maximum of images loaded in the scroll direction compared to the opposite direction
+        private static final double MAX_DIRECTION_RATIO = 0.9;
+        // Velocity (slices/s) from which the preloading is mainly in the scroll direction
+        private static final double FAST_SCROLL_VELOCITY = 20.0;
+        // After this delay (ns) without scrolling, the preloading is the same in both directions
+        private static final long SCROLL_TIMEOUT = 1_000_000_000L;
+
         private volatile boolean preloading = true;
-        private final int index;
-        private final List<DicomImageElement> imageList;
         private final DicomSeries series;
+        private List<DicomImageElement> imageList;
+        private int index;
+        private double velocity;
+        private long lastIndexTime;
+        // Native memory of a decoded image, estimated from the header until an image is loaded
+        private volatile long imageSize;
+        // Images already loaded or attempted since the last change of the current image
+        private final Set<DicomImageElement> attempted = new HashSet<>();
 
         public PreloadingTask(DicomSeries series, List<DicomImageElement> imageList, int currentIndex) {
             this.series = series;
             this.imageList = imageList;
             this.index = currentIndex;
+            this.lastIndexTime = System.nanoTime();
         }
 
-        public synchronized boolean isPreloading() {
+        public boolean isPreloading() {
             return preloading;
         }
 
@@ -236,15 +339,117 @@ public class DicomSeries extends Series<DicomImageElement> {
             return series;
         }
 
-        public List<DicomImageElement> getImageList() {
+        public synchronized List<DicomImageElement> getImageList() {
             return imageList;
         }
 
-        public synchronized void setPreloading(boolean preloading) {
+        public void setPreloading(boolean preloading) {
             this.preloading = preloading;
         }
 
+        synchronized void setImageList(List<DicomImageElement> imageList, int currentIndex) {
+            this.imageList = imageList;
+            attempted.clear();
+            setCurrentIndex(currentIndex);
+        }
+
+        synchronized boolean setCurrentImage(DicomImageElement currentImage) {
+            int i = imageList.indexOf(currentImage);
+            if (i >= 0) {
+                setCurrentIndex(i);
+                return true;
+            }
+            return false;
+        }
+
+        private void setCurrentIndex(int currentIndex) {
+            long now = System.nanoTime();
+            int delta = currentIndex - index;
+            if (delta != 0) {
+                long elapsed = now - lastIndexTime;
+                double instant = delta * 1.0e9 / Math.max(elapsed, 1_000_000L);
+                // Smooth the velocity of the scroll, restart when the scroll has been stopped
+                velocity = elapsed > SCROLL_TIMEOUT ? instant : 0.7 * velocity + 0.3 * instant;
+                lastIndexTime = now;
+                attempted.clear();
+            }
+            index = currentIndex;
+        }
+
+        /**
+         * Get the next image to load from the current image, taking more images in the scroll direction when the
+         * scroll is fast. The number of images around the current image is limited by the native memory budget. An image
+         * is returned once for the current image, so an image evicted from the cache or which cannot be read is not
+         * loaded again until the current image changes.
+         *
+         * @param memoryBudget
+         *            the native memory for the images of this series
+         * @param freeMemory
+         *            the native memory that the preloading can still fill
+         * @return the next image to load or null when there is nothing to load
+         */
+        synchronized DicomImageElement nextImage(long memoryBudget, long freeMemory) {
+            int size = imageList.size();
+            if (!preloading || index < 0 || index >= size) {
+                return null;
+            }
+            if (imageSize <= 0L) {
+                imageSize = evaluateImageSize(imageList.get(index));
+            }
+            long imgSize = Math.max(1L, imageSize);
+            if (freeMemory < imgSize) {
+                // The cache is near its capacity
+                return null;
+            }
+            int window = (int) Math.min(size, Math.max(1L, memoryBudget / imgSize));
+
+            double v = System.nanoTime() - lastIndexTime > SCROLL_TIMEOUT ? 0.0 : velocity;
+            int direction = v < 0.0 ? -1 : 1;
+            double ratio = 0.5 + (MAX_DIRECTION_RATIO - 0.5) * Math.min(1.0, Math.abs(v) / FAST_SCROLL_VELOCITY);
+            int ahead = (int) Math.round((window - 1) * ratio);
+            int behind = window - 1 - ahead;
+            // When the stack ends on one side, the remaining budget goes to the other side
+            int maxAhead = direction > 0 ? size - 1 - index : index;
+            int maxBehind = direction > 0 ? index : size - 1 - index;
+            if (ahead > maxAhead) {
+                behind = Math.min(maxBehind, behind + ahead - maxAhead);
+                ahead = maxAhead;
+            } else if (behind > maxBehind) {
+                ahead = Math.min(maxAhead, ahead + behind - maxBehind);
+                behind = maxBehind;
+            }
+
+            if (isLoadable(imageList.get(index))) {
+                return attempt(imageList.get(index));
+            }
+            // Go outward from the current image, keeping the proportion between both directions
+            int a = 0;
+            int b = 0;
+            while (a < ahead || b < behind) {
+                boolean takeAhead = b >= behind || (a < ahead && (a + 1) * (long) behind <= (b + 1) * (long) ahead);
+                DicomImageElement img;
+                if (takeAhead) {
+                    a++;
+                    img = imageList.get(index + direction * a);
+                } else {
+                    b++;
+                    img = imageList.get(index - direction * b);
+                }
+                if (isLoadable(img)) {
+                    return attempt(img);
+                }
+            }
+            return null;
+        }
+
+        private DicomImageElement attempt(DicomImageElement img) {
+            attempted.add(img);
+            return img;
+        }
 
+        private boolean isLoadable(DicomImageElement img) {
+            return img.isReadable() && !img.isLoading() && !img.isImageInCache() && !attempted.contains(img);
+        }
 
         private static long evaluateImageSize(DicomImageElement image) {
             Integer allocated = TagD.getTagValue(image, Tag.BitsAllocated, Integer.class);
@@ -252,19 +457,26 @@ public class DicomSeries extends Series<DicomImageElement> {
             Integer rows = TagD.getTagValue(image, Tag.Rows, Integer.class);
             Integer columns = TagD.getTagValue(image, Tag.Columns, Integer.class);
             if (allocated != null && sample != null && rows != null && columns != null) {
-                return (rows * columns * sample * allocated) / 8L;
+                String pmi = TagD.getTagValue(image, Tag.PhotometricInterpretation, String.class);
+                // The palette images are converted to RGB
+                int bands = "PALETTE COLOR".equalsIgnoreCase(pmi) ? 3 : sample; //$NON-NLS-1$
+                return ((long) rows * columns * bands * allocated) / 8L;
             }
             return 0L;
         }
 
-        private void loadArrays(DicomImageElement img, DataExplorerModel model) {
+        private void loadArrays(DicomImageElement img) {
             // Do not load an image if another process already loading it
             if (preloading && !img.isLoading()) {
                 Boolean cache = (Boolean) img.getTagValue(TagW.ImageCache);
                 if (cache == null || !cache) {
                     long start = System.currentTimeMillis();
                     try {
-                        img.getImage();
+                        PlanarImage image = img.getImage();
+                        if (image != null) {
+                            // Real size in the cache, which differs from the header for the converted images
+                            imageSize = image.physicalBytes();
+                        }
                     } catch (OutOfMemoryError e) {
                         LOGGER.error("Out of memory when loading image: {}", img, e); //$NON-NLS-1$
                         CvUtil.runGarbageCollectorAndWait(50);
@@ -272,6 +484,7 @@ public class DicomSeries extends Series<DicomImageElement> {
                     }
                     long stop = System.currentTimeMillis();
                     LOGGER.debug("Reading time: {} ms of image: {}", stop - start, img); //$NON-NLS-1$
+                    DataExplorerModel model = (DataExplorerModel) series.getTagValue(TagW.ExplorerModel);
                     if (model != null) {
                         model.firePropertyChange(new ObservableEvent(ObservableEvent.BasicAction.ADD, model, null,
                             new SeriesEvent(SeriesEvent.Action.PRELOADING, series, img)));
@@ -279,45 +492,5 @@ public class DicomSeries extends Series<DicomImageElement> {
                 }
             }
         }
-
-        @Override
-        public void run() {
-            if (imageList != null) {
-                DataExplorerModel model = (DataExplorerModel) series.getTagValue(TagW.ExplorerModel);
-                int size = imageList.size();
-                if (model == null || index < 0 || index >= size) {
-                    return;
-                }
-                // TODO need to be changed with openCV
-                long imgSize = evaluateImageSize(imageList.get(index)) * size + 5000;
-                long heapSize = Runtime.getRuntime().totalMemory();
-                long heapFreeSize = Runtime.getRuntime().freeMemory();
-                if (imgSize > heapSize / 3) {
-                    if (imgSize > heapFreeSize) {
-                        CvUtil.runGarbageCollectorAndWait(50);
-                    }
-                    double val = (double) heapFreeSize / imgSize;
-                    int ajustSize = (int) (size * val) / 2;
-                    int start = index - ajustSize;
-                    if (start < 0) {
-                        ajustSize -= start;
-                        start = 0;
-                    }
-                    if (ajustSize > size) {
-                        ajustSize = size;
-                    }
-                    for (int i = start; i < ajustSize; i++) {
-                        loadArrays(imageList.get(i), model);
-                    }
-                } else {
-                    if (imgSize > heapFreeSize) {
-                        CvUtil.runGarbageCollectorAndWait(50);
-                    }
-                    for (DicomImageElement img : imageList) {
-                        loadArrays(img, model);
-                    }
-                }
-            }
-        }
     }
 }
@@ -22,7 +22,7 @@ public class PRSpecialElement extends DicomSpecialElement {
     @Override
     protected void initLabel() {
 
-        Attributes dicom = ((DicomMediaIO) mediaIO).getDicomObject();
+        Attributes dicom = ((DicomMediaIO) mediaIO).getDicomHeader();
         /*
          * DICOM PS 3.3 - 2011 - CONTENT IDENTIFICATION MACRO. Used in Presentation State Identification C.11.10
          *
@@ -0,0 +1,71 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2018 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.dicom.codec;
+
+import java.time.LocalTime;
+
+import org.dcm4che3.data.Tag;
+import org.weasis.core.api.media.data.TagW;
+
+/**
+ * Primitive values used by the comparators of {@link SortSeriesStack}. A missing value is NaN.
+ */
+final class SortKey {
+
+    final double instanceNumber;
+    final double slicePosition;
+    final double sliceLocation;
+    final double acquisitionTime;
+    final double contentTime;
+    final double diffusionBValue;
+
+    SortKey(DicomImageElement img) {
+        Integer instance = TagD.getTagValue(img, Tag.InstanceNumber, Integer.class);
+        this.instanceNumber = instance == null ? Double.NaN : instance;
+        double[] pos = (double[]) img.getTagValue(TagW.SlicePosition);
+        this.slicePosition = pos == null ? Double.NaN : pos[0] + pos[1] + pos[2];
+        this.sliceLocation = toDouble(TagD.getTagValue(img, Tag.SliceLocation, Double.class));
+        this.acquisitionTime = toNano(TagD.getTagValue(img, Tag.AcquisitionTime, LocalTime.class));
+        this.contentTime = toNano(TagD.getTagValue(img, Tag.ContentTime, LocalTime.class));
+        this.diffusionBValue = toDouble(TagD.getTagValue(img, Tag.DiffusionBValue, Double.class));
+    }
+
+    static boolean isSortTag(TagW tag) {
+        if (tag == null) {
+            return false;
+        }
+        if (TagW.SlicePosition.equals(tag)) {
+            return true;
+        }
+        int id = tag.getId();
+        return id == Tag.InstanceNumber || id == Tag.SliceLocation || id == Tag.AcquisitionTime
+            || id == Tag.ContentTime || id == Tag.DiffusionBValue;
+    }
+
+    /**
+     * Same behavior as the previous comparators: elements without value are considered as equal.
+     */
+    static int compare(double val1, double val2) {
+        if (Double.isNaN(val1) || Double.isNaN(val2)) {
+            return 0;
+        }
+        return Double.compare(val1, val2);
+    }
+
+    private static double toDouble(Double val) {
+        return val == null ? Double.NaN : val;
+    }
+
+    private static double toNano(LocalTime time) {
+        // Nanoseconds of the day are exactly represented by a double
+        return time == null ? Double.NaN : time.toNanoOfDay();
+    }
+}
@@ -10,12 +10,12 @@
  *******************************************************************************/
 package org.weasis.dicom.codec;
 
-import java.time.LocalTime;
-
-import org.dcm4che3.data.Tag;
 import org.weasis.core.api.media.data.SeriesComparator;
-import org.weasis.core.api.media.data.TagW;
 
+/**
+ * Comparators of the images of a series. The values are read from the {@link SortKey} of each image, which is computed
+ * once and not at each comparison.
+ */
 public final class SortSeriesStack {
 
     // Comparator cannot be a generic list of DicomOpImage because the Collection to sort has an AbstractImage type
@@ -23,12 +23,7 @@ public final class SortSeriesStack {
 
         @Override
         public int compare(DicomImageElement m1, DicomImageElement m2) {
-            Integer val1 = TagD.getTagValue(m1, Tag.InstanceNumber, Integer.class);
-            Integer val2 = TagD.getTagValue(m2, Tag.InstanceNumber, Integer.class);
-            if (val1 == null || val2 == null) {
-                return 0;
-            }
-            return val1.compareTo(val2);
+            return SortKey.compare(m1.getSortKey().instanceNumber, m2.getSortKey().instanceNumber);
         }
 
         @Override
@@ -40,12 +35,7 @@ public final class SortSeriesStack {
 
         @Override
         public int compare(DicomImageElement m1, DicomImageElement m2) {
-            double[] val1 = (double[]) m1.getTagValue(TagW.SlicePosition);
-            double[] val2 = (double[]) m2.getTagValue(TagW.SlicePosition);
-            if (val1 == null || val2 == null) {
-                return 0;
-            }
-            return Double.compare(val1[0] + val1[1] + val1[2], val2[0] + val2[1] + val2[2]);
+            return SortKey.compare(m1.getSortKey().slicePosition, m2.getSortKey().slicePosition);
         }
 
         @Override
@@ -58,12 +48,7 @@ public final class SortSeriesStack {
 
         @Override
         public int compare(DicomImageElement m1, DicomImageElement m2) {
-            Double val1 = TagD.getTagValue(m1, Tag.SliceLocation, Double.class);
-            Double val2 = TagD.getTagValue(m2, Tag.SliceLocation, Double.class);
-            if (val1 == null || val2 == null) {
-                return 0;
-            }
-            return val1.compareTo(val2);
+            return SortKey.compare(m1.getSortKey().sliceLocation, m2.getSortKey().sliceLocation);
         }
 
         @Override
@@ -77,12 +62,7 @@ public final class SortSeriesStack {
 
             @Override
             public int compare(DicomImageElement m1, DicomImageElement m2) {
-                LocalTime val1 = TagD.getTagValue(m1, Tag.AcquisitionTime, LocalTime.class);
-                LocalTime val2 = TagD.getTagValue(m2, Tag.AcquisitionTime, LocalTime.class);
-                if (val1 == null || val2 == null) {
-                    return 0;
-                }
-                return val1.compareTo(val2);
+                return SortKey.compare(m1.getSortKey().acquisitionTime, m2.getSortKey().acquisitionTime);
             }
 
             @Override
@@ -94,12 +74,7 @@ public final class SortSeriesStack {
 
         @Override
         public int compare(DicomImageElement m1, DicomImageElement m2) {
-            LocalTime val1 = TagD.getTagValue(m1, Tag.ContentTime, LocalTime.class);
-            LocalTime val2 = TagD.getTagValue(m2, Tag.ContentTime, LocalTime.class);
-            if (val1 == null || val2 == null) {
-                return 0;
-            }
-            return val1.compareTo(val2);
+            return SortKey.compare(m1.getSortKey().contentTime, m2.getSortKey().contentTime);
         }
 
         @Override
@@ -113,12 +88,7 @@ public final class SortSeriesStack {
 
             @Override
             public int compare(DicomImageElement m1, DicomImageElement m2) {
-                Double val1 = TagD.getTagValue(m1, Tag.DiffusionBValue, Double.class);
-                Double val2 = TagD.getTagValue(m2, Tag.DiffusionBValue, Double.class);
-                if (val1 == null || val2 == null) {
-                    return 0;
-                }
-                return val1.compareTo(val2);
+                return SortKey.compare(m1.getSortKey().diffusionBValue, m2.getSortKey().diffusionBValue);
             }
 
             @Override
@@ -11,7 +11,6 @@
 package org.weasis.dicom.codec.display;
 
 import java.awt.Color;
-import java.awt.image.RenderedImage;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.Optional;
@@ -31,7 +30,6 @@ import org.weasis.dicom.codec.DicomMediaIO;
 import org.weasis.dicom.codec.PRSpecialElement;
 import org.weasis.dicom.codec.TagD;
 import org.weasis.dicom.codec.utils.OverlayUtils;
-import org.weasis.opencv.data.ImageCV;
 import org.weasis.opencv.data.PlanarImage;
 import org.weasis.opencv.op.ImageProcessor;
 
@@ -80,7 +78,7 @@ public class OverlayOp extends AbstractOp {
         Boolean overlay = (Boolean) params.get(P_SHOW);
 
         if (overlay != null && overlay) {
-            RenderedImage imgOverlay = null;
+            Mat imgOverlay = null;
             ImageElement image = (ImageElement) params.get(P_IMAGE_ELEMENT);
 
             if (image != null) {
@@ -103,7 +101,12 @@ public class OverlayOp extends AbstractOp {
                     }
                 }
             }
-            result = imgOverlay == null ? source : ImageProcessor.overlay(source.toMat(), imgOverlay, Color.WHITE);
+            if (imgOverlay == null) {
+                result = source;
+            } else {
+                result = ImageProcessor.overlay(source.toMat(), imgOverlay, Color.WHITE);
+                imgOverlay.release();
+            }
         }
         params.put(Param.OUTPUT_IMG, result);
     }
@@ -14,7 +14,6 @@ import java.awt.Color;
 import java.awt.Rectangle;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Area;
-import java.awt.image.RenderedImage;
 import java.util.HashMap;
 import java.util.Optional;
 
@@ -131,9 +130,10 @@ public class ShutterOp extends AbstractOp {
                     Integer shuttOverlayGroup =
                         DicomMediaUtils.getIntegerFromDicomElement(attributes, Tag.ShutterOverlayGroup, null);
                     if (shuttOverlayGroup != null) {
-                        RenderedImage overlayImg =
+                        Mat overlayImg =
                             OverlayUtils.getShutterOverlay(attributes, frame, width, height, shuttOverlayGroup);
                         imgOverlay = ImageProcessor.applyShutter(result.toMat(), overlayImg, getShutterColor());
+                        overlayImg.release();
                     }
                 }
             }
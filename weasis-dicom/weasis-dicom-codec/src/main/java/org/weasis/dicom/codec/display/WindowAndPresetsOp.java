@@ -24,8 +24,6 @@ import org.weasis.dicom.codec.PRSpecialElement;
 
 public class WindowAndPresetsOp extends WindowOp {
 
-    public static final String P_PR_ELEMENT = "pr.element"; //$NON-NLS-1$
-
     @Override
     public void handleImageOpEvent(ImageOpEvent event) {
         OpEvent type = event.getEventType();
@@ -0,0 +1,334 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2018 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.dicom.codec.utils;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+
+import org.dcm4che3.data.Attributes;
+import org.dcm4che3.data.Sequence;
+import org.dcm4che3.data.Tag;
+import org.weasis.core.api.media.data.TagW;
+import org.weasis.core.api.media.data.Tagable;
+import org.weasis.dicom.codec.TagD;
+
+/**
+ * Index of the Per-frame Functional Groups Sequence of an enhanced multi-frame instance.
+ *
+ * <p>
+ * The index is built once when reading the header: each item is decoded with
+ * {@link DicomMediaUtils#writeFunctionalGroupsSequence(Tagable, Attributes)} and only the values that differ from the
+ * shared tags are kept, by column of primitive arrays when possible. Getting the tags of a frame does not require the
+ * DICOM header anymore.
+ * </p>
+ *
+ * @see - Dicom Standard 2011 - PS 3.3 §C.7.6.16 Multi-frame Functional Groups Module
+ */
+public final class FunctionalGroupIndex {
+
+    private final int frames;
+    private final Map<TagW, Column> columns = new LinkedHashMap<>();
+    private final int[] dimensionIndexValues;
+    private final int dimensions;
+    // Frames having values different from the shared tags
+    private final BitSet indexedFrames;
+
+    private FunctionalGroupIndex(int frames, int dimensions) {
+        this.frames = frames;
+        this.indexedFrames = new BitSet(frames);
+        this.dimensions = dimensions;
+        this.dimensionIndexValues = dimensions > 0 ? new int[frames * dimensions] : null;
+    }
+
+    /**
+     * Build the index from the Per-frame Functional Groups Sequence.
+     *
+     * @param header
+     *            the DICOM header
+     * @param sharedTags
+     *            the tags of the instance, including the shared functional groups
+     * @return the index or null when the header has no Per-frame Functional Groups Sequence
+     */
+    public static FunctionalGroupIndex build(Attributes header, Map<TagW, Object> sharedTags) {
+        if (header == null || sharedTags == null) {
+            return null;
+        }
+        Sequence seq = header.getSequence(Tag.PerFrameFunctionalGroupsSequence);
+        if (seq == null || seq.isEmpty()) {
+            return null;
+        }
+
+        int nbFrames = seq.size();
+        Attributes content = seq.get(0).getNestedDataset(Tag.FrameContentSequence);
+        int[] dims = content == null ? null : content.getInts(Tag.DimensionIndexValues);
+        FunctionalGroupIndex index = new FunctionalGroupIndex(nbFrames, dims == null ? 0 : dims.length);
+
+        // Only the values written by the per-frame item are collected, the shared tags are not copied
+        FrameTagable frameTags = new FrameTagable(sharedTags);
+        for (int i = 0; i < nbFrames; i++) {
+            Attributes item = seq.get(i);
+            frameTags.delta.clear();
+            DicomMediaUtils.writeFunctionalGroupsSequence(frameTags, item);
+            for (Entry<TagW, Object> entry : frameTags.delta.entrySet()) {
+                TagW tag = entry.getKey();
+                Object val = entry.getValue();
+                if (!sharedTags.containsKey(tag) || !Objects.deepEquals(sharedTags.get(tag), val)) {
+                    index.columns.computeIfAbsent(tag, k -> Column.buildColumn(val, nbFrames)).set(i, val);
+                    index.indexedFrames.set(i);
+                }
+            }
+            index.setDimensionIndexValues(i, item.getNestedDataset(Tag.FrameContentSequence));
+        }
+        return index;
+    }
+
+    private void setDimensionIndexValues(int frame, Attributes content) {
+        if (dimensionIndexValues != null) {
+            int[] dims = content == null ? null : content.getInts(Tag.DimensionIndexValues);
+            for (int j = 0; j < dimensions; j++) {
+                dimensionIndexValues[frame * dimensions + j] = dims != null && j < dims.length ? dims[j] : 0;
+            }
+            if (dims != null) {
+                indexedFrames.set(frame);
+            }
+        }
+    }
+
+    public int getNumberOfFrames() {
+        return frames;
+    }
+
+    public int getNumberOfDimensions() {
+        return dimensions;
+    }
+
+    /**
+     * @param frame
+     *            the frame index
+     * @param dimension
+     *            the index of the dimension in the Dimension Index Sequence
+     * @return the value of the Dimension Index Values (0020,9157) or 0 when not available
+     */
+    public int getDimensionIndexValue(int frame, int dimension) {
+        if (dimensionIndexValues == null || frame < 0 || frame >= frames || dimension < 0
+            || dimension >= dimensions) {
+            return 0;
+        }
+        return dimensionIndexValues[frame * dimensions + dimension];
+    }
+
+    public int[] getDimensionIndexValues(int frame) {
+        if (dimensionIndexValues == null || frame < 0 || frame >= frames) {
+            return null;
+        }
+        return Arrays.copyOfRange(dimensionIndexValues, frame * dimensions, (frame + 1) * dimensions);
+    }
+
+    /**
+     * Write the per-frame values in the tagable, like
+     * {@link DicomMediaUtils#writePerFrameFunctionalGroupsSequence(Tagable, Attributes, int)}.
+     *
+     * @param tagable
+     *            the tags of the frame (initialized with the shared tags)
+     * @param frame
+     *            the frame index
+     * @return true if some per-frame values have been written
+     */
+    public boolean writeFrameTags(Tagable tagable, int frame) {
+        if (tagable == null || frame < 0 || frame >= frames || !indexedFrames.get(frame)) {
+            return false;
+        }
+        for (Entry<TagW, Column> entry : columns.entrySet()) {
+            Column column = entry.getValue();
+            if (column.isSet(frame)) {
+                tagable.setTag(entry.getKey(), column.get(frame));
+            }
+        }
+        if (dimensionIndexValues != null) {
+            tagable.setTagNoNull(TagD.getNullable(Tag.DimensionIndexValues), getDimensionIndexValues(frame));
+        }
+        return true;
+    }
+
+    /**
+     * Read the shared tags and keep the written values apart.
+     */
+    private static class FrameTagable implements Tagable {
+        private final Map<TagW, Object> sharedTags;
+        private final Map<TagW, Object> delta = new LinkedHashMap<>();
+
+        FrameTagable(Map<TagW, Object> sharedTags) {
+            this.sharedTags = sharedTags;
+        }
+
+        @Override
+        public void setTag(TagW tag, Object value) {
+            if (tag != null) {
+                delta.put(tag, value);
+            }
+        }
+
+        @Override
+        public void setTagNoNull(TagW tag, Object value) {
+            if (value != null) {
+                setTag(tag, value);
+            }
+        }
+
+        @Override
+        public boolean containTagKey(TagW tag) {
+            return delta.containsKey(tag) || sharedTags.containsKey(tag);
+        }
+
+        @Override
+        public Object getTagValue(TagW tag) {
+            return delta.containsKey(tag) ? delta.get(tag) : sharedTags.get(tag);
+        }
+
+        @Override
+        public Iterator<Entry<TagW, Object>> getTagEntrySetIterator() {
+            Map<TagW, Object> all = new HashMap<>(sharedTags);
+            all.putAll(delta);
+            return all.entrySet().iterator();
+        }
+    }
+
+    private abstract static class Column {
+        protected final int size;
+        protected final BitSet present;
+
+        Column(int size) {
+            this.size = size;
+            this.present = new BitSet(size);
+        }
+
+        static Column buildColumn(Object val, int size) {
+            if (val instanceof Double) {
+                return new DoubleColumn(size, 1, false);
+            } else if (val instanceof double[]) {
+                return new DoubleColumn(size, ((double[]) val).length, true);
+            } else if (val instanceof Integer) {
+                return new IntColumn(size);
+            }
+            return new ObjectColumn(size);
+        }
+
+        boolean isSet(int index) {
+            return present.get(index);
+        }
+
+        abstract void set(int index, Object val);
+
+        abstract Object get(int index);
+    }
+
+    private static class IntColumn extends Column {
+        private final int[] values;
+        private ObjectColumn others;
+
+        IntColumn(int size) {
+            super(size);
+            this.values = new int[size];
+        }
+
+        @Override
+        void set(int index, Object val) {
+            present.set(index);
+            if (val instanceof Integer) {
+                values[index] = (Integer) val;
+            } else {
+                if (others == null) {
+                    others = new ObjectColumn(size);
+                }
+                others.set(index, val);
+            }
+        }
+
+        @Override
+        Object get(int index) {
+            if (others != null && others.isSet(index)) {
+                return others.get(index);
+            }
+            return values[index];
+        }
+    }
+
+    /**
+     * Store Double or double[] values with a fixed length (e.g. Image Position, Image Orientation, Pixel Spacing). The
+     * values are returned with the type of the first value, a double[] of length 1 (e.g. Window Center) is not a
+     * Double.
+     */
+    private static class DoubleColumn extends Column {
+        private final int width;
+        private final boolean array;
+        private final double[] values;
+        private ObjectColumn others;
+
+        DoubleColumn(int size, int width, boolean array) {
+            super(size);
+            this.width = width;
+            this.array = array;
+            this.values = new double[size * width];
+        }
+
+        @Override
+        void set(int index, Object val) {
+            present.set(index);
+            if (!array && val instanceof Double) {
+                values[index] = (Double) val;
+            } else if (array && val instanceof double[] && ((double[]) val).length == width) {
+                System.arraycopy(val, 0, values, index * width, width);
+            } else {
+                if (others == null) {
+                    others = new ObjectColumn(size);
+                }
+                others.set(index, val);
+            }
+        }
+
+        @Override
+        Object get(int index) {
+            if (others != null && others.isSet(index)) {
+                return others.get(index);
+            }
+            if (array) {
+                return Arrays.copyOfRange(values, index * width, (index + 1) * width);
+            }
+            return values[index];
+        }
+    }
+
+    private static class ObjectColumn extends Column {
+        private final Object[] values;
+
+        ObjectColumn(int size) {
+            super(size);
+            this.values = new Object[size];
+        }
+
+        @Override
+        void set(int index, Object val) {
+            present.set(index);
+            values[index] = val;
+        }
+
+        @Override
+        Object get(int index) {
+            return values[index];
+        }
+    }
+}
@@ -18,112 +18,202 @@ import java.awt.image.DataBufferShort;
 import java.awt.image.DataBufferUShort;
 import java.awt.image.IndexColorModel;
 import java.awt.image.Raster;
-import java.awt.image.RenderedImage;
-import java.awt.image.WritableRaster;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 import org.dcm4che3.data.Attributes;
 import org.dcm4che3.data.Tag;
 import org.dcm4che3.image.Overlays;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.weasis.core.api.media.data.ImageElement;
+import org.weasis.core.api.media.data.NativeCache;
 import org.weasis.core.api.media.data.TagW;
-import org.weasis.core.api.util.FileUtil;
 import org.weasis.dicom.codec.PRSpecialElement;
+import org.weasis.dicom.codec.TagD;
 import org.weasis.dicom.codec.display.OverlayOp;
+import org.weasis.opencv.data.ImageCV;
+import org.weasis.opencv.op.ImageConversion;
 
 public class OverlayUtils {
     private static final Logger LOGGER = LoggerFactory.getLogger(OverlayUtils.class);
 
     private static final byte[] icmColorValues = new byte[] { (byte) 0xFF, (byte) 0x00 };
 
+    /**
+     * Decoded overlay planes by SOPInstanceUID, frame, overlay group and size. They are kept in native memory to avoid
+     * unpacking the overlay bits each time a frame is displayed. The cached planes are never given to the callers, a
+     * copy is returned because an entry can be released by another thread.
+     */
+    private static final NativeCache<String, ImageCV> OVERLAY_CACHE = new NativeCache<String, ImageCV>(50_000_000) {
+
+        @Override
+        protected void afterEntryRemove(String key, ImageCV img) {
+            if (img != null) {
+                img.release();
+            }
+        }
+    };
+
     private OverlayUtils() {
     }
 
     /**
-     * Merge the overlays into the buffered image. This method apply only white pixel overlays.
+     * Get the mask of all the active overlays of the image and of the presentation state. This method apply only white
+     * pixel overlays.
      *
      * @param params
+     * @return a single channel 8-bit mask (must be released by the caller) or null if there is no overlay
      *
      */
-    public static RenderedImage getBinaryOverlays(ImageElement image, Attributes attributes, int frameIndex, int width,
+    public static Mat getBinaryOverlays(ImageElement image, Attributes attributes, int frameIndex, int width,
         int height, Map<String, Object> params) throws IOException {
 
-        // Default grayscale value for overlay
-        int grayscaleValue = 0xFFFF;
-        int outBits = 1;
-        IndexColorModel icm =
-            new IndexColorModel(outBits, icmColorValues.length, icmColorValues, icmColorValues, icmColorValues, 0);
-        BufferedImage overBi = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_BINARY, icm);
-        WritableRaster raster = overBi.getRaster();
-
-        // Get serialized overlay (from pixel data)
-        byte[][] data = null;
-        String filePath = (String) image.getTagValue(TagW.OverlayBurninDataPath);
-        if (filePath != null) {
-            FileInputStream fileIn = null;
-            ObjectInputStream objIn = null;
-            try {
-                fileIn = new FileInputStream(filePath);
-                objIn = new ObjectInputStream(fileIn);
-                Object o = objIn.readObject();
-                if (o instanceof byte[][]) {
-                    data = (byte[][]) o;
-                }
-            } catch (Exception e) {
-                LOGGER.error("Cannot read serialized overlay", e); //$NON-NLS-1$
-            } finally {
-                FileUtil.safeClose(objIn);
-                FileUtil.safeClose(fileIn);
-            }
-        }
-
+        List<Mat> planes = new ArrayList<>();
+        String sopUID = TagD.getTagValue(image, Tag.SOPInstanceUID, String.class);
         int[] overlayGroupOffsets = Overlays.getActiveOverlayGroupOffsets(attributes, 0xffff);
 
+        // Serialized overlay (from pixel data), read only when not in the cache
+        byte[][] data = null;
         for (int i = 0; i < overlayGroupOffsets.length; i++) {
-            byte[] ovlyData = null;
-            // Get bitmap overlay from pixel data
-            if (data != null && attributes.getInt(Tag.OverlayBitsAllocated | overlayGroupOffsets[i], 1) != 1
-                && data.length > i) {
-                ovlyData = data[i];
+            String key = buildKey(sopUID, frameIndex, overlayGroupOffsets[i], width, height);
+            Mat plane = getCachedPlane(key);
+            if (plane == null) {
+                byte[] ovlyData = null;
+                // Get bitmap overlay from pixel data
+                boolean embedded = attributes.getInt(Tag.OverlayBitsAllocated | overlayGroupOffsets[i], 1) != 1;
+                if (embedded) {
+                    if (data == null) {
+                        data = readSerializedOverlays(image);
+                    }
+                    if (data != null && data.length > i) {
+                        ovlyData = data[i];
+                    }
+                }
+                // If onlyData is null, get bitmap overlay from dicom attributes
+                ImageCV newPlane = buildOverlayPlane(ovlyData != null ? 0 : frameIndex, attributes,
+                    overlayGroupOffsets[i], width, height, ovlyData);
+                // Embedded overlay is not cached until it has been extracted from the pixel data
+                plane = !embedded || ovlyData != null ? putCachedPlane(key, newPlane) : newPlane;
             }
-            // If onlyData is null, get bitmap overlay from dicom attributes
-            Overlays.applyOverlay(ovlyData != null ? 0 : frameIndex, raster, attributes, overlayGroupOffsets[i],
-                grayscaleValue >>> (16 - outBits), ovlyData);
+            planes.add(plane);
         }
 
         Object pr = params.get(OverlayOp.P_PR_ELEMENT);
         if (pr instanceof PRSpecialElement) {
             Attributes ovlyAttrs = ((PRSpecialElement) pr).getMediaReader().getDicomObject();
+            String prUID = TagD.getTagValue((PRSpecialElement) pr, Tag.SOPInstanceUID, String.class);
             overlayGroupOffsets = Overlays.getActiveOverlayGroupOffsets(ovlyAttrs, 0xffff);
             Integer shuttOverlayGroup =
                 DicomMediaUtils.getIntegerFromDicomElement(ovlyAttrs, Tag.ShutterOverlayGroup, Integer.MIN_VALUE);
 
-            // grayscaleValue = Overlays.getRecommendedDisplayGrayscaleValue(psAttrs, gg0000);
             for (int i = 0; i < overlayGroupOffsets.length; i++) {
                 if (shuttOverlayGroup != overlayGroupOffsets[i]) {
-                    Overlays.applyOverlay(frameIndex, raster, ovlyAttrs, overlayGroupOffsets[i],
-                        grayscaleValue >>> (16 - outBits), null);
+                    String key = buildKey(prUID, frameIndex, overlayGroupOffsets[i], width, height);
+                    Mat plane = getCachedPlane(key);
+                    if (plane == null) {
+                        plane = putCachedPlane(key,
+                            buildOverlayPlane(frameIndex, ovlyAttrs, overlayGroupOffsets[i], width, height, null));
+                    }
+                    planes.add(plane);
                 }
             }
         }
 
-        return overBi;
+        return mergePlanes(planes, width, height);
     }
 
-    public static RenderedImage getShutterOverlay(Attributes attributes, int frameIndex, int width, int height,
+    /**
+     * Get the mask of the shutter overlay.
+     *
+     * @return a single channel 8-bit mask (must be released by the caller)
+     */
+    public static Mat getShutterOverlay(Attributes attributes, int frameIndex, int width, int height,
         int shuttOverlayGroup) throws IOException {
+        String key = buildKey(attributes.getString(Tag.SOPInstanceUID), frameIndex, shuttOverlayGroup - 0x6000,
+            width, height);
+        Mat plane = getCachedPlane(key);
+        if (plane == null) {
+            plane = putCachedPlane(key,
+                buildOverlayPlane(frameIndex, attributes, shuttOverlayGroup - 0x6000, width, height, null));
+        }
+        return plane;
+    }
+
+    private static String buildKey(String sopUID, int frameIndex, int gg0000, int width, int height) {
+        // The overlay of a presentation state is applied to images of different sizes
+        return sopUID + "/" + frameIndex + "/" + gg0000 + "/" + width //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+            + "x" + height; //$NON-NLS-1$
+    }
+
+    /**
+     * @return a copy of the cached plane or null
+     */
+    private static Mat getCachedPlane(String key) {
+        // The entries are evicted and released only in putCachedPlane()
+        synchronized (OVERLAY_CACHE) {
+            ImageCV plane = OVERLAY_CACHE.get(key);
+            return plane == null ? null : plane.clone();
+        }
+    }
+
+    /**
+     * @return a copy of the plane which is now owned by the cache
+     */
+    private static Mat putCachedPlane(String key, ImageCV plane) {
+        synchronized (OVERLAY_CACHE) {
+            ImageCV old = OVERLAY_CACHE.put(key, plane);
+            if (old != null && old != plane) {
+                old.release();
+            }
+            return plane.clone();
+        }
+    }
+
+    private static ImageCV buildOverlayPlane(int frameIndex, Attributes attributes, int gg0000, int width, int height,
+        byte[] ovlyData) {
         IndexColorModel icm =
             new IndexColorModel(1, icmColorValues.length, icmColorValues, icmColorValues, icmColorValues, 0);
         BufferedImage overBi = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_BINARY, icm);
+        Overlays.applyOverlay(frameIndex, overBi.getRaster(), attributes, gg0000, 1, ovlyData);
+        return ImageConversion.toMat(overBi);
+    }
 
-        Overlays.applyOverlay(frameIndex, overBi.getRaster(), attributes, shuttOverlayGroup - 0x6000, 1, null);
+    private static Mat mergePlanes(List<Mat> planes, int width, int height) {
+        if (planes.isEmpty()) {
+            return null;
+        }
+        if (planes.size() == 1) {
+            return planes.get(0);
+        }
+        Mat mask = Mat.zeros(height, width, CvType.CV_8UC1);
+        for (Mat plane : planes) {
+            Core.bitwise_or(mask, plane, mask);
+            plane.release();
+        }
+        return mask;
+    }
 
-        return overBi;
+    private static byte[][] readSerializedOverlays(ImageElement image) {
+        String filePath = (String) image.getTagValue(TagW.OverlayBurninDataPath);
+        if (filePath != null) {
+            try (ObjectInputStream objIn = new ObjectInputStream(new FileInputStream(filePath))) {
+                Object o = objIn.readObject();
+                if (o instanceof byte[][]) {
+                    return (byte[][]) o;
+                }
+            } catch (Exception e) {
+                LOGGER.error("Cannot read serialized overlay", e); //$NON-NLS-1$
+            }
+        }
+        return null;
     }
 
     public static byte[] extractOverlay(int gg0000, Raster raster, Attributes attrs) {
@@ -146,41 +236,85 @@ public class OverlayUtils {
 
     public static void extractFromPixeldata(Raster raster, int mask, byte[] ovlyData, int off, int length) {
         ComponentSampleModel sm = (ComponentSampleModel) raster.getSampleModel();
+        int rows = raster.getHeight();
         int columns = raster.getWidth();
         int stride = sm.getScanlineStride();
         DataBuffer db = raster.getDataBuffer();
         switch (db.getDataType()) {
             case DataBuffer.TYPE_BYTE:
-                extractFromPixeldata(((DataBufferByte) db).getData(), columns, stride, mask, ovlyData, off, length);
+                extractFromPixeldata(((DataBufferByte) db).getData(), rows, columns, stride, mask, ovlyData, off,
+                    length);
                 break;
             case DataBuffer.TYPE_USHORT:
-                extractFromPixeldata(((DataBufferUShort) db).getData(), columns, stride, mask, ovlyData, off, length);
+                extractFromPixeldata(((DataBufferUShort) db).getData(), rows, columns, stride, mask, ovlyData, off,
+                    length);
                 break;
             case DataBuffer.TYPE_SHORT:
-                extractFromPixeldata(((DataBufferShort) db).getData(), columns, stride, mask, ovlyData, off, length);
+                extractFromPixeldata(((DataBufferShort) db).getData(), rows, columns, stride, mask, ovlyData, off,
+                    length);
                 break;
             default:
                 throw new UnsupportedOperationException("Unsupported DataBuffer type: " + db.getDataType()); //$NON-NLS-1$
         }
     }
 
-    private static void extractFromPixeldata(byte[] pixeldata, int columns, int stride, int mask, byte[] ovlyData,
-        int off, int length) {
-        for (int y = 0, i = off, imax = off + length; y < columns && i < imax; y++) {
-            for (int j = y * stride; j < imax && i < imax; j++, i++) {
-                if ((pixeldata[j] & mask) != 0) {
-                    ovlyData[i >>> 3] |= 1 << (i & 7);
+    /*
+     * The bits are packed eight pixels at a time when the output position is byte aligned, which avoids a read-modify-
+     * write of the output array for each pixel.
+     */
+    private static void extractFromPixeldata(byte[] pixeldata, int rows, int columns, int stride, int mask,
+        byte[] ovlyData, int off, int length) {
+        int i = off;
+        int imax = off + length;
+        for (int y = 0; y < rows && i < imax; y++) {
+            int j = y * stride;
+            int jmax = j + Math.min(columns, imax - i);
+            while (j < jmax) {
+                if ((i & 7) == 0 && j + 8 <= jmax) {
+                    int b = 0;
+                    for (int k = 0; k < 8; k++) {
+                        if ((pixeldata[j + k] & mask) != 0) {
+                            b |= 1 << k;
+                        }
+                    }
+                    ovlyData[i >>> 3] |= b;
+                    i += 8;
+                    j += 8;
+                } else {
+                    if ((pixeldata[j] & mask) != 0) {
+                        ovlyData[i >>> 3] |= 1 << (i & 7);
+                    }
+                    i++;
+                    j++;
                 }
             }
         }
     }
 
-    private static void extractFromPixeldata(short[] pixeldata, int columns, int stride, int mask, byte[] ovlyData,
-        int off, int length) {
-        for (int y = 0, i = off, imax = off + length; y < columns && i < imax; y++) {
-            for (int j = y * stride; j < imax && i < imax; j++, i++) {
-                if ((pixeldata[j] & mask) != 0) {
-                    ovlyData[i >>> 3] |= 1 << (i & 7);
+    private static void extractFromPixeldata(short[] pixeldata, int rows, int columns, int stride, int mask,
+        byte[] ovlyData, int off, int length) {
+        int i = off;
+        int imax = off + length;
+        for (int y = 0; y < rows && i < imax; y++) {
+            int j = y * stride;
+            int jmax = j + Math.min(columns, imax - i);
+            while (j < jmax) {
+                if ((i & 7) == 0 && j + 8 <= jmax) {
+                    int b = 0;
+                    for (int k = 0; k < 8; k++) {
+                        if ((pixeldata[j + k] & mask) != 0) {
+                            b |= 1 << k;
+                        }
+                    }
+                    ovlyData[i >>> 3] |= b;
+                    i += 8;
+                    j += 8;
+                } else {
+                    if ((pixeldata[j] & mask) != 0) {
+                        ovlyData[i >>> 3] |= 1 << (i & 7);
+                    }
+                    i++;
+                    j++;
                 }
             }
         }
@@ -0,0 +1,101 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2018 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.dicom.codec.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.dcm4che3.data.Attributes;
+import org.dcm4che3.data.Sequence;
+import org.dcm4che3.data.Tag;
+import org.dcm4che3.data.VR;
+import org.junit.Test;
+import org.weasis.core.api.media.data.SimpleTagable;
+import org.weasis.core.api.media.data.TagW;
+import org.weasis.dicom.codec.TagD;
+
+public class FunctionalGroupIndexTest {
+    private static final int FRAMES = 3;
+
+    @Test
+    public void testSingleValueFrameVoiLut() {
+        Attributes header = new Attributes();
+        Sequence seq = header.newSequence(Tag.PerFrameFunctionalGroupsSequence, FRAMES);
+        for (int i = 0; i < FRAMES; i++) {
+            Attributes voi = new Attributes();
+            voi.setDouble(Tag.WindowCenter, VR.DS, 40.0 + i);
+            voi.setDouble(Tag.WindowWidth, VR.DS, 400.0 + i);
+            Attributes item = new Attributes();
+            item.newSequence(Tag.FrameVOILUTSequence, 1).add(voi);
+            seq.add(item);
+        }
+
+        Map<TagW, Object> sharedTags = new HashMap<>();
+        FunctionalGroupIndex index = FunctionalGroupIndex.build(header, sharedTags);
+        assertThat(index).isNotNull();
+        assertThat(index.getNumberOfFrames()).isEqualTo(FRAMES);
+
+        for (int i = 0; i < FRAMES; i++) {
+            SimpleTagable tagable = new SimpleTagable(new HashMap<>(sharedTags));
+            assertThat(index.writeFrameTags(tagable, i)).isTrue();
+            assertThat(TagD.getTagValue(tagable, Tag.WindowCenter, double[].class)).containsExactly(40.0 + i);
+            assertThat(TagD.getTagValue(tagable, Tag.WindowWidth, double[].class)).containsExactly(400.0 + i);
+        }
+    }
+
+    @Test
+    public void testSharedValues() {
+        Attributes header = new Attributes();
+        Sequence seq = header.newSequence(Tag.PerFrameFunctionalGroupsSequence, FRAMES);
+        for (int i = 0; i < FRAMES; i++) {
+            Attributes voi = new Attributes();
+            voi.setDouble(Tag.WindowCenter, VR.DS, 40.0 + i);
+            voi.setDouble(Tag.WindowWidth, VR.DS, 400.0);
+            Attributes item = new Attributes();
+            item.newSequence(Tag.FrameVOILUTSequence, 1).add(voi);
+            seq.add(item);
+        }
+
+        Map<TagW, Object> sharedTags = new HashMap<>();
+        sharedTags.put(TagD.get(Tag.WindowCenter), new double[] { 40.0 });
+        sharedTags.put(TagD.get(Tag.WindowWidth), new double[] { 400.0 });
+        FunctionalGroupIndex index = FunctionalGroupIndex.build(header, sharedTags);
+
+        // The first frame has only the shared values
+        SimpleTagable tagable = new SimpleTagable(new HashMap<>(sharedTags));
+        assertThat(index.writeFrameTags(tagable, 0)).isFalse();
+        assertThat(index.writeFrameTags(tagable, 1)).isTrue();
+        assertThat(TagD.getTagValue(tagable, Tag.WindowCenter, double[].class)).containsExactly(41.0);
+        assertThat(TagD.getTagValue(tagable, Tag.WindowWidth, double[].class)).containsExactly(400.0);
+    }
+
+    @Test
+    public void testMultipleValues() {
+        Attributes header = new Attributes();
+        Sequence seq = header.newSequence(Tag.PerFrameFunctionalGroupsSequence, FRAMES);
+        for (int i = 0; i < FRAMES; i++) {
+            Attributes position = new Attributes();
+            position.setDouble(Tag.ImagePositionPatient, VR.DS, 0.0, 0.0, 2.5 * i);
+            Attributes item = new Attributes();
+            item.newSequence(Tag.PlanePositionSequence, 1).add(position);
+            seq.add(item);
+        }
+
+        FunctionalGroupIndex index = FunctionalGroupIndex.build(header, new HashMap<>());
+        SimpleTagable tagable = new SimpleTagable(new HashMap<>());
+        index.writeFrameTags(tagable, 2);
+        assertThat(TagD.getTagValue(tagable, Tag.ImagePositionPatient, double[].class)).containsExactly(0.0, 0.0,
+            5.0);
+        assertThat(index.writeFrameTags(tagable, FRAMES)).isFalse();
+    }
+}
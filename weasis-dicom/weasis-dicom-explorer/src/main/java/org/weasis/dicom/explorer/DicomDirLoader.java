@@ -20,6 +20,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Predicate;
 
 import org.dcm4che3.data.Attributes;
 import org.dcm4che3.data.Tag;
@@ -62,14 +63,31 @@ public class DicomDirLoader {
     private final WadoParameters wadoParameters;
     private final boolean writeInCache;
     private final File dcmDirFile;
+    private final Predicate<File> fileAvailable;
+    private final boolean concurrentDownload;
 
     public DicomDirLoader(File dcmDirFile, DataExplorerModel explorerModel, boolean writeInCache) {
-        if (dcmDirFile == null || !dcmDirFile.canRead() || !(explorerModel instanceof DicomModel)) {
+        this(dcmDirFile, explorerModel, writeInCache, File::exists, false);
+    }
+
+    /**
+     * @param fileAvailable
+     *            tests whether a file referenced by the DICOMDIR can be loaded. It allows to reference files which are
+     *            not yet written on the disk (e.g. still in a ZIP archive).
+     * @param concurrentDownload
+     *            if true, several series are loaded at the same time
+     */
+    public DicomDirLoader(File dcmDirFile, DataExplorerModel explorerModel, boolean writeInCache,
+        Predicate<File> fileAvailable, boolean concurrentDownload) {
+        if (dcmDirFile == null || !dcmDirFile.canRead() || !(explorerModel instanceof DicomModel)
+            || fileAvailable == null) {
             throw new IllegalArgumentException("invalid parameters"); //$NON-NLS-1$
         }
         this.dicomModel = (DicomModel) explorerModel;
         this.writeInCache = writeInCache;
         this.dcmDirFile = dcmDirFile;
+        this.fileAvailable = fileAvailable;
+        this.concurrentDownload = concurrentDownload;
         wadoParameters = new WadoParameters("", true); //$NON-NLS-1$
         seriesList = new ArrayList<>();
 
@@ -194,7 +212,7 @@ public class DicomDirLoader {
                         if (sop == null) {
                             File file = toFileName(instance, reader);
                             if (file != null) {
-                                if (file.exists()) {
+                                if (fileAvailable.test(file)) {
                                     sop = new SopInstance(sopInstanceUID, frame);
                                     sop.setDirectDownloadFile(file.toURI().toString());
                                     seriesInstanceList.addSopInstance(sop);
@@ -216,7 +234,7 @@ public class DicomDirLoader {
                     dicomSeries.setTag(TagW.DirectDownloadThumbnail, readDicomDirIcon(iconInstance));
                     dicomSeries.setTag(TagW.ReadFromDicomdir, true);
                     final LoadSeries loadSeries = new LoadSeries(dicomSeries, dicomModel, 1, writeInCache);
-                    loadSeries.setPriority(new DownloadPriority(patient, study, dicomSeries, false));
+                    loadSeries.setPriority(new DownloadPriority(patient, study, dicomSeries, concurrentDownload));
                     seriesList.add(loadSeries);
                 }
             }
@@ -304,10 +322,10 @@ public class DicomDirLoader {
             sb.append(File.separatorChar).append(fileID[i]);
         }
         File file = new File(reader.getFile().getParent(), sb.toString());
-        if (!file.exists()) {
+        if (!fileAvailable.test(file)) {
             // Try to find lower case relative path, it happens sometimes when mounting cdrom on Linux
             File fileLowerCase = new File(reader.getFile().getParent(), sb.toString().toLowerCase());
-            if (fileLowerCase.exists()) {
+            if (fileAvailable.test(fileLowerCase)) {
                 file = fileLowerCase;
             }
         }
@@ -21,6 +21,7 @@ import org.weasis.core.api.explorer.ObservableEvent;
 import org.weasis.core.api.explorer.model.DataExplorerModel;
 import org.weasis.core.ui.docking.UIManager;
 import org.weasis.core.ui.editor.ViewerPluginBuilder;
+import org.weasis.dicom.explorer.scp.StoreSCPService;
 
 @org.osgi.service.component.annotations.Component(service = DataExplorerViewFactory.class, immediate = false)
 public class DicomExplorerFactory implements DataExplorerViewFactory {
@@ -39,6 +40,8 @@ public class DicomExplorerFactory implements DataExplorerViewFactory {
             UIManager.EXPLORER_PLUGIN_TOOLBARS.add(new ExportToolBar(7, explorer));
             ViewerPluginBuilder.DefaultDataModel.firePropertyChange(
                 new ObservableEvent(ObservableEvent.BasicAction.NULL_SELECTION, explorer, null, null));
+            DicomWatchFolder.getInstance().start(model);
+            StoreSCPService.getInstance().start(model);
         }
         return explorer;
     }
@@ -54,6 +57,8 @@ public class DicomExplorerFactory implements DataExplorerViewFactory {
 
     @Deactivate
     protected void deactivate(ComponentContext context) {
+        DicomWatchFolder.getInstance().stop();
+        StoreSCPService.getInstance().stop();
         if (explorer != null) {
             DataExplorerModel dataModel = explorer.getDataExplorerModel();
             dataModel.removePropertyChangeListener(explorer);
@@ -14,11 +14,14 @@ import java.awt.BorderLayout;
 import java.awt.Color;
 import java.awt.Component;
 import java.awt.Dimension;
+import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
 
 import javax.swing.BorderFactory;
 import javax.swing.BoxLayout;
@@ -31,8 +34,9 @@ import javax.swing.JScrollPane;
 import javax.swing.JTabbedPane;
 import javax.swing.JTextField;
 import javax.swing.JTextPane;
+import javax.swing.JTree;
+import javax.swing.SwingWorker;
 import javax.swing.border.EmptyBorder;
-import javax.swing.text.AttributeSet;
 import javax.swing.text.BadLocationException;
 import javax.swing.text.DefaultHighlighter;
 import javax.swing.text.Document;
@@ -40,13 +44,12 @@ import javax.swing.text.Highlighter;
 import javax.swing.text.JTextComponent;
 import javax.swing.text.StyledDocument;
 import javax.swing.text.html.HTMLEditorKit;
+import javax.swing.tree.DefaultTreeModel;
+import javax.swing.tree.TreeModel;
+import javax.swing.tree.TreePath;
 
 import org.dcm4che3.data.Attributes;
-import org.dcm4che3.data.ElementDictionary;
-import org.dcm4che3.data.Sequence;
-import org.dcm4che3.data.VR;
 import org.dcm4che3.imageio.plugins.dcm.DicomMetaData;
-import org.dcm4che3.util.TagUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.weasis.core.api.gui.util.JMVUtils;
@@ -59,7 +62,6 @@ import org.weasis.core.api.media.data.TagReadable;
 import org.weasis.core.api.media.data.TagUtil;
 import org.weasis.core.api.media.data.TagView;
 import org.weasis.core.api.media.data.TagW;
-import org.weasis.core.api.service.AuditLog;
 import org.weasis.core.api.util.StringUtil;
 import org.weasis.core.ui.docking.UIManager;
 import org.weasis.core.ui.editor.SeriesViewer;
@@ -84,7 +86,8 @@ public class DicomFieldsView extends JTabbedPane implements SeriesViewerListener
     private final JScrollPane allPane = new JScrollPane();
     private final JScrollPane limitedPane = new JScrollPane();
     private final JTextPane jTextPaneLimited = new JTextPane();
-    private final JTextPane jTextPaneAll = new JTextPane();
+    private final JTree treeAll = new JTree(new DefaultTreeModel(null));
+    private final TreeSearchPanel treeSearchPanel = new TreeSearchPanel(treeAll);
     private MediaElement currentMedia;
     private MediaSeries<?> currentSeries;
     private boolean anonymize = false;
@@ -115,13 +118,15 @@ public class DicomFieldsView extends JTabbedPane implements SeriesViewerListener
         dump.setLayout(new BorderLayout());
         dump.setBorder(BorderFactory.createEmptyBorder(5, 5, 5, 5));
         addTab(Messages.getString("DicomFieldsView.all"), null, dump, null); //$NON-NLS-1$
-        dump.add(new SearchPanel(jTextPaneAll), BorderLayout.NORTH);
+        dump.add(treeSearchPanel, BorderLayout.NORTH);
         dump.add(allPane, BorderLayout.CENTER);
-        jTextPaneAll.setBorder(new EmptyBorder(5, 5, 5, 5));
-        jTextPaneAll.setEditorKit(kit);
-        jTextPaneAll.setContentType("text/html"); //$NON-NLS-1$
-        jTextPaneAll.setEditable(false);
-        JMVUtils.addStylesToHTML(jTextPaneAll.getStyledDocument());
+        treeAll.setBorder(new EmptyBorder(5, 5, 5, 5));
+        treeAll.setRootVisible(false);
+        treeAll.setShowsRootHandles(true);
+        // Fixed row height and large model: only the visible rows are measured and painted
+        treeAll.setRowHeight(treeAll.getFontMetrics(treeAll.getFont()).getHeight() + 2);
+        treeAll.setLargeModel(true);
+        allPane.setViewportView(treeAll);
 
         setPreferredSize(new Dimension(400, 300));
         setMinimumSize(new Dimension(150, 50));
@@ -152,151 +157,41 @@ public class DicomFieldsView extends JTabbedPane implements SeriesViewerListener
             jTextPaneLimited.requestFocusInWindow();
             displayLimitedDicomInfo(series, media);
         } else {
-            jTextPaneAll.requestFocusInWindow();
+            treeAll.requestFocusInWindow();
             displayAllDicomInfo(series, media);
         }
     }
 
     private void displayAllDicomInfo(MediaSeries<?> series, MediaElement media) {
-        StyledDocument doc = jTextPaneAll.getStyledDocument();
-        int oldCaretPosition = jTextPaneAll.getCaretPosition();
-        try {
-            // clear previous text
-            doc.remove(0, doc.getLength());
-            if (media != null) {
-                MediaReader loader = media.getMediaReader();
-                if (loader instanceof DicomMediaIO) {
-                    DicomMetaData metaData = null;
-                    try {
-                        metaData = (DicomMetaData) ((DicomMediaIO) loader).getStreamMetadata();
-                    } catch (IOException e) {
-                        LOGGER.error("Get metadata", e); //$NON-NLS-1$
-                    }
-                    if (metaData != null) {
-                        printAttribute(metaData.getFileMetaInformation(), doc);
-                        printAttribute(metaData.getAttributes(), doc);
-                    }
-                } else if (loader instanceof DcmMediaReader) {
-                    printAttribute(((DcmMediaReader) loader).getDicomObject(), doc);
+        Attributes fmi = null;
+        Attributes dataset = null;
+        if (media != null) {
+            MediaReader loader = media.getMediaReader();
+            if (loader instanceof DicomMediaIO) {
+                DicomMetaData metaData = null;
+                try {
+                    metaData = (DicomMetaData) ((DicomMediaIO) loader).getStreamMetadata();
+                } catch (IOException e) {
+                    LOGGER.error("Get metadata", e); //$NON-NLS-1$
                 }
-                // Remove first return
-                doc.remove(0, 1);
-            }
-        } catch (BadLocationException e) {
-            LOGGER.error("Clear document", e); //$NON-NLS-1$
-        }
-        oldCaretPosition = oldCaretPosition > doc.getLength() ? doc.getLength() : oldCaretPosition;
-        jTextPaneAll.setCaretPosition(oldCaretPosition);
-        allPane.setViewportView(jTextPaneAll);
-    }
-
-    private static void printAttribute(Attributes dcmObj, StyledDocument doc) {
-        if (dcmObj != null) {
-            int[] tags = dcmObj.tags();
-            for (int tag : tags) {
-                printElement(dcmObj, tag, doc);
-            }
-        }
-    }
-
-    private static void printElement(Attributes dcmObj, int tag, StyledDocument doc) {
-        StringBuilder buf = new StringBuilder(TagUtils.toString(tag));
-        buf.append(" ["); //$NON-NLS-1$
-        VR vr = dcmObj.getVR(tag);
-        buf.append(vr.toString());
-        buf.append("] "); //$NON-NLS-1$
-
-        String privateCreator = dcmObj.privateCreatorOf(tag);
-        String word = ElementDictionary.keywordOf(tag, privateCreator);
-        if (!StringUtil.hasText(word)) {
-            word = "PrivateTag"; //$NON-NLS-1$
-        }
-
-        buf.append(word);
-        buf.append(StringUtil.COLON_AND_SPACE);
-
-        int level = dcmObj.getLevel();
-        if (level > 0) {
-            buf.insert(0, "-->"); //$NON-NLS-1$
-        }
-        for (int i = 1; i < level; i++) {
-            buf.insert(0, "--"); //$NON-NLS-1$
-        }
-
-        Sequence seq = dcmObj.getSequence(tag);
-        if (seq != null) {
-            if (!seq.isEmpty()) {
-                printSequence(seq, doc, buf);
-            } else {
-                buf.insert(0, "\n"); //$NON-NLS-1$
-                printItem(doc, buf.toString(), null);
-            }
-        } else {
-            buf.insert(0, "\n"); //$NON-NLS-1$
-            if (vr.isInlineBinary()) {
-                buf.append("binary data"); //$NON-NLS-1$
-                printItem(doc, buf.toString(), null);
-            } else {
-                printItem(doc, buf.toString(), null);
-                buf = new StringBuilder();
-                String[] value = dcmObj.getStrings(privateCreator, tag);
-                if (value != null && value.length > 0) {
-                    buf.append(value[0]);
-                    for (int i = 1; i < value.length; i++) {
-                        buf.append("\\"); //$NON-NLS-1$
-                        buf.append(value[i]);
-                    }
-                    if (buf.length() > 256) {
-                        buf.setLength(253);
-                        buf.append("..."); //$NON-NLS-1$
-                    }
+                if (metaData != null) {
+                    fmi = metaData.getFileMetaInformation();
+                    dataset = metaData.getAttributes();
                 }
-                printItem(doc, buf.toString(), doc.getStyle("bold")); //$NON-NLS-1$
+            } else if (loader instanceof DcmMediaReader) {
+                dataset = ((DcmMediaReader) loader).getDicomObject();
             }
         }
-    }
-
-    private static void printItem(StyledDocument doc, String val, AttributeSet attribute) {
-        try {
-            doc.insertString(doc.getLength(), val, attribute);
-        } catch (BadLocationException e) {
-            AuditLog.logError(LOGGER, e, "Error on writing dicom item!"); //$NON-NLS-1$
+        // The nodes are built only when they are displayed or expanded. Keep the current tree for the same dataset.
+        TreeModel model = dataset == null ? new DefaultTreeModel(null) : new DicomTreeModel(fmi, dataset);
+        if (treeAll.getModel() instanceof DicomTreeModel && model instanceof DicomTreeModel
+            && ((DicomTreeModel) treeAll.getModel()).getRoot().equals(model.getRoot())) {
+            return;
         }
-    }
-
-    private static void printSequence(Sequence seq, StyledDocument doc, StringBuilder buf) {
-        if (seq != null) {
-            buf.append(seq.size());
-            if (seq.size() <= 1) {
-                buf.append(" item"); //$NON-NLS-1$
-            } else {
-                buf.append(" items"); //$NON-NLS-1$
-            }
-            buf.insert(0, "\n"); //$NON-NLS-1$
-            printItem(doc, buf.toString(), null);
-
-            for (int i = 0; i < seq.size(); i++) {
-                Attributes attributes = seq.get(i);
-                int level = attributes.getLevel();
-                StringBuilder buffer = new StringBuilder();
-                if (level > 0) {
-                    buffer.insert(0, "-->"); //$NON-NLS-1$
-                }
-                for (int k = 1; k < level; k++) {
-                    buffer.insert(0, "--"); //$NON-NLS-1$
-                }
-                buffer.append(" ITEM #"); //$NON-NLS-1$
-                buffer.append(i + 1);
-                buffer.insert(0, "\n"); //$NON-NLS-1$
-                printItem(doc, buffer.toString(), null);
-                int[] tags = attributes.tags();
-                for (int tag : tags) {
-                    printElement(attributes, tag, doc);
-                }
-            }
-        } else {
-            buf.insert(0, "\n"); //$NON-NLS-1$
-            printItem(doc, buf.toString(), null);
+        treeSearchPanel.reset();
+        treeAll.setModel(model);
+        if (fmi != null) {
+            treeAll.expandRow(1);
         }
     }
 
@@ -552,6 +447,119 @@ public class DicomFieldsView extends JTabbedPane implements SeriesViewerListener
         }
     }
 
+    /**
+     * Search in a {@link DicomTreeModel}. The dataset is walked in a background thread and only the matching paths are
+     * expanded.
+     */
+    static class TreeSearchPanel extends JPanel {
+        private final JTree tree;
+        private final JTextField textField = new JTextField();
+        private List<TreePath> searchPaths = Collections.emptyList();
+        private int currentSearchIndex = 0;
+        private SwingWorker<List<TreePath>, Void> worker;
+
+        public TreeSearchPanel(JTree tree) {
+            super();
+            this.tree = tree;
+            this.setLayout(new BoxLayout(this, BoxLayout.X_AXIS));
+            init();
+        }
+
+        private void init() {
+            this.add(new JLabel(Messages.getString("DicomFieldsView.search") + StringUtil.COLON_AND_SPACE)); //$NON-NLS-1$
+            JMVUtils.setPreferredWidth(textField, 300, 100);
+            textField.addActionListener(evt -> search(textField.getText().trim()));
+            this.add(textField);
+            JButton up = new JButton(new ImageIcon(SeriesViewerListener.class.getResource("/icon/up.png"))); //$NON-NLS-1$
+            up.setToolTipText(Messages.getString("DicomFieldsView.previous")); //$NON-NLS-1$
+            up.addActionListener(evt -> previous());
+            this.add(up);
+            JButton down =
+                new JButton(new RotatedIcon(new ImageIcon(SeriesViewerListener.class.getResource("/icon/up.png")), //$NON-NLS-1$
+                    RotatedIcon.Rotate.UPSIDE_DOWN));
+            down.setToolTipText(Messages.getString("DicomFieldsView.next")); //$NON-NLS-1$
+            down.addActionListener(evt -> next());
+            this.add(down);
+            tree.addKeyListener(new KeyAdapter() {
+                @Override
+                public void keyReleased(KeyEvent e) {
+                    if (e.isShiftDown() && e.getKeyCode() == KeyEvent.VK_F3) {
+                        previous();
+                    } else if (e.getKeyCode() == KeyEvent.VK_F3) {
+                        next();
+                    }
+                }
+            });
+        }
+
+        public void reset() {
+            if (worker != null) {
+                worker.cancel(true);
+                worker = null;
+            }
+            searchPaths = Collections.emptyList();
+            currentSearchIndex = 0;
+        }
+
+        private void search(String pattern) {
+            reset();
+            TreeModel model = tree.getModel();
+            if (!(model instanceof DicomTreeModel) || !StringUtil.hasText(pattern)) {
+                return;
+            }
+            worker = new SwingWorker<List<TreePath>, Void>() {
+
+                @Override
+                protected List<TreePath> doInBackground() throws Exception {
+                    return ((DicomTreeModel) model).search(pattern, this::isCancelled);
+                }
+
+                @Override
+                protected void done() {
+                    if (isCancelled() || worker != this || tree.getModel() != model) {
+                        return;
+                    }
+                    try {
+                        searchPaths = get();
+                        showCurrentSearch();
+                        tree.requestFocusInWindow();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } catch (ExecutionException e) {
+                        LOGGER.error("Search in DICOM attributes", e); //$NON-NLS-1$
+                    }
+                }
+            };
+            worker.execute();
+        }
+
+        private void previous() {
+            if (!searchPaths.isEmpty()) {
+                currentSearchIndex = currentSearchIndex <= 0 ? searchPaths.size() - 1 : currentSearchIndex - 1;
+                showCurrentSearch();
+            }
+        }
+
+        private void next() {
+            if (!searchPaths.isEmpty()) {
+                currentSearchIndex = currentSearchIndex >= searchPaths.size() - 1 ? 0 : currentSearchIndex + 1;
+                showCurrentSearch();
+            }
+        }
+
+        private void showCurrentSearch() {
+            if (!searchPaths.isEmpty()) {
+                if (currentSearchIndex < 0 || currentSearchIndex >= searchPaths.size()) {
+                    currentSearchIndex = 0;
+                }
+                TreePath path = searchPaths.get(currentSearchIndex);
+                tree.expandPath(path.getParentPath());
+                tree.setSelectionPath(path);
+                tree.scrollPathToVisible(path);
+            }
+        }
+    }
+
     public static class DicomData {
 
         private final String title;
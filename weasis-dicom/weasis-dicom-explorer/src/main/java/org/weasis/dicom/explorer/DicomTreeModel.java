@@ -0,0 +1,425 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2018 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.dicom.explorer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+import javax.swing.event.TreeModelListener;
+import javax.swing.tree.TreeModel;
+import javax.swing.tree.TreePath;
+
+import org.dcm4che3.data.Attributes;
+import org.dcm4che3.data.ElementDictionary;
+import org.dcm4che3.data.Sequence;
+import org.dcm4che3.data.VR;
+import org.dcm4che3.util.TagUtils;
+import org.weasis.core.api.util.StringUtil;
+
+/**
+ * Tree model of a DICOM dataset. The nodes are only wrappers of the dcm4che {@link Attributes} and are built on demand
+ * when the tree asks for them, so the sequences are only read when they are expanded.
+ */
+public class DicomTreeModel implements TreeModel {
+    private static final String FMI_LABEL = "File Meta Information"; //$NON-NLS-1$
+    private static final String DATASET_LABEL = "Dataset"; //$NON-NLS-1$
+
+    private final RootNode root;
+    private final List<TreeModelListener> listeners = new ArrayList<>();
+
+    /**
+     * @param fmi
+     *            the file meta information, can be null
+     * @param dataset
+     *            the dataset
+     */
+    public DicomTreeModel(Attributes fmi, Attributes dataset) {
+        this.root = new RootNode(fmi, dataset);
+    }
+
+    @Override
+    public Object getRoot() {
+        return root;
+    }
+
+    @Override
+    public Object getChild(Object parent, int index) {
+        return ((DicomNode) parent).getChild(index);
+    }
+
+    @Override
+    public int getChildCount(Object parent) {
+        return ((DicomNode) parent).getChildCount();
+    }
+
+    @Override
+    public boolean isLeaf(Object node) {
+        return ((DicomNode) node).getChildCount() == 0;
+    }
+
+    @Override
+    public void valueForPathChanged(TreePath path, Object newValue) {
+        // Not editable
+    }
+
+    @Override
+    public int getIndexOfChild(Object parent, Object child) {
+        if (parent instanceof DicomNode) {
+            DicomNode p = (DicomNode) parent;
+            for (int i = 0; i < p.getChildCount(); i++) {
+                if (p.getChild(i).equals(child)) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public void addTreeModelListener(TreeModelListener l) {
+        listeners.add(l);
+    }
+
+    @Override
+    public void removeTreeModelListener(TreeModelListener l) {
+        listeners.remove(l);
+    }
+
+    /**
+     * Search the tag, the keyword or the value matching the pattern (case insensitive) in the whole dataset. Only the
+     * nodes of the matching paths are built. This method can be called from any thread.
+     *
+     * @param pattern
+     *            the text to search
+     * @param cancel
+     *            returns true when the search must be stopped
+     * @return the paths of all the matching elements
+     */
+    public List<TreePath> search(String pattern, BooleanSupplier cancel) {
+        List<TreePath> result = new ArrayList<>();
+        if (StringUtil.hasText(pattern)) {
+            String text = pattern.toUpperCase(Locale.ENGLISH);
+            LazyPath rootPath = new LazyPath(new TreePath(root));
+            if (root.fmi == null) {
+                search(rootPath, root.dataset, text, cancel, result);
+            } else {
+                search(new LazyPath(rootPath, () -> new ItemNode(root.fmi, FMI_LABEL)), root.fmi, text, cancel,
+                    result);
+                search(new LazyPath(rootPath, () -> new ItemNode(root.dataset, DATASET_LABEL)), root.dataset, text,
+                    cancel, result);
+            }
+        }
+        return result;
+    }
+
+    private static void search(LazyPath path, Attributes attributes, String pattern, BooleanSupplier cancel,
+        List<TreePath> result) {
+        for (int tag : attributes.tags()) {
+            if (cancel.getAsBoolean()) {
+                return;
+            }
+            LazyPath elementPath = new LazyPath(path, () -> new ElementNode(attributes, tag));
+            if (matches(attributes, tag, pattern)) {
+                result.add(elementPath.get());
+            }
+            Sequence seq = attributes.getSequence(tag);
+            if (seq != null) {
+                for (int i = 0; i < seq.size(); i++) {
+                    Attributes item = seq.get(i);
+                    int index = i;
+                    search(new LazyPath(elementPath, () -> new ItemNode(item, getItemLabel(index))), item, pattern,
+                        cancel, result);
+                }
+            }
+        }
+    }
+
+    /**
+     * Match the tag, the keyword or the value without building the label of the node.
+     */
+    private static boolean matches(Attributes attributes, int tag, String pattern) {
+        if (TagUtils.toString(tag).contains(pattern)) {
+            return true;
+        }
+        String privateCreator = attributes.privateCreatorOf(tag);
+        String word = ElementDictionary.keywordOf(tag, privateCreator);
+        if (word != null && word.toUpperCase(Locale.ENGLISH).contains(pattern)) {
+            return true;
+        }
+        VR vr = attributes.getVR(tag);
+        if (vr == null || vr == VR.SQ || vr.isInlineBinary()) {
+            return false;
+        }
+        String[] value = attributes.getStrings(privateCreator, tag);
+        if (value != null) {
+            for (String v : value) {
+                if (v != null && v.toUpperCase(Locale.ENGLISH).contains(pattern)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static String getItemLabel(int index) {
+        return "ITEM #" + (index + 1); //$NON-NLS-1$
+    }
+
+    /**
+     * Path of the search, the nodes are only built for the matching elements and their parents.
+     */
+    private static class LazyPath {
+        private final LazyPath parent;
+        private final Supplier<DicomNode> node;
+        private TreePath path;
+
+        LazyPath(TreePath path) {
+            this.parent = null;
+            this.node = null;
+            this.path = path;
+        }
+
+        LazyPath(LazyPath parent, Supplier<DicomNode> node) {
+            this.parent = parent;
+            this.node = node;
+        }
+
+        TreePath get() {
+            if (path == null) {
+                path = parent.get().pathByAddingChild(node.get());
+            }
+            return path;
+        }
+    }
+
+    public interface DicomNode {
+        int getChildCount();
+
+        DicomNode getChild(int index);
+    }
+
+    static class RootNode implements DicomNode {
+        private final Attributes fmi;
+        private final Attributes dataset;
+        private final DicomNode[] children;
+
+        RootNode(Attributes fmi, Attributes dataset) {
+            this.fmi = fmi;
+            this.dataset = Objects.requireNonNull(dataset);
+            if (fmi == null) {
+                // Avoid an intermediate level when there is only the dataset
+                ItemNode item = new ItemNode(dataset, DATASET_LABEL);
+                children = new DicomNode[item.getChildCount()];
+                for (int i = 0; i < children.length; i++) {
+                    children[i] = item.getChild(i);
+                }
+            } else {
+                children = new DicomNode[] { new ItemNode(fmi, FMI_LABEL), new ItemNode(dataset, DATASET_LABEL) };
+            }
+        }
+
+        @Override
+        public int getChildCount() {
+            return children.length;
+        }
+
+        @Override
+        public DicomNode getChild(int index) {
+            return children[index];
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof RootNode)) {
+                return false;
+            }
+            return dataset == ((RootNode) obj).dataset;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(dataset);
+        }
+
+        @Override
+        public String toString() {
+            return "DICOM"; //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * A dataset or an item of a sequence.
+     */
+    static class ItemNode implements DicomNode {
+        private final Attributes attributes;
+        private final String label;
+        private int[] tags;
+        // The nodes displayed by the tree are kept to reuse their labels
+        private DicomNode[] children;
+
+        ItemNode(Attributes attributes, String label) {
+            this.attributes = Objects.requireNonNull(attributes);
+            this.label = label;
+        }
+
+        private synchronized int[] getTags() {
+            if (tags == null) {
+                tags = attributes.tags();
+            }
+            return tags;
+        }
+
+        @Override
+        public int getChildCount() {
+            return getTags().length;
+        }
+
+        @Override
+        public synchronized DicomNode getChild(int i) {
+            if (children == null) {
+                children = new DicomNode[getTags().length];
+            }
+            DicomNode child = children[i];
+            if (child == null) {
+                child = new ElementNode(attributes, getTags()[i]);
+                children[i] = child;
+            }
+            return child;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof ItemNode)) {
+                return false;
+            }
+            return attributes == ((ItemNode) obj).attributes;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(attributes);
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    /**
+     * A data element. Only a sequence has children.
+     */
+    static class ElementNode implements DicomNode {
+        private final Attributes parent;
+        private final int tag;
+        private String label;
+        private DicomNode[] children;
+
+        ElementNode(Attributes parent, int tag) {
+            this.parent = parent;
+            this.tag = tag;
+        }
+
+        private Sequence getSequence() {
+            return parent.getSequence(tag);
+        }
+
+        @Override
+        public int getChildCount() {
+            Sequence seq = getSequence();
+            return seq == null ? 0 : seq.size();
+        }
+
+        @Override
+        public synchronized DicomNode getChild(int index) {
+            if (children == null) {
+                children = new DicomNode[getChildCount()];
+            }
+            DicomNode child = children[index];
+            if (child == null) {
+                child = new ItemNode(getSequence().get(index), getItemLabel(index));
+                children[index] = child;
+            }
+            return child;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof ElementNode)) {
+                return false;
+            }
+            ElementNode other = (ElementNode) obj;
+            return parent == other.parent && tag == other.tag;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(parent) + tag;
+        }
+
+        @Override
+        public synchronized String toString() {
+            if (label == null) {
+                label = buildLabel();
+            }
+            return label;
+        }
+
+        private String buildLabel() {
+            StringBuilder buf = new StringBuilder(TagUtils.toString(tag));
+            buf.append(" ["); //$NON-NLS-1$
+            VR vr = parent.getVR(tag);
+            buf.append(vr);
+            buf.append("] "); //$NON-NLS-1$
+
+            String privateCreator = parent.privateCreatorOf(tag);
+            String word = ElementDictionary.keywordOf(tag, privateCreator);
+            buf.append(StringUtil.hasText(word) ? word : "PrivateTag"); //$NON-NLS-1$
+            buf.append(StringUtil.COLON_AND_SPACE);
+
+            Sequence seq = getSequence();
+            if (seq != null) {
+                buf.append(seq.size());
+                buf.append(seq.size() <= 1 ? " item" : " items"); //$NON-NLS-1$ //$NON-NLS-2$
+            } else if (vr.isInlineBinary()) {
+                buf.append("binary data"); //$NON-NLS-1$
+            } else {
+                String[] value = parent.getStrings(privateCreator, tag);
+                if (value != null && value.length > 0) {
+                    int start = buf.length();
+                    buf.append(value[0]);
+                    for (int i = 1; i < value.length; i++) {
+                        buf.append("\\"); //$NON-NLS-1$
+                        buf.append(value[i]);
+                    }
+                    if (buf.length() - start > 256) {
+                        buf.setLength(start + 253);
+                        buf.append("..."); //$NON-NLS-1$
+                    }
+                }
+            }
+            return buf.toString();
+        }
+    }
+}
@@ -0,0 +1,364 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2018 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.dicom.explorer;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.weasis.core.api.media.MimeInspector;
+import org.weasis.core.api.service.BundleTools;
+import org.weasis.core.api.util.StringUtil;
+import org.weasis.dicom.codec.DicomMediaIO;
+
+/**
+ * Watch folders where DICOM files are dropped (e.g. by a modality) and import the new files automatically into the
+ * DICOM model.
+ *
+ * <ul>
+ * <li>The files already in the folders are imported when the service starts.</li>
+ * <li>A file is imported when its size and its modification date have not changed for a while, so the files being
+ * written are not read.</li>
+ * <li>The instances already in the model (same SOPInstanceUID) are not added again.</li>
+ * </ul>
+ */
+public final class DicomWatchFolder {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DicomWatchFolder.class);
+
+    public static final String WATCH_ENABLE = "weasis.dicom.watch.enable"; //$NON-NLS-1$
+    /**
+     * The watched folders separated by the path separator of the system
+     */
+    public static final String WATCH_FOLDERS = "weasis.dicom.watch.folders"; //$NON-NLS-1$
+
+    // Time (ms) without modification of a file before importing it
+    private static final long QUIET_PERIOD = 2000L;
+    private static final long POLL_PERIOD = 500L;
+    // Maximum number of files by loading task
+    private static final int MAX_FILES_BY_TASK = 500;
+    // Minimum number of processed files before removing those which do not exist anymore
+    private static final int PRUNE_THRESHOLD = 10000;
+
+    private static final DicomWatchFolder instance = new DicomWatchFolder();
+
+    private DicomModel dicomModel;
+    private Thread watchThread;
+    private WatchService watchService;
+
+    private DicomWatchFolder() {
+    }
+
+    public static DicomWatchFolder getInstance() {
+        return instance;
+    }
+
+    public static List<Path> getConfiguredFolders() {
+        String folders = BundleTools.SYSTEM_PREFERENCES.getProperty(WATCH_FOLDERS, null);
+        if (!StringUtil.hasText(folders)) {
+            return Collections.emptyList();
+        }
+        return Arrays.stream(folders.split(File.pathSeparator)).map(String::trim).filter(StringUtil::hasText)
+            .map(Paths::get).distinct().collect(Collectors.toList());
+    }
+
+    public static boolean isEnabled() {
+        return BundleTools.SYSTEM_PREFERENCES.getBooleanProperty(WATCH_ENABLE, false);
+    }
+
+    public synchronized void start(DicomModel model) {
+        this.dicomModel = Objects.requireNonNull(model);
+        restart();
+    }
+
+    public synchronized void stop() {
+        stopWatching();
+        this.dicomModel = null;
+    }
+
+    /**
+     * Apply the preferences: watch the configured folders when the service is enabled.
+     */
+    public synchronized void restart() {
+        stopWatching();
+        List<Path> folders = getConfiguredFolders();
+        if (dicomModel == null || !isEnabled() || folders.isEmpty()) {
+            return;
+        }
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+        } catch (IOException e) {
+            LOGGER.error("Cannot create the watch service", e); //$NON-NLS-1$
+            return;
+        }
+        watchThread = new Thread(new Watcher(watchService, folders, dicomModel), "DICOM Watch Folder"); //$NON-NLS-1$
+        watchThread.setDaemon(true);
+        watchThread.start();
+    }
+
+    private void stopWatching() {
+        if (watchThread != null) {
+            watchThread.interrupt();
+            watchThread = null;
+        }
+        if (watchService != null) {
+            try {
+                // Unblock the watcher
+                watchService.close();
+            } catch (IOException e) {
+                LOGGER.error("Closing the watch service", e); //$NON-NLS-1$
+            }
+            watchService = null;
+        }
+    }
+
+    /**
+     * Check the preamble ("DICM" at offset 128) or the magic number of a DICOM file.
+     */
+    static boolean isDicomFile(Path path) throws IOException {
+        byte[] preamble = new byte[132];
+        int length = 0;
+        try (InputStream in = Files.newInputStream(path)) {
+            int n;
+            while (length < preamble.length && (n = in.read(preamble, length, preamble.length - length)) > 0) {
+                length += n;
+            }
+        }
+        if (length == preamble.length && preamble[128] == 'D' && preamble[129] == 'I' && preamble[130] == 'C'
+            && preamble[131] == 'M') {
+            return true;
+        }
+        return MimeInspector.isMatchingMimeTypeFromMagicNumber(path.toFile(), DicomMediaIO.MIMETYPE);
+    }
+
+    static boolean isTemporaryFile(Path path) {
+        String name = path.getFileName().toString().toLowerCase(Locale.ENGLISH);
+        return name.startsWith(".") || name.endsWith(".tmp") || name.endsWith(".part") //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+            || name.endsWith(".partial") || name.endsWith(".crdownload"); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    static class PendingFile {
+        long size = -1;
+        long lastModified = -1;
+        long lastChange;
+
+        PendingFile(long now) {
+            this.lastChange = now;
+        }
+    }
+
+    static class Watcher implements Runnable {
+        private final WatchService service;
+        private final List<Path> folders;
+        private final DicomModel model;
+        private final Map<WatchKey, Path> keys = new HashMap<>();
+        private final Map<Path, PendingFile> pendingFiles = new HashMap<>();
+        // Files already imported or ignored, with their modification date
+        private final Map<Path, Long> processedFiles = new HashMap<>();
+        private int pruneSize = PRUNE_THRESHOLD;
+
+        Watcher(WatchService service, List<Path> folders, DicomModel model) {
+            this.service = service;
+            this.folders = folders;
+            this.model = model;
+        }
+
+        @Override
+        public void run() {
+            try {
+                for (Path folder : folders) {
+                    if (Files.isDirectory(folder)) {
+                        // Register the folders and import the files already present
+                        registerAll(folder);
+                    } else {
+                        LOGGER.warn("The watch folder {} does not exist", folder); //$NON-NLS-1$
+                    }
+                }
+                while (!Thread.currentThread().isInterrupted()) {
+                    WatchKey key = service.poll(POLL_PERIOD, TimeUnit.MILLISECONDS);
+                    while (key != null) {
+                        processEvents(key);
+                        key = service.poll();
+                    }
+                    checkPendingFiles();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ClosedWatchServiceException e) {
+                // The service has been stopped
+            }
+            LOGGER.info("Stop watching the DICOM folders"); //$NON-NLS-1$
+        }
+
+        private void processEvents(WatchKey key) {
+            Path dir = keys.get(key);
+            if (dir != null) {
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    WatchEvent.Kind<?> kind = event.kind();
+                    if (kind == OVERFLOW) {
+                        // Some events are lost, scan again the folder
+                        scanFiles(dir);
+                        continue;
+                    }
+                    Path child = dir.resolve((Path) event.context());
+                    if (kind == ENTRY_DELETE) {
+                        // Can be a directory, remove also its files
+                        pendingFiles.keySet().removeIf(p -> p.startsWith(child));
+                        processedFiles.keySet().removeIf(p -> p.startsWith(child));
+                    } else if (Files.isDirectory(child)) {
+                        if (kind == ENTRY_CREATE) {
+                            registerAll(child);
+                        }
+                    } else {
+                        addPendingFile(child);
+                    }
+                }
+            }
+            if (!key.reset()) {
+                keys.remove(key);
+            }
+        }
+
+        private void registerAll(Path start) {
+            try {
+                Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                        keys.put(dir.register(service, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), dir);
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                        if (attrs.isRegularFile()) {
+                            addPendingFile(file);
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                        LOGGER.warn("Cannot read {}", file, exc); //$NON-NLS-1$
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            } catch (IOException e) {
+                LOGGER.error("Cannot watch {}", start, e); //$NON-NLS-1$
+            }
+        }
+
+        private void scanFiles(Path dir) {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+                for (Path p : stream) {
+                    if (Files.isRegularFile(p)) {
+                        addPendingFile(p);
+                    }
+                }
+            } catch (IOException e) {
+                LOGGER.error("Cannot scan {}", dir, e); //$NON-NLS-1$
+            }
+        }
+
+        private void addPendingFile(Path file) {
+            if (!isTemporaryFile(file)) {
+                pendingFiles.computeIfAbsent(file, f -> new PendingFile(System.currentTimeMillis()));
+            }
+        }
+
+        private void checkPendingFiles() {
+            if (pendingFiles.isEmpty()) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            List<File> readyFiles = new ArrayList<>();
+            for (Iterator<Map.Entry<Path, PendingFile>> it = pendingFiles.entrySet().iterator(); it.hasNext();) {
+                Map.Entry<Path, PendingFile> entry = it.next();
+                Path path = entry.getKey();
+                PendingFile pending = entry.getValue();
+                try {
+                    BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+                    long size = attrs.size();
+                    long lastModified = attrs.lastModifiedTime().toMillis();
+                    if (size != pending.size || lastModified != pending.lastModified) {
+                        // Still written
+                        pending.size = size;
+                        pending.lastModified = lastModified;
+                        pending.lastChange = now;
+                    }
+                    if (now - Math.max(pending.lastChange, lastModified) < QUIET_PERIOD) {
+                        continue;
+                    }
+                    Long processed = processedFiles.get(path);
+                    // IOException when the file is locked: the file stays pending and is read again later
+                    boolean dicom = (processed == null || processed != lastModified) && size > 0 && isDicomFile(path);
+                    it.remove();
+                    processedFiles.put(path, lastModified);
+                    if (dicom) {
+                        readyFiles.add(path.toFile());
+                    }
+                } catch (NoSuchFileException e) {
+                    it.remove();
+                } catch (IOException e) {
+                    // The file can be locked by the writer (Windows), try again later
+                    LOGGER.debug("Cannot read {}", path, e); //$NON-NLS-1$
+                }
+            }
+            pruneProcessedFiles();
+
+            for (int i = 0; i < readyFiles.size(); i += MAX_FILES_BY_TASK) {
+                List<File> files = readyFiles.subList(i, Math.min(readyFiles.size(), i + MAX_FILES_BY_TASK));
+                LOGGER.info("Import {} files from the watch folders", files.size()); //$NON-NLS-1$
+                DicomModel.LOADING_EXECUTOR
+                    .execute(new LoadLocalDicom(files.toArray(new File[files.size()]), false, model, false));
+            }
+        }
+
+        /**
+         * Remove the files which do not exist anymore, the delete events can be lost (e.g. overflow, folder deleted).
+         */
+        private void pruneProcessedFiles() {
+            if (processedFiles.size() >= pruneSize) {
+                processedFiles.keySet().removeIf(p -> !Files.exists(p));
+                pruneSize = Math.max(PRUNE_THRESHOLD, processedFiles.size() * 2);
+            }
+        }
+    }
+}
@@ -12,10 +12,7 @@ package org.weasis.dicom.explorer;
 
 import java.awt.FlowLayout;
 import java.io.File;
-import java.io.IOException;
-import java.io.InputStream;
 import java.net.URI;
-import java.util.List;
 
 import javax.swing.JButton;
 import javax.swing.JFileChooser;
@@ -26,14 +23,9 @@ import javax.swing.border.TitledBorder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.weasis.core.api.gui.util.AbstractItemDialogPage;
-import org.weasis.core.api.gui.util.AppProperties;
 import org.weasis.core.api.gui.util.FileFormatFilter;
-import org.weasis.core.api.service.BundleTools;
-import org.weasis.core.api.util.FileUtil;
-import org.weasis.core.api.util.NetworkUtil;
 import org.weasis.core.api.util.StringUtil;
 import org.weasis.dicom.explorer.internal.Activator;
-import org.weasis.dicom.explorer.wado.LoadSeries;
 
 @SuppressWarnings("serial")
 public class DicomZipImport extends AbstractItemDialogPage implements ImportDicom {
@@ -114,48 +106,26 @@ public class DicomZipImport extends AbstractItemDialogPage implements ImportDico
     public static void loadDicomZip(File file, DicomModel dicomModel) {
         if (file != null) {
             if (file.canRead()) {
-                File dir = FileUtil.createTempDir(AppProperties.buildAccessibleTempDirectory("tmp", "zip")); //$NON-NLS-1$ //$NON-NLS-2$
-                try {
-                    FileUtil.unzip(file, dir);
-                } catch (IOException e) {
-                    LOGGER.error("unzipping", e); //$NON-NLS-1$
-                }
-                File dicomdir = new File(dir, "DICOMDIR"); //$NON-NLS-1$
-                if (dicomdir.canRead()) {
-                    DicomDirLoader dirImport = new DicomDirLoader(dicomdir, dicomModel, false); // $NON-NLS-1$
-                    List<LoadSeries> loadSeries = dirImport.readDicomDir();
-                    if (loadSeries != null && !loadSeries.isEmpty()) {
-                        DicomModel.LOADING_EXECUTOR.execute(new LoadDicomDir(loadSeries, dicomModel));
-                    } else {
-                        LOGGER.error("Cannot import DICOM from {}", file); //$NON-NLS-1$
-                    }
-                } else {
-                    LoadLocalDicom dicom = new LoadLocalDicom(new File[] { dir }, true, dicomModel);
-                    DicomModel.LOADING_EXECUTOR.execute(dicom);
-                }
+                DicomModel.LOADING_EXECUTOR.execute(new LoadDicomZip(file, dicomModel));
+            } else {
+                LOGGER.error("Cannot import DICOM from {}", file); //$NON-NLS-1$
             }
         }
     }
 
     public static void loadDicomZip(String uri, DicomModel dicomModel) {
         if (StringUtil.hasText(uri)) {
-            InputStream stream = null;
-            File tempFile = null;
             try {
                 URI u = new URI(uri);
                 if (u.toString().startsWith("file:")) { //$NON-NLS-1$
-                    tempFile = new File(u.getPath());
+                    loadDicomZip(new File(u.getPath()), dicomModel);
                 } else {
-                    tempFile = File.createTempFile("dicom_", ".zip", AppProperties.APP_TEMP_DIR); //$NON-NLS-1$ //$NON-NLS-2$
-                    stream = NetworkUtil.getUrlInputStream(u.toURL().openConnection(), BundleTools.SESSION_TAGS_FILE);
-                    FileUtil.writeStreamWithIOException(stream, tempFile);
+                    // The archive is extracted while it is downloaded
+                    DicomModel.LOADING_EXECUTOR.execute(new LoadDicomZip(u, dicomModel));
                 }
             } catch (Exception e) {
                 LOGGER.error("Loading DICOM Zip", e); //$NON-NLS-1$
-            } finally {
-                FileUtil.safeClose(stream);
             }
-            loadDicomZip(tempFile, dicomModel);
         }
     }
 }
@@ -0,0 +1,303 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2018 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.dicom.explorer;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.weasis.core.api.explorer.ObservableEvent;
+import org.weasis.core.api.explorer.model.DataExplorerModel;
+import org.weasis.core.api.gui.util.AppProperties;
+import org.weasis.core.api.media.data.SeriesThumbnail;
+import org.weasis.core.api.media.data.TagW;
+import org.weasis.core.api.service.BundleTools;
+import org.weasis.core.api.util.FileUtil;
+import org.weasis.core.api.util.NetworkUtil;
+import org.weasis.core.api.util.ThreadUtil;
+import org.weasis.dicom.codec.DicomMediaIO;
+import org.weasis.dicom.explorer.wado.DownloadManager;
+import org.weasis.dicom.explorer.wado.LoadSeries;
+import org.weasis.dicom.explorer.wado.SeriesInstanceList;
+import org.weasis.dicom.mf.SopInstance;
+
+/**
+ * Import a ZIP archive without extracting it entirely before loading.
+ *
+ * <ul>
+ * <li>When the archive contains a DICOMDIR, only the DICOMDIR is extracted first. The series are then extracted in
+ * parallel and each series is loaded as soon as its files are written.</li>
+ * <li>Otherwise the entries are read sequentially from the stream (the archive can be a remote URL) and their headers
+ * are parsed in parallel while the next entries are still being extracted.</li>
+ * </ul>
+ */
+public class LoadDicomZip extends LoadLocalDicom {
+    private static final Logger LOGGER = LoggerFactory.getLogger(LoadDicomZip.class);
+
+    private static final String DICOMDIR = "DICOMDIR"; //$NON-NLS-1$
+
+    private final File zipFile;
+    private final URI zipURI;
+    private final File dir;
+    private final List<SeriesThumbnail> thumbs = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicBoolean imported = new AtomicBoolean(false);
+
+    public LoadDicomZip(File zipFile, DataExplorerModel explorerModel) {
+        this(Objects.requireNonNull(zipFile), null, explorerModel);
+    }
+
+    public LoadDicomZip(URI zipURI, DataExplorerModel explorerModel) {
+        this(null, Objects.requireNonNull(zipURI), explorerModel);
+    }
+
+    private LoadDicomZip(File zipFile, URI zipURI, DataExplorerModel explorerModel) {
+        super(new File[0], true, explorerModel);
+        this.zipFile = zipFile;
+        this.zipURI = zipURI;
+        this.dir = FileUtil.createTempDir(AppProperties.buildAccessibleTempDirectory("tmp", "zip")); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    @Override
+    protected Boolean doInBackground() throws Exception {
+        dicomModel
+            .firePropertyChange(new ObservableEvent(ObservableEvent.BasicAction.LOADING_START, dicomModel, null, this));
+        int nThreads = Math.max(2, Runtime.getRuntime().availableProcessors());
+        ExecutorService executor = ThreadUtil.buildNewFixedThreadExecutor(nThreads, "Zip Import"); //$NON-NLS-1$
+        try {
+            if (zipFile != null) {
+                loadZipFile(executor);
+            } else {
+                try (InputStream stream = NetworkUtil.getUrlInputStream(zipURI.toURL().openConnection(),
+                    BundleTools.SESSION_TAGS_FILE)) {
+                    loadZipStream(stream, executor);
+                }
+            }
+        } finally {
+            executor.shutdown();
+            // The imported files are read by the viewers, they are deleted with the temporary directory of the
+            // application
+            if (!imported.get()) {
+                FileUtil.recursiveDelete(dir);
+            }
+        }
+        rebuildThumbnails(thumbs);
+        return true;
+    }
+
+    private void loadZipFile(ExecutorService executor) throws IOException, InterruptedException {
+        if (!zipFile.canRead()) {
+            LOGGER.error("Cannot read the ZIP file {}", zipFile); //$NON-NLS-1$
+            return;
+        }
+        try (ZipFile zfile = new ZipFile(zipFile)) {
+            Map<String, ZipEntry> entries = new HashMap<>();
+            ZipEntry dicomdir = null;
+            String dicomdirName = null;
+            Enumeration<? extends ZipEntry> en = zfile.entries();
+            while (en.hasMoreElements()) {
+                ZipEntry entry = en.nextElement();
+                if (!entry.isDirectory()) {
+                    String name = normalizeName(entry.getName());
+                    entries.put(name, entry);
+                    if (isDicomdir(name) && (dicomdirName == null || name.length() < dicomdirName.length())) {
+                        dicomdir = entry;
+                        dicomdirName = name;
+                    }
+                }
+            }
+
+            if (dicomdir == null || !loadDicomdir(zfile, dicomdir, entries, executor)) {
+                List<Future<?>> tasks = new ArrayList<>(entries.size());
+                for (ZipEntry entry : entries.values()) {
+                    if (isCancelled()) {
+                        break;
+                    }
+                    File file = getOutputFile(entry.getName());
+                    if (file != null) {
+                        try (InputStream in = zfile.getInputStream(entry)) {
+                            writeEntry(in, file);
+                        }
+                        tasks.add(executor.submit(() -> addFile(file)));
+                    }
+                }
+                waitForTasks(tasks);
+            }
+        }
+    }
+
+    private boolean loadDicomdir(ZipFile zfile, ZipEntry dicomdir, Map<String, ZipEntry> entries,
+        ExecutorService executor) throws IOException, InterruptedException {
+        File dcmDirFile = getOutputFile(dicomdir.getName());
+        if (dcmDirFile == null) {
+            return false;
+        }
+        try (InputStream in = zfile.getInputStream(dicomdir)) {
+            writeEntry(in, dcmDirFile);
+        }
+
+        // The referenced files are not extracted yet, check only if they are in the archive
+        DicomDirLoader dirImport = new DicomDirLoader(dcmDirFile, dicomModel, false,
+            f -> f.exists() || entries.containsKey(getEntryName(f)), true);
+        List<LoadSeries> loadSeries = dirImport.readDicomDir();
+        FileUtil.delete(dcmDirFile);
+        if (loadSeries == null || loadSeries.isEmpty()) {
+            return false;
+        }
+
+        List<Future<?>> tasks = new ArrayList<>(loadSeries.size());
+        for (LoadSeries s : loadSeries) {
+            tasks.add(executor.submit(() -> {
+                SeriesInstanceList list =
+                    (SeriesInstanceList) s.getDicomSeries().getTagValue(TagW.WadoInstanceReferenceList);
+                if (list != null) {
+                    for (SopInstance sop : list.getSortedList()) {
+                        if (isCancelled()) {
+                            return;
+                        }
+                        extractReferencedFile(zfile, entries, sop);
+                    }
+                }
+                // Load the series as soon as all its files are available
+                imported.set(true);
+                DownloadManager.addLoadSeries(s, dicomModel, true);
+                DownloadManager.CONCURRENT_EXECUTOR.prestartAllCoreThreads();
+            }));
+        }
+        waitForTasks(tasks);
+        return true;
+    }
+
+    private void extractReferencedFile(ZipFile zfile, Map<String, ZipEntry> entries, SopInstance sop) {
+        try {
+            File file = new File(new URI(sop.getDirectDownloadFile()));
+            if (!file.exists()) {
+                ZipEntry entry = entries.get(getEntryName(file));
+                if (entry != null) {
+                    try (InputStream in = zfile.getInputStream(entry)) {
+                        writeEntry(in, file);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            LOGGER.error("Cannot extract {}", sop.getDirectDownloadFile(), e); //$NON-NLS-1$
+        }
+    }
+
+    private void loadZipStream(InputStream inputStream, ExecutorService executor)
+        throws IOException, InterruptedException {
+        List<Future<?>> tasks = new ArrayList<>();
+        try (ZipInputStream zis = new ZipInputStream(new BufferedInputStream(inputStream))) {
+            ZipEntry entry;
+            while ((entry = zis.getNextEntry()) != null) {
+                if (isCancelled()) {
+                    break;
+                }
+                // DICOMDIR cannot be used before the end of the stream, all the files are parsed instead
+                if (!entry.isDirectory() && !isDicomdir(normalizeName(entry.getName()))) {
+                    File file = getOutputFile(entry.getName());
+                    if (file != null) {
+                        writeEntry(zis, file);
+                        tasks.add(executor.submit(() -> addFile(file)));
+                    }
+                }
+            }
+        }
+        waitForTasks(tasks);
+    }
+
+    private void addFile(File file) {
+        if (isCancelled()) {
+            return;
+        }
+        // Parse the header in the current thread and insert sequentially into the model
+        DicomMediaIO loader = readDicomFile(file);
+        if (loader == null) {
+            // Not a DICOM file
+            FileUtil.delete(file);
+        } else {
+            imported.set(true);
+            SeriesThumbnail t;
+            synchronized (this) {
+                t = addDicomReader(loader, file);
+            }
+            if (t != null) {
+                thumbs.add(t);
+            }
+        }
+    }
+
+    private static void waitForTasks(List<Future<?>> tasks) throws InterruptedException {
+        for (Future<?> task : tasks) {
+            try {
+                task.get();
+            } catch (ExecutionException e) {
+                LOGGER.error("Importing ZIP entry", e.getCause()); //$NON-NLS-1$
+            }
+        }
+    }
+
+    /**
+     * @return the file of the entry, or null when the entry would be written outside the destination directory
+     */
+    private File getOutputFile(String entryName) throws IOException {
+        File file = new File(dir, entryName);
+        if (!file.getCanonicalPath().startsWith(dir.getCanonicalPath() + File.separator)) {
+            LOGGER.warn("Skip the invalid ZIP entry {}", entryName); //$NON-NLS-1$
+            return null;
+        }
+        return file;
+    }
+
+    private String getEntryName(File file) {
+        return normalizeName(dir.toPath().relativize(file.toPath()).toString());
+    }
+
+    private static String normalizeName(String name) {
+        return name.replace('\\', '/').toLowerCase(Locale.ENGLISH);
+    }
+
+    private static boolean isDicomdir(String normalizedName) {
+        int index = normalizedName.lastIndexOf('/');
+        return DICOMDIR.equalsIgnoreCase(index < 0 ? normalizedName : normalizedName.substring(index + 1));
+    }
+
+    private static void writeEntry(InputStream in, File file) throws IOException {
+        file.getParentFile().mkdirs();
+        try (OutputStream out = new FileOutputStream(file)) {
+            byte[] buf = new byte[FileUtil.FILE_BUFFER];
+            int offset;
+            while ((offset = in.read(buf)) > 0) {
+                out.write(buf, 0, offset);
+            }
+        }
+    }
+}
@@ -15,6 +15,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Optional;
 
 import org.dcm4che3.data.Tag;
@@ -47,11 +48,19 @@ public class LoadLocalDicom extends ExplorerTask<Boolean, String> {
 
     private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(LoadLocalDicom.class);
     private final File[] files;
-    private final DicomModel dicomModel;
+    protected final DicomModel dicomModel;
     private final boolean recursive;
     private boolean openPlugin;
 
     public LoadLocalDicom(File[] files, boolean recursive, DataExplorerModel explorerModel) {
+        this(files, recursive, explorerModel, true);
+    }
+
+    /**
+     * @param openPlugin
+     *            open the first series in a viewer
+     */
+    public LoadLocalDicom(File[] files, boolean recursive, DataExplorerModel explorerModel, boolean openPlugin) {
         super(Messages.getString("DicomExplorer.loading"), false); //$NON-NLS-1$
         if (files == null || !(explorerModel instanceof DicomModel)) {
             throw new IllegalArgumentException("invalid parameters"); //$NON-NLS-1$
@@ -59,7 +68,7 @@ public class LoadLocalDicom extends ExplorerTask<Boolean, String> {
         this.dicomModel = (DicomModel) explorerModel;
         this.files = files;
         this.recursive = recursive;
-        this.openPlugin = true;
+        this.openPlugin = openPlugin;
     }
 
     @Override
@@ -96,27 +105,59 @@ public class LoadLocalDicom extends ExplorerTask<Boolean, String> {
                     folders.add(file[i]);
                 }
             } else {
-                if (file[i].canRead()) {
-                    if (FileUtil.isFileExtensionMatching(file[i], DicomCodec.FILE_EXTENSIONS)
-                        || MimeInspector.isMatchingMimeTypeFromMagicNumber(file[i], DicomMediaIO.MIMETYPE)) {
-                        DicomMediaIO loader = new DicomMediaIO(file[i]);
-                        if (loader.isReadableDicom()) {
-                            // Issue: must handle adding image to viewer and building thumbnail (middle image)
-                            SeriesThumbnail t = buildDicomStructure(loader, openPlugin);
-                            if (t != null) {
-                                thumbs.add(t);
-                            }
-
-                            File gpxFile = new File(file[i].getPath() + ".xml"); //$NON-NLS-1$
-                            GraphicModel graphicModel = XmlSerializer.readPresentationModel(gpxFile);
-                            if (graphicModel != null) {
-                                loader.setTag(TagW.PresentationModel, graphicModel);
-                            }
-                        }
+                DicomMediaIO loader = readDicomFile(file[i]);
+                if (loader != null) {
+                    SeriesThumbnail t = addDicomReader(loader, file[i]);
+                    if (t != null) {
+                        thumbs.add(t);
                     }
                 }
             }
         }
+        rebuildThumbnails(thumbs);
+        for (int i = 0; i < folders.size(); i++) {
+            addSelectionAndnotify(folders.get(i).listFiles(), false);
+        }
+    }
+
+    /**
+     * Read the header of a file. This method does not modify the model and can be called concurrently.
+     *
+     * @return the reader or null if the file is not a readable DICOM file
+     */
+    protected static DicomMediaIO readDicomFile(File file) {
+        if (file.canRead() && (FileUtil.isFileExtensionMatching(file, DicomCodec.FILE_EXTENSIONS)
+            || MimeInspector.isMatchingMimeTypeFromMagicNumber(file, DicomMediaIO.MIMETYPE))) {
+            DicomMediaIO loader = new DicomMediaIO(file);
+            if (loader.isReadableDicom()) {
+                return loader;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Add a DICOM file to the model. Calls to this method must not be concurrent.
+     *
+     * @return the thumbnail of the series when it has been created
+     */
+    protected SeriesThumbnail addDicomReader(DicomMediaIO loader, File file) {
+        // Issue: must handle adding image to viewer and building thumbnail (middle image)
+        SeriesThumbnail t = buildDicomStructure(loader, openPlugin);
+
+        File gpxFile = new File(file.getPath() + ".xml"); //$NON-NLS-1$
+        GraphicModel graphicModel = XmlSerializer.readPresentationModel(gpxFile);
+        if (graphicModel != null) {
+            // The tags of the reader are read-only, set the model to the first image
+            MediaElement[] medias = loader.getMediaElement();
+            if (medias != null && medias.length > 0) {
+                medias[0].setTag(TagW.PresentationModel, graphicModel);
+            }
+        }
+        return t;
+    }
+
+    protected static void rebuildThumbnails(List<SeriesThumbnail> thumbs) {
         for (final SeriesThumbnail t : thumbs) {
             MediaSeries<MediaElement> series = t.getSeries();
             // Avoid to rebuild most of CR series thumbnail
@@ -124,9 +165,6 @@ public class LoadLocalDicom extends ExplorerTask<Boolean, String> {
                 GuiExecutor.instance().execute(t::reBuildThumbnail);
             }
         }
-        for (int i = 0; i < folders.size(); i++) {
-            addSelectionAndnotify(folders.get(i).listFiles(), false);
-        }
     }
 
     private SeriesThumbnail buildDicomStructure(DicomMediaIO dicomReader, boolean open) {
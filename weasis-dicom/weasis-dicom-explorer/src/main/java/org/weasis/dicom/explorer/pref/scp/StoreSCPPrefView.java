@@ -0,0 +1,151 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2018 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.dicom.explorer.pref.scp;
+
+import java.awt.FlowLayout;
+import java.awt.GridBagConstraints;
+import java.awt.GridBagLayout;
+import java.awt.Insets;
+
+import javax.swing.BoxLayout;
+import javax.swing.JButton;
+import javax.swing.JCheckBox;
+import javax.swing.JComponent;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JSpinner;
+import javax.swing.JTextField;
+import javax.swing.SpinnerNumberModel;
+import javax.swing.border.EmptyBorder;
+import javax.swing.border.TitledBorder;
+
+import org.weasis.core.api.gui.util.AbstractItemDialogPage;
+import org.weasis.core.api.service.BundleTools;
+import org.weasis.core.api.util.StringUtil;
+import org.weasis.dicom.explorer.Messages;
+import org.weasis.dicom.explorer.scp.StoreSCPService;
+
+@SuppressWarnings("serial")
+public class StoreSCPPrefView extends AbstractItemDialogPage {
+
+    private final JCheckBox enableCheckbox = new JCheckBox(Messages.getString("StoreSCPPrefView.enable")); //$NON-NLS-1$
+    private final JTextField aetField = new JTextField(16);
+    private final JSpinner portSpinner = new JSpinner(new SpinnerNumberModel(StoreSCPService.DEFAULT_PORT, 1, 65535, 1));
+    private final JTextField callingAetsField = new JTextField(30);
+    private final JTextField tsuidsField = new JTextField(30);
+    private final JSpinner maxAssocSpinner =
+        new JSpinner(new SpinnerNumberModel(StoreSCPService.DEFAULT_MAX_ASSOCIATIONS, 0, 100, 1));
+    private final JTextField dirField = new JTextField(30);
+
+    public StoreSCPPrefView() {
+        super(Messages.getString("StoreSCPPrefView.title")); //$NON-NLS-1$
+        setBorder(new EmptyBorder(15, 10, 10, 10));
+        setLayout(new BoxLayout(this, BoxLayout.Y_AXIS));
+
+        JPanel panel = new JPanel(new GridBagLayout());
+        panel.setBorder(new TitledBorder(null, Messages.getString("StoreSCPPrefView.listener"), //$NON-NLS-1$
+            TitledBorder.LEADING, TitledBorder.TOP, null, null));
+        add(panel);
+
+        GridBagConstraints gbc = new GridBagConstraints();
+        gbc.anchor = GridBagConstraints.LINE_START;
+        gbc.insets = new Insets(0, 2, 5, 5);
+        gbc.gridx = 0;
+        gbc.gridy = 0;
+        gbc.gridwidth = 2;
+        panel.add(enableCheckbox, gbc);
+        gbc.gridwidth = 1;
+
+        String hint = Messages.getString("StoreSCPPrefView.all_values"); //$NON-NLS-1$
+        callingAetsField.setToolTipText(hint);
+        tsuidsField.setToolTipText(hint);
+        addRow(panel, gbc, 1, "StoreSCPPrefView.aet", aetField); //$NON-NLS-1$
+        addRow(panel, gbc, 2, "StoreSCPPrefView.port", portSpinner); //$NON-NLS-1$
+        addRow(panel, gbc, 3, "StoreSCPPrefView.calling_aets", callingAetsField); //$NON-NLS-1$
+        addRow(panel, gbc, 4, "StoreSCPPrefView.tsuids", tsuidsField); //$NON-NLS-1$
+        addRow(panel, gbc, 5, "StoreSCPPrefView.max_assoc", maxAssocSpinner); //$NON-NLS-1$
+        addRow(panel, gbc, 6, "StoreSCPPrefView.dir", dirField); //$NON-NLS-1$
+
+        JPanel panel2 = new JPanel();
+        FlowLayout flowLayout1 = (FlowLayout) panel2.getLayout();
+        flowLayout1.setHgap(10);
+        flowLayout1.setAlignment(FlowLayout.RIGHT);
+        flowLayout1.setVgap(7);
+        add(panel2);
+
+        JButton btnNewButton = new JButton(org.weasis.core.ui.Messages.getString("restore.values")); //$NON-NLS-1$
+        panel2.add(btnNewButton);
+        btnNewButton.addActionListener(e -> resetoDefaultValues());
+
+        initValues();
+    }
+
+    private static void addRow(JPanel panel, GridBagConstraints gbc, int row, String key, JComponent component) {
+        gbc.gridy = row;
+        gbc.gridx = 0;
+        gbc.fill = GridBagConstraints.NONE;
+        gbc.weightx = 0.0;
+        panel.add(new JLabel(Messages.getString(key) + StringUtil.COLON), gbc);
+        gbc.gridx = 1;
+        gbc.fill = component instanceof JTextField ? GridBagConstraints.HORIZONTAL : GridBagConstraints.NONE;
+        gbc.weightx = 1.0;
+        panel.add(component, gbc);
+    }
+
+    private void initValues() {
+        enableCheckbox.setSelected(StoreSCPService.isEnabled());
+        aetField.setText(StoreSCPService.getAeTitle());
+        portSpinner.setValue(
+            BundleTools.SYSTEM_PREFERENCES.getIntProperty(StoreSCPService.SCP_PORT, StoreSCPService.DEFAULT_PORT));
+        callingAetsField
+            .setText(BundleTools.SYSTEM_PREFERENCES.getProperty(StoreSCPService.SCP_CALLING_AETS, "")); //$NON-NLS-1$
+        tsuidsField
+            .setText(BundleTools.SYSTEM_PREFERENCES.getProperty(StoreSCPService.SCP_TRANSFER_SYNTAXES, "")); //$NON-NLS-1$
+        maxAssocSpinner.setValue(BundleTools.SYSTEM_PREFERENCES.getIntProperty(StoreSCPService.SCP_MAX_ASSOCIATIONS,
+            StoreSCPService.DEFAULT_MAX_ASSOCIATIONS));
+        dirField.setText(StoreSCPService.getStorageDir().getPath());
+    }
+
+    @Override
+    public void resetoDefaultValues() {
+        BundleTools.SYSTEM_PREFERENCES.resetProperty(StoreSCPService.SCP_ENABLE, Boolean.FALSE.toString());
+        BundleTools.SYSTEM_PREFERENCES.remove(StoreSCPService.SCP_AET);
+        BundleTools.SYSTEM_PREFERENCES.resetProperty(StoreSCPService.SCP_PORT,
+            Integer.toString(StoreSCPService.DEFAULT_PORT));
+        BundleTools.SYSTEM_PREFERENCES.resetProperty(StoreSCPService.SCP_CALLING_AETS, ""); //$NON-NLS-1$
+        BundleTools.SYSTEM_PREFERENCES.resetProperty(StoreSCPService.SCP_TRANSFER_SYNTAXES, ""); //$NON-NLS-1$
+        BundleTools.SYSTEM_PREFERENCES.resetProperty(StoreSCPService.SCP_MAX_ASSOCIATIONS,
+            Integer.toString(StoreSCPService.DEFAULT_MAX_ASSOCIATIONS));
+        BundleTools.SYSTEM_PREFERENCES.remove(StoreSCPService.SCP_DIR);
+        initValues();
+    }
+
+    @Override
+    public void closeAdditionalWindow() {
+        BundleTools.SYSTEM_PREFERENCES.putBooleanProperty(StoreSCPService.SCP_ENABLE, enableCheckbox.isSelected());
+        String aet = aetField.getText().trim();
+        if (StringUtil.hasText(aet)) {
+            BundleTools.SYSTEM_PREFERENCES.setProperty(StoreSCPService.SCP_AET, aet);
+        }
+        BundleTools.SYSTEM_PREFERENCES.putIntProperty(StoreSCPService.SCP_PORT, (Integer) portSpinner.getValue());
+        BundleTools.SYSTEM_PREFERENCES.setProperty(StoreSCPService.SCP_CALLING_AETS, callingAetsField.getText().trim());
+        BundleTools.SYSTEM_PREFERENCES.setProperty(StoreSCPService.SCP_TRANSFER_SYNTAXES, tsuidsField.getText().trim());
+        BundleTools.SYSTEM_PREFERENCES.putIntProperty(StoreSCPService.SCP_MAX_ASSOCIATIONS,
+            (Integer) maxAssocSpinner.getValue());
+        String dir = dirField.getText().trim();
+        if (StringUtil.hasText(dir)) {
+            BundleTools.SYSTEM_PREFERENCES.setProperty(StoreSCPService.SCP_DIR, dir);
+        }
+        BundleTools.saveSystemPreferences();
+        StoreSCPService.getInstance().restart();
+    }
+
+}
@@ -0,0 +1,125 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2018 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.dicom.explorer.pref.watch;
+
+import java.awt.BorderLayout;
+import java.awt.FlowLayout;
+import java.io.File;
+import java.nio.file.Path;
+
+import javax.swing.BoxLayout;
+import javax.swing.DefaultListModel;
+import javax.swing.JButton;
+import javax.swing.JCheckBox;
+import javax.swing.JFileChooser;
+import javax.swing.JList;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.border.EmptyBorder;
+import javax.swing.border.TitledBorder;
+
+import org.weasis.core.api.gui.util.AbstractItemDialogPage;
+import org.weasis.core.api.service.BundleTools;
+import org.weasis.dicom.explorer.DicomWatchFolder;
+import org.weasis.dicom.explorer.Messages;
+
+@SuppressWarnings("serial")
+public class WatchFolderPrefView extends AbstractItemDialogPage {
+
+    private final JCheckBox enableCheckbox = new JCheckBox(Messages.getString("WatchFolderPrefView.enable")); //$NON-NLS-1$
+    private final DefaultListModel<String> folderModel = new DefaultListModel<>();
+    private final JList<String> folderList = new JList<>(folderModel);
+
+    public WatchFolderPrefView() {
+        super(Messages.getString("WatchFolderPrefView.title")); //$NON-NLS-1$
+        setBorder(new EmptyBorder(15, 10, 10, 10));
+        setLayout(new BoxLayout(this, BoxLayout.Y_AXIS));
+
+        JPanel panel = new JPanel(new BorderLayout(0, 5));
+        panel.setBorder(new TitledBorder(null, Messages.getString("WatchFolderPrefView.folders"), //$NON-NLS-1$
+            TitledBorder.LEADING, TitledBorder.TOP, null, null));
+        add(panel);
+        panel.add(enableCheckbox, BorderLayout.NORTH);
+        panel.add(new JScrollPane(folderList), BorderLayout.CENTER);
+
+        JPanel buttons = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 2));
+        JButton addButton = new JButton(Messages.getString("WatchFolderPrefView.add")); //$NON-NLS-1$
+        addButton.addActionListener(e -> addFolder());
+        buttons.add(addButton);
+        JButton removeButton = new JButton(Messages.getString("WatchFolderPrefView.remove")); //$NON-NLS-1$
+        removeButton.addActionListener(e -> {
+            for (String path : folderList.getSelectedValuesList()) {
+                folderModel.removeElement(path);
+            }
+        });
+        buttons.add(removeButton);
+        panel.add(buttons, BorderLayout.SOUTH);
+
+        JPanel panel2 = new JPanel();
+        FlowLayout flowLayout1 = (FlowLayout) panel2.getLayout();
+        flowLayout1.setHgap(10);
+        flowLayout1.setAlignment(FlowLayout.RIGHT);
+        flowLayout1.setVgap(7);
+        add(panel2);
+
+        JButton btnNewButton = new JButton(org.weasis.core.ui.Messages.getString("restore.values")); //$NON-NLS-1$
+        panel2.add(btnNewButton);
+        btnNewButton.addActionListener(e -> resetoDefaultValues());
+
+        initValues();
+    }
+
+    private void initValues() {
+        enableCheckbox.setSelected(DicomWatchFolder.isEnabled());
+        folderModel.clear();
+        for (Path path : DicomWatchFolder.getConfiguredFolders()) {
+            folderModel.addElement(path.toString());
+        }
+    }
+
+    private void addFolder() {
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+        fileChooser.setMultiSelectionEnabled(true);
+        if (fileChooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
+            for (File file : fileChooser.getSelectedFiles()) {
+                String path = file.getAbsolutePath();
+                if (!folderModel.contains(path)) {
+                    folderModel.addElement(path);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void resetoDefaultValues() {
+        BundleTools.SYSTEM_PREFERENCES.resetProperty(DicomWatchFolder.WATCH_ENABLE, Boolean.FALSE.toString());
+        BundleTools.SYSTEM_PREFERENCES.resetProperty(DicomWatchFolder.WATCH_FOLDERS, ""); //$NON-NLS-1$
+        initValues();
+    }
+
+    @Override
+    public void closeAdditionalWindow() {
+        StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < folderModel.size(); i++) {
+            if (i > 0) {
+                buf.append(File.pathSeparator);
+            }
+            buf.append(folderModel.get(i));
+        }
+        BundleTools.SYSTEM_PREFERENCES.putBooleanProperty(DicomWatchFolder.WATCH_ENABLE,
+            enableCheckbox.isSelected());
+        BundleTools.SYSTEM_PREFERENCES.setProperty(DicomWatchFolder.WATCH_FOLDERS, buf.toString());
+        BundleTools.saveSystemPreferences();
+        DicomWatchFolder.getInstance().restart();
+    }
+
+}
@@ -15,7 +15,6 @@ import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Component;
 import java.awt.Dimension;
-import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.Transparency;
 import java.awt.color.ColorSpace;
@@ -26,25 +25,30 @@ import java.awt.image.ColorModel;
 import java.awt.image.ComponentColorModel;
 import java.awt.image.DataBuffer;
 import java.awt.image.DataBufferByte;
-import java.awt.image.DataBufferShort;
-import java.awt.image.DataBufferUShort;
 import java.awt.image.WritableRaster;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 
 import org.dcm4che3.data.Attributes;
-import org.dcm4che3.data.Sequence;
 import org.dcm4che3.data.Tag;
 import org.dcm4che3.data.UID;
 import org.dcm4che3.data.VR;
+import org.dcm4che3.io.DicomOutputStream;
 import org.dcm4che3.net.ApplicationEntity;
 import org.dcm4che3.net.Association;
 import org.dcm4che3.net.Connection;
+import org.dcm4che3.net.DataWriter;
 import org.dcm4che3.net.Device;
 import org.dcm4che3.net.DimseRSP;
+import org.dcm4che3.net.PDVOutputStream;
 import org.dcm4che3.net.pdu.AAssociateRQ;
 import org.dcm4che3.net.pdu.PresentationContext;
 import org.dcm4che3.util.UIDUtils;
@@ -82,78 +86,176 @@ public class DicomPrint {
         this.printOptions = printOptions == null ? dicomPrintNode.getPrintOptions() : printOptions;
     }
 
-    public BufferedImage printImage(ExportLayout<? extends ImageElement> layout) {
-        if (layout == null) {
-            return null;
+    /**
+     * Compose the film and send it to the printer.
+     *
+     * @param layout
+     *            the layout of the film
+     * @throws Exception
+     */
+    public void print(ExportLayout<? extends ImageElement> layout) throws Exception {
+        print(Collections.singletonList(layout));
+    }
+
+    /**
+     * Compose the films and send them to the printer. All the films are printed in the same film session through one
+     * association. Each film is composed by horizontal bands while it is sent, so the whole film is never in memory.
+     *
+     * @param layouts
+     *            the layouts of the films
+     * @throws Exception
+     */
+    public void print(List<? extends ExportLayout<? extends ImageElement>> layouts) throws Exception {
+        if (layouts == null || layouts.isEmpty()) {
+            return;
         }
+        final String printManagementSOPClass = printOptions.isColorPrint() ? UID.BasicColorPrintManagementMetaSOPClass
+            : UID.BasicGrayscalePrintManagementMetaSOPClass;
+        final String imageBoxSOPClass =
+            printOptions.isColorPrint() ? UID.BasicColorImageBoxSOPClass : UID.BasicGrayscaleImageBoxSOPClass;
 
-        BufferedImage bufferedImage = initialize(layout);
-        Graphics2D g2d = (Graphics2D) bufferedImage.getGraphics();
+        String weasisAet = BundleTools.SYSTEM_PREFERENCES.getProperty("weasis.aet", "WEASIS_AE"); //$NON-NLS-1$ //$NON-NLS-2$
 
-        if (g2d != null) {
-            Color borderColor = "WHITE".equals(printOptions.getBorderDensity()) ? Color.WHITE : Color.BLACK; //$NON-NLS-1$
-            Color background = "WHITE".equals(printOptions.getEmptyDensity()) ? Color.WHITE : Color.BLACK; //$NON-NLS-1$
-            g2d.setBackground(background);
-            if (!Color.BLACK.equals(background)) {
-                // Change background color
-                g2d.clearRect(0, 0, bufferedImage.getWidth(), bufferedImage.getHeight());
-            }
-            final Map<LayoutConstraints, Component> elements = layout.getLayoutModel().getConstraints();
-            Iterator<Entry<LayoutConstraints, Component>> enumVal = elements.entrySet().iterator();
-            while (enumVal.hasNext()) {
-                Entry<LayoutConstraints, Component> e = enumVal.next();
-                LayoutConstraints key = e.getKey();
-                Component value = e.getValue();
-
-                ExportImage<? extends ImageElement> image = null;
-                Point2D.Double pad = new Point2D.Double(0.0, 0.0);
-
-                if (value instanceof ExportImage) {
-                    image = (ExportImage) value;
-                    formatImage(image, key, pad);
-                }
+        Device device = new Device(weasisAet);
+        ApplicationEntity ae = new ApplicationEntity(weasisAet);
+        Connection conn = new Connection();
 
-                if (key.gridx == 0) {
-                    wx = 0.0;
-                } else if (lastx < key.gridx) {
-                    wx += lastwx;
-                }
-                double wy = lastwy[key.gridx];
-
-                double x = 5 + (placeholderX * wx) + (MathUtil.isEqualToZero(wx) ? 0 : key.gridx * 5) + pad.x;
-                double y = 5 + (placeholderY * wy) + (MathUtil.isEqualToZero(wy) ? 0 : key.gridy * 5) + pad.y;
-                lastx = key.gridx;
-                lastwx = key.weightx;
-                for (int i = key.gridx; i < key.gridx + key.gridwidth; i++) {
-                    lastwy[i] += key.weighty;
-                }
+        ApplicationEntity remoteAE = new ApplicationEntity(dcmNode.getAeTitle());
+        Connection remoteConn = new Connection();
 
-                if (image != null) {
-                    boolean wasBuffered = ImagePrint.disableDoubleBuffering(image);
+        ae.addConnection(conn);
+        ae.setAssociationInitiator(true);
+        ae.setAETitle(weasisAet);
 
-                    // Set us to the upper left corner
-                    g2d.translate(x, y);
-                    g2d.setClip(image.getBounds());
-                    image.draw(g2d);
-                    ImagePrint.restoreDoubleBuffering(image, wasBuffered);
-                    g2d.translate(-x, -y);
-
-                    if (!borderColor.equals(background)) {
-                        // Change background color
-                        g2d.setClip(null);
-                        g2d.setColor(borderColor);
-                        g2d.setStroke(new BasicStroke(2));
-                        Dimension viewSize = image.getSize();
-                        g2d.drawRect((int) x - 1, (int) y - 1, viewSize.width + 1, viewSize.height + 1);
-                    }
-                }
+        remoteConn.setPort(dcmNode.getPort());
+        remoteConn.setHostname(dcmNode.getHostname());
+        remoteConn.setSocketCloseDelay(90);
+
+        remoteAE.setAssociationAcceptor(true);
+        remoteAE.addConnection(remoteConn);
+
+        device.addConnection(conn);
+        device.addApplicationEntity(ae);
+        ae.addConnection(conn);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        ScheduledExecutorService scheduledExecutor = Executors.newSingleThreadScheduledExecutor();
+        device.setExecutor(executor);
+        device.setScheduledExecutor(scheduledExecutor);
+
+        Attributes filmSessionAttrs = new Attributes();
+        filmSessionAttrs.setInt(Tag.NumberOfCopies, VR.IS, printOptions.getNumOfCopies());
+        filmSessionAttrs.setString(Tag.PrintPriority, VR.CS, printOptions.getPriority());
+        filmSessionAttrs.setString(Tag.MediumType, VR.CS, printOptions.getMediumType());
+        filmSessionAttrs.setString(Tag.FilmDestination, VR.CS, printOptions.getFilmDestination());
+        final String filmSessionUID = UIDUtils.createUID();
+
+        AAssociateRQ rq = new AAssociateRQ();
+        rq.addPresentationContext(new PresentationContext(1, printManagementSOPClass, UID.ImplicitVRLittleEndian));
+        rq.setCallingAET(ae.getAETitle());
+        rq.setCalledAET(remoteAE.getAETitle());
+        Association as = null;
+        try {
+            as = ae.connect(remoteConn, rq);
+            // Create a Basic Film Session
+            dimseRSPHandler(as.ncreate(printManagementSOPClass, UID.BasicFilmSessionSOPClass, filmSessionUID,
+                filmSessionAttrs, UID.ImplicitVRLittleEndian));
+
+            for (ExportLayout<? extends ImageElement> layout : layouts) {
+                printFilm(as, printManagementSOPClass, imageBoxSOPClass, filmSessionUID, layout);
             }
+
+            // The print action ends here. This will only delete the Film Session
+            as.ndelete(printManagementSOPClass, UID.BasicFilmSessionSOPClass, filmSessionUID);
+        } finally {
+            if (as != null && as.isReadyForDataTransfer()) {
+                as.waitForOutstandingRSP();
+                as.release();
+            }
+            executor.shutdown();
+            scheduledExecutor.shutdown();
         }
+    }
+
+    private void printFilm(Association as, String printManagementSOPClass, String imageBoxSOPClass,
+        String filmSessionUID, ExportLayout<? extends ImageElement> layout) throws IOException, InterruptedException {
+        Attributes filmBoxAttrs = new Attributes();
+        filmBoxAttrs.setString(Tag.FilmSizeID, VR.CS, printOptions.getFilmSizeId().toString());
+        filmBoxAttrs.setString(Tag.FilmOrientation, VR.CS, printOptions.getFilmOrientation());
+        filmBoxAttrs.setString(Tag.MagnificationType, VR.CS, printOptions.getMagnificationType());
+        filmBoxAttrs.setString(Tag.SmoothingType, VR.CS, printOptions.getSmoothingType());
+        filmBoxAttrs.setString(Tag.Trim, VR.CS, printOptions.getTrim());
+        filmBoxAttrs.setString(Tag.BorderDensity, VR.CS, printOptions.getBorderDensity());
+        filmBoxAttrs.setInt(Tag.MinDensity, VR.US, printOptions.getMinDensity());
+        filmBoxAttrs.setInt(Tag.MaxDensity, VR.US, printOptions.getMaxDensity());
+        filmBoxAttrs.setString(Tag.ImageDisplayFormat, VR.ST, printOptions.getImageDisplayFormat());
+        Attributes filmSessionSequenceObject = new Attributes();
+        filmSessionSequenceObject.setString(Tag.ReferencedSOPClassUID, VR.UI, UID.BasicFilmSessionSOPClass);
+        filmSessionSequenceObject.setString(Tag.ReferencedSOPInstanceUID, VR.UI, filmSessionUID);
+        filmBoxAttrs.ensureSequence(Tag.ReferencedFilmSessionSequence, 1).add(filmSessionSequenceObject);
+        final String filmBoxUID = UIDUtils.createUID();
 
-        return bufferedImage;
+        // Create a Basic Film Box. We need to get the Image Box UID from the response
+        DimseRSP ncreateFilmBoxRSP = as.ncreate(printManagementSOPClass, UID.BasicFilmBoxSOPClass, filmBoxUID,
+            filmBoxAttrs, UID.ImplicitVRLittleEndian);
+        dimseRSPHandler(ncreateFilmBoxRSP);
+        ncreateFilmBoxRSP.next();
+        Attributes imageBoxSequence = ncreateFilmBoxRSP.getDataset().getNestedDataset(Tag.ReferencedImageBoxSequence);
+
+        // Send N-SET message with the Image Box, the film is composed while writing the pixel data
+        FilmComposition film = layoutFilm(layout);
+        dimseRSPHandler(as.nset(printManagementSOPClass, imageBoxSOPClass,
+            imageBoxSequence.getString(Tag.ReferencedSOPInstanceUID), film, UID.ImplicitVRLittleEndian));
+        // Send N-ACTION message with the print action
+        dimseRSPHandler(as.naction(printManagementSOPClass, UID.BasicFilmBoxSOPClass, filmBoxUID, 1, null,
+            UID.ImplicitVRLittleEndian));
+        as.ndelete(printManagementSOPClass, UID.BasicFilmBoxSOPClass, filmBoxUID);
     }
 
-    private BufferedImage initialize(ExportLayout<? extends ImageElement> layout) {
+    private FilmComposition layoutFilm(ExportLayout<? extends ImageElement> layout) {
+        Dimension filmSize = initialize(layout);
+        Color borderColor = "WHITE".equals(printOptions.getBorderDensity()) ? Color.WHITE : Color.BLACK; //$NON-NLS-1$
+        Color background = "WHITE".equals(printOptions.getEmptyDensity()) ? Color.WHITE : Color.BLACK; //$NON-NLS-1$
+        FilmComposition film = new FilmComposition(filmSize.width, filmSize.height, printOptions.isColorPrint(),
+            background, borderColor.equals(background) ? null : borderColor);
+
+        final Map<LayoutConstraints, Component> elements = layout.getLayoutModel().getConstraints();
+        Iterator<Entry<LayoutConstraints, Component>> enumVal = elements.entrySet().iterator();
+        while (enumVal.hasNext()) {
+            Entry<LayoutConstraints, Component> e = enumVal.next();
+            LayoutConstraints key = e.getKey();
+            Component value = e.getValue();
+
+            ExportImage<? extends ImageElement> image = null;
+            Point2D.Double pad = new Point2D.Double(0.0, 0.0);
+
+            if (value instanceof ExportImage) {
+                image = (ExportImage) value;
+                formatImage(image, key, pad);
+            }
+
+            if (key.gridx == 0) {
+                wx = 0.0;
+            } else if (lastx < key.gridx) {
+                wx += lastwx;
+            }
+            double wy = lastwy[key.gridx];
+
+            double x = 5 + (placeholderX * wx) + (MathUtil.isEqualToZero(wx) ? 0 : key.gridx * 5) + pad.x;
+            double y = 5 + (placeholderY * wy) + (MathUtil.isEqualToZero(wy) ? 0 : key.gridy * 5) + pad.y;
+            lastx = key.gridx;
+            lastwx = key.weightx;
+            for (int i = key.gridx; i < key.gridx + key.gridwidth; i++) {
+                lastwy[i] += key.weighty;
+            }
+
+            if (image != null) {
+                film.cells.add(new FilmCell(image, x, y));
+            }
+        }
+        return film;
+    }
+
+    private Dimension initialize(ExportLayout<? extends ImageElement> layout) {
         Dimension dimGrid = layout.getLayoutModel().getGridSize();
         FilmSize filmSize = printOptions.getFilmSizeId();
         PrintOptions.DotPerInches dpi = printOptions.getDpi();
@@ -185,11 +287,7 @@ public class DicomPrint {
         lastwy = new double[dimGrid.width];
         wx = 0.0;
 
-        if (printOptions.isColorPrint()) {
-            return createRGBBufferedImage(width, height);
-        } else {
-            return createGrayBufferedImage(width, height);
-        }
+        return new Dimension(width, height);
     }
 
     private void formatImage(ExportImage<? extends ImageElement> image, LayoutConstraints key, Point2D.Double pad) {
@@ -251,170 +349,147 @@ public class DicomPrint {
         return new BufferedImage(cm, r, false, null);
     }
 
-    public static BufferedImage createGrayBufferedImage(int destWidth, int destHeight) {
-        ColorSpace cs = ColorSpace.getInstance(ColorSpace.CS_GRAY);
-        ColorModel cm = new ComponentColorModel(cs, false, false, Transparency.OPAQUE, DataBuffer.TYPE_BYTE);
-        WritableRaster r = cm.createCompatibleWritableRaster(destWidth, destHeight);
-        return new BufferedImage(cm, r, false, null);
+    private void dimseRSPHandler(DimseRSP response) throws IOException, InterruptedException {
+        response.next();
+        Attributes command = response.getCommand();
+        if (command.getInt(Tag.Status, 0) != 0) {
+            throw new IOException("Unable to print the image. DICOM response status: " + command.getInt(Tag.Status, 0)); //$NON-NLS-1$
+        }
     }
 
-    public void printImage(BufferedImage image) throws Exception {
-        Attributes filmSessionAttrs = new Attributes();
-        Attributes filmBoxAttrs = new Attributes();
-        Attributes imageBoxAttrs = new Attributes();
-        Attributes dicomImage = new Attributes();
-        final String printManagementSOPClass = printOptions.isColorPrint() ? UID.BasicColorPrintManagementMetaSOPClass
-            : UID.BasicGrayscalePrintManagementMetaSOPClass;
-        final String imageBoxSOPClass =
-            printOptions.isColorPrint() ? UID.BasicColorImageBoxSOPClass : UID.BasicGrayscaleImageBoxSOPClass;
-
-        storeRasterInDicom(image, dicomImage, printOptions.isColorPrint());
-
-        // writeDICOM(new File("/tmp/print.dcm"), dicomImage);
-
-        String weasisAet = BundleTools.SYSTEM_PREFERENCES.getProperty("weasis.aet", "WEASIS_AE"); //$NON-NLS-1$ //$NON-NLS-2$
-
-        Device device = new Device(weasisAet);
-        ApplicationEntity ae = new ApplicationEntity(weasisAet);
-        Connection conn = new Connection();
-
-        ApplicationEntity remoteAE = new ApplicationEntity(dcmNode.getAeTitle());
-        Connection remoteConn = new Connection();
-
-        ae.addConnection(conn);
-        ae.setAssociationInitiator(true);
-        ae.setAETitle(weasisAet);
-
-        remoteConn.setPort(dcmNode.getPort());
-        remoteConn.setHostname(dcmNode.getHostname());
-        remoteConn.setSocketCloseDelay(90);
-
-        remoteAE.setAssociationAcceptor(true);
-        remoteAE.addConnection(remoteConn);
+    private static class FilmCell {
+        final ExportImage<? extends ImageElement> image;
+        final double x;
+        final double y;
 
-        device.addConnection(conn);
-        device.addApplicationEntity(ae);
-        ae.addConnection(conn);
-        device.setExecutor(Executors.newSingleThreadExecutor());
-        device.setScheduledExecutor(Executors.newSingleThreadScheduledExecutor());
+        FilmCell(ExportImage<? extends ImageElement> image, double x, double y) {
+            this.image = image;
+            this.x = x;
+            this.y = y;
+        }
+    }
 
-        filmSessionAttrs.setInt(Tag.NumberOfCopies, VR.IS, printOptions.getNumOfCopies());
-        filmSessionAttrs.setString(Tag.PrintPriority, VR.CS, printOptions.getPriority());
-        filmSessionAttrs.setString(Tag.MediumType, VR.CS, printOptions.getMediumType());
-        filmSessionAttrs.setString(Tag.FilmDestination, VR.CS, printOptions.getFilmDestination());
-        filmBoxAttrs.setString(Tag.FilmSizeID, VR.CS, printOptions.getFilmSizeId().toString());
-        filmBoxAttrs.setString(Tag.FilmOrientation, VR.CS, printOptions.getFilmOrientation());
-        filmBoxAttrs.setString(Tag.MagnificationType, VR.CS, printOptions.getMagnificationType());
-        filmBoxAttrs.setString(Tag.SmoothingType, VR.CS, printOptions.getSmoothingType());
-        filmBoxAttrs.setString(Tag.Trim, VR.CS, printOptions.getTrim());
-        filmBoxAttrs.setString(Tag.BorderDensity, VR.CS, printOptions.getBorderDensity());
-        filmBoxAttrs.setInt(Tag.MinDensity, VR.US, printOptions.getMinDensity());
-        filmBoxAttrs.setInt(Tag.MaxDensity, VR.US, printOptions.getMaxDensity());
-        filmBoxAttrs.setString(Tag.ImageDisplayFormat, VR.ST, printOptions.getImageDisplayFormat());
-        imageBoxAttrs.setInt(Tag.ImageBoxPosition, VR.US, 1);
+    /**
+     * Write the Image Box with the pixel data of the film. The film is rendered by horizontal bands of limited size
+     * which are written directly into the association, only the cells intersecting a band are drawn.
+     */
+    private static class FilmComposition implements DataWriter {
+        // Maximum size of a band in bytes
+        private static final int BAND_SIZE = 8 * 1024 * 1024;
+
+        private final int width;
+        private final int height;
+        private final boolean color;
+        private final Color background;
+        private final Color borderColor;
+        private final List<FilmCell> cells = new ArrayList<>();
+
+        FilmComposition(int width, int height, boolean color, Color background, Color borderColor) {
+            this.width = width;
+            this.height = height;
+            this.color = color;
+            this.background = background;
+            this.borderColor = borderColor;
+        }
 
-        Sequence seq = imageBoxAttrs.ensureSequence(
-            printOptions.isColorPrint() ? Tag.BasicColorImageSequence : Tag.BasicGrayscaleImageSequence, 1);
-        seq.add(dicomImage);
-        final String filmSessionUID = UIDUtils.createUID();
-        final String filmBoxUID = UIDUtils.createUID();
-        Attributes filmSessionSequenceObject = new Attributes();
-        filmSessionSequenceObject.setString(Tag.ReferencedSOPClassUID, VR.UI, UID.BasicFilmSessionSOPClass);
-        filmSessionSequenceObject.setString(Tag.ReferencedSOPInstanceUID, VR.UI, filmSessionUID);
-        seq = filmBoxAttrs.ensureSequence(Tag.ReferencedFilmSessionSequence, 1);
-        seq.add(filmSessionSequenceObject);
+        @Override
+        public void writeTo(PDVOutputStream out, String tsuid) throws IOException {
+            int samples = color ? 3 : 1;
+            long length = (long) width * height * samples;
+            if (length > Integer.MAX_VALUE - 1) {
+                throw new IOException("The film is too large: " + width + "x" + height); //$NON-NLS-1$ //$NON-NLS-2$
+            }
 
-        AAssociateRQ rq = new AAssociateRQ();
-        rq.addPresentationContext(new PresentationContext(1, printManagementSOPClass, UID.ImplicitVRLittleEndian));
-        rq.setCallingAET(ae.getAETitle());
-        rq.setCalledAET(remoteAE.getAETitle());
-        Association as = ae.connect(remoteConn, rq);
-        try {
-            // Create a Basic Film Session
-            dimseRSPHandler(as.ncreate(printManagementSOPClass, UID.BasicFilmSessionSOPClass, filmSessionUID,
-                filmSessionAttrs, UID.ImplicitVRLittleEndian));
-            // Create a Basic Film Box. We need to get the Image Box UID from the response
-            DimseRSP ncreateFilmBoxRSP = as.ncreate(printManagementSOPClass, UID.BasicFilmBoxSOPClass, filmBoxUID,
-                filmBoxAttrs, UID.ImplicitVRLittleEndian);
-            dimseRSPHandler(ncreateFilmBoxRSP);
-            ncreateFilmBoxRSP.next();
-            Attributes imageBoxSequence =
-                ncreateFilmBoxRSP.getDataset().getNestedDataset(Tag.ReferencedImageBoxSequence);
-            // Send N-SET message with the Image Box
-            dimseRSPHandler(as.nset(printManagementSOPClass, imageBoxSOPClass,
-                imageBoxSequence.getString(Tag.ReferencedSOPInstanceUID), imageBoxAttrs, UID.ImplicitVRLittleEndian));
-            // Send N-ACTION message with the print action
-            dimseRSPHandler(as.naction(printManagementSOPClass, UID.BasicFilmBoxSOPClass, filmBoxUID, 1, null,
-                UID.ImplicitVRLittleEndian));
-            // The print action ends here. This will only delete the Film Box and Film Session
-            as.ndelete(printManagementSOPClass, UID.BasicFilmBoxSOPClass, filmBoxUID);
-            as.ndelete(printManagementSOPClass, UID.BasicFilmSessionSOPClass, filmSessionUID);
-        } finally {
-            if (as != null && as.isReadyForDataTransfer()) {
-                as.waitForOutstandingRSP();
-                as.release();
+            Attributes imageBoxAttrs = new Attributes(1);
+            imageBoxAttrs.setInt(Tag.ImageBoxPosition, VR.US, 1);
+            Attributes dicomImage = new Attributes();
+            storeImageDescription(dicomImage, width, height, color);
+
+            @SuppressWarnings("resource")
+            DicomOutputStream dos = new DicomOutputStream(out, tsuid);
+            imageBoxAttrs.writeTo(dos);
+            dos.writeHeader(color ? Tag.BasicColorImageSequence : Tag.BasicGrayscaleImageSequence, VR.SQ, -1);
+            dos.writeHeader(Tag.Item, null, -1);
+            dicomImage.writeTo(dos);
+            dos.writeHeader(Tag.PixelData, VR.OB, (int) ((length + 1) & ~1));
+            writeBands(dos, samples);
+            if ((length & 1) != 0) {
+                dos.write(0);
             }
+            dos.writeHeader(Tag.ItemDelimitationItem, null, 0);
+            dos.writeHeader(Tag.SequenceDelimitationItem, null, 0);
+            dos.flush();
         }
 
-    }
+        private void writeBands(DicomOutputStream dos, int samples) throws IOException {
+            int bandHeight = Math.max(1, Math.min(height, BAND_SIZE / (width * samples)));
+            BufferedImage band = color ? createRGBBufferedImage(width, bandHeight)
+                : new BufferedImage(width, bandHeight, BufferedImage.TYPE_BYTE_GRAY);
+            byte[] data = ((DataBufferByte) band.getRaster().getDataBuffer()).getData();
 
-    private void dimseRSPHandler(DimseRSP response) throws IOException, InterruptedException {
-        response.next();
-        Attributes command = response.getCommand();
-        if (command.getInt(Tag.Status, 0) != 0) {
-            throw new IOException("Unable to print the image. DICOM response status: " + command.getInt(Tag.Status, 0)); //$NON-NLS-1$
+            boolean[] wasBuffered = new boolean[cells.size()];
+            for (int i = 0; i < cells.size(); i++) {
+                wasBuffered[i] = ImagePrint.disableDoubleBuffering(cells.get(i).image);
+            }
+            try {
+                for (int y0 = 0; y0 < height; y0 += bandHeight) {
+                    int rows = Math.min(bandHeight, height - y0);
+                    drawBand(band, y0, rows);
+                    dos.write(data, 0, rows * width * samples);
+                }
+            } finally {
+                for (int i = 0; i < cells.size(); i++) {
+                    ImagePrint.restoreDoubleBuffering(cells.get(i).image, wasBuffered[i]);
+                }
+            }
         }
-    }
 
-    public static void storeRasterInDicom(BufferedImage image, Attributes dcmObj, Boolean printInColor) {
-        byte[] bytesOut = null;
-        if (dcmObj != null && image != null) {
-            dcmObj.setInt(Tag.Columns, VR.US, image.getWidth());
-            dcmObj.setInt(Tag.Rows, VR.US, image.getHeight());
-            dcmObj.setInt(Tag.PixelRepresentation, VR.US, 0);
-            dcmObj.setString(Tag.PhotometricInterpretation, VR.CS, printInColor ? "RGB" : "MONOCHROME2"); //$NON-NLS-1$ //$NON-NLS-2$
-            dcmObj.setInt(Tag.SamplesPerPixel, VR.US, printInColor ? 3 : 1);
-            dcmObj.setInt(Tag.BitsAllocated, VR.US, 8);
-            dcmObj.setInt(Tag.BitsStored, VR.US, 8);
-            dcmObj.setInt(Tag.HighBit, VR.US, 7);
-            // Assumed that the displayed image has always an 1/1 aspect ratio.
-            dcmObj.setInt(Tag.PixelAspectRatio, VR.IS, 1, 1);
-            // Issue with some PrintSCP servers
-            // dcmObj.putString(Tag.TransferSyntaxUID, VR.UI, UID.ImplicitVRLittleEndian);
-
-            DataBuffer dataBuffer;
-            if (printInColor) {
-                // Must be PixelInterleavedSampleModel
-                dcmObj.setInt(Tag.PlanarConfiguration, VR.US, 0);
-                dataBuffer = image.getRaster().getDataBuffer();
-            } else {
-                dataBuffer = convertRGBImageToMonochrome(image).getRaster().getDataBuffer();
-            }
+        private void drawBand(BufferedImage band, int y0, int rows) {
+            Graphics2D g2d = band.createGraphics();
+            try {
+                g2d.setBackground(background);
+                g2d.clearRect(0, 0, band.getWidth(), band.getHeight());
+                // Move the band at its position in the film
+                g2d.translate(0, -y0);
+                for (FilmCell cell : cells) {
+                    Dimension viewSize = cell.image.getSize();
+                    // Include the border line
+                    if (cell.y + viewSize.height + 2 < y0 || cell.y - 2 > y0 + rows) {
+                        continue;
+                    }
+                    // Set us to the upper left corner
+                    g2d.translate(cell.x, cell.y);
+                    g2d.setClip(cell.image.getBounds());
+                    cell.image.draw(g2d);
+                    g2d.translate(-cell.x, -cell.y);
 
-            if (dataBuffer instanceof DataBufferByte) {
-                bytesOut = ((DataBufferByte) dataBuffer).getData();
-            } else if (dataBuffer instanceof DataBufferShort || dataBuffer instanceof DataBufferUShort) {
-                short[] data = dataBuffer instanceof DataBufferShort ? ((DataBufferShort) dataBuffer).getData()
-                    : ((DataBufferUShort) dataBuffer).getData();
-                bytesOut = new byte[data.length * 2];
-                for (int i = 0; i < data.length; i++) {
-                    bytesOut[i * 2] = (byte) (data[i] & 0xFF);
-                    bytesOut[i * 2 + 1] = (byte) ((data[i] >>> 8) & 0xFF);
+                    if (borderColor != null) {
+                        g2d.setClip(null);
+                        g2d.setColor(borderColor);
+                        g2d.setStroke(new BasicStroke(2));
+                        g2d.drawRect((int) cell.x - 1, (int) cell.y - 1, viewSize.width + 1, viewSize.height + 1);
+                    }
                 }
+            } finally {
+                g2d.dispose();
             }
-            dcmObj.setBytes(Tag.PixelData, VR.OW, bytesOut);
         }
     }
 
-    private static BufferedImage convertRGBImageToMonochrome(BufferedImage colorImage) {
-        if (colorImage.getType() == BufferedImage.TYPE_BYTE_GRAY) {
-            return colorImage;
+    private static void storeImageDescription(Attributes dcmObj, int width, int height, boolean printInColor) {
+        dcmObj.setInt(Tag.SamplesPerPixel, VR.US, printInColor ? 3 : 1);
+        dcmObj.setString(Tag.PhotometricInterpretation, VR.CS, printInColor ? "RGB" : "MONOCHROME2"); //$NON-NLS-1$ //$NON-NLS-2$
+        if (printInColor) {
+            // Must be PixelInterleavedSampleModel
+            dcmObj.setInt(Tag.PlanarConfiguration, VR.US, 0);
         }
-        BufferedImage image =
-            new BufferedImage(colorImage.getWidth(), colorImage.getHeight(), BufferedImage.TYPE_BYTE_GRAY);
-        Graphics g = image.getGraphics();
-        g.drawImage(colorImage, 0, 0, null);
-        g.dispose();
-        return image;
+        dcmObj.setInt(Tag.Rows, VR.US, height);
+        dcmObj.setInt(Tag.Columns, VR.US, width);
+        // Assumed that the displayed image has always an 1/1 aspect ratio.
+        dcmObj.setInt(Tag.PixelAspectRatio, VR.IS, 1, 1);
+        dcmObj.setInt(Tag.BitsAllocated, VR.US, 8);
+        dcmObj.setInt(Tag.BitsStored, VR.US, 8);
+        dcmObj.setInt(Tag.HighBit, VR.US, 7);
+        dcmObj.setInt(Tag.PixelRepresentation, VR.US, 0);
     }
-}
\ No newline at end of file
+}
@@ -239,7 +239,7 @@ public class DicomPrintDialog<I extends ImageElement> extends JDialog {
         }
 
         try {
-            dicomPrint.printImage(dicomPrint.printImage(layout));
+            dicomPrint.print(layout);
         } catch (Exception e) {
             LOGGER.error("DICOM Print Service", e); //$NON-NLS-1$
             JOptionPane.showMessageDialog(this, Messages.getString("DicomPrintDialog.error_print"), //$NON-NLS-1$
@@ -0,0 +1,272 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2018 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.dicom.explorer.scp;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.GeneralSecurityException;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.dcm4che3.data.Attributes;
+import org.dcm4che3.data.Tag;
+import org.dcm4che3.data.VR;
+import org.dcm4che3.io.DicomOutputStream;
+import org.dcm4che3.net.ApplicationEntity;
+import org.dcm4che3.net.Association;
+import org.dcm4che3.net.Connection;
+import org.dcm4che3.net.Device;
+import org.dcm4che3.net.PDVInputStream;
+import org.dcm4che3.net.Status;
+import org.dcm4che3.net.TransferCapability;
+import org.dcm4che3.net.pdu.PresentationContext;
+import org.dcm4che3.net.service.BasicCEchoSCP;
+import org.dcm4che3.net.service.BasicCStoreSCP;
+import org.dcm4che3.net.service.DicomServiceException;
+import org.dcm4che3.net.service.DicomServiceRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.weasis.core.api.util.FileUtil;
+import org.weasis.core.api.util.ThreadUtil;
+
+/**
+ * Storage SCP (C-STORE and C-ECHO) writing the received instances in a directory.
+ *
+ * <ul>
+ * <li>Each association is handled by its own thread, several modalities can send at the same time.</li>
+ * <li>The dataset is streamed from the network to a temporary file, which is renamed when complete. The listener is
+ * notified only with complete files.</li>
+ * <li>The calling AE titles and the transfer syntaxes can be restricted.</li>
+ * </ul>
+ */
+public class StoreSCP implements Closeable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(StoreSCP.class);
+
+    private static final String PART_EXT = ".part"; //$NON-NLS-1$
+    private static final String DICOM_EXT = ".dcm"; //$NON-NLS-1$
+
+    private final File storageDir;
+    private final Device device = new Device("weasis-store-scp"); //$NON-NLS-1$
+    private final ApplicationEntity ae;
+    private final Connection conn = new Connection();
+    private final AtomicLong receivedInstances = new AtomicLong();
+    private final AtomicLong failedInstances = new AtomicLong();
+
+    private ExecutorService executor;
+    private ScheduledExecutorService scheduledExecutor;
+    private volatile Consumer<File> storeListener;
+
+    /**
+     * @param aeTitle
+     *            the called AE title, "*" accepts any called AE title
+     * @param hostname
+     *            the local interface, null for all the interfaces
+     * @param port
+     *            the listening port
+     * @param storageDir
+     *            the directory where the instances are written
+     */
+    public StoreSCP(String aeTitle, String hostname, int port, File storageDir) {
+        this.storageDir = Objects.requireNonNull(storageDir);
+        this.ae = new ApplicationEntity(Objects.requireNonNull(aeTitle));
+        conn.setHostname(hostname);
+        conn.setPort(port);
+        device.addConnection(conn);
+        device.addApplicationEntity(ae);
+        ae.setAssociationAcceptor(true);
+        ae.addConnection(conn);
+        setTransferSyntaxes();
+
+        DicomServiceRegistry serviceRegistry = new DicomServiceRegistry();
+        serviceRegistry.addDicomService(new BasicCEchoSCP());
+        serviceRegistry.addDicomService(new StoreService());
+        device.setDimseRQHandler(serviceRegistry);
+    }
+
+    /**
+     * @param transferSyntaxes
+     *            the accepted transfer syntax UIDs for all the SOP classes, none or "*" accepts all the transfer
+     *            syntaxes
+     */
+    public void setTransferSyntaxes(String... transferSyntaxes) {
+        String[] tss = transferSyntaxes == null || transferSyntaxes.length == 0 ? new String[] { "*" } //$NON-NLS-1$
+            : transferSyntaxes;
+        ae.removeTransferCapabilityFor("*", TransferCapability.Role.SCP); //$NON-NLS-1$
+        ae.addTransferCapability(new TransferCapability(null, "*", TransferCapability.Role.SCP, tss)); //$NON-NLS-1$
+    }
+
+    /**
+     * @param aeTitles
+     *            the calling AE titles allowed to send, none accepts all the AE titles
+     */
+    public void setAcceptedCallingAETitles(String... aeTitles) {
+        ae.setAcceptedCallingAETitles(aeTitles == null ? new String[0] : aeTitles);
+    }
+
+    /**
+     * @param maxAssociations
+     *            the maximum number of simultaneous associations, 0 for no limit
+     */
+    public void setMaxAssociations(int maxAssociations) {
+        device.setLimitOpenAssociations(Math.max(0, maxAssociations));
+    }
+
+    /**
+     * @param storeListener
+     *            called from the network threads with each complete file
+     */
+    public void setStoreListener(Consumer<File> storeListener) {
+        this.storeListener = storeListener;
+    }
+
+    public synchronized void start() throws IOException, GeneralSecurityException {
+        if (executor != null) {
+            return;
+        }
+        if (!storageDir.exists() && !storageDir.mkdirs()) {
+            throw new IOException("Cannot create " + storageDir); //$NON-NLS-1$
+        }
+        executor = Executors.newCachedThreadPool(ThreadUtil.getThreadFactory("DICOM Store SCP")); //$NON-NLS-1$
+        scheduledExecutor = Executors.newSingleThreadScheduledExecutor();
+        device.setExecutor(executor);
+        device.setScheduledExecutor(scheduledExecutor);
+        try {
+            device.bindConnections();
+        } catch (IOException | GeneralSecurityException e) {
+            shutdownExecutors();
+            throw e;
+        }
+        LOGGER.info("Start DICOM Store SCP {}@{}:{}", ae.getAETitle(), conn.getHostname(), conn.getPort()); //$NON-NLS-1$
+    }
+
+    public synchronized boolean isRunning() {
+        return executor != null;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (executor != null) {
+            device.unbindConnections();
+            shutdownExecutors();
+            LOGGER.info("Stop DICOM Store SCP {}", ae.getAETitle()); //$NON-NLS-1$
+        }
+    }
+
+    private void shutdownExecutors() {
+        executor.shutdownNow();
+        scheduledExecutor.shutdownNow();
+        executor = null;
+        scheduledExecutor = null;
+    }
+
+    public int getPort() {
+        return conn.getPort();
+    }
+
+    public File getStorageDir() {
+        return storageDir;
+    }
+
+    /**
+     * Delete the files of this SCP older than their expiration delay. The other files of the directory are kept.
+     *
+     * @param partExpiration
+     *            the delay in milliseconds since the last modification of an interrupted transfer
+     * @param dicomExpiration
+     *            the delay in milliseconds since the last modification of a received instance, the received instances
+     *            are kept when it is zero or negative
+     * @return the number of deleted files
+     */
+    public int deleteExpiredFiles(long partExpiration, long dicomExpiration) {
+        File[] files = storageDir.listFiles(f -> f.isFile()
+            && (f.getName().endsWith(PART_EXT) || dicomExpiration > 0 && f.getName().endsWith(DICOM_EXT)));
+        if (files == null) {
+            return 0;
+        }
+        long now = System.currentTimeMillis();
+        int nb = 0;
+        for (File file : files) {
+            long expiration = file.getName().endsWith(PART_EXT) ? partExpiration : dicomExpiration;
+            if (now - file.lastModified() > expiration && FileUtil.delete(file)) {
+                nb++;
+            }
+        }
+        return nb;
+    }
+
+    public long getReceivedInstances() {
+        return receivedInstances.get();
+    }
+
+    public long getFailedInstances() {
+        return failedInstances.get();
+    }
+
+    private class StoreService extends BasicCStoreSCP {
+
+        StoreService() {
+            super("*"); //$NON-NLS-1$
+        }
+
+        @Override
+        protected void store(Association as, PresentationContext pc, Attributes rq, PDVInputStream data,
+            Attributes rsp) throws IOException {
+            String cuid = rq.getString(Tag.AffectedSOPClassUID);
+            String iuid = rq.getString(Tag.AffectedSOPInstanceUID);
+            String tsuid = pc.getTransferSyntax();
+            if (iuid == null || !isValidFileName(iuid)) {
+                failedInstances.incrementAndGet();
+                throw new DicomServiceException(Status.CannotUnderstand, "Invalid SOP Instance UID: " + iuid); //$NON-NLS-1$
+            }
+            // Unique name while writing, the same instance can be sent by two associations
+            File part = new File(storageDir, iuid + "." + Thread.currentThread().getId() + PART_EXT); //$NON-NLS-1$
+            File file = new File(storageDir, iuid + DICOM_EXT);
+            try {
+                try (DicomOutputStream out = new DicomOutputStream(part)) {
+                    out.writeFileMetaInformation(as.createFileMetaInformation(iuid, cuid, tsuid));
+                    data.copyTo(out);
+                }
+                Files.move(part.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                failedInstances.incrementAndGet();
+                Files.deleteIfExists(part.toPath());
+                LOGGER.error("Cannot store {} from {}", iuid, as.getCallingAET(), e); //$NON-NLS-1$
+                throw new DicomServiceException(Status.OutOfResources, e);
+            }
+            receivedInstances.incrementAndGet();
+            rsp.setInt(Tag.Status, VR.US, Status.Success);
+
+            Consumer<File> listener = storeListener;
+            if (listener != null) {
+                listener.accept(file);
+            }
+        }
+    }
+
+    private static boolean isValidFileName(String uid) {
+        // A UID contains only digits and dots
+        for (int i = 0; i < uid.length(); i++) {
+            char c = uid.charAt(i);
+            if ((c < '0' || c > '9') && c != '.') {
+                return false;
+            }
+        }
+        return !uid.isEmpty();
+    }
+}
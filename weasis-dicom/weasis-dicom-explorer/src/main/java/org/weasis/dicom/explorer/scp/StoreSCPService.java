@@ -0,0 +1,194 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2018 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.dicom.explorer.scp;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.weasis.core.api.gui.util.AppProperties;
+import org.weasis.core.api.service.BundleTools;
+import org.weasis.core.api.util.StringUtil;
+import org.weasis.core.api.util.ThreadUtil;
+import org.weasis.dicom.explorer.DicomModel;
+import org.weasis.dicom.explorer.LoadLocalDicom;
+
+/**
+ * Always-on Storage SCP configured by the preferences. The received instances are added to the DICOM model while the
+ * studies are still being sent.
+ */
+public final class StoreSCPService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(StoreSCPService.class);
+
+    public static final String SCP_ENABLE = "weasis.dicom.scp.enable"; //$NON-NLS-1$
+    public static final String SCP_AET = "weasis.dicom.scp.aet"; //$NON-NLS-1$
+    public static final String SCP_PORT = "weasis.dicom.scp.port"; //$NON-NLS-1$
+    /**
+     * Calling AE titles separated by a comma, empty accepts all the AE titles
+     */
+    public static final String SCP_CALLING_AETS = "weasis.dicom.scp.calling.aets"; //$NON-NLS-1$
+    /**
+     * Transfer syntax UIDs separated by a comma, empty accepts all the transfer syntaxes
+     */
+    public static final String SCP_TRANSFER_SYNTAXES = "weasis.dicom.scp.tsuids"; //$NON-NLS-1$
+    public static final String SCP_MAX_ASSOCIATIONS = "weasis.dicom.scp.max.associations"; //$NON-NLS-1$
+    public static final String SCP_DIR = "weasis.dicom.scp.dir"; //$NON-NLS-1$
+    /**
+     * Number of days the received files are kept, zero or negative keeps them (default)
+     */
+    public static final String SCP_RETENTION_DAYS = "weasis.dicom.scp.retention.days"; //$NON-NLS-1$
+
+    public static final String DEFAULT_AET = "WEASIS_AE"; //$NON-NLS-1$
+    public static final int DEFAULT_PORT = 11113;
+    public static final int DEFAULT_MAX_ASSOCIATIONS = 10;
+
+    // Period (ms) for adding the received files into the model
+    private static final long INGEST_PERIOD = 500L;
+    private static final int MAX_FILES_BY_TASK = 500;
+    // The interrupted transfers are kept one day
+    private static final long PART_EXPIRATION = TimeUnit.DAYS.toMillis(1);
+
+    private static final StoreSCPService instance = new StoreSCPService();
+
+    private final ConcurrentLinkedQueue<File> receivedFiles = new ConcurrentLinkedQueue<>();
+    private DicomModel dicomModel;
+    private StoreSCP storeSCP;
+    private ScheduledExecutorService ingestExecutor;
+    private boolean purged = false;
+
+    private StoreSCPService() {
+    }
+
+    public static StoreSCPService getInstance() {
+        return instance;
+    }
+
+    public static boolean isEnabled() {
+        return BundleTools.SYSTEM_PREFERENCES.getBooleanProperty(SCP_ENABLE, false);
+    }
+
+    public static String getAeTitle() {
+        return BundleTools.SYSTEM_PREFERENCES.getProperty(SCP_AET,
+            BundleTools.SYSTEM_PREFERENCES.getProperty("weasis.aet", DEFAULT_AET)); //$NON-NLS-1$
+    }
+
+    public static File getStorageDir() {
+        String dir = BundleTools.SYSTEM_PREFERENCES.getProperty(SCP_DIR, null);
+        if (StringUtil.hasText(dir)) {
+            return new File(dir);
+        }
+        return new File(AppProperties.WEASIS_PATH, "data" + File.separator + "store-scp"); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    static String[] getListProperty(String key) {
+        String value = BundleTools.SYSTEM_PREFERENCES.getProperty(key, null);
+        if (!StringUtil.hasText(value)) {
+            return new String[0];
+        }
+        return Arrays.stream(value.split(",")).map(String::trim).filter(StringUtil::hasText).toArray(String[]::new); //$NON-NLS-1$
+    }
+
+    public synchronized void start(DicomModel model) {
+        this.dicomModel = Objects.requireNonNull(model);
+        restart();
+    }
+
+    public synchronized void stop() {
+        stopListening();
+        this.dicomModel = null;
+    }
+
+    public synchronized boolean isRunning() {
+        return storeSCP != null && storeSCP.isRunning();
+    }
+
+    /**
+     * Apply the preferences: listen when the service is enabled.
+     */
+    public synchronized void restart() {
+        stopListening();
+        if (dicomModel == null || !isEnabled()) {
+            return;
+        }
+        StoreSCP scp = new StoreSCP(getAeTitle(), null,
+            BundleTools.SYSTEM_PREFERENCES.getIntProperty(SCP_PORT, DEFAULT_PORT), getStorageDir());
+        scp.setAcceptedCallingAETitles(getListProperty(SCP_CALLING_AETS));
+        scp.setTransferSyntaxes(getListProperty(SCP_TRANSFER_SYNTAXES));
+        scp.setMaxAssociations(
+            BundleTools.SYSTEM_PREFERENCES.getIntProperty(SCP_MAX_ASSOCIATIONS, DEFAULT_MAX_ASSOCIATIONS));
+        scp.setStoreListener(receivedFiles::add);
+        try {
+            scp.start();
+        } catch (Exception e) {
+            LOGGER.error("Cannot start the DICOM Store SCP", e); //$NON-NLS-1$
+            return;
+        }
+        storeSCP = scp;
+        ingestExecutor = Executors.newSingleThreadScheduledExecutor(ThreadUtil.getThreadFactory("Store SCP Ingest")); //$NON-NLS-1$
+        if (!purged) {
+            purged = true;
+            // Only the old files, the files of this session can be read by the viewers
+            long retention =
+                TimeUnit.DAYS.toMillis(BundleTools.SYSTEM_PREFERENCES.getIntProperty(SCP_RETENTION_DAYS, 0));
+            ingestExecutor.execute(() -> {
+                int nb = scp.deleteExpiredFiles(PART_EXPIRATION, retention);
+                LOGGER.debug("Delete {} expired files from {}", nb, scp.getStorageDir()); //$NON-NLS-1$
+            });
+        }
+        final DicomModel model = dicomModel;
+        ingestExecutor.scheduleWithFixedDelay(() -> ingest(model), INGEST_PERIOD, INGEST_PERIOD,
+            TimeUnit.MILLISECONDS);
+    }
+
+    private void stopListening() {
+        if (storeSCP != null) {
+            storeSCP.close();
+            storeSCP = null;
+        }
+        if (ingestExecutor != null) {
+            ingestExecutor.shutdown();
+            ingestExecutor = null;
+            // The files already received are loaded
+            if (dicomModel != null) {
+                ingest(dicomModel);
+            }
+        }
+        receivedFiles.clear();
+    }
+
+    private void ingest(DicomModel model) {
+        List<File> files = new ArrayList<>();
+        File file;
+        while ((file = receivedFiles.poll()) != null) {
+            files.add(file);
+            if (files.size() == MAX_FILES_BY_TASK) {
+                load(files, model);
+                files = new ArrayList<>();
+            }
+        }
+        if (!files.isEmpty()) {
+            load(files, model);
+        }
+    }
+
+    private static void load(List<File> files, DicomModel model) {
+        DicomModel.LOADING_EXECUTOR
+            .execute(new LoadLocalDicom(files.toArray(new File[files.size()]), false, model, false));
+    }
+}
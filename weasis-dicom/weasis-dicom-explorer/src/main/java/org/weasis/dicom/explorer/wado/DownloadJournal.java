@@ -0,0 +1,287 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2018 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.dicom.explorer.wado;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.weasis.core.api.gui.util.AppProperties;
+import org.weasis.core.api.util.FileUtil;
+import org.weasis.core.api.util.StringUtil;
+
+/**
+ * Persistent checkpoint of a download (a series with WADO or a study with C-GET/C-MOVE), so that a retry or a restart
+ * of the application requests only the missing instances.
+ *
+ * <ul>
+ * <li>The received files are written in the directory of the journal, which is not in the temporary directory of the
+ * application.</li>
+ * <li>The journal is an append-only log, each received instance is recorded when the file is complete.</li>
+ * <li>A partial file can be recorded with the validator of the HTTP response (ETag or Last-Modified) for resuming
+ * with a Range request.</li>
+ * <li>A completed journal and the expired journals are deleted at the next startup.</li>
+ * </ul>
+ */
+public final class DownloadJournal {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DownloadJournal.class);
+
+    public static final File JOURNAL_DIR =
+        new File(AppProperties.WEASIS_PATH, "data" + File.separator + "downloads"); //$NON-NLS-1$ //$NON-NLS-2$
+
+    private static final String JOURNAL_FILE = "journal.log"; //$NON-NLS-1$
+    private static final String RECEIVED = "R"; //$NON-NLS-1$
+    private static final String PARTIAL = "P"; //$NON-NLS-1$
+    private static final String REMOVED = "X"; //$NON-NLS-1$
+    private static final String COMPLETE = "C"; //$NON-NLS-1$
+    private static final String SEPARATOR = "\t"; //$NON-NLS-1$
+    // An unfinished journal is kept one week
+    private static final long EXPIRATION = TimeUnit.DAYS.toMillis(7);
+
+    private static final Map<String, DownloadJournal> journals = new HashMap<>();
+    private static boolean purged = false;
+
+    private final File directory;
+    private final File journalFile;
+    private final Map<String, String> receivedFiles = new HashMap<>();
+    private final Map<String, String[]> partialFiles = new HashMap<>();
+    private boolean complete;
+
+    private DownloadJournal(File directory) {
+        this.directory = directory;
+        this.journalFile = new File(directory, JOURNAL_FILE);
+        read();
+    }
+
+    /**
+     * Get the journal of a series or of a study.
+     *
+     * @param uid
+     *            the SeriesInstanceUID or the StudyInstanceUID
+     * @return the journal, or null when the directory cannot be created
+     */
+    public static synchronized DownloadJournal open(String uid) {
+        if (!StringUtil.hasText(uid)) {
+            return null;
+        }
+        if (!purged) {
+            purged = true;
+            purge();
+        }
+        DownloadJournal journal = journals.get(uid);
+        if (journal == null) {
+            File dir = new File(JOURNAL_DIR, getDirectoryName(uid));
+            if (!dir.exists() && !dir.mkdirs()) {
+                LOGGER.warn("Cannot create the download journal directory {}", dir); //$NON-NLS-1$
+                return null;
+            }
+            journal = new DownloadJournal(dir);
+            journals.put(uid, journal);
+        }
+        return journal;
+    }
+
+    private static String getDirectoryName(String uid) {
+        try {
+            // Not all the UIDs used by the servers are valid file names
+            MessageDigest md = MessageDigest.getInstance("SHA-1"); //$NON-NLS-1$
+            byte[] digest = md.digest(uid.getBytes(StandardCharsets.UTF_8));
+            StringBuilder buf = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                buf.append(String.format("%02x", b)); //$NON-NLS-1$
+            }
+            return buf.toString();
+        } catch (NoSuchAlgorithmException e) {
+            return Integer.toHexString(uid.hashCode());
+        }
+    }
+
+    /**
+     * Delete the journals which are complete (the files have been used by the previous session) or expired.
+     */
+    private static void purge() {
+        File[] dirs = JOURNAL_DIR.listFiles(File::isDirectory);
+        if (dirs == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (File dir : dirs) {
+            File log = new File(dir, JOURNAL_FILE);
+            if (!log.exists() || now - log.lastModified() > EXPIRATION || isComplete(log)) {
+                LOGGER.debug("Delete the download journal {}", dir); //$NON-NLS-1$
+                FileUtil.recursiveDelete(dir);
+            }
+        }
+    }
+
+    private static boolean isComplete(File log) {
+        try (BufferedReader reader = Files.newBufferedReader(log.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            String last = null;
+            while ((line = reader.readLine()) != null) {
+                last = line;
+            }
+            return COMPLETE.equals(last);
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    private void read() {
+        if (!journalFile.exists()) {
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(journalFile.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] items = line.split(SEPARATOR, -1);
+                // The last line can be truncated when the application has been killed
+                if (RECEIVED.equals(items[0]) && items.length == 3) {
+                    receivedFiles.put(items[1], items[2]);
+                    partialFiles.remove(items[1]);
+                } else if (PARTIAL.equals(items[0]) && items.length == 4) {
+                    partialFiles.put(items[1], new String[] { items[2], items[3] });
+                } else if (REMOVED.equals(items[0]) && items.length == 2) {
+                    partialFiles.remove(items[1]);
+                } else if (COMPLETE.equals(items[0])) {
+                    complete = true;
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.error("Cannot read the download journal {}", journalFile, e); //$NON-NLS-1$
+        }
+    }
+
+    private void append(String... items) {
+        try (Writer writer = Files.newBufferedWriter(journalFile.toPath(), StandardCharsets.UTF_8,
+            StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            writer.write(String.join(SEPARATOR, items));
+            writer.write('\n');
+        } catch (IOException e) {
+            LOGGER.error("Cannot write the download journal {}", journalFile, e); //$NON-NLS-1$
+        }
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return a new file in the journal directory
+     */
+    public File createFile(String suffix) throws IOException {
+        return File.createTempFile("image_", suffix, directory); //$NON-NLS-1$
+    }
+
+    /**
+     * @return the SOPInstanceUIDs received and still available
+     */
+    public synchronized Set<String> getReceivedInstances() {
+        Set<String> set = new HashSet<>();
+        for (String sopUID : receivedFiles.keySet()) {
+            if (getReceivedFile(sopUID) != null) {
+                set.add(sopUID);
+            }
+        }
+        return Collections.unmodifiableSet(set);
+    }
+
+    /**
+     * @return the file of the instance, or null when it has not been received or it has been deleted
+     */
+    public synchronized File getReceivedFile(String sopUID) {
+        String name = receivedFiles.get(sopUID);
+        if (name != null) {
+            File file = new File(directory, name);
+            if (file.canRead()) {
+                return file;
+            }
+        }
+        return null;
+    }
+
+    public synchronized void markReceived(String sopUID, File file) {
+        if (StringUtil.hasText(sopUID) && file != null && directory.equals(file.getParentFile())) {
+            receivedFiles.put(sopUID, file.getName());
+            partialFiles.remove(sopUID);
+            complete = false;
+            append(RECEIVED, sopUID, file.getName());
+        }
+    }
+
+    /**
+     * @return the partial file of the instance, or null when it cannot be resumed
+     */
+    public synchronized File getPartialFile(String sopUID) {
+        String[] val = partialFiles.get(sopUID);
+        if (val != null) {
+            File file = new File(directory, val[0]);
+            if (file.isFile()) {
+                return file;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the ETag or the Last-Modified value of the response which has started the partial file
+     */
+    public synchronized String getPartialValidator(String sopUID) {
+        String[] val = partialFiles.get(sopUID);
+        return val == null ? null : val[1];
+    }
+
+    public synchronized void markPartial(String sopUID, File file, String validator) {
+        if (StringUtil.hasText(sopUID) && StringUtil.hasText(validator) && file != null
+            && directory.equals(file.getParentFile())) {
+            // No tab or line break in the log
+            String v = validator.replaceAll("[\\t\\r\\n]", " "); //$NON-NLS-1$ //$NON-NLS-2$
+            partialFiles.put(sopUID, new String[] { file.getName(), v });
+            append(PARTIAL, sopUID, file.getName(), v);
+        }
+    }
+
+    public synchronized void removePartial(String sopUID) {
+        String[] val = partialFiles.remove(sopUID);
+        if (val != null) {
+            FileUtil.delete(new File(directory, val[0]));
+            append(REMOVED, sopUID);
+        }
+    }
+
+    public synchronized boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * Mark the download as complete. The files are kept for the current session and deleted at the next startup.
+     */
+    public synchronized void complete() {
+        if (!complete) {
+            complete = true;
+            append(COMPLETE);
+        }
+    }
+}
@@ -15,10 +15,13 @@ import java.awt.event.MouseListener;
 import java.awt.event.MouseMotionListener;
 import java.awt.event.MouseWheelListener;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
+import java.net.SocketTimeoutException;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLConnection;
@@ -107,6 +110,7 @@ public class LoadSeries extends ExplorerTask<Boolean, String> implements SeriesI
     private final boolean writeInCache;
 
     private volatile boolean hasError = false;
+    private volatile DownloadJournal journal;
 
     public LoadSeries(Series<?> dicomSeries, DicomModel dicomModel, int concurrentDownloads, boolean writeInCache) {
         super(Messages.getString("DicomExplorer.loading"), writeInCache, true); //$NON-NLS-1$
@@ -191,6 +195,12 @@ public class LoadSeries extends ExplorerTask<Boolean, String> implements SeriesI
                     (long) dicomSeries.getFileSize(), getDownloadTime() });
             dicomSeries.removeTag(DOWNLOAD_START_TIME);
 
+            DownloadJournal j = journal;
+            if (j != null && !hasDownloadFailed()) {
+                // All the instances are in the model, the journal is not required by the next session
+                j.complete();
+            }
+
             final SeriesThumbnail thumbnail = (SeriesThumbnail) dicomSeries.getTagValue(TagW.Thumbnail);
 
             if (thumbnail != null) {
@@ -318,6 +328,10 @@ public class LoadSeries extends ExplorerTask<Boolean, String> implements SeriesI
         }
 
         List<SopInstance> sopList = seriesInstanceList.getSortedList();
+        if (writeInCache) {
+            // Keep the downloaded instances for a retry or after a restart
+            journal = DownloadJournal.open(TagD.getTagValue(dicomSeries, Tag.SeriesInstanceUID, String.class));
+        }
 
         ExecutorService imageDownloader =
             ThreadUtil.buildNewFixedThreadExecutor(concurrentDownloads, "Image Downloader"); //$NON-NLS-1$
@@ -346,6 +360,15 @@ public class LoadSeries extends ExplorerTask<Boolean, String> implements SeriesI
                 continue;
             }
 
+            // Test if the instance has already been downloaded by a previous task
+            File receivedFile = journal == null ? null : journal.getReceivedFile(instance.getSopInstanceUID());
+            if (receivedFile != null) {
+                LOGGER.debug("DICOM instance {} already downloaded, load {}.", instance.getSopInstanceUID(), //$NON-NLS-1$
+                    receivedFile);
+                tasks.add(new Download(receivedFile, wado, instance.getSopInstanceUID()));
+                continue;
+            }
+
             URLConnection urlConnection = null;
             try {
                 String studyUID = ""; //$NON-NLS-1$
@@ -395,7 +418,9 @@ public class LoadSeries extends ExplorerTask<Boolean, String> implements SeriesI
                 continue;
             }
             LOGGER.debug("Download DICOM instance {} index {}.", urlConnection, k); //$NON-NLS-1$
-            Download ref = new Download(urlConnection, wado);
+            // Only a direct download can be resumed, the WADO stream is built on the fly
+            Download ref = new Download(urlConnection, wado, instance.getSopInstanceUID(),
+                instance.getDirectDownloadFile() != null);
             tasks.add(ref);
         }
 
@@ -605,15 +630,47 @@ public class LoadSeries extends ExplorerTask<Boolean, String> implements SeriesI
 
         private final URLConnection urlConnection; // download URL
         private final WadoParameters wado;
+        private final String sopInstanceUID;
+        private final boolean resumable;
+        private final File receivedFile;
         private Status status; // current status of download
 
-        public Download(URLConnection urlConnection, WadoParameters wado) {
+        /**
+         * @param urlConnection
+         *            the download URL
+         * @param wado
+         *            the WADO parameters
+         * @param sopInstanceUID
+         *            the UID for recording the file in the download journal
+         * @param resumable
+         *            true when the server sends always the same bytes (direct download), a partial file can be resumed
+         *            with a HTTP Range request
+         */
+        public Download(URLConnection urlConnection, WadoParameters wado, String sopInstanceUID, boolean resumable) {
             this.urlConnection = urlConnection;
             this.wado = wado;
+            this.sopInstanceUID = sopInstanceUID;
+            this.resumable = resumable;
+            this.receivedFile = null;
+            this.status = Status.DOWNLOADING;
+        }
+
+        /**
+         * Load a file already downloaded by a previous task.
+         */
+        public Download(File receivedFile, WadoParameters wado, String sopInstanceUID) {
+            this.urlConnection = null;
+            this.wado = wado;
+            this.sopInstanceUID = sopInstanceUID;
+            this.resumable = false;
+            this.receivedFile = receivedFile;
             this.status = Status.DOWNLOADING;
         }
 
         public String getUrl() {
+            if (urlConnection == null) {
+                return receivedFile.toURI().toString();
+            }
             return urlConnection.getURL().toExternalForm();
         }
 
@@ -685,35 +742,80 @@ public class LoadSeries extends ExplorerTask<Boolean, String> implements SeriesI
          * @throws URISyntaxException
          */
         private boolean process() throws IOException, URISyntaxException {
+            if (receivedFile != null) {
+                if (dicomSeries != null) {
+                    addInstance(readInstance(receivedFile), receivedFile, true);
+                }
+                incrementProgressBarValue();
+                return true;
+            }
+
             boolean cache = true;
             File tempFile = null;
             DicomMediaIO dicomReader = null;
 
-            try (InputStream stream = NetworkUtil.getUrlInputStream(urlConnection, getHttpTags(wado))) {
+            DownloadJournal j = sopInstanceUID == null ? null : journal;
+            // Cannot resume with WADO because the stream is modified on the fly by the wado server. In dcm4chee, see
+            // http://www.dcm4che.org/jira/browse/DCMEE-421
+            boolean resume = resumable && j != null && wado.getOverrideDicomTagIDList() == null;
+            File partFile = null;
+            Map<String, String> headers = getHttpTags(wado);
+            if (resume) {
+                partFile = j.getPartialFile(sopInstanceUID);
+                String validator = j.getPartialValidator(sopInstanceUID);
+                if (partFile != null && partFile.length() > 0 && validator != null) {
+                    headers = headers == null ? new HashMap<>() : headers;
+                    headers.put("Range", "bytes=" + partFile.length() + "-"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+                    // Send the whole file if it has changed on the server
+                    headers.put("If-Range", validator); //$NON-NLS-1$
+                } else {
+                    partFile = null;
+                }
+            }
+
+            try (InputStream stream = NetworkUtil.getUrlInputStream(urlConnection, headers)) {
 
                 if (!writeInCache && getUrl().startsWith("file:")) { //$NON-NLS-1$
                     cache = false;
                 }
+                boolean append = false;
                 if (cache) {
-                    tempFile = File.createTempFile("image_", ".dcm", getDicomTmpDir()); //$NON-NLS-1$ //$NON-NLS-2$
+                    if (partFile != null) {
+                        append = isPartialContent(partFile.length());
+                    }
+                    tempFile = createCacheFile(j, partFile, append);
                 }
 
-                // Cannot resume with WADO because the stream is modified on the fly by the wado server. In dcm4chee,
-                // see
-                // http://www.dcm4che.org/jira/browse/DCMEE-421
                 progressBar.setIndeterminate(progressBar.getMaximum() < 3);
 
                 if (dicomSeries != null) {
                     if (cache) {
                         LOGGER.debug("Start to download DICOM instance {} to {}.", getUrl(), tempFile.getName()); //$NON-NLS-1$
-                        int bytesTransferred = downloadInFileCache(stream, tempFile);
+                        int bytesTransferred;
+                        if (resume) {
+                            if (append) {
+                                LOGGER.info("Resume downloading {} from byte {}", getUrl(), tempFile.length()); //$NON-NLS-1$
+                            } else {
+                                j.markPartial(sopInstanceUID, tempFile, getValidator());
+                            }
+                            bytesTransferred = writeResumableStream(
+                                new DicomSeriesProgressMonitor(dicomSeries, stream, false), tempFile, append);
+                        } else {
+                            bytesTransferred = downloadInFileCache(stream, tempFile);
+                        }
                         if (bytesTransferred == -1) {
                             LOGGER.info("End of downloading {} ", getUrl()); //$NON-NLS-1$
                         } else if (bytesTransferred >= 0) {
                             return false;
                         }
 
-                        File renameFile = new File(DicomMediaIO.DICOM_EXPORT_DIR, tempFile.getName());
+                        File renameFile;
+                        if (j == null) {
+                            renameFile = new File(DicomMediaIO.DICOM_EXPORT_DIR, tempFile.getName());
+                        } else {
+                            renameFile = new File(j.getDirectory(),
+                                FileUtil.nameWithoutExtension(tempFile.getName()) + ".dcm"); //$NON-NLS-1$
+                        }
                         if (tempFile.renameTo(renameFile)) {
                             tempFile = renameFile;
                         }
@@ -723,24 +825,7 @@ public class LoadSeries extends ExplorerTask<Boolean, String> implements SeriesI
                     // Ensure the stream is closed if image is not written in cache
                     FileUtil.safeClose(stream);
 
-                    dicomReader = new DicomMediaIO(tempFile);
-                    if (dicomReader.isReadableDicom() && dicomSeries.size(null) == 0) {
-                        // Override the group (patient, study and series) by the dicom fields except the UID of the
-                        // group
-                        MediaSeriesGroup patient = dicomModel.getParent(dicomSeries, DicomModel.patient);
-                        dicomReader.writeMetaData(patient);
-                        MediaSeriesGroup study = dicomModel.getParent(dicomSeries, DicomModel.study);
-                        dicomReader.writeMetaData(study);
-                        dicomReader.writeMetaData(dicomSeries);
-                        GuiExecutor.instance().invokeAndWait(() -> {
-                            Thumbnail thumb = (Thumbnail) dicomSeries.getTagValue(TagW.Thumbnail);
-                            if (thumb != null) {
-                                thumb.repaint();
-                            }
-                            dicomModel.firePropertyChange(new ObservableEvent(ObservableEvent.BasicAction.UDPATE_PARENT,
-                                dicomModel, null, dicomSeries));
-                        });
-                    }
+                    dicomReader = readInstance(tempFile);
                 }
             }
 
@@ -748,13 +833,10 @@ public class LoadSeries extends ExplorerTask<Boolean, String> implements SeriesI
             if (status == Status.DOWNLOADING) {
                 status = Status.COMPLETE;
                 if (tempFile != null && dicomSeries != null && dicomReader.isReadableDicom()) {
-                    if (cache) {
-                        dicomReader.getFileCache().setOriginalTempFile(tempFile);
+                    if (cache && j != null) {
+                        j.markReceived(sopInstanceUID, tempFile);
                     }
-                    final DicomMediaIO reader = dicomReader;
-                    // Necessary to wait the runnable because the dicomSeries must be added to the dicomModel
-                    // before reaching done() of SwingWorker
-                    GuiExecutor.instance().invokeAndWait(() -> updateUI(reader));
+                    addInstance(dicomReader, tempFile, cache);
                 }
             }
             // Increment progress bar in EDT and repaint when downloaded
@@ -762,6 +844,132 @@ public class LoadSeries extends ExplorerTask<Boolean, String> implements SeriesI
             return true;
         }
 
+        private DicomMediaIO readInstance(File file) {
+            DicomMediaIO dicomReader = new DicomMediaIO(file);
+            if (dicomReader.isReadableDicom() && dicomSeries.size(null) == 0) {
+                // Override the group (patient, study and series) by the dicom fields except the UID of the group
+                MediaSeriesGroup patient = dicomModel.getParent(dicomSeries, DicomModel.patient);
+                dicomReader.writeMetaData(patient);
+                MediaSeriesGroup study = dicomModel.getParent(dicomSeries, DicomModel.study);
+                dicomReader.writeMetaData(study);
+                dicomReader.writeMetaData(dicomSeries);
+                GuiExecutor.instance().invokeAndWait(() -> {
+                    Thumbnail thumb = (Thumbnail) dicomSeries.getTagValue(TagW.Thumbnail);
+                    if (thumb != null) {
+                        thumb.repaint();
+                    }
+                    dicomModel.firePropertyChange(
+                        new ObservableEvent(ObservableEvent.BasicAction.UDPATE_PARENT, dicomModel, null, dicomSeries));
+                });
+            }
+            return dicomReader;
+        }
+
+        private void addInstance(DicomMediaIO dicomReader, File file, boolean cache) {
+            if (dicomReader.isReadableDicom()) {
+                if (cache) {
+                    dicomReader.getFileCache().setOriginalTempFile(file);
+                }
+                // Necessary to wait the runnable because the dicomSeries must be added to the dicomModel
+                // before reaching done() of SwingWorker
+                GuiExecutor.instance().invokeAndWait(() -> updateUI(dicomReader));
+            }
+        }
+
+        private File createCacheFile(DownloadJournal j, File partFile, boolean append) throws IOException {
+            if (j == null) {
+                return File.createTempFile("image_", ".dcm", getDicomTmpDir()); //$NON-NLS-1$ //$NON-NLS-2$
+            }
+            if (append) {
+                return partFile;
+            }
+            if (partFile != null) {
+                j.removePartial(sopInstanceUID);
+            }
+            return j.createFile(".part"); //$NON-NLS-1$
+        }
+
+        /**
+         * @param offset
+         *            the length of the partial file
+         * @return true when the response contains the bytes following the partial file, false when the response
+         *         contains the whole file
+         * @throws StreamIOException
+         *             when the response cannot be used, the partial file is removed for the next retry
+         */
+        private boolean isPartialContent(long offset) throws IOException {
+            int code = urlConnection instanceof HttpURLConnection
+                ? ((HttpURLConnection) urlConnection).getResponseCode() : HttpURLConnection.HTTP_OK;
+            if (code == HttpURLConnection.HTTP_OK) {
+                return false;
+            }
+            if (code == HttpURLConnection.HTTP_PARTIAL && getContentRangeStart() == offset) {
+                return true;
+            }
+            // Redirection or unexpected range
+            DownloadJournal j = journal;
+            if (j != null) {
+                j.removePartial(sopInstanceUID);
+            }
+            throw new StreamIOException("Cannot resume downloading " + getUrl()); //$NON-NLS-1$
+        }
+
+        private long getContentRangeStart() {
+            // Content-Range: bytes 1000-1999/2000
+            String range = urlConnection.getHeaderField("Content-Range"); //$NON-NLS-1$
+            if (range != null && range.startsWith("bytes ")) { //$NON-NLS-1$
+                int end = range.indexOf('-');
+                if (end > 6) {
+                    try {
+                        return Long.parseLong(range.substring(6, end).trim());
+                    } catch (NumberFormatException e) {
+                        LOGGER.warn("Invalid Content-Range: {}", range); //$NON-NLS-1$
+                    }
+                }
+            }
+            return -1L;
+        }
+
+        /**
+         * @return the validator of the file for the If-Range header or null when the partial file cannot be resumed
+         */
+        private String getValidator() {
+            String etag = urlConnection.getHeaderField("ETag"); //$NON-NLS-1$
+            // A weak ETag cannot be used in If-Range
+            if (StringUtil.hasText(etag) && !etag.startsWith("W/")) { //$NON-NLS-1$
+                return etag;
+            }
+            return urlConnection.getHeaderField("Last-Modified"); //$NON-NLS-1$
+        }
+
+        /**
+         * Same as FileUtil.writeStream() but the partial file is kept when the download is interrupted.
+         *
+         * @return bytes transferred. -1 = all bytes has been transferred, other = bytes transferred before
+         *         interruption
+         * @throws StreamIOException
+         */
+        private int writeResumableStream(InputStream in, File file, boolean append) throws StreamIOException {
+            try (FileOutputStream out = new FileOutputStream(file, append)) {
+                byte[] buf = new byte[FileUtil.FILE_BUFFER];
+                int offset;
+                while ((offset = in.read(buf)) > 0) {
+                    out.write(buf, 0, offset);
+                }
+                out.flush();
+                return -1;
+            } catch (SocketTimeoutException e) {
+                throw new StreamIOException(e);
+            } catch (InterruptedIOException e) {
+                LOGGER.info("Interruption when writing file, {} can be resumed", file.getName()); //$NON-NLS-1$
+                return e.bytesTransferred;
+            } catch (IOException e) {
+                throw new StreamIOException(e);
+            } finally {
+                FileUtil.safeClose(in);
+            }
+        }
+
         private int downloadInFileCache(InputStream stream, File tempFile) throws IOException {
             final WadoParameters wado = (WadoParameters) dicomSeries.getTagValue(TagW.WadoParameters);
             int[] overrideList = Optional.ofNullable(wado).map(WadoParameters::getOverrideDicomTagIDList).orElse(null);
@@ -0,0 +1,284 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2018 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.dicom.explorer.print;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.awt.Component;
+import java.awt.GridBagConstraints;
+import java.io.File;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import javax.swing.JPanel;
+
+import org.dcm4che3.data.Attributes;
+import org.dcm4che3.data.Tag;
+import org.dcm4che3.data.UID;
+import org.dcm4che3.data.VR;
+import org.dcm4che3.io.DicomInputStream;
+import org.dcm4che3.net.ApplicationEntity;
+import org.dcm4che3.net.Association;
+import org.dcm4che3.net.Connection;
+import org.dcm4che3.net.Device;
+import org.dcm4che3.net.DimseRSP;
+import org.dcm4che3.net.Status;
+import org.dcm4che3.net.pdu.AAssociateRQ;
+import org.dcm4che3.net.pdu.PresentationContext;
+import org.dcm4che3.util.UIDUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.weasis.core.api.image.GridBagLayoutModel;
+import org.weasis.core.api.image.LayoutConstraints;
+import org.weasis.core.api.media.data.ImageElement;
+import org.weasis.core.ui.util.ExportLayout;
+import org.weasis.core.ui.util.PrintOptions;
+import org.weasis.dicom.explorer.pref.node.DicomPrintNode;
+import org.weasis.dicom.explorer.print.DicomPrintDialog.FilmSize;
+import org.weasis.dicom.explorer.print.PrintSCPSimulator.PrintedFilm;
+
+public class DicomPrintTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private PrintSCPSimulator scp;
+
+    @Before
+    public void setUp() throws Exception {
+        scp = new PrintSCPSimulator(folder.newFolder("films")); //$NON-NLS-1$
+        scp.start();
+    }
+
+    @After
+    public void tearDown() {
+        scp.close();
+    }
+
+    @Test
+    public void testPrintGrayscaleFilm() throws Exception {
+        DicomPrintOptions options = buildOptions(false, FilmSize.IN8X10, "PORTRAIT"); //$NON-NLS-1$
+        new DicomPrint(buildNode(), options).print(buildLayout(2, 2));
+
+        assertThat(scp.getErrors()).isEmpty();
+        List<PrintedFilm> films = scp.getPrintedFilms();
+        assertThat(films).hasSize(1);
+        assertThat(films.get(0).getFilmBox().getString(Tag.FilmSizeID)).isEqualTo("8INX10IN"); //$NON-NLS-1$
+        assertThat(films.get(0).getFilmSession().getString(Tag.MediumType))
+            .isEqualTo(DicomPrintOptions.DEF_MEDIUM_TYPE);
+
+        Attributes img = readImage(films.get(0));
+        assertThat(img.getString(Tag.PhotometricInterpretation)).isEqualTo("MONOCHROME2"); //$NON-NLS-1$
+        assertThat(img.getInt(Tag.SamplesPerPixel, 0)).isEqualTo(1);
+        assertThat(img.getInt(Tag.Columns, 0)).isEqualTo(FilmSize.IN8X10.getWidth(options.getDpi()));
+        assertThat(img.getInt(Tag.Rows, 0)).isEqualTo(FilmSize.IN8X10.getHeight(options.getDpi()));
+        // Empty film with a black background
+        byte[] pixels = img.getBytes(Tag.PixelData);
+        assertThat(pixels).containsOnly((byte) 0);
+    }
+
+    @Test
+    public void testPrintColorFilm() throws Exception {
+        DicomPrintOptions options = buildOptions(true, FilmSize.A4, "LANDSCAPE"); //$NON-NLS-1$
+        options.setEmptyDensity("WHITE"); //$NON-NLS-1$
+        new DicomPrint(buildNode(), options).print(buildLayout(1, 1));
+
+        assertThat(scp.getErrors()).isEmpty();
+        List<PrintedFilm> films = scp.getPrintedFilms();
+        assertThat(films).hasSize(1);
+
+        Attributes img = readImage(films.get(0));
+        assertThat(img.getString(Tag.PhotometricInterpretation)).isEqualTo("RGB"); //$NON-NLS-1$
+        assertThat(img.getInt(Tag.SamplesPerPixel, 0)).isEqualTo(3);
+        // Landscape: the width and the height are inverted
+        assertThat(img.getInt(Tag.Columns, 0)).isEqualTo(FilmSize.A4.getHeight(options.getDpi()));
+        assertThat(img.getInt(Tag.Rows, 0)).isEqualTo(FilmSize.A4.getWidth(options.getDpi()));
+        assertThat(img.getBytes(Tag.PixelData)).containsOnly((byte) 0xFF);
+    }
+
+    @Test
+    public void testPrintSeveralFilmsInOneAssociation() throws Exception {
+        DicomPrintOptions options = buildOptions(false, FilmSize.IN14X17, "PORTRAIT"); //$NON-NLS-1$
+        new DicomPrint(buildNode(), options).print(Arrays.asList(buildLayout(1, 1), buildLayout(1, 2)));
+
+        assertThat(scp.getErrors()).isEmpty();
+        assertThat(scp.getPrintedFilms()).hasSize(2);
+        assertThat(scp.getNumberOfAssociations()).isEqualTo(1);
+    }
+
+    /**
+     * A film larger than a band is written in several bands, the whole film is never in memory.
+     */
+    @Test
+    public void testPrintLargeFilmByBands() throws Exception {
+        DicomPrintOptions options = buildOptions(false, FilmSize.IN14X17, "PORTRAIT"); //$NON-NLS-1$
+        options.setDpi(PrintOptions.DotPerInches.DPI_300);
+        options.setEmptyDensity("WHITE"); //$NON-NLS-1$
+        new DicomPrint(buildNode(), options).print(buildLayout(3, 4));
+
+        assertThat(scp.getErrors()).isEmpty();
+        List<PrintedFilm> films = scp.getPrintedFilms();
+        assertThat(films).hasSize(1);
+        Attributes img = readImage(films.get(0));
+        int width = FilmSize.IN14X17.getWidth(options.getDpi());
+        int height = FilmSize.IN14X17.getHeight(options.getDpi());
+        assertThat(img.getInt(Tag.Columns, 0)).isEqualTo(width);
+        assertThat(img.getInt(Tag.Rows, 0)).isEqualTo(height);
+        byte[] pixels = img.getBytes(Tag.PixelData);
+        assertThat(pixels).hasSize(width * height);
+        // All the bands are filled with the background
+        assertThat(pixels).containsOnly((byte) 0xFF);
+    }
+
+    /**
+     * The simulator accepts 12-bit grayscale images and rejects inconsistent pixel data.
+     */
+    @Test
+    public void testSimulatorImageValidation() throws Exception {
+        Attributes img = new Attributes();
+        img.setInt(Tag.SamplesPerPixel, VR.US, 1);
+        img.setString(Tag.PhotometricInterpretation, VR.CS, "MONOCHROME2"); //$NON-NLS-1$
+        img.setInt(Tag.Rows, VR.US, 64);
+        img.setInt(Tag.Columns, VR.US, 32);
+        img.setInt(Tag.BitsAllocated, VR.US, 16);
+        img.setInt(Tag.BitsStored, VR.US, 12);
+        img.setInt(Tag.HighBit, VR.US, 11);
+        img.setInt(Tag.PixelRepresentation, VR.US, 0);
+        img.setBytes(Tag.PixelData, VR.OW, new byte[64 * 32 * 2]);
+        assertThat(sendImageBox(img)).isEqualTo(Status.Success);
+        assertThat(scp.getErrors()).isEmpty();
+        Attributes received = readImage(scp.getPrintedFilms().get(0));
+        assertThat(received.getInt(Tag.BitsStored, 0)).isEqualTo(12);
+
+        img.setBytes(Tag.PixelData, VR.OW, new byte[64 * 32]);
+        assertThat(sendImageBox(img)).isEqualTo(Status.InvalidAttributeValue);
+        assertThat(scp.getErrors()).hasSize(1);
+    }
+
+    @Test
+    public void testPrintWithoutPrinter() throws Exception {
+        int port = scp.getPort();
+        scp.close();
+        DicomPrintNode node = new DicomPrintNode("closed", PrintSCPSimulator.AE_TITLE, "127.0.0.1", port); //$NON-NLS-1$ //$NON-NLS-2$
+        DicomPrint print = new DicomPrint(node, buildOptions(false, FilmSize.IN8X10, "PORTRAIT")); //$NON-NLS-1$
+        assertThatThrownBy(() -> print.print(buildLayout(1, 1))).isInstanceOf(Exception.class);
+    }
+
+    private DicomPrintNode buildNode() {
+        return new DicomPrintNode("simulator", PrintSCPSimulator.AE_TITLE, "127.0.0.1", scp.getPort()); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    private static DicomPrintOptions buildOptions(boolean color, FilmSize size, String orientation) {
+        DicomPrintOptions options = new DicomPrintOptions();
+        options.setColorPrint(color);
+        options.setFilmSizeId(size);
+        options.setFilmOrientation(orientation);
+        options.setDpi(PrintOptions.DotPerInches.DPI_100);
+        return options;
+    }
+
+    /**
+     * Build a layout without view, the film contains only the background.
+     */
+    private static ExportLayout<ImageElement> buildLayout(int rows, int cols) {
+        Map<LayoutConstraints, Component> map = new LinkedHashMap<>();
+        for (int y = 0; y < rows; y++) {
+            for (int x = 0; x < cols; x++) {
+                map.put(new LayoutConstraints(JPanel.class.getName(), y * cols + x, x, y, 1, 1, 1.0 / cols,
+                    1.0 / rows, GridBagConstraints.CENTER, GridBagConstraints.BOTH), new JPanel());
+            }
+        }
+        return new ExportLayout<>(new GridBagLayoutModel(map, "test", "test")); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    private static Attributes readImage(PrintedFilm film) throws Exception {
+        assertThat(film.getImages()).isNotEmpty();
+        File file = film.getImages().get(0);
+        assertThat(file).exists();
+        try (DicomInputStream in = new DicomInputStream(file)) {
+            return in.readDataset(-1, -1);
+        }
+    }
+
+    /**
+     * Send directly a grayscale Image Box to the simulator.
+     *
+     * @return the status of the N-SET
+     */
+    private int sendImageBox(Attributes img) throws Exception {
+        String metaClass = UID.BasicGrayscalePrintManagementMetaSOPClass;
+        Device device = new Device("print-scu"); //$NON-NLS-1$
+        ApplicationEntity ae = new ApplicationEntity("PRINT_SCU"); //$NON-NLS-1$
+        Connection conn = new Connection();
+        device.addConnection(conn);
+        device.addApplicationEntity(ae);
+        ae.addConnection(conn);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        ScheduledExecutorService scheduled = Executors.newSingleThreadScheduledExecutor();
+        device.setExecutor(executor);
+        device.setScheduledExecutor(scheduled);
+
+        Connection remote = new Connection(null, "127.0.0.1", scp.getPort()); //$NON-NLS-1$
+        AAssociateRQ rq = new AAssociateRQ();
+        rq.setCalledAET(PrintSCPSimulator.AE_TITLE);
+        rq.addPresentationContext(new PresentationContext(1, metaClass, UID.ImplicitVRLittleEndian));
+        Association as = ae.connect(remote, rq);
+        try {
+            String sessionUID = UIDUtils.createUID();
+            Attributes session = new Attributes();
+            session.setInt(Tag.NumberOfCopies, VR.IS, 1);
+            as.ncreate(metaClass, UID.BasicFilmSessionSOPClass, sessionUID, session, UID.ImplicitVRLittleEndian)
+                .next();
+
+            String filmBoxUID = UIDUtils.createUID();
+            Attributes filmBox = new Attributes();
+            filmBox.setString(Tag.ImageDisplayFormat, VR.ST, "STANDARD\\1,1"); //$NON-NLS-1$
+            filmBox.setString(Tag.FilmSizeID, VR.CS, FilmSize.IN8X10.toString());
+            Attributes ref = new Attributes();
+            ref.setString(Tag.ReferencedSOPClassUID, VR.UI, UID.BasicFilmSessionSOPClass);
+            ref.setString(Tag.ReferencedSOPInstanceUID, VR.UI, sessionUID);
+            filmBox.newSequence(Tag.ReferencedFilmSessionSequence, 1).add(ref);
+            DimseRSP rsp =
+                as.ncreate(metaClass, UID.BasicFilmBoxSOPClass, filmBoxUID, filmBox, UID.ImplicitVRLittleEndian);
+            rsp.next();
+            String imageBoxUID = rsp.getDataset().getNestedDataset(Tag.ReferencedImageBoxSequence)
+                .getString(Tag.ReferencedSOPInstanceUID);
+
+            Attributes imageBox = new Attributes();
+            imageBox.setInt(Tag.ImageBoxPosition, VR.US, 1);
+            imageBox.newSequence(Tag.BasicGrayscaleImageSequence, 1).add(new Attributes(img));
+            rsp = as.nset(metaClass, UID.BasicGrayscaleImageBoxSOPClass, imageBoxUID, imageBox,
+                UID.ImplicitVRLittleEndian);
+            rsp.next();
+            int status = rsp.getCommand().getInt(Tag.Status, -1);
+            if (status == Status.Success) {
+                as.naction(metaClass, UID.BasicFilmBoxSOPClass, filmBoxUID, 1, null, UID.ImplicitVRLittleEndian)
+                    .next();
+            }
+            as.ndelete(metaClass, UID.BasicFilmSessionSOPClass, sessionUID).next();
+            return status;
+        } finally {
+            as.waitForOutstandingRSP();
+            as.release();
+            executor.shutdown();
+            scheduled.shutdown();
+        }
+    }
+}
@@ -0,0 +1,395 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2018 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.dicom.explorer.print;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.dcm4che3.data.Attributes;
+import org.dcm4che3.data.Sequence;
+import org.dcm4che3.data.Tag;
+import org.dcm4che3.data.UID;
+import org.dcm4che3.data.VR;
+import org.dcm4che3.io.DicomOutputStream;
+import org.dcm4che3.net.ApplicationEntity;
+import org.dcm4che3.net.Association;
+import org.dcm4che3.net.Commands;
+import org.dcm4che3.net.Connection;
+import org.dcm4che3.net.Device;
+import org.dcm4che3.net.Dimse;
+import org.dcm4che3.net.Status;
+import org.dcm4che3.net.TransferCapability;
+import org.dcm4che3.net.pdu.PresentationContext;
+import org.dcm4che3.net.service.AbstractDicomService;
+import org.dcm4che3.net.service.BasicCEchoSCP;
+import org.dcm4che3.net.service.DicomServiceException;
+import org.dcm4che3.net.service.DicomServiceRegistry;
+import org.dcm4che3.util.UIDUtils;
+
+/**
+ * Basic Print Management SCP (grayscale and color) for testing the DICOM print without a film printer.
+ *
+ * <ul>
+ * <li>Accepts the Basic Film Session, the Basic Film Box and the Image Boxes (N-CREATE, N-SET, N-ACTION and
+ * N-DELETE).</li>
+ * <li>Validates the received attributes, the errors are returned with a failure status and collected in
+ * {@link #getErrors()}.</li>
+ * <li>Writes the images received by the Image Boxes in the output directory.</li>
+ * </ul>
+ */
+public class PrintSCPSimulator implements Closeable {
+
+    public static final String AE_TITLE = "PRINT_SCP"; //$NON-NLS-1$
+
+    private final File outputDir;
+    private final Device device = new Device("print-scp"); //$NON-NLS-1$
+    private final ApplicationEntity ae = new ApplicationEntity(AE_TITLE);
+    private final Connection conn = new Connection();
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final ScheduledExecutorService scheduledExecutor = Executors.newSingleThreadScheduledExecutor();
+
+    private final Map<String, Attributes> filmSessions = new HashMap<>();
+    private final Map<String, FilmBox> filmBoxes = new HashMap<>();
+    private final Map<String, FilmBox> imageBoxes = new HashMap<>();
+    private final List<PrintedFilm> printedFilms = Collections.synchronizedList(new ArrayList<>());
+    private final List<String> errors = Collections.synchronizedList(new ArrayList<>());
+    private final Set<Association> associations = ConcurrentHashMap.newKeySet();
+
+    public PrintSCPSimulator(File outputDir) {
+        this.outputDir = outputDir;
+        conn.setHostname("127.0.0.1"); //$NON-NLS-1$
+        device.addConnection(conn);
+        device.addApplicationEntity(ae);
+        ae.setAssociationAcceptor(true);
+        ae.addConnection(conn);
+        for (String cuid : new String[] { UID.BasicGrayscalePrintManagementMetaSOPClass,
+            UID.BasicColorPrintManagementMetaSOPClass, UID.VerificationSOPClass }) {
+            ae.addTransferCapability(
+                new TransferCapability(null, cuid, TransferCapability.Role.SCP, UID.ImplicitVRLittleEndian));
+        }
+
+        DicomServiceRegistry serviceRegistry = new DicomServiceRegistry();
+        serviceRegistry.addDicomService(new BasicCEchoSCP());
+        serviceRegistry.addDicomService(new PrintService());
+        device.setDimseRQHandler(serviceRegistry);
+        device.setExecutor(executor);
+        device.setScheduledExecutor(scheduledExecutor);
+    }
+
+    /**
+     * Start listening on a free local port.
+     *
+     * @return the port
+     */
+    public int start() throws Exception {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            conn.setPort(socket.getLocalPort());
+        }
+        device.bindConnections();
+        return conn.getPort();
+    }
+
+    @Override
+    public void close() {
+        device.unbindConnections();
+        executor.shutdownNow();
+        scheduledExecutor.shutdownNow();
+    }
+
+    public int getPort() {
+        return conn.getPort();
+    }
+
+    public List<PrintedFilm> getPrintedFilms() {
+        synchronized (printedFilms) {
+            return new ArrayList<>(printedFilms);
+        }
+    }
+
+    public List<String> getErrors() {
+        synchronized (errors) {
+            return new ArrayList<>(errors);
+        }
+    }
+
+    public int getNumberOfAssociations() {
+        return associations.size();
+    }
+
+    public static class PrintedFilm {
+        private final Attributes filmSession;
+        private final Attributes filmBox;
+        private final List<File> images;
+
+        PrintedFilm(Attributes filmSession, Attributes filmBox, List<File> images) {
+            this.filmSession = filmSession;
+            this.filmBox = filmBox;
+            this.images = images;
+        }
+
+        public Attributes getFilmSession() {
+            return filmSession;
+        }
+
+        public Attributes getFilmBox() {
+            return filmBox;
+        }
+
+        /**
+         * @return the images by position, null when the Image Box has not been set
+         */
+        public List<File> getImages() {
+            return images;
+        }
+    }
+
+    private static class FilmBox {
+        final String sessionUID;
+        final Attributes attributes;
+        final String imageBoxSOPClass;
+        final String[] imageBoxUIDs;
+        final File[] images;
+
+        FilmBox(String sessionUID, Attributes attributes, String imageBoxSOPClass, int nbImageBoxes) {
+            this.sessionUID = sessionUID;
+            this.attributes = attributes;
+            this.imageBoxSOPClass = imageBoxSOPClass;
+            this.imageBoxUIDs = new String[nbImageBoxes];
+            this.images = new File[nbImageBoxes];
+            for (int i = 0; i < nbImageBoxes; i++) {
+                imageBoxUIDs[i] = UIDUtils.createUID();
+            }
+        }
+    }
+
+    private class PrintService extends AbstractDicomService {
+
+        PrintService() {
+            super(UID.BasicFilmSessionSOPClass, UID.BasicFilmBoxSOPClass, UID.BasicGrayscaleImageBoxSOPClass,
+                UID.BasicColorImageBoxSOPClass);
+        }
+
+        @Override
+        protected void onDimseRQ(Association as, PresentationContext pc, Dimse dimse, Attributes cmd,
+            Attributes data) throws IOException {
+            associations.add(as);
+            try {
+                Attributes rsp;
+                Attributes rspData = null;
+                switch (dimse) {
+                    case N_CREATE_RQ:
+                        rsp = Commands.mkNCreateRSP(cmd, Status.Success);
+                        rspData = onCreate(pc, cmd.getString(Tag.AffectedSOPClassUID),
+                            rsp.getString(Tag.AffectedSOPInstanceUID), data);
+                        break;
+                    case N_SET_RQ:
+                        rsp = Commands.mkNSetRSP(cmd, Status.Success);
+                        onSet(cmd.getString(Tag.RequestedSOPClassUID), cmd.getString(Tag.RequestedSOPInstanceUID),
+                            data);
+                        break;
+                    case N_ACTION_RQ:
+                        rsp = Commands.mkNActionRSP(cmd, Status.Success);
+                        onAction(cmd.getString(Tag.RequestedSOPClassUID), cmd.getString(Tag.RequestedSOPInstanceUID));
+                        break;
+                    case N_DELETE_RQ:
+                        rsp = Commands.mkNDeleteRSP(cmd, Status.Success);
+                        onDelete(cmd.getString(Tag.RequestedSOPClassUID), cmd.getString(Tag.RequestedSOPInstanceUID));
+                        break;
+                    default:
+                        throw new DicomServiceException(Status.UnrecognizedOperation);
+                }
+                as.tryWriteDimseRSP(pc, rsp, rspData);
+            } catch (DicomServiceException e) {
+                errors.add(dimse + ": " + e.getMessage()); //$NON-NLS-1$
+                throw e;
+            }
+        }
+    }
+
+    private synchronized Attributes onCreate(PresentationContext pc, String cuid, String iuid, Attributes data)
+        throws DicomServiceException {
+        if (data == null) {
+            throw new DicomServiceException(Status.MissingAttribute, "No dataset"); //$NON-NLS-1$
+        }
+        if (UID.BasicFilmSessionSOPClass.equals(cuid)) {
+            int copies = data.getInt(Tag.NumberOfCopies, 1);
+            if (copies < 1) {
+                throw new DicomServiceException(Status.InvalidAttributeValue, "Number of copies: " + copies); //$NON-NLS-1$
+            }
+            filmSessions.put(iuid, data);
+            return null;
+        }
+        if (UID.BasicFilmBoxSOPClass.equals(cuid)) {
+            Attributes ref = data.getNestedDataset(Tag.ReferencedFilmSessionSequence);
+            String sessionUID = ref == null ? null : ref.getString(Tag.ReferencedSOPInstanceUID);
+            if (sessionUID == null || !filmSessions.containsKey(sessionUID)) {
+                throw new DicomServiceException(Status.InvalidAttributeValue, "Unknown film session: " + sessionUID); //$NON-NLS-1$
+            }
+            String orientation = data.getString(Tag.FilmOrientation, "PORTRAIT"); //$NON-NLS-1$
+            if (!"PORTRAIT".equals(orientation) && !"LANDSCAPE".equals(orientation)) { //$NON-NLS-1$ //$NON-NLS-2$
+                throw new DicomServiceException(Status.InvalidAttributeValue, "Film orientation: " + orientation); //$NON-NLS-1$
+            }
+            if (data.getString(Tag.FilmSizeID) == null) {
+                throw new DicomServiceException(Status.MissingAttribute, "No film size"); //$NON-NLS-1$
+            }
+            int nbImageBoxes = getNumberOfImageBoxes(data.getString(Tag.ImageDisplayFormat));
+            boolean color = UID.BasicColorPrintManagementMetaSOPClass.equals(pc.getAbstractSyntax());
+            FilmBox filmBox = new FilmBox(sessionUID, data,
+                color ? UID.BasicColorImageBoxSOPClass : UID.BasicGrayscaleImageBoxSOPClass, nbImageBoxes);
+            filmBoxes.put(iuid, filmBox);
+
+            Attributes rspData = new Attributes(1);
+            Sequence seq = rspData.newSequence(Tag.ReferencedImageBoxSequence, nbImageBoxes);
+            for (String uid : filmBox.imageBoxUIDs) {
+                imageBoxes.put(uid, filmBox);
+                Attributes item = new Attributes(2);
+                item.setString(Tag.ReferencedSOPClassUID, VR.UI, filmBox.imageBoxSOPClass);
+                item.setString(Tag.ReferencedSOPInstanceUID, VR.UI, uid);
+                seq.add(item);
+            }
+            return rspData;
+        }
+        throw new DicomServiceException(Status.NoSuchSOPclass, "Cannot create " + cuid); //$NON-NLS-1$
+    }
+
+    private static int getNumberOfImageBoxes(String format) throws DicomServiceException {
+        // Only STANDARD\C,R is supported
+        if (format != null && format.startsWith("STANDARD\\")) { //$NON-NLS-1$
+            String[] dim = format.substring(9).split(","); //$NON-NLS-1$
+            if (dim.length == 2) {
+                try {
+                    int nb = Integer.parseInt(dim[0].trim()) * Integer.parseInt(dim[1].trim());
+                    if (nb > 0) {
+                        return nb;
+                    }
+                } catch (NumberFormatException e) {
+                    // Throw exception below
+                }
+            }
+        }
+        throw new DicomServiceException(Status.InvalidAttributeValue, "Image display format: " + format); //$NON-NLS-1$
+    }
+
+    private synchronized void onSet(String cuid, String iuid, Attributes data) throws IOException {
+        FilmBox filmBox = imageBoxes.get(iuid);
+        if (filmBox == null) {
+            throw new DicomServiceException(Status.NoSuchObjectInstance, "Unknown image box: " + iuid); //$NON-NLS-1$
+        }
+        if (!filmBox.imageBoxSOPClass.equals(cuid)) {
+            throw new DicomServiceException(Status.NoSuchSOPclass, "Wrong image box class: " + cuid); //$NON-NLS-1$
+        }
+        if (data == null) {
+            throw new DicomServiceException(Status.MissingAttribute, "No dataset"); //$NON-NLS-1$
+        }
+        int position = data.getInt(Tag.ImageBoxPosition, 0);
+        if (position < 1 || position > filmBox.imageBoxUIDs.length) {
+            throw new DicomServiceException(Status.InvalidAttributeValue, "Image box position: " + position); //$NON-NLS-1$
+        }
+
+        boolean color = UID.BasicColorImageBoxSOPClass.equals(cuid);
+        Attributes img =
+            data.getNestedDataset(color ? Tag.BasicColorImageSequence : Tag.BasicGrayscaleImageSequence);
+        if (img == null) {
+            throw new DicomServiceException(Status.MissingAttribute, "No image sequence"); //$NON-NLS-1$
+        }
+        validateImage(img, color);
+
+        img.setString(Tag.SOPClassUID, VR.UI, UID.SecondaryCaptureImageStorage);
+        img.setString(Tag.SOPInstanceUID, VR.UI, iuid);
+        File file = new File(outputDir, iuid + ".dcm"); //$NON-NLS-1$
+        try (DicomOutputStream out = new DicomOutputStream(file)) {
+            out.writeDataset(img.createFileMetaInformation(UID.ExplicitVRLittleEndian), img);
+        }
+        filmBox.images[position - 1] = file;
+    }
+
+    private static void validateImage(Attributes img, boolean color) throws DicomServiceException {
+        int samples = img.getInt(Tag.SamplesPerPixel, 0);
+        String photometric = img.getString(Tag.PhotometricInterpretation);
+        if (color) {
+            if (samples != 3 || !"RGB".equals(photometric)) { //$NON-NLS-1$
+                throw new DicomServiceException(Status.InvalidAttributeValue, "Color image: " + photometric); //$NON-NLS-1$
+            }
+            if (img.getInt(Tag.PlanarConfiguration, 0) != 0) {
+                throw new DicomServiceException(Status.InvalidAttributeValue, "Planar configuration"); //$NON-NLS-1$
+            }
+        } else if (samples != 1 || !("MONOCHROME1".equals(photometric) || "MONOCHROME2".equals(photometric))) { //$NON-NLS-1$ //$NON-NLS-2$
+            throw new DicomServiceException(Status.InvalidAttributeValue, "Grayscale image: " + photometric); //$NON-NLS-1$
+        }
+
+        int bitsAllocated = img.getInt(Tag.BitsAllocated, 0);
+        int bitsStored = img.getInt(Tag.BitsStored, 0);
+        int highBit = img.getInt(Tag.HighBit, 0);
+        // 12 bits are only allowed in grayscale
+        boolean valid = bitsAllocated == 8 && bitsStored == 8
+            || !color && bitsAllocated == 16 && (bitsStored == 12 || bitsStored == 16);
+        if (!valid || highBit != bitsStored - 1 || img.getInt(Tag.PixelRepresentation, 0) != 0) {
+            throw new DicomServiceException(Status.InvalidAttributeValue,
+                "Bits allocated/stored: " + bitsAllocated + "/" + bitsStored); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+
+        int rows = img.getInt(Tag.Rows, 0);
+        int columns = img.getInt(Tag.Columns, 0);
+        byte[] pixels = null;
+        try {
+            pixels = img.getBytes(Tag.PixelData);
+        } catch (IOException e) {
+            // Throw exception below
+        }
+        long length = (long) rows * columns * samples * (bitsAllocated / 8);
+        if (rows < 1 || columns < 1 || pixels == null || pixels.length != ((length + 1) & ~1)) {
+            throw new DicomServiceException(Status.InvalidAttributeValue, "Pixel data of " + columns + "x" + rows //$NON-NLS-1$ //$NON-NLS-2$
+                + ": " + (pixels == null ? 0 : pixels.length) + " bytes"); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+    }
+
+    private synchronized void onAction(String cuid, String iuid) throws DicomServiceException {
+        FilmBox filmBox = UID.BasicFilmBoxSOPClass.equals(cuid) ? filmBoxes.get(iuid) : null;
+        if (filmBox == null) {
+            throw new DicomServiceException(Status.NoSuchObjectInstance, "Unknown film box: " + iuid); //$NON-NLS-1$
+        }
+        List<File> images = new ArrayList<>(filmBox.images.length);
+        Collections.addAll(images, filmBox.images);
+        printedFilms.add(new PrintedFilm(filmSessions.get(filmBox.sessionUID), filmBox.attributes, images));
+    }
+
+    private synchronized void onDelete(String cuid, String iuid) throws DicomServiceException {
+        if (UID.BasicFilmSessionSOPClass.equals(cuid)) {
+            if (filmSessions.remove(iuid) != null) {
+                // Delete all the film boxes of the session
+                filmBoxes.values().removeIf(f -> iuid.equals(f.sessionUID));
+                imageBoxes.values().removeIf(f -> iuid.equals(f.sessionUID));
+                return;
+            }
+        } else if (UID.BasicFilmBoxSOPClass.equals(cuid)) {
+            FilmBox filmBox = filmBoxes.remove(iuid);
+            if (filmBox != null) {
+                for (String uid : filmBox.imageBoxUIDs) {
+                    imageBoxes.remove(uid);
+                }
+                return;
+            }
+        }
+        throw new DicomServiceException(Status.NoSuchObjectInstance, "Cannot delete " + iuid); //$NON-NLS-1$
+    }
+}
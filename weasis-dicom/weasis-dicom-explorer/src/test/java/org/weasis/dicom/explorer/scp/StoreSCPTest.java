@@ -0,0 +1,245 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2018 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.dicom.explorer.scp;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.File;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.dcm4che3.data.Attributes;
+import org.dcm4che3.data.Tag;
+import org.dcm4che3.data.UID;
+import org.dcm4che3.data.VR;
+import org.dcm4che3.io.DicomInputStream;
+import org.dcm4che3.net.ApplicationEntity;
+import org.dcm4che3.net.Association;
+import org.dcm4che3.net.Connection;
+import org.dcm4che3.net.DataWriterAdapter;
+import org.dcm4che3.net.Device;
+import org.dcm4che3.net.DimseRSP;
+import org.dcm4che3.net.Priority;
+import org.dcm4che3.net.Status;
+import org.dcm4che3.net.pdu.AAssociateRQ;
+import org.dcm4che3.net.pdu.PresentationContext;
+import org.dcm4che3.util.UIDUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Sends instances to the Storage SCP with a loopback SCU.
+ */
+public class StoreSCPTest {
+    private static final String SCP_AET = "STORE_SCP"; //$NON-NLS-1$
+    private static final String SCU_AET = "STORE_SCU"; //$NON-NLS-1$
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private StoreSCP scp;
+    private final Set<File> receivedFiles = ConcurrentHashMap.newKeySet();
+
+    @Before
+    public void setUp() throws Exception {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        scp = new StoreSCP(SCP_AET, "127.0.0.1", port, folder.newFolder("store")); //$NON-NLS-1$ //$NON-NLS-2$
+        scp.setStoreListener(receivedFiles::add);
+    }
+
+    @After
+    public void tearDown() {
+        scp.close();
+    }
+
+    @Test
+    public void testStoreInstances() throws Exception {
+        scp.start();
+        String studyUID = UIDUtils.createUID();
+        List<String> uids = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            uids.add(UIDUtils.createUID());
+        }
+        assertThat(send(SCU_AET, UID.ExplicitVRLittleEndian, studyUID, uids)).containsOnly(Status.Success);
+
+        assertThat(receivedFiles).hasSize(3);
+        assertThat(scp.getReceivedInstances()).isEqualTo(3);
+        assertThat(scp.getStorageDir().list()).hasSize(3);
+        File file = new File(scp.getStorageDir(), uids.get(0) + ".dcm"); //$NON-NLS-1$
+        assertThat(receivedFiles).contains(file);
+        try (DicomInputStream in = new DicomInputStream(file)) {
+            Attributes fmi = in.readFileMetaInformation();
+            Attributes dataset = in.readDataset(-1, -1);
+            assertThat(fmi.getString(Tag.TransferSyntaxUID)).isEqualTo(UID.ExplicitVRLittleEndian);
+            assertThat(fmi.getString(Tag.MediaStorageSOPInstanceUID)).isEqualTo(uids.get(0));
+            assertThat(dataset.getString(Tag.StudyInstanceUID)).isEqualTo(studyUID);
+            assertThat(dataset.getBytes(Tag.PixelData)).hasSize(16 * 16 * 2);
+        }
+    }
+
+    @Test
+    public void testConcurrentAssociations() throws Exception {
+        scp.start();
+        int nbAssociations = 4;
+        int nbInstances = 10;
+        ExecutorService executor = Executors.newFixedThreadPool(nbAssociations);
+        List<Future<List<Integer>>> results = new ArrayList<>();
+        for (int a = 0; a < nbAssociations; a++) {
+            results.add(executor.submit(() -> {
+                List<String> uids = new ArrayList<>();
+                for (int i = 0; i < nbInstances; i++) {
+                    uids.add(UIDUtils.createUID());
+                }
+                return send(SCU_AET, UID.ImplicitVRLittleEndian, UIDUtils.createUID(), uids);
+            }));
+        }
+        for (Future<List<Integer>> f : results) {
+            assertThat(f.get(60, TimeUnit.SECONDS)).containsOnly(Status.Success);
+        }
+        executor.shutdown();
+
+        assertThat(receivedFiles).hasSize(nbAssociations * nbInstances);
+        assertThat(scp.getFailedInstances()).isZero();
+        // No temporary file left
+        assertThat(scp.getStorageDir().list()).allMatch(n -> n.endsWith(".dcm")); //$NON-NLS-1$
+    }
+
+    @Test
+    public void testRejectCallingAETitle() throws Exception {
+        scp.setAcceptedCallingAETitles("MODALITY"); //$NON-NLS-1$
+        scp.start();
+        List<String> uids = new ArrayList<>();
+        uids.add(UIDUtils.createUID());
+        assertThatThrownBy(() -> send(SCU_AET, UID.ExplicitVRLittleEndian, UIDUtils.createUID(), uids))
+            .isInstanceOf(Exception.class);
+        assertThat(send("MODALITY", UID.ExplicitVRLittleEndian, UIDUtils.createUID(), uids)) //$NON-NLS-1$
+            .containsOnly(Status.Success);
+        assertThat(receivedFiles).hasSize(1);
+    }
+
+    @Test
+    public void testRejectTransferSyntax() throws Exception {
+        scp.setTransferSyntaxes(UID.ExplicitVRLittleEndian);
+        scp.start();
+        List<String> uids = new ArrayList<>();
+        uids.add(UIDUtils.createUID());
+        // No presentation context accepted
+        assertThatThrownBy(() -> send(SCU_AET, UID.ImplicitVRLittleEndian, UIDUtils.createUID(), uids))
+            .isInstanceOf(Exception.class);
+        assertThat(receivedFiles).isEmpty();
+        assertThat(send(SCU_AET, UID.ExplicitVRLittleEndian, UIDUtils.createUID(), uids))
+            .containsOnly(Status.Success);
+    }
+
+    @Test
+    public void testDeleteExpiredFiles() throws Exception {
+        scp.start();
+        List<String> uids = new ArrayList<>();
+        uids.add(UIDUtils.createUID());
+        uids.add(UIDUtils.createUID());
+        assertThat(send(SCU_AET, UID.ExplicitVRLittleEndian, UIDUtils.createUID(), uids))
+            .containsOnly(Status.Success);
+        File dir = scp.getStorageDir();
+        long old = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(8);
+        assertThat(new File(dir, uids.get(0) + ".dcm").setLastModified(old)).isTrue(); //$NON-NLS-1$
+        File part = new File(dir, UIDUtils.createUID() + ".1.part"); //$NON-NLS-1$
+        assertThat(part.createNewFile() && part.setLastModified(old)).isTrue();
+        // Not a file of the SCP
+        File other = new File(dir, "readme.txt"); //$NON-NLS-1$
+        assertThat(other.createNewFile() && other.setLastModified(old)).isTrue();
+
+        // Without retention, only the interrupted transfers are deleted
+        assertThat(scp.deleteExpiredFiles(TimeUnit.DAYS.toMillis(1), 0L)).isEqualTo(1);
+        assertThat(dir.list()).containsOnly(uids.get(0) + ".dcm", uids.get(1) + ".dcm", "readme.txt"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+
+        assertThat(scp.deleteExpiredFiles(TimeUnit.DAYS.toMillis(1), TimeUnit.DAYS.toMillis(7))).isEqualTo(1);
+        assertThat(dir.list()).containsOnly(uids.get(1) + ".dcm", "readme.txt"); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    /**
+     * Send the instances in one association.
+     *
+     * @return the status of each C-STORE
+     */
+    private List<Integer> send(String callingAET, String tsuid, String studyUID, List<String> uids)
+        throws Exception {
+        String cuid = UID.SecondaryCaptureImageStorage;
+        Device device = new Device("store-scu"); //$NON-NLS-1$
+        ApplicationEntity ae = new ApplicationEntity(callingAET);
+        Connection conn = new Connection();
+        device.addConnection(conn);
+        device.addApplicationEntity(ae);
+        ae.addConnection(conn);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        ScheduledExecutorService scheduled = Executors.newSingleThreadScheduledExecutor();
+        device.setExecutor(executor);
+        device.setScheduledExecutor(scheduled);
+
+        Connection remote = new Connection(null, "127.0.0.1", scp.getPort()); //$NON-NLS-1$
+        AAssociateRQ rq = new AAssociateRQ();
+        rq.setCalledAET(SCP_AET);
+        rq.addPresentationContext(new PresentationContext(1, cuid, tsuid));
+        try {
+            Association as = ae.connect(remote, rq);
+            try {
+                List<Integer> status = new ArrayList<>();
+                for (String iuid : uids) {
+                    DimseRSP rsp = as.cstore(cuid, iuid, Priority.NORMAL,
+                        new DataWriterAdapter(buildInstance(cuid, studyUID, iuid)), tsuid);
+                    rsp.next();
+                    status.add(rsp.getCommand().getInt(Tag.Status, -1));
+                }
+                return status;
+            } finally {
+                as.waitForOutstandingRSP();
+                as.release();
+            }
+        } finally {
+            executor.shutdown();
+            scheduled.shutdown();
+        }
+    }
+
+    private static Attributes buildInstance(String cuid, String studyUID, String iuid) {
+        Attributes attrs = new Attributes();
+        attrs.setString(Tag.SOPClassUID, VR.UI, cuid);
+        attrs.setString(Tag.SOPInstanceUID, VR.UI, iuid);
+        attrs.setString(Tag.StudyInstanceUID, VR.UI, studyUID);
+        attrs.setString(Tag.SeriesInstanceUID, VR.UI, studyUID + ".1"); //$NON-NLS-1$
+        attrs.setString(Tag.PatientID, VR.LO, "SCP_TEST"); //$NON-NLS-1$
+        attrs.setString(Tag.Modality, VR.CS, "OT"); //$NON-NLS-1$
+        attrs.setInt(Tag.SamplesPerPixel, VR.US, 1);
+        attrs.setString(Tag.PhotometricInterpretation, VR.CS, "MONOCHROME2"); //$NON-NLS-1$
+        attrs.setInt(Tag.Rows, VR.US, 16);
+        attrs.setInt(Tag.Columns, VR.US, 16);
+        attrs.setInt(Tag.BitsAllocated, VR.US, 16);
+        attrs.setInt(Tag.BitsStored, VR.US, 12);
+        attrs.setInt(Tag.HighBit, VR.US, 11);
+        attrs.setInt(Tag.PixelRepresentation, VR.US, 0);
+        attrs.setBytes(Tag.PixelData, VR.OW, new byte[16 * 16 * 2]);
+        return attrs;
+    }
+}
@@ -22,8 +22,17 @@ import java.time.LocalDateTime;
 import java.time.temporal.TemporalAdjusters;
 import java.time.temporal.WeekFields;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -33,6 +42,7 @@ import javax.swing.BoxLayout;
 import javax.swing.ComboBoxModel;
 import javax.swing.DefaultComboBoxModel;
 import javax.swing.JButton;
+import javax.swing.JCheckBox;
 import javax.swing.JComboBox;
 import javax.swing.JLabel;
 import javax.swing.JOptionPane;
@@ -44,12 +54,15 @@ import javax.swing.SwingUtilities;
 import javax.swing.border.Border;
 import javax.swing.border.TitledBorder;
 import javax.swing.event.ListDataEvent;
+import javax.swing.event.TreeExpansionEvent;
+import javax.swing.event.TreeWillExpandListener;
 import javax.swing.tree.DefaultMutableTreeNode;
 import javax.swing.tree.TreePath;
 
 import org.dcm4che3.data.Attributes;
 import org.dcm4che3.data.Tag;
 import org.dcm4che3.net.Status;
+import org.dcm4che3.net.service.QueryRetrieveLevel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.weasis.core.api.gui.util.AbstractItemDialogPage;
@@ -63,6 +76,7 @@ import org.weasis.core.api.gui.util.JMVUtils;
 import org.weasis.core.api.gui.util.WinUtil;
 import org.weasis.core.api.media.data.MediaSeriesGroup;
 import org.weasis.core.api.media.data.MediaSeriesGroupNode;
+import org.weasis.core.api.media.data.Series;
 import org.weasis.core.api.media.data.TagUtil;
 import org.weasis.core.api.media.data.TagW;
 import org.weasis.core.api.util.FileUtil;
@@ -71,6 +85,7 @@ import org.weasis.core.api.util.LocalUtil;
 import org.weasis.core.api.util.StringUtil;
 import org.weasis.core.api.util.ThreadUtil;
 import org.weasis.core.ui.pref.PreferenceDialog;
+import org.weasis.dicom.codec.DicomSeries;
 import org.weasis.dicom.codec.TagD;
 import org.weasis.dicom.codec.TagD.Level;
 import org.weasis.dicom.codec.display.Modality;
@@ -84,10 +99,9 @@ import org.weasis.dicom.explorer.pref.node.AbstractDicomNode.UsageType;
 import org.weasis.dicom.explorer.pref.node.DefaultDicomNode;
 import org.weasis.dicom.explorer.pref.node.DicomWebNode;
 import org.weasis.dicom.op.CFind;
-import org.weasis.dicom.param.AdvancedParams;
-import org.weasis.dicom.param.ConnectOptions;
 import org.weasis.dicom.param.DicomParam;
 import org.weasis.dicom.param.DicomState;
+import org.weasis.dicom.qr.RetrieveTreeModel.ToolTipStudyNode;
 import org.weasis.dicom.tool.DicomListener;
 
 import com.github.lgooddatepicker.components.DatePicker;
@@ -172,6 +186,7 @@ public class DicomQrView extends AbstractItemDialogPage implements ImportDicom {
     private static final String LAST_SEL_NODE = "lastSelNode"; //$NON-NLS-1$
     private static final String LAST_CALLING_NODE = "lastCallingNode"; //$NON-NLS-1$
     private static final String LAST_RETRIEVE_TYPE = "lastRetrieveType"; //$NON-NLS-1$
+    private static final String LAST_ALL_ARCHIVES = "lastAllArchives"; //$NON-NLS-1$
     static final File tempDir = FileUtil.createTempDir(AppProperties.buildAccessibleTempDirectory("tmp", "qr")); //$NON-NLS-1$ //$NON-NLS-2$
 
     private final Border spaceY = BorderFactory.createEmptyBorder(10, 3, 0, 3);
@@ -229,6 +244,14 @@ public class DicomQrView extends AbstractItemDialogPage implements ImportDicom {
     private final JComboBox<AbstractDicomNode> comboCallingNode = new JComboBox<>();
     private final DicomListener dicomListener;
     private final ExecutorService executor = ThreadUtil.buildNewFixedThreadExecutor(3, "Dicom Q/R task"); //$NON-NLS-1$
+    private final JCheckBox allArchivesCheckbox = new JCheckBox(Messages.getString("DicomQrView.all_archives")); //$NON-NLS-1$
+    private final JButton cancelBtn = new JButton(Messages.getString("DicomQrView.cancel")); //$NON-NLS-1$
+    // Archives where each study has been found
+    private final Map<String, Set<DefaultDicomNode>> studySources = new HashMap<>();
+    private final Set<String> seriesQueried = new HashSet<>();
+    private final List<FederatedQuery> seriesQueries = new ArrayList<>();
+    private RetrieveTreeModel treeModel;
+    private volatile FederatedQuery currentQuery;
 
     public DicomQrView() {
         super(Messages.getString("DicomQrView.title")); //$NON-NLS-1$
@@ -238,6 +261,23 @@ public class DicomQrView extends AbstractItemDialogPage implements ImportDicom {
                 TitledBorder.DEFAULT_JUSTIFICATION, TitledBorder.DEFAULT_POSITION, FontTools.getFont12Bold(),
                 Color.GRAY)));
         add(tree, BorderLayout.CENTER);
+        setTreeModel(new RetrieveTreeModel(dicomModel));
+        // Registered once, the study nodes are those of the current model
+        tree.getCheckboxTree().addTreeWillExpandListener(new TreeWillExpandListener() {
+
+            @Override
+            public void treeWillExpand(TreeExpansionEvent event) {
+                Object node = event.getPath().getLastPathComponent();
+                if (node instanceof ToolTipStudyNode) {
+                    querySeries((ToolTipStudyNode) node);
+                }
+            }
+
+            @Override
+            public void treeWillCollapse(TreeExpansionEvent event) {
+                // Do nothing
+            }
+        });
         initialize(true);
 
         DicomListener dcmListener = null;
@@ -270,6 +310,8 @@ public class DicomQrView extends AbstractItemDialogPage implements ImportDicom {
         JMVUtils.setPreferredWidth(comboDestinationNode, 185, 185);
         AbstractDicomNode.addTooltipToComboList(comboDestinationNode);
         sPanel.add(comboDestinationNode);
+        allArchivesCheckbox.setToolTipText(Messages.getString("DicomQrView.tips_all_archives")); //$NON-NLS-1$
+        sPanel.add(allArchivesCheckbox);
 
         sPanel.add(Box.createHorizontalStrut(10));
         JLabel lblTetrieve = new JLabel(Messages.getString("DicomQrView.retrieve") + StringUtil.COLON); //$NON-NLS-1$
@@ -318,6 +360,10 @@ public class DicomQrView extends AbstractItemDialogPage implements ImportDicom {
         searchBtn.setToolTipText(Messages.getString("DicomQrView.tips_dcm_query")); //$NON-NLS-1$
         searchBtn.addActionListener(e -> cfind());
         panel5.add(searchBtn);
+        cancelBtn.setToolTipText(Messages.getString("DicomQrView.tips_cancel_query")); //$NON-NLS-1$
+        cancelBtn.setEnabled(false);
+        cancelBtn.addActionListener(e -> cancelQuery());
+        panel5.add(cancelBtn);
         return panel5;
     }
 
@@ -436,8 +482,12 @@ public class DicomQrView extends AbstractItemDialogPage implements ImportDicom {
     private void cfind() {
         SearchParameters searchParams = buildCurrentSearchParameters();
         List<DicomParam> p = searchParams.getParameters();
-        // Clear model
+        // Stop the previous query and clear model
+        cancelQuery();
         dicomModel.dispose();
+        studySources.clear();
+        seriesQueried.clear();
+        setTreeModel(new RetrieveTreeModel(dicomModel));
 
         if (p.isEmpty()) {
             String message = Messages.getString("DicomQrView.msg_empty_query"); //$NON-NLS-1$
@@ -470,93 +520,232 @@ public class DicomQrView extends AbstractItemDialogPage implements ImportDicom {
         AbstractDicomNode selectedItem = (AbstractDicomNode) comboDestinationNode.getSelectedItem();
         AbstractDicomNode callingNode = (AbstractDicomNode) comboCallingNode.getSelectedItem();
         if (selectedItem instanceof DefaultDicomNode && callingNode instanceof DefaultDicomNode) {
-            final DefaultDicomNode node = (DefaultDicomNode) selectedItem;
-            AdvancedParams params = new AdvancedParams();
-            ConnectOptions connectOptions = new ConnectOptions();
-            connectOptions.setConnectTimeout(3000);
-            connectOptions.setAcceptTimeout(5000);
-            params.setConnectOptions(connectOptions);
-            final DicomState state = CFind.process(params, ((DefaultDicomNode) callingNode).getDicomNodeWithOnlyAET(),
-                node.getDicomNode(), p.toArray(new DicomParam[p.size()]));
-            if (state.getStatus() == Status.Success) {
-                displayResult(state);
-            } else {
-                LOGGER.error("Dicom cfind error: {}", state.getMessage()); //$NON-NLS-1$
-                GuiExecutor.instance().execute(() -> JOptionPane.showMessageDialog(basePanel, state.getMessage(), null,
-                    JOptionPane.ERROR_MESSAGE));
-            }
+            FederatedQuery query = new FederatedQuery(((DefaultDicomNode) callingNode).getDicomNodeWithOnlyAET(),
+                getQueryNodes(), QueryRetrieveLevel.STUDY, p, new QueryListener(null));
+            currentQuery = query;
+            cancelBtn.setEnabled(true);
+            query.start();
         } else if (selectedItem instanceof DicomWebNode) {
             throw new IllegalAccessError("Not implemented yet"); //$NON-NLS-1$
         }
     }
 
+    /**
+     * @return the selected archive first and the other archives when querying all the archives
+     */
+    private List<DefaultDicomNode> getQueryNodes() {
+        List<DefaultDicomNode> nodes = new ArrayList<>();
+        Object selectedItem = comboDestinationNode.getSelectedItem();
+        if (selectedItem instanceof DefaultDicomNode) {
+            nodes.add((DefaultDicomNode) selectedItem);
+        }
+        if (allArchivesCheckbox.isSelected()) {
+            for (int i = 0; i < comboDestinationNode.getItemCount(); i++) {
+                AbstractDicomNode node = comboDestinationNode.getItemAt(i);
+                if (node instanceof DefaultDicomNode && !nodes.contains(node)) {
+                    nodes.add((DefaultDicomNode) node);
+                }
+            }
+        }
+        return nodes;
+    }
+
+    private void cancelQuery() {
+        FederatedQuery query = currentQuery;
+        if (query != null) {
+            query.cancel();
+            currentQuery = null;
+        }
+        for (FederatedQuery q : seriesQueries) {
+            q.cancel();
+        }
+        seriesQueries.clear();
+        cancelBtn.setEnabled(false);
+    }
+
     private static void addReturnTags(List<DicomParam> list, DicomParam p) {
         if (!list.stream().anyMatch(d -> d.getTag() == p.getTag())) {
             list.add(p);
         }
     }
 
-    private void displayResult(DicomState state) {
-        List<Attributes> items = state.getDicomRSP();
-        if (items != null) {
-            for (int i = 0; i < items.size(); i++) {
-                Attributes item = items.get(i);
-                LOGGER.trace("==========================================="); //$NON-NLS-1$
-                LOGGER.trace("CFind Item {}", (i + 1)); //$NON-NLS-1$
-                LOGGER.trace("==========================================="); //$NON-NLS-1$
-                LOGGER.trace("{}", item.toString(100, 150)); //$NON-NLS-1$
-
-                PatientComparator patientComparator = new PatientComparator(item);
-                String patientPseudoUID = patientComparator.buildPatientPseudoUID();
-                MediaSeriesGroup patient = dicomModel.getHierarchyNode(MediaSeriesGroupNode.rootNode, patientPseudoUID);
-                if (patient == null) {
-                    patient = new MediaSeriesGroupNode(TagW.PatientPseudoUID, patientPseudoUID,
-                        DicomModel.patient.getTagView()) {
-                        @Override
-                        public String toString() {
-                            StringBuilder buf = new StringBuilder(getDisplayValue(this, Tag.PatientName));
-                            buf.append(" ["); //$NON-NLS-1$
-                            buf.append(getDisplayValue(this, Tag.PatientID));
-                            buf.append("] "); //$NON-NLS-1$
-                            buf.append(getDisplayValue(this, Tag.PatientBirthDate));
-                            buf.append(" "); //$NON-NLS-1$
-                            buf.append(getDisplayValue(this, Tag.PatientSex));
-                            return buf.toString();
-                        }
-                    };
-                    DicomMediaUtils.writeMetaData(patient, item);
-                    dicomModel.addHierarchyNode(MediaSeriesGroupNode.rootNode, patient);
+    private void setTreeModel(RetrieveTreeModel model) {
+        treeModel = model;
+        tree.setCheckTreeModel(model);
+        tree.revalidate();
+        tree.repaint();
+    }
+
+    /**
+     * Query the series of a study when it is expanded the first time, only the archives having the study are queried.
+     */
+    private void querySeries(ToolTipStudyNode studyNode) {
+        MediaSeriesGroup study = (MediaSeriesGroup) studyNode.getUserObject();
+        String studyUID = TagD.getTagValue(study, Tag.StudyInstanceUID, String.class);
+        Set<DefaultDicomNode> sources = studySources.get(studyUID);
+        AbstractDicomNode callingNode = (AbstractDicomNode) comboCallingNode.getSelectedItem();
+        if (sources == null || !(callingNode instanceof DefaultDicomNode) || !seriesQueried.add(studyUID)) {
+            return;
+        }
+        List<DicomParam> keys = new ArrayList<>();
+        // Matching Keys
+        keys.add(new DicomParam(Tag.StudyInstanceUID, studyUID));
+        // Return Keys
+        keys.add(CFind.SeriesInstanceUID);
+        keys.add(CFind.Modality);
+        keys.add(CFind.SeriesNumber);
+        keys.add(CFind.SeriesDescription);
+        keys.add(new DicomParam(Tag.SeriesDate));
+        keys.add(new DicomParam(Tag.SeriesTime));
+        keys.add(new DicomParam(Tag.NumberOfSeriesRelatedInstances));
+        FederatedQuery query = new FederatedQuery(((DefaultDicomNode) callingNode).getDicomNodeWithOnlyAET(),
+            new ArrayList<>(sources), QueryRetrieveLevel.SERIES, keys, new QueryListener(studyNode));
+        seriesQueries.add(query);
+        query.start();
+    }
+
+    /**
+     * Receives the items of a query and adds them in the model from the EDT. The items received in the meantime are
+     * added together.
+     */
+    private class QueryListener implements FederatedQuery.Listener {
+        private final ToolTipStudyNode studyNode;
+        private final ConcurrentLinkedQueue<Object[]> pendingItems = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+        private final List<String> errors = Collections.synchronizedList(new ArrayList<>());
+        private final RetrieveTreeModel model = treeModel;
+
+        /**
+         * @param studyNode
+         *            the study for a series query, null for a study query
+         */
+        QueryListener(ToolTipStudyNode studyNode) {
+            this.studyNode = studyNode;
+        }
+
+        @Override
+        public void onResponse(DefaultDicomNode node, Attributes item) {
+            pendingItems.add(new Object[] { node, item });
+            if (flushScheduled.compareAndSet(false, true)) {
+                GuiExecutor.instance().execute(this::flush);
+            }
+        }
+
+        @Override
+        public void onFinished(DefaultDicomNode node, DicomState state) {
+            int status = state.getStatus();
+            if (status != Status.Success && status != Status.Cancel) {
+                LOGGER.error("Dicom cfind error with {}: {}", node, state.getMessage()); //$NON-NLS-1$
+                errors.add(node.getDescription() + StringUtil.COLON_AND_SPACE + state.getMessage());
+            }
+            GuiExecutor.instance().execute(() -> {
+                flush();
+                if (studyNode != null) {
+                    seriesQueries.removeIf(FederatedQuery::isDone);
+                } else if (currentQuery != null && currentQuery.isDone()) {
+                    currentQuery = null;
+                    cancelBtn.setEnabled(false);
+                    if (!errors.isEmpty()) {
+                        JOptionPane.showMessageDialog(basePanel, String.join("\n", errors), null, //$NON-NLS-1$
+                            JOptionPane.ERROR_MESSAGE);
+                    }
                 }
+            });
+        }
 
-                String studyUID = item.getString(Tag.StudyInstanceUID);
-                MediaSeriesGroup study = dicomModel.getHierarchyNode(patient, studyUID);
-                if (study == null) {
-                    study =
-                        new MediaSeriesGroupNode(TagD.getUID(Level.STUDY), studyUID, DicomModel.study.getTagView()) {
-                            @Override
-                            public String toString() {
-                                StringBuilder buf = new StringBuilder(getDisplayValue(this, Tag.StudyDescription));
-                                buf.append(" ["); //$NON-NLS-1$
-                                buf.append(getDisplayValue(this, Tag.ModalitiesInStudy));
-                                buf.append("] "); //$NON-NLS-1$
-                                LocalDateTime studyDate = TagD.dateTime(Tag.StudyDate, Tag.StudyTime, this);
-                                if (studyDate != null) {
-                                    buf.append(TagUtil.formatDateTime(studyDate));
-                                    buf.append(" "); //$NON-NLS-1$
-                                }
-                                buf.append(getDisplayValue(this, Tag.AccessionNumber));
-                                return buf.toString();
-                            }
-                        };
-                    DicomMediaUtils.writeMetaData(study, item);
-                    dicomModel.addHierarchyNode(patient, study);
+        private void flush() {
+            flushScheduled.set(false);
+            // A new query has replaced the model
+            if (model != treeModel) {
+                pendingItems.clear();
+                return;
+            }
+            Object[] val;
+            while ((val = pendingItems.poll()) != null) {
+                DefaultDicomNode node = (DefaultDicomNode) val[0];
+                Attributes item = (Attributes) val[1];
+                if (studyNode == null) {
+                    addStudy(node, item);
+                } else {
+                    addSeries(studyNode, item);
                 }
             }
         }
+    }
 
-        tree.setCheckTreeModel(new RetrieveTreeModel(dicomModel));
-        tree.revalidate();
-        tree.repaint();
+    private void addStudy(DefaultDicomNode node, Attributes item) {
+        LOGGER.trace("CFind Item from {}: {}", node, item.toString(100, 150)); //$NON-NLS-1$
+        String studyUID = item.getString(Tag.StudyInstanceUID);
+        if (!StringUtil.hasText(studyUID)) {
+            return;
+        }
+        // The same study can be in several archives
+        studySources.computeIfAbsent(studyUID, k -> new LinkedHashSet<>()).add(node);
+
+        PatientComparator patientComparator = new PatientComparator(item);
+        String patientPseudoUID = patientComparator.buildPatientPseudoUID();
+        MediaSeriesGroup patient = dicomModel.getHierarchyNode(MediaSeriesGroupNode.rootNode, patientPseudoUID);
+        if (patient == null) {
+            patient = new MediaSeriesGroupNode(TagW.PatientPseudoUID, patientPseudoUID,
+                DicomModel.patient.getTagView()) {
+                @Override
+                public String toString() {
+                    StringBuilder buf = new StringBuilder(getDisplayValue(this, Tag.PatientName));
+                    buf.append(" ["); //$NON-NLS-1$
+                    buf.append(getDisplayValue(this, Tag.PatientID));
+                    buf.append("] "); //$NON-NLS-1$
+                    buf.append(getDisplayValue(this, Tag.PatientBirthDate));
+                    buf.append(" "); //$NON-NLS-1$
+                    buf.append(getDisplayValue(this, Tag.PatientSex));
+                    return buf.toString();
+                }
+            };
+            DicomMediaUtils.writeMetaData(patient, item);
+            dicomModel.addHierarchyNode(MediaSeriesGroupNode.rootNode, patient);
+        }
+
+        MediaSeriesGroup study = dicomModel.getHierarchyNode(patient, studyUID);
+        if (study == null) {
+            study = new MediaSeriesGroupNode(TagD.getUID(Level.STUDY), studyUID, DicomModel.study.getTagView()) {
+                @Override
+                public String toString() {
+                    StringBuilder buf = new StringBuilder(getDisplayValue(this, Tag.StudyDescription));
+                    buf.append(" ["); //$NON-NLS-1$
+                    buf.append(getDisplayValue(this, Tag.ModalitiesInStudy));
+                    buf.append("] "); //$NON-NLS-1$
+                    LocalDateTime studyDate = TagD.dateTime(Tag.StudyDate, Tag.StudyTime, this);
+                    if (studyDate != null) {
+                        buf.append(TagUtil.formatDateTime(studyDate));
+                        buf.append(" "); //$NON-NLS-1$
+                    }
+                    buf.append(getDisplayValue(this, Tag.AccessionNumber));
+                    return buf.toString();
+                }
+            };
+            DicomMediaUtils.writeMetaData(study, item);
+            dicomModel.addHierarchyNode(patient, study);
+        }
+
+        DefaultMutableTreeNode root = treeModel.getRootNode();
+        int nbPatients = root.getChildCount();
+        DefaultMutableTreeNode studyNode = treeModel.addStudy(patient, study);
+        if (root.getChildCount() != nbPatients) {
+            // Show the studies of the new patient
+            tree.getCheckboxTree()
+                .expandPath(new TreePath(((DefaultMutableTreeNode) studyNode.getParent()).getPath()));
+        }
+    }
+
+    private void addSeries(ToolTipStudyNode studyNode, Attributes item) {
+        String seriesUID = item.getString(Tag.SeriesInstanceUID);
+        MediaSeriesGroup study = (MediaSeriesGroup) studyNode.getUserObject();
+        if (!StringUtil.hasText(seriesUID) || dicomModel.getHierarchyNode(study, seriesUID) != null) {
+            return;
+        }
+        Series<?> series = new DicomSeries(seriesUID);
+        DicomMediaUtils.writeMetaData(series, item);
+        dicomModel.addHierarchyNode(study, series);
+        treeModel.addSeries(studyNode, series);
     }
 
     private String getDisplayValue(MediaSeriesGroupNode node, int tagID) {
@@ -596,6 +785,8 @@ public class DicomQrView extends AbstractItemDialogPage implements ImportDicom {
                 // Do nothing
             }
         }
+        allArchivesCheckbox.setSelected(
+            Boolean.parseBoolean(DicomQrFactory.IMPORT_PERSISTENCE.getProperty(LAST_ALL_ARCHIVES)));
         applySelectedArchive();
         comboDestinationNode.addActionListener(destNodeListener);
     }
@@ -605,6 +796,7 @@ public class DicomQrView extends AbstractItemDialogPage implements ImportDicom {
         boolean dcmOption = selectedItem instanceof DefaultDicomNode;
         comboDicomRetrieveType.setEnabled(dcmOption);
         comboCallingNode.setEnabled(dcmOption);
+        allArchivesCheckbox.setEnabled(dcmOption);
     }
 
     public void resetSettingsToDefault() {
@@ -647,6 +839,8 @@ public class DicomQrView extends AbstractItemDialogPage implements ImportDicom {
         if (type != null) {
             DicomQrFactory.IMPORT_PERSISTENCE.setProperty(LAST_RETRIEVE_TYPE, type.name());
         }
+        DicomQrFactory.IMPORT_PERSISTENCE.setProperty(LAST_ALL_ARCHIVES,
+            Boolean.toString(allArchivesCheckbox.isSelected()));
     }
 
     private void nodeSelectionPersistence(AbstractDicomNode node, String key) {
@@ -674,6 +868,7 @@ public class DicomQrView extends AbstractItemDialogPage implements ImportDicom {
 
     @Override
     public void closeAdditionalWindow() {
+        cancelQuery();
         applyChange();
         executor.shutdown();
     }
@@ -683,7 +878,8 @@ public class DicomQrView extends AbstractItemDialogPage implements ImportDicom {
     }
 
     private List<String> getCheckedStudies(TreePath[] paths) {
-        List<String> studies = new ArrayList<>();
+        // The study and its series can be checked
+        Set<String> studies = new LinkedHashSet<>();
         for (TreePath treePath : paths) {
             DefaultMutableTreeNode node = (DefaultMutableTreeNode) treePath.getLastPathComponent();
             if (node.getUserObject() instanceof MediaSeriesGroup) {
@@ -694,14 +890,26 @@ public class DicomQrView extends AbstractItemDialogPage implements ImportDicom {
                 }
             }
         }
-        return studies;
+        return new ArrayList<>(studies);
     }
 
     @Override
     public void importDICOM(DicomModel explorerDcmModel, JProgressBar info) {
         List<String> studies = getCheckedStudies(tree.getCheckboxTree().getCheckingPaths());
         if (!studies.isEmpty()) {
-            executor.execute(new RetrieveTask(studies, explorerDcmModel, this));
+            // Retrieve each study from the selected archive or from an archive where it has been found
+            AbstractDicomNode selectedItem = (AbstractDicomNode) comboDestinationNode.getSelectedItem();
+            Map<AbstractDicomNode, List<String>> studiesByNode = new LinkedHashMap<>();
+            for (String uid : studies) {
+                Set<DefaultDicomNode> sources = studySources.get(uid);
+                AbstractDicomNode node = sources == null || sources.isEmpty() || sources.contains(selectedItem)
+                    ? selectedItem : sources.iterator().next();
+                studiesByNode.computeIfAbsent(node, k -> new ArrayList<>()).add(uid);
+            }
+            List<RetrieveTask> tasks = new ArrayList<>();
+            studiesByNode.forEach((node, list) -> tasks.add(new RetrieveTask(list, node, explorerDcmModel, this)));
+            // One archive after the other, the C-MOVE listener cannot be shared
+            executor.execute(() -> tasks.forEach(RetrieveTask::run));
         }
     }
 
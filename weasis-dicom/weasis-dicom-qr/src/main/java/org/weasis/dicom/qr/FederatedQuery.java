@@ -0,0 +1,231 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2018 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.dicom.qr;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.dcm4che3.data.Attributes;
+import org.dcm4che3.data.ElementDictionary;
+import org.dcm4che3.data.Tag;
+import org.dcm4che3.data.UID;
+import org.dcm4che3.data.VR;
+import org.dcm4che3.net.ApplicationEntity;
+import org.dcm4che3.net.Association;
+import org.dcm4che3.net.Connection;
+import org.dcm4che3.net.Device;
+import org.dcm4che3.net.DimseRSP;
+import org.dcm4che3.net.Priority;
+import org.dcm4che3.net.Status;
+import org.dcm4che3.net.pdu.AAssociateRQ;
+import org.dcm4che3.net.pdu.PresentationContext;
+import org.dcm4che3.net.service.QueryRetrieveLevel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.weasis.core.api.util.ThreadUtil;
+import org.weasis.dicom.explorer.pref.node.DefaultDicomNode;
+import org.weasis.dicom.param.DicomNode;
+import org.weasis.dicom.param.DicomParam;
+import org.weasis.dicom.param.DicomState;
+
+/**
+ * C-FIND SCU sending the same query to several archives in parallel.
+ *
+ * <ul>
+ * <li>Each archive is queried in its own association.</li>
+ * <li>The pending responses are given to the listener as soon as they are received.</li>
+ * <li>The query can be cancelled at any time, a C-CANCEL is sent to the archives still running.</li>
+ * </ul>
+ */
+final class FederatedQuery {
+    private static final Logger LOGGER = LoggerFactory.getLogger(FederatedQuery.class);
+
+    private static final String[] TRANSFER_SYNTAXES = { UID.ExplicitVRLittleEndian, UID.ImplicitVRLittleEndian };
+
+    interface Listener {
+        /**
+         * Called from the query threads with each matching item.
+         */
+        void onResponse(DefaultDicomNode node, Attributes item);
+
+        /**
+         * Called from the query threads when the query of an archive is finished.
+         */
+        void onFinished(DefaultDicomNode node, DicomState state);
+    }
+
+    private final DicomNode callingNode;
+    private final List<DefaultDicomNode> nodes;
+    private final Attributes keys;
+    private final Listener listener;
+    private final Map<DimseRSP, Association> runningQueries = new ConcurrentHashMap<>();
+    private final AtomicInteger remaining;
+    private volatile boolean cancelled = false;
+
+    /**
+     * @param callingNode
+     *            the calling AE title
+     * @param nodes
+     *            the archives to query
+     * @param level
+     *            the query level of the Study Root model
+     * @param params
+     *            the matching and return keys
+     * @param listener
+     *            the listener of the responses
+     */
+    FederatedQuery(DicomNode callingNode, List<DefaultDicomNode> nodes, QueryRetrieveLevel level,
+        List<DicomParam> params, Listener listener) {
+        this.callingNode = Objects.requireNonNull(callingNode);
+        this.nodes = new ArrayList<>(nodes);
+        this.listener = Objects.requireNonNull(listener);
+        this.remaining = new AtomicInteger(this.nodes.size());
+        this.keys = new Attributes();
+        keys.setString(Tag.QueryRetrieveLevel, VR.CS, level.name());
+        for (DicomParam p : params) {
+            VR vr = ElementDictionary.vrOf(p.getTag(), null);
+            String[] values = p.getValues();
+            if (values == null || values.length == 0) {
+                keys.setNull(p.getTag(), vr);
+            } else {
+                keys.setString(p.getTag(), vr, values);
+            }
+        }
+    }
+
+    void start() {
+        if (nodes.isEmpty()) {
+            return;
+        }
+        ExecutorService associationExecutor = Executors.newCachedThreadPool(ThreadUtil.getThreadFactory("C-FIND SCU")); //$NON-NLS-1$
+        ScheduledExecutorService scheduledExecutor = Executors.newSingleThreadScheduledExecutor();
+        ExecutorService workers = ThreadUtil.buildNewFixedThreadExecutor(nodes.size(), "C-FIND Query"); //$NON-NLS-1$
+
+        Device device = new Device("weasis-find-scu"); //$NON-NLS-1$
+        ApplicationEntity ae = new ApplicationEntity(callingNode.getAet());
+        Connection conn = new Connection();
+        conn.setConnectTimeout(3000);
+        conn.setAcceptTimeout(5000);
+        device.addConnection(conn);
+        device.addApplicationEntity(ae);
+        ae.addConnection(conn);
+        device.setExecutor(associationExecutor);
+        device.setScheduledExecutor(scheduledExecutor);
+
+        for (DefaultDicomNode node : nodes) {
+            workers.execute(() -> {
+                DicomState state = query(ae, node);
+                if (remaining.decrementAndGet() == 0) {
+                    associationExecutor.shutdown();
+                    scheduledExecutor.shutdown();
+                }
+                listener.onFinished(node, state);
+            });
+        }
+        workers.shutdown();
+    }
+
+    /**
+     * Stop all the queries. The listener is not called anymore with new items.
+     */
+    void cancel() {
+        cancelled = true;
+        for (Map.Entry<DimseRSP, Association> entry : runningQueries.entrySet()) {
+            try {
+                entry.getKey().cancel(entry.getValue());
+            } catch (IOException e) {
+                LOGGER.warn("Cannot cancel C-FIND: {}", e.getMessage()); //$NON-NLS-1$
+                entry.getValue().abort();
+            }
+        }
+    }
+
+    boolean isCancelled() {
+        return cancelled;
+    }
+
+    boolean isDone() {
+        return remaining.get() == 0;
+    }
+
+    private DicomState query(ApplicationEntity ae, DefaultDicomNode node) {
+        if (cancelled) {
+            return new DicomState(Status.Cancel, null, null);
+        }
+        DicomNode calledNode = node.getDicomNode();
+        AAssociateRQ rq = new AAssociateRQ();
+        rq.setCalledAET(calledNode.getAet());
+        rq.addPresentationContext(
+            new PresentationContext(1, UID.StudyRootQueryRetrieveInformationModelFIND, TRANSFER_SYNTAXES));
+        Connection remote = new Connection(null, calledNode.getHostname(), calledNode.getPort());
+
+        Association as = null;
+        DimseRSP rsp = null;
+        int nbItems = 0;
+        try {
+            as = ae.connect(remote, rq);
+            rsp = as.cfind(UID.StudyRootQueryRetrieveInformationModelFIND, Priority.NORMAL, new Attributes(keys), null,
+                0);
+            runningQueries.put(rsp, as);
+            if (cancelled) {
+                rsp.cancel(as);
+            }
+            DicomState state = new DicomState(Status.Success, null, null);
+            while (rsp.next()) {
+                Attributes cmd = rsp.getCommand();
+                int status = cmd.getInt(Tag.Status, -1);
+                if (Status.isPending(status)) {
+                    Attributes item = rsp.getDataset();
+                    if (item != null && !cancelled) {
+                        nbItems++;
+                        listener.onResponse(node, item);
+                    }
+                } else {
+                    state = new DicomState(status, cmd.getString(Tag.ErrorComment), null);
+                }
+            }
+            LOGGER.debug("C-FIND {}: {} items", node, nbItems); //$NON-NLS-1$
+            return cancelled ? new DicomState(Status.Cancel, null, null) : state;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new DicomState(Status.Cancel, null, null);
+        } catch (Exception e) {
+            LOGGER.error("C-FIND {}", node, e); //$NON-NLS-1$
+            return new DicomState(Status.UnableToProcess, e.getMessage(), null);
+        } finally {
+            if (rsp != null) {
+                runningQueries.remove(rsp);
+            }
+            closeAssociation(as);
+        }
+    }
+
+    private static void closeAssociation(Association as) {
+        if (as != null && as.isReadyForDataTransfer()) {
+            try {
+                as.waitForOutstandingRSP();
+                as.release();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException e) {
+                LOGGER.error("Release association", e); //$NON-NLS-1$
+            }
+        }
+    }
+}
@@ -12,18 +12,29 @@ package org.weasis.dicom.qr;
 
 import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
 
 import javax.swing.JOptionPane;
 
+import org.dcm4che3.data.Attributes;
 import org.dcm4che3.data.Tag;
+import org.dcm4che3.io.DicomInputStream;
 import org.dcm4che3.net.Status;
+import org.dcm4che3.net.service.QueryRetrieveLevel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.weasis.core.api.explorer.ObservableEvent;
@@ -40,13 +51,16 @@ import org.weasis.dicom.explorer.pref.node.AbstractDicomNode;
 import org.weasis.dicom.explorer.pref.node.AbstractDicomNode.RetrieveType;
 import org.weasis.dicom.explorer.pref.node.DefaultDicomNode;
 import org.weasis.dicom.explorer.pref.node.DicomWebNode;
+import org.weasis.dicom.explorer.wado.DownloadJournal;
 import org.weasis.dicom.explorer.wado.LoadRemoteDicomManifest;
 import org.weasis.dicom.mf.ArcQuery;
 import org.weasis.dicom.mf.WadoParameters;
+import org.weasis.dicom.op.CFind;
 import org.weasis.dicom.op.CGet;
 import org.weasis.dicom.op.CMove;
 import org.weasis.dicom.param.AdvancedParams;
 import org.weasis.dicom.param.ConnectOptions;
+import org.weasis.dicom.param.DicomNode;
 import org.weasis.dicom.param.DicomParam;
 import org.weasis.dicom.param.DicomProgress;
 import org.weasis.dicom.param.DicomState;
@@ -57,13 +71,32 @@ import org.weasis.dicom.tool.DicomListener;
 public class RetrieveTask extends ExplorerTask<ExplorerTask<Boolean, String>, String> {
     private static final Logger LOGGER = LoggerFactory.getLogger(RetrieveTask.class);
 
+    // Minimum delay (ms) between two checkpoints during a retrieve
+    private static final long CHECKPOINT_INTERVAL = 2000L;
+    // Delay (ms) without modification from which a received file is considered as complete
+    private static final long FILE_WRITE_DELAY = 2000L;
+
     private final List<String> studies;
+    private final AbstractDicomNode archive;
     private final DicomModel explorerDcmModel;
     private final DicomQrView dicomQrView;
 
     public RetrieveTask(List<String> studies, DicomModel explorerDcmModel, DicomQrView dicomQrView) {
+        this(studies, (AbstractDicomNode) dicomQrView.getComboDestinationNode().getSelectedItem(), explorerDcmModel,
+            dicomQrView);
+    }
+
+    /**
+     * @param studies
+     *            the StudyInstanceUIDs to retrieve
+     * @param archive
+     *            the archive where the studies are retrieved
+     */
+    public RetrieveTask(List<String> studies, AbstractDicomNode archive, DicomModel explorerDcmModel,
+        DicomQrView dicomQrView) {
         super(AbstractDicomNode.UsageType.RETRIEVE.toString(), false);
         this.studies = studies;
+        this.archive = archive;
         this.explorerDcmModel = explorerDcmModel;
         this.dicomQrView = dicomQrView;
     }
@@ -88,9 +121,7 @@ public class RetrieveTask extends ExplorerTask<ExplorerTask<Boolean, String>, St
 
         addCancelListener(progress);
 
-        DicomParam[] dcmParams = { new DicomParam(Tag.StudyInstanceUID, studies.toArray(new String[studies.size()])) };
-
-        Object selectedItem = dicomQrView.getComboDestinationNode().getSelectedItem();
+        Object selectedItem = archive;
         if (selectedItem instanceof DefaultDicomNode) {
             final DefaultDicomNode node = (DefaultDicomNode) selectedItem;
             DefaultDicomNode callingNode = (DefaultDicomNode) dicomQrView.getComboCallingNode().getSelectedItem();
@@ -98,6 +129,8 @@ public class RetrieveTask extends ExplorerTask<ExplorerTask<Boolean, String>, St
                 errorMessage = Messages.getString("RetrieveTask.no_calling_node"); //$NON-NLS-1$
             } else {
                 final DicomState state;
+                final List<File> loadingDirs = new ArrayList<>();
+                loadingDirs.add(DicomQrView.tempDir);
                 RetrieveType type = (RetrieveType) dicomQrView.getComboDicomRetrieveType().getSelectedItem();
                 AdvancedParams params = new AdvancedParams();
                 ConnectOptions connectOptions = new ConnectOptions();
@@ -115,8 +148,11 @@ public class RetrieveTask extends ExplorerTask<ExplorerTask<Boolean, String>, St
                             LOGGER.error("SOP Class url conversion", e); //$NON-NLS-1$
                         }
                     }
-                    state = CGet.process(params, callingNode.getDicomNodeWithOnlyAET(), node.getDicomNode(), progress,
-                        DicomQrView.tempDir, url, dcmParams);
+                    final URL sopClassURL = url;
+                    state = retrieveStudies(
+                        keys -> CGet.process(params, callingNode.getDicomNodeWithOnlyAET(), node.getDicomNode(),
+                            progress, DicomQrView.tempDir, sopClassURL, keys),
+                        params, callingNode.getDicomNodeWithOnlyAET(), node.getDicomNode(), progress, loadingDirs);
                 } else if (RetrieveType.CMOVE == type) {
                     DicomListener dicomListener = dicomQrView.getDicomListener();
                     try {
@@ -142,8 +178,10 @@ public class RetrieveTask extends ExplorerTask<ExplorerTask<Boolean, String>, St
                     if (errorMessage != null) {
                         state = new DicomState(Status.UnableToProcess, errorMessage, null);
                     } else {
-                        state = CMove.process(params, callingNode.getDicomNode(), node.getDicomNode(),
-                            callingNode.getAeTitle(), progress, dcmParams);
+                        state = retrieveStudies(
+                            keys -> CMove.process(params, callingNode.getDicomNode(), node.getDicomNode(),
+                                callingNode.getAeTitle(), progress, keys),
+                            params, callingNode.getDicomNodeWithOnlyAET(), node.getDicomNode(), progress, loadingDirs);
                         if (dicomListener != null) {
                             dicomListener.stop();
                         }
@@ -224,8 +262,8 @@ public class RetrieveTask extends ExplorerTask<ExplorerTask<Boolean, String>, St
                     LOGGER.error("Dicom retrieve error: {}", errorMessage); //$NON-NLS-1$
                 }
 
-                loadingTask =
-                    new LoadLocalDicom(new File[] { new File(DicomQrView.tempDir.getPath()) }, false, explorerDcmModel);
+                loadingTask = new LoadLocalDicom(loadingDirs.toArray(new File[loadingDirs.size()]), false,
+                    explorerDcmModel);
             }
 
         } else if (selectedItem instanceof DicomWebNode) {
@@ -263,6 +301,154 @@ public class RetrieveTask extends ExplorerTask<ExplorerTask<Boolean, String>, St
         }
     }
 
+    /**
+     * Retrieve the studies one by one. The received instances are recorded in the download journal of each study
+     * while they are received, so that a retry or a retrieve after a restart requests only the missing instances.
+     *
+     * @param retrieve
+     *            the C-GET or C-MOVE operation
+     * @param loadingDirs
+     *            the directories to load at the end
+     * @return the state of the last failed retrieve or a success state
+     */
+    private DicomState retrieveStudies(Function<DicomParam[], DicomState> retrieve, AdvancedParams params,
+        DicomNode callingNode, DicomNode calledNode, DicomProgress progress, List<File> loadingDirs) {
+        DicomState state = new DicomState(Status.Success, null, null);
+        Map<String, DownloadJournal> journals = new ConcurrentHashMap<>();
+        AtomicLong lastCheckpoint = new AtomicLong(System.currentTimeMillis());
+        progress.addProgressListener(p -> {
+            // Record the received files during the retrieve, a large study is not lost when the application is closed
+            long now = System.currentTimeMillis();
+            long last = lastCheckpoint.get();
+            if (now - last > CHECKPOINT_INTERVAL && lastCheckpoint.compareAndSet(last, now)) {
+                checkpoint(journals, FILE_WRITE_DELAY);
+            }
+        });
+        for (String studyUID : studies) {
+            if (progress.isCancel()) {
+                return new DicomState(Status.Cancel, null, null);
+            }
+            DownloadJournal journal = DownloadJournal.open(studyUID);
+            DicomParam[] studyKeys = { new DicomParam(Tag.StudyInstanceUID, studyUID) };
+            if (journal == null) {
+                // No checkpoint, the files stay in the temporary directory
+                state = getFailedState(retrieve.apply(studyKeys), state);
+                continue;
+            }
+            journals.put(studyUID, journal);
+            loadingDirs.add(journal.getDirectory());
+
+            Set<String> received = journal.getReceivedInstances();
+            DicomState s;
+            if (received.isEmpty()) {
+                s = retrieve.apply(studyKeys);
+            } else {
+                LOGGER.info("{} instances of the study {} already received", received.size(), studyUID); //$NON-NLS-1$
+                s = retrieveMissingInstances(retrieve, params, callingNode, calledNode, studyUID, received);
+            }
+            checkpoint(journals, 0L);
+            if (s.getStatus() == Status.Success) {
+                journal.complete();
+            }
+            state = getFailedState(s, state);
+        }
+        return state;
+    }
+
+    private static DicomState getFailedState(DicomState state, DicomState previous) {
+        int status = state.getStatus();
+        return status == Status.Success || status == Status.Cancel && previous.getStatus() != Status.Success
+            ? previous : state;
+    }
+
+    /**
+     * Retrieve only the instances not received at the image level, series by series. The whole study is retrieved
+     * when the list of the instances cannot be queried.
+     */
+    private static DicomState retrieveMissingInstances(Function<DicomParam[], DicomState> retrieve,
+        AdvancedParams params, DicomNode callingNode, DicomNode calledNode, String studyUID, Set<String> received) {
+        DicomParam[] keysSeries = {
+            // Matching Keys
+            new DicomParam(Tag.StudyInstanceUID, studyUID),
+            // Return Keys
+            CFind.SeriesInstanceUID };
+        DicomState find = CFind.process(params, callingNode, calledNode, 0, QueryRetrieveLevel.SERIES, keysSeries);
+        List<Attributes> seriesRSP = find.getDicomRSP();
+        if (find.getStatus() != Status.Success || seriesRSP == null) {
+            return retrieve.apply(new DicomParam[] { new DicomParam(Tag.StudyInstanceUID, studyUID) });
+        }
+
+        DicomState state = new DicomState(Status.Success, null, null);
+        for (Attributes series : seriesRSP) {
+            String seriesUID = series.getString(Tag.SeriesInstanceUID);
+            if (!StringUtil.hasText(seriesUID)) {
+                continue;
+            }
+            DicomParam[] keysInstance = {
+                // Matching Keys
+                new DicomParam(Tag.StudyInstanceUID, studyUID), new DicomParam(Tag.SeriesInstanceUID, seriesUID),
+                // Return Keys
+                CFind.SOPInstanceUID };
+            find = CFind.process(params, callingNode, calledNode, 0, QueryRetrieveLevel.IMAGE, keysInstance);
+            List<Attributes> instances = find.getDicomRSP();
+            List<String> missing = new ArrayList<>();
+            if (find.getStatus() == Status.Success && instances != null) {
+                for (Attributes instance : instances) {
+                    String sopUID = instance.getString(Tag.SOPInstanceUID);
+                    if (StringUtil.hasText(sopUID) && !received.contains(sopUID)) {
+                        missing.add(sopUID);
+                    }
+                }
+            }
+
+            DicomParam[] keys;
+            if (find.getStatus() != Status.Success || instances == null) {
+                keys = new DicomParam[] { new DicomParam(Tag.QueryRetrieveLevel, QueryRetrieveLevel.SERIES.name()),
+                    new DicomParam(Tag.StudyInstanceUID, studyUID), new DicomParam(Tag.SeriesInstanceUID, seriesUID) };
+            } else if (missing.isEmpty()) {
+                continue;
+            } else {
+                keys = new DicomParam[] { new DicomParam(Tag.QueryRetrieveLevel, QueryRetrieveLevel.IMAGE.name()),
+                    new DicomParam(Tag.StudyInstanceUID, studyUID), new DicomParam(Tag.SeriesInstanceUID, seriesUID),
+                    new DicomParam(Tag.SOPInstanceUID, missing.toArray(new String[missing.size()])) };
+            }
+            state = getFailedState(retrieve.apply(keys), state);
+        }
+        return state;
+    }
+
+    /**
+     * Move the received files into the directory of the journal of their study and record them.
+     *
+     * @param minAge
+     *            the delay (ms) since the last modification of a file, the files which may be still written are skipped
+     */
+    private static synchronized void checkpoint(Map<String, DownloadJournal> journals, long minAge) {
+        File[] files = DicomQrView.tempDir.listFiles(File::isFile);
+        if (files == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (File file : files) {
+            if (minAge > 0 && now - file.lastModified() < minAge) {
+                continue;
+            }
+            try (DicomInputStream dis = new DicomInputStream(file)) {
+                Attributes dataset = dis.readDataset(-1, Tag.PixelData);
+                DownloadJournal journal = journals.get(dataset.getString(Tag.StudyInstanceUID));
+                String sopUID = dataset.getString(Tag.SOPInstanceUID);
+                if (journal != null && StringUtil.hasText(sopUID)) {
+                    dis.close();
+                    File target = new File(journal.getDirectory(), file.getName());
+                    Files.move(file.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                    journal.markReceived(sopUID, target);
+                }
+            } catch (IOException e) {
+                LOGGER.warn("Cannot record the received file {}: {}", file, e.getMessage()); //$NON-NLS-1$
+            }
+        }
+    }
+
     private static String getHostname(String host) {
         if ("127.0.0.1".equals(host) || "127.0.1.1".equals(host) || "::1".equals(host)) { //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
             return "localhost"; //$NON-NLS-1$
@@ -16,6 +16,7 @@ import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Objects;
 
@@ -83,8 +84,61 @@ public class RetrieveTreeModel {
         return defaultSelectedPaths;
     }
 
+    /**
+     * Insert a study and its patient when they are not in the tree. Must be called from the EDT.
+     *
+     * @return the node of the study
+     */
+    public DefaultMutableTreeNode addStudy(MediaSeriesGroup patient, MediaSeriesGroup study) {
+        DefaultMutableTreeNode patientNode = getChild(rootNode, patient);
+        if (patientNode == null) {
+            if (rootNode.getChildCount() == 0) {
+                rootNode.setUserObject(DicomExplorer.ALL_PATIENTS);
+                model.nodeChanged(rootNode);
+            }
+            patientNode = new DefaultMutableTreeNode(patient, true);
+            model.insertNodeInto(patientNode, rootNode,
+                getInsertionIndex(rootNode, patientNode, DicomSorter.PATIENT_COMPARATOR));
+        }
+        DefaultMutableTreeNode studyNode = getChild(patientNode, study);
+        if (studyNode == null) {
+            studyNode = new ToolTipStudyNode(study, true);
+            model.insertNodeInto(studyNode, patientNode,
+                getInsertionIndex(patientNode, studyNode, DicomSorter.STUDY_COMPARATOR));
+        }
+        return studyNode;
+    }
+
+    /**
+     * Insert a series when it is not in the tree. Must be called from the EDT.
+     */
+    public void addSeries(DefaultMutableTreeNode studyNode, Series<?> series) {
+        if (getChild(studyNode, series) == null) {
+            DefaultMutableTreeNode seriesNode = new ToolTipSeriesNode(series, false);
+            model.insertNodeInto(seriesNode, studyNode,
+                getInsertionIndex(studyNode, seriesNode, DicomSorter.SERIES_COMPARATOR));
+        }
+    }
+
+    private static DefaultMutableTreeNode getChild(DefaultMutableTreeNode parent, Object userObject) {
+        for (int i = 0; i < parent.getChildCount(); i++) {
+            DefaultMutableTreeNode node = (DefaultMutableTreeNode) parent.getChildAt(i);
+            if (node.getUserObject() == userObject) {
+                return node;
+            }
+        }
+        return null;
+    }
+
+    private static int getInsertionIndex(DefaultMutableTreeNode parent, DefaultMutableTreeNode node,
+        Comparator<Object> comparator) {
+        List<?> children = Collections.list(parent.children());
+        int index = Collections.binarySearch(children, node, comparator);
+        return index < 0 ? -(index + 1) : index;
+    }
+
     private static void buildSeries(DefaultMutableTreeNode studyNode, Series<?> series) {
-        DefaultMutableTreeNode seriesNode = new ToolTipSeriesNode(series, true);
+        DefaultMutableTreeNode seriesNode = new ToolTipSeriesNode(series, false);
 
         List<?> children = Collections.list(studyNode.children());
         int index = Collections.binarySearch(children, seriesNode, DicomSorter.SERIES_COMPARATOR);
@@ -121,7 +175,8 @@ public class RetrieveTreeModel {
                 rootNode.insert(patientNode, index);
             }
         }
-        return new DefaultTreeModel(rootNode, false);
+        // A study can be expanded before loading its series
+        return new DefaultTreeModel(rootNode, true);
     }
 
     static class ToolTipStudyNode extends DefaultMutableTreeNode {
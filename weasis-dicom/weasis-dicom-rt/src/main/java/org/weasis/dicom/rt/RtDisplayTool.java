@@ -49,8 +49,8 @@ import org.weasis.core.api.media.data.ImageElement;
 import org.weasis.core.api.media.data.MediaElement;
 import org.weasis.core.api.media.data.MediaSeries;
 import org.weasis.core.api.media.data.MediaSeriesGroup;
-import org.weasis.core.api.media.data.SoftHashMap;
 import org.weasis.core.api.media.data.TagW;
+import org.weasis.core.api.util.SoftCache;
 import org.weasis.core.api.util.StringUtil;
 import org.weasis.core.ui.docking.PluginTool;
 import org.weasis.core.ui.editor.SeriesViewerEvent;
@@ -79,7 +79,7 @@ public class RtDisplayTool extends PluginTool implements SeriesViewerListener {
 
     public static final String BUTTON_NAME = "RT Tool";
 
-    private static final SoftHashMap<String, RtSet> RtSet_Cache = new SoftHashMap<>();
+    private static final SoftCache<String, RtSet> RtSet_Cache = new SoftCache<>(10);
 
     private final JTabbedPane tabbedPane = new JTabbedPane();
     private final JScrollPane rootPane;
@@ -762,11 +762,13 @@ public class RtDisplayTool extends PluginTool implements SeriesViewerListener {
                     if (patient != null) {
                         String frameOfReferenceUID = TagD.getTagValue(dcmSeries, Tag.FrameOfReferenceUID, String.class);
                         List<MediaElement> list = getRelatedSpecialElements(dicomModel, patient, frameOfReferenceUID);
-                        RtSet set = RtSet_Cache.get(frameOfReferenceUID);
+                        RtSet set = frameOfReferenceUID == null ? null : RtSet_Cache.get(frameOfReferenceUID);
                         boolean reload = set == null || (!list.isEmpty() && !set.getRtElements().equals(list));
                         if (reload) {
                             set = new RtSet(frameOfReferenceUID, list);
-                            RtSet_Cache.put(frameOfReferenceUID, set);
+                            if (frameOfReferenceUID != null) {
+                                RtSet_Cache.put(frameOfReferenceUID, set);
+                            }
                         }
                         boolean empty = set.getStructures().isEmpty();
                         btnLoad.setEnabled(empty || reload);
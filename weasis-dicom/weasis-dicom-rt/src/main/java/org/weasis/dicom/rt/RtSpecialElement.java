@@ -23,7 +23,7 @@ public class RtSpecialElement extends DicomSpecialElement {
     
     @Override
     protected void initLabel() {
-        Attributes dicom = ((DicomMediaIO) mediaIO).getDicomObject();
+        Attributes dicom = ((DicomMediaIO) mediaIO).getDicomHeader();
         String modality = dicom.getString(Tag.Modality);
 
         String rtLabel = null;
@@ -0,0 +1,746 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2018 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.dicom.send;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.dcm4che3.data.Attributes;
+import org.dcm4che3.data.Fragments;
+import org.dcm4che3.data.Sequence;
+import org.dcm4che3.data.Tag;
+import org.dcm4che3.data.UID;
+import org.dcm4che3.data.VR;
+import org.dcm4che3.io.DicomInputStream;
+import org.dcm4che3.io.DicomOutputStream;
+import org.dcm4che3.net.ApplicationEntity;
+import org.dcm4che3.net.Association;
+import org.dcm4che3.net.Connection;
+import org.dcm4che3.net.DataWriter;
+import org.dcm4che3.net.DataWriterAdapter;
+import org.dcm4che3.net.Device;
+import org.dcm4che3.net.DimseRSP;
+import org.dcm4che3.net.InputStreamDataWriter;
+import org.dcm4che3.net.PDVOutputStream;
+import org.dcm4che3.net.Priority;
+import org.dcm4che3.net.Status;
+import org.dcm4che3.net.pdu.AAssociateRQ;
+import org.dcm4che3.net.pdu.PresentationContext;
+import org.dcm4che3.util.UIDUtils;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.core.MatOfInt;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.weasis.core.api.media.data.MediaElement;
+import org.weasis.core.api.util.ThreadUtil;
+import org.weasis.dicom.codec.DicomMediaIO;
+import org.weasis.dicom.param.DicomNode;
+import org.weasis.dicom.param.DicomProgress;
+import org.weasis.dicom.param.DicomState;
+import org.weasis.opencv.data.PlanarImage;
+
+/**
+ * C-STORE SCU sending the instances over several associations in parallel.
+ *
+ * <ul>
+ * <li>The presentation contexts are proposed for each SOP class with the transfer syntax of the files and with the
+ * uncompressed syntaxes as fallback.</li>
+ * <li>When the SCP rejects the transfer syntax of a file, the instance is decompressed with the DICOM codec and sent
+ * in an uncompressed syntax. When the lossy compression is allowed and the SCP accepts only JPEG Baseline, the 8-bit
+ * monochrome images are encoded in JPEG and sent as new instances (new SOP Instance UID and lossy attributes).</li>
+ * <li>The instances which have failed because of the network or the resources of the SCP are sent again.</li>
+ * </ul>
+ */
+final class DicomStoreSender {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DicomStoreSender.class);
+
+    static final int DEFAULT_ASSOCIATIONS = 3;
+    static final int DEFAULT_RETRIES = 2;
+
+    // Presentation context ID is an odd number between 1 and 255
+    private static final int MAX_PRESENTATION_CONTEXTS = 128;
+    private static final String[] UNCOMPRESSED_SYNTAXES = { UID.ExplicitVRLittleEndian, UID.ImplicitVRLittleEndian };
+    private static final int JPEG_QUALITY = 90;
+    private static final Set<String> NATIVE_SYNTAXES = new LinkedHashSet<>(Arrays.asList(UID.ImplicitVRLittleEndian,
+        UID.ExplicitVRLittleEndian, UID.ExplicitVRBigEndianRetired, UID.DeflatedExplicitVRLittleEndian));
+
+    /**
+     * Status of one instance
+     */
+    static class Instance {
+        private final File file;
+        private final String cuid;
+        private final String iuid;
+        private final String tsuid;
+        private volatile int status = -1;
+        private volatile String error;
+        private volatile String sentTransferSyntax;
+        private volatile String sentSopInstanceUID;
+        private int attempts;
+
+        Instance(File file, String cuid, String iuid, String tsuid) {
+            this.file = file;
+            this.cuid = cuid;
+            this.iuid = iuid;
+            this.tsuid = tsuid;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        public String getSopInstanceUID() {
+            return iuid;
+        }
+
+        /**
+         * @return the DIMSE status, -1 when the instance has not been sent
+         */
+        public int getStatus() {
+            return status;
+        }
+
+        public String getError() {
+            return error;
+        }
+
+        public String getSentTransferSyntax() {
+            return sentTransferSyntax;
+        }
+
+        /**
+         * @return the SOP Instance UID of the instance received by the SCP, a new UID when the instance has been
+         *         compressed with a lossy compression
+         */
+        public String getSentSopInstanceUID() {
+            return sentSopInstanceUID;
+        }
+
+        public boolean isLossyCompressed() {
+            return UID.JPEGBaseline1.equals(sentTransferSyntax) && !UID.JPEGBaseline1.equals(tsuid);
+        }
+
+        public int getAttempts() {
+            return attempts;
+        }
+
+        public boolean isSent() {
+            return status == Status.Success || isWarning(status);
+        }
+    }
+
+    private final DicomNode callingNode;
+    private final DicomNode calledNode;
+    private final int nbAssociations;
+    private final int maxRetries;
+    private boolean lossyCompressionAllowed = false;
+    private final List<Instance> instances = new ArrayList<>();
+    private final ConcurrentLinkedQueue<Instance> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger completed = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicInteger warning = new AtomicInteger();
+
+    DicomStoreSender(DicomNode callingNode, DicomNode calledNode, int nbAssociations, int maxRetries) {
+        this.callingNode = callingNode;
+        this.calledNode = calledNode;
+        this.nbAssociations = Math.max(1, nbAssociations);
+        this.maxRetries = Math.max(0, maxRetries);
+    }
+
+    /**
+     * @param lossyCompressionAllowed
+     *            true to encode in JPEG Baseline the 8-bit monochrome images when the SCP accepts only this syntax. The
+     *            lossy images are new instances. False by default.
+     */
+    void setLossyCompressionAllowed(boolean lossyCompressionAllowed) {
+        this.lossyCompressionAllowed = lossyCompressionAllowed;
+    }
+
+    List<Instance> getInstances() {
+        return Collections.unmodifiableList(instances);
+    }
+
+    List<Instance> getFailedInstances() {
+        List<Instance> list = new ArrayList<>();
+        for (Instance inst : instances) {
+            if (!inst.isSent()) {
+                list.add(inst);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * @param files
+     *            the DICOM files or directories
+     * @param progress
+     *            the progress and the cancellation
+     * @return the global state
+     */
+    DicomState send(List<File> files, DicomProgress progress) {
+        for (File file : files) {
+            scan(file);
+        }
+        if (instances.isEmpty()) {
+            return new DicomState(Status.Success, null, null);
+        }
+        AAssociateRQ rq = buildAssociateRQ();
+        queue.addAll(instances);
+        updateProgress(progress);
+
+        int nbWorkers = Math.min(nbAssociations, instances.size());
+        ExecutorService associationExecutor = Executors.newCachedThreadPool(ThreadUtil.getThreadFactory("C-STORE SCU")); //$NON-NLS-1$
+        ScheduledExecutorService scheduledExecutor = Executors.newSingleThreadScheduledExecutor();
+        ExecutorService workers = ThreadUtil.buildNewFixedThreadExecutor(nbWorkers, "C-STORE Sender"); //$NON-NLS-1$
+        try {
+            Device device = new Device("weasis-store-scu"); //$NON-NLS-1$
+            ApplicationEntity ae = new ApplicationEntity(callingNode.getAet());
+            Connection conn = new Connection();
+            conn.setConnectTimeout(3000);
+            conn.setAcceptTimeout(5000);
+            device.addConnection(conn);
+            device.addApplicationEntity(ae);
+            ae.addConnection(conn);
+            device.setExecutor(associationExecutor);
+            device.setScheduledExecutor(scheduledExecutor);
+            Connection remote = new Connection(null, calledNode.getHostname(), calledNode.getPort());
+
+            List<Future<?>> results = new ArrayList<>(nbWorkers);
+            for (int i = 0; i < nbWorkers; i++) {
+                results.add(workers.submit(() -> runWorker(ae, remote, rq, progress)));
+            }
+            for (Future<?> f : results) {
+                f.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            LOGGER.error("C-STORE sender", e); //$NON-NLS-1$
+        } finally {
+            workers.shutdownNow();
+            associationExecutor.shutdown();
+            scheduledExecutor.shutdown();
+        }
+
+        // Instances not sent because all the associations have been closed
+        Instance inst;
+        while ((inst = queue.poll()) != null) {
+            finish(inst, progress);
+        }
+
+        if (progress != null && progress.isCancel()) {
+            return new DicomState(Status.Cancel, null, null);
+        }
+        List<Instance> failedInstances = getFailedInstances();
+        if (failedInstances.isEmpty()) {
+            return new DicomState(warning.get() > 0 ? Status.CoercionOfDataElements : Status.Success, null, null);
+        }
+        Instance first = failedInstances.get(0);
+        String message = String.format("%d/%d instances not sent. %s: %s", failedInstances.size(), instances.size(), //$NON-NLS-1$
+            first.getSopInstanceUID(), first.getError());
+        return new DicomState(Status.UnableToProcess, message, null);
+    }
+
+    private void runWorker(ApplicationEntity ae, Connection remote, AAssociateRQ rq, DicomProgress progress) {
+        Association as = null;
+        int connectFailures = 0;
+        try {
+            Instance inst;
+            while ((inst = queue.poll()) != null) {
+                if (progress != null && progress.isCancel()) {
+                    queue.add(inst);
+                    return;
+                }
+                if (as == null || !as.isReadyForDataTransfer()) {
+                    closeAssociation(as);
+                    as = null;
+                    try {
+                        as = ae.connect(remote, rq);
+                        connectFailures = 0;
+                    } catch (InterruptedException e) {
+                        queue.add(inst);
+                        Thread.currentThread().interrupt();
+                        return;
+                    } catch (Exception e) {
+                        LOGGER.error("Cannot open association with {}", calledNode, e); //$NON-NLS-1$
+                        inst.error = "Cannot open association: " + e.getMessage(); //$NON-NLS-1$
+                        // Not sent, let the other associations or a new attempt process it
+                        queue.add(inst);
+                        if (++connectFailures > maxRetries) {
+                            return;
+                        }
+                        Thread.sleep(1000L * connectFailures);
+                        continue;
+                    }
+                }
+                sendInstance(as, inst);
+                inst.attempts++;
+                if (!inst.isSent() && isRetryable(inst.status) && inst.attempts <= maxRetries) {
+                    queue.add(inst);
+                } else {
+                    finish(inst, progress);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            closeAssociation(as);
+        }
+    }
+
+    private void finish(Instance inst, DicomProgress progress) {
+        if (inst.status == Status.Success) {
+            completed.incrementAndGet();
+        } else if (isWarning(inst.status)) {
+            warning.incrementAndGet();
+        } else {
+            failed.incrementAndGet();
+            LOGGER.error("C-STORE of {} failed (status {}): {}", inst.iuid, Integer.toHexString(inst.status), //$NON-NLS-1$
+                inst.error);
+        }
+        updateProgress(progress);
+    }
+
+    private void sendInstance(Association as, Instance inst) {
+        inst.status = -1;
+        Set<String> accepted = as.getTransferSyntaxesFor(inst.cuid);
+        if (accepted.isEmpty()) {
+            inst.status = Status.SOPclassNotSupported;
+            inst.error = "SOP Class not accepted: " + inst.cuid; //$NON-NLS-1$
+            return;
+        }
+        try {
+            DimseRSP rsp;
+            if (accepted.contains(inst.tsuid)) {
+                try (DicomInputStream in = new DicomInputStream(inst.file)) {
+                    in.readFileMetaInformation();
+                    rsp = as.cstore(inst.cuid, inst.iuid, Priority.NORMAL, new InputStreamDataWriter(in), inst.tsuid);
+                    rsp.next();
+                }
+                inst.sentTransferSyntax = inst.tsuid;
+                inst.sentSopInstanceUID = inst.iuid;
+            } else {
+                String target = null;
+                for (String ts : UNCOMPRESSED_SYNTAXES) {
+                    if (accepted.contains(ts)) {
+                        target = ts;
+                        break;
+                    }
+                }
+                if (target == null && lossyCompressionAllowed && accepted.contains(UID.JPEGBaseline1)) {
+                    target = UID.JPEGBaseline1;
+                }
+                if (target == null) {
+                    inst.status = Status.SOPclassNotSupported;
+                    inst.error = "No transfer syntax accepted for " + inst.tsuid; //$NON-NLS-1$
+                    return;
+                }
+                String iuid = inst.iuid;
+                DataWriter writer;
+                if (UID.JPEGBaseline1.equals(target)) {
+                    Attributes dataset = readJpegBaseline(inst);
+                    iuid = dataset.getString(Tag.SOPInstanceUID);
+                    writer = new DataWriterAdapter(dataset);
+                } else if (NATIVE_SYNTAXES.contains(inst.tsuid)) {
+                    try (DicomInputStream in = new DicomInputStream(inst.file)) {
+                        in.readFileMetaInformation();
+                        writer = new DataWriterAdapter(in.readDataset(-1, -1));
+                    }
+                } else {
+                    writer = new UncompressedDataWriter(inst);
+                }
+                rsp = as.cstore(inst.cuid, iuid, Priority.NORMAL, writer, target);
+                rsp.next();
+                inst.sentTransferSyntax = target;
+                inst.sentSopInstanceUID = iuid;
+                if (!iuid.equals(inst.iuid)) {
+                    LOGGER.warn("{} sent with a lossy compression as the new instance {}", inst.iuid, iuid); //$NON-NLS-1$
+                }
+            }
+            Attributes cmd = rsp.getCommand();
+            inst.status = cmd.getInt(Tag.Status, -1);
+            inst.error = cmd.getString(Tag.ErrorComment);
+        } catch (DecodingException e) {
+            inst.status = Status.UnableToProcess;
+            inst.error = e.getMessage();
+            LOGGER.error("Cannot transcode {}", inst.file, e); //$NON-NLS-1$
+        } catch (IOException e) {
+            inst.status = -1;
+            inst.error = e.getMessage();
+            LOGGER.warn("Cannot send {}", inst.file, e); //$NON-NLS-1$
+        } catch (InterruptedException e) {
+            inst.status = Status.Cancel;
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            // Cannot decompress
+            inst.status = Status.UnableToProcess;
+            inst.error = e.getMessage();
+            LOGGER.error("Cannot transcode {}", inst.file, e); //$NON-NLS-1$
+        }
+    }
+
+    @FunctionalInterface
+    private interface FrameConsumer {
+        void accept(Attributes dataset, int index, int nbFrames, Mat frame) throws IOException;
+    }
+
+    /**
+     * Error of the decoding or of the encoding of the pixel data, the instance is not sent again.
+     */
+    private static class DecodingException extends IOException {
+        private static final long serialVersionUID = -2315720398452714283L;
+
+        DecodingException(String message) {
+            super(message);
+        }
+
+        DecodingException(Throwable cause) {
+            super(cause);
+        }
+    }
+
+    /**
+     * Write the dataset with an uncompressed pixel data while decoding the frames with the DICOM codec, so that only
+     * one frame is in memory.
+     */
+    static class UncompressedDataWriter implements DataWriter {
+        private final Instance inst;
+
+        UncompressedDataWriter(Instance inst) {
+            this.inst = inst;
+        }
+
+        @Override
+        public void writeTo(PDVOutputStream out, String tsuid) throws IOException {
+            @SuppressWarnings("resource")
+            DicomOutputStream dos = new DicomOutputStream(out, tsuid);
+            long[] length = { 0L };
+            decodeFrames(inst, (dataset, index, nbFrames, frame) -> {
+                int depth = CvType.depth(frame.type());
+                boolean color = frame.channels() == 3;
+                byte[] data;
+                if (color) {
+                    // OpenCV color order is BGR
+                    Mat rgb = new Mat();
+                    try {
+                        Imgproc.cvtColor(frame, rgb, Imgproc.COLOR_BGR2RGB);
+                        data = toLittleEndianBytes(rgb, depth);
+                    } finally {
+                        rgb.release();
+                    }
+                } else {
+                    data = toLittleEndianBytes(frame, depth);
+                }
+                if (index == 0) {
+                    length[0] = (long) data.length * nbFrames;
+                    if (length[0] > Integer.MAX_VALUE - 1) {
+                        throw new DecodingException("The pixel data is too large: " + length[0] + " bytes"); //$NON-NLS-1$ //$NON-NLS-2$
+                    }
+                    if (color) {
+                        // Decoded in RGB (YBR and palette are converted by the codec)
+                        setColorDescription(dataset, "RGB"); //$NON-NLS-1$
+                        if (depth == CvType.CV_8U) {
+                            set8BitsDescription(dataset);
+                        }
+                    }
+                    // Lossy compression remains documented in the dataset
+                    dataset.writeTo(dos);
+                    dos.writeHeader(Tag.PixelData, depth == CvType.CV_8U ? VR.OB : VR.OW,
+                        (int) ((length[0] + 1) & ~1));
+                } else if ((long) data.length * nbFrames != length[0]) {
+                    throw new DecodingException("The size of the frame " + index + " is different"); //$NON-NLS-1$ //$NON-NLS-2$
+                }
+                dos.write(data);
+            });
+            if ((length[0] & 1) != 0) {
+                dos.write(0);
+            }
+            dos.flush();
+        }
+    }
+
+    /**
+     * Read the dataset with the pixel data encoded in JPEG Baseline, only for the 8-bit monochrome images. As required
+     * for a lossy compression, the dataset is a new instance referencing the original one, with the lossy attributes.
+     */
+    static Attributes readJpegBaseline(Instance inst) throws IOException {
+        List<byte[]> jpegs = new ArrayList<>();
+        long[] sizes = { 0L, 0L };
+        Attributes dataset = decodeFrames(inst, (ds, index, nbFrames, frame) -> {
+            // No chroma subsampling to describe with a monochrome image
+            if (CvType.depth(frame.type()) != CvType.CV_8U || frame.channels() != 1) {
+                throw new DecodingException("JPEG Baseline is only supported for 8-bit monochrome images"); //$NON-NLS-1$
+            }
+            MatOfByte buffer = new MatOfByte();
+            try {
+                if (!Imgcodecs.imencode(".jpg", frame, buffer, //$NON-NLS-1$
+                    new MatOfInt(Imgcodecs.IMWRITE_JPEG_QUALITY, JPEG_QUALITY))) {
+                    throw new DecodingException("Cannot encode the frame " + index + " in JPEG"); //$NON-NLS-1$ //$NON-NLS-2$
+                }
+                byte[] jpeg = buffer.toArray();
+                sizes[0] += frame.total();
+                sizes[1] += jpeg.length;
+                // The fragment must have an even length
+                jpegs.add((jpeg.length & 1) == 0 ? jpeg : Arrays.copyOf(jpeg, jpeg.length + 1));
+            } finally {
+                buffer.release();
+            }
+        });
+
+        set8BitsDescription(dataset);
+        dataset.setInt(Tag.PixelRepresentation, VR.US, 0);
+        setLossyDescription(dataset, (double) sizes[0] / Math.max(1L, sizes[1]));
+        Fragments fragments = dataset.newFragments(Tag.PixelData, VR.OB, jpegs.size() + 1);
+        // Empty basic offset table
+        fragments.add(new byte[0]);
+        jpegs.forEach(fragments::add);
+        return dataset;
+    }
+
+    /**
+     * Make a new instance derived from the original one and append the ratio and the method of the compression to
+     * the previous lossy compressions.
+     */
+    private static void setLossyDescription(Attributes dataset, double ratio) {
+        String cuid = dataset.getString(Tag.SOPClassUID);
+        String iuid = dataset.getString(Tag.SOPInstanceUID);
+        Sequence source = dataset.newSequence(Tag.SourceImageSequence, 1);
+        Attributes ref = new Attributes(2);
+        ref.setString(Tag.ReferencedSOPClassUID, VR.UI, cuid);
+        ref.setString(Tag.ReferencedSOPInstanceUID, VR.UI, iuid);
+        source.add(ref);
+        dataset.setString(Tag.SOPInstanceUID, VR.UI, UIDUtils.createUID());
+
+        boolean previous = "01".equals(dataset.getString(Tag.LossyImageCompression)); //$NON-NLS-1$
+        List<String> ratios = new ArrayList<>();
+        List<String> methods = new ArrayList<>();
+        if (previous) {
+            ratios.addAll(Arrays.asList(dataset.getStrings(Tag.LossyImageCompressionRatio, new String[0])));
+            methods.addAll(Arrays.asList(dataset.getStrings(Tag.LossyImageCompressionMethod, new String[0])));
+        }
+        ratios.add(String.format(Locale.ENGLISH, "%.2f", ratio)); //$NON-NLS-1$
+        methods.add("ISO_10918_1"); //$NON-NLS-1$
+        dataset.setString(Tag.LossyImageCompression, VR.CS, "01"); //$NON-NLS-1$
+        dataset.setString(Tag.LossyImageCompressionRatio, VR.DS, ratios.toArray(new String[ratios.size()]));
+        dataset.setString(Tag.LossyImageCompressionMethod, VR.CS, methods.toArray(new String[methods.size()]));
+    }
+
+    /**
+     * Decode the frames one by one with the DICOM codec, the native memory of a frame is released after its use.
+     *
+     * @return the dataset without the pixel data
+     */
+    private static Attributes decodeFrames(Instance inst, FrameConsumer consumer) throws IOException {
+        Attributes dataset;
+        try (DicomInputStream in = new DicomInputStream(inst.file)) {
+            in.readFileMetaInformation();
+            dataset = in.readDataset(-1, Tag.PixelData);
+        }
+        DicomMediaIO io = new DicomMediaIO(inst.file);
+        try {
+            MediaElement[] elements = io.getMediaElement();
+            if (elements == null || elements.length == 0) {
+                throw new DecodingException("No image to decompress"); //$NON-NLS-1$
+            }
+            for (int i = 0; i < elements.length; i++) {
+                PlanarImage img = io.getImageFragment(elements[i]);
+                if (img == null) {
+                    throw new DecodingException("Cannot decode the frame " + i); //$NON-NLS-1$
+                }
+                try {
+                    consumer.accept(dataset, i, elements.length, img.toMat());
+                } finally {
+                    img.release();
+                }
+            }
+            return dataset;
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new DecodingException(e);
+        } finally {
+            io.close();
+        }
+    }
+
+    private static void setColorDescription(Attributes dataset, String photometricInterpretation) {
+        dataset.setInt(Tag.SamplesPerPixel, VR.US, 3);
+        dataset.setString(Tag.PhotometricInterpretation, VR.CS, photometricInterpretation);
+        dataset.setInt(Tag.PlanarConfiguration, VR.US, 0);
+        for (int tag : new int[] { Tag.RedPaletteColorLookupTableDescriptor, Tag.GreenPaletteColorLookupTableDescriptor,
+            Tag.BluePaletteColorLookupTableDescriptor, Tag.RedPaletteColorLookupTableData,
+            Tag.GreenPaletteColorLookupTableData, Tag.BluePaletteColorLookupTableData }) {
+            dataset.remove(tag);
+        }
+    }
+
+    private static void set8BitsDescription(Attributes dataset) {
+        dataset.setInt(Tag.BitsAllocated, VR.US, 8);
+        dataset.setInt(Tag.BitsStored, VR.US, 8);
+        dataset.setInt(Tag.HighBit, VR.US, 7);
+    }
+
+    private static byte[] toLittleEndianBytes(Mat mat, int depth) throws IOException {
+        int length = (int) mat.total() * mat.channels();
+        if (depth == CvType.CV_8U || depth == CvType.CV_8S) {
+            byte[] data = new byte[length];
+            mat.get(0, 0, data);
+            return data;
+        }
+        if (depth == CvType.CV_16U || depth == CvType.CV_16S) {
+            short[] data = new short[length];
+            mat.get(0, 0, data);
+            ByteBuffer buf = ByteBuffer.allocate(length * 2).order(ByteOrder.LITTLE_ENDIAN);
+            buf.asShortBuffer().put(data);
+            return buf.array();
+        }
+        throw new IOException("Unsupported data type: " + CvType.typeToString(mat.type())); //$NON-NLS-1$
+    }
+
+    private static void closeAssociation(Association as) {
+        if (as != null && as.isReadyForDataTransfer()) {
+            try {
+                as.waitForOutstandingRSP();
+                as.release();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException e) {
+                LOGGER.error("Release association", e); //$NON-NLS-1$
+            }
+        }
+    }
+
+    private void scan(File file) {
+        if (file.isDirectory()) {
+            File[] children = file.listFiles();
+            if (children != null) {
+                for (File f : children) {
+                    scan(f);
+                }
+            }
+        } else if (file.isFile()) {
+            try (DicomInputStream in = new DicomInputStream(file)) {
+                Attributes fmi = in.readFileMetaInformation();
+                String cuid;
+                String iuid;
+                String tsuid;
+                if (fmi == null) {
+                    Attributes ds = in.readDataset(-1, Tag.PixelData);
+                    cuid = ds.getString(Tag.SOPClassUID);
+                    iuid = ds.getString(Tag.SOPInstanceUID);
+                    tsuid = in.getTransferSyntax();
+                } else {
+                    cuid = fmi.getString(Tag.MediaStorageSOPClassUID);
+                    iuid = fmi.getString(Tag.MediaStorageSOPInstanceUID);
+                    tsuid = fmi.getString(Tag.TransferSyntaxUID);
+                }
+                if (cuid == null || iuid == null || tsuid == null) {
+                    LOGGER.warn("Not a DICOM instance: {}", file); //$NON-NLS-1$
+                } else {
+                    instances.add(new Instance(file, cuid, iuid, tsuid));
+                }
+            } catch (IOException e) {
+                LOGGER.warn("Cannot read {}", file, e); //$NON-NLS-1$
+            }
+        }
+    }
+
+    private AAssociateRQ buildAssociateRQ() {
+        // SOP class => transfer syntaxes of the files
+        Map<String, Set<String>> sopClasses = new LinkedHashMap<>();
+        for (Instance inst : instances) {
+            sopClasses.computeIfAbsent(inst.cuid, k -> new LinkedHashSet<>()).add(inst.tsuid);
+        }
+        AAssociateRQ rq = new AAssociateRQ();
+        rq.setCallingAET(callingNode.getAet());
+        rq.setCalledAET(calledNode.getAet());
+        int nb = 0;
+        // First, one context by SOP class with the uncompressed syntaxes for the fallback
+        for (String cuid : sopClasses.keySet()) {
+            if (nb >= MAX_PRESENTATION_CONTEXTS) {
+                LOGGER.error("Too many SOP Classes, the other ones cannot be sent"); //$NON-NLS-1$
+                return rq;
+            }
+            rq.addPresentationContext(new PresentationContext(2 * nb + 1, cuid, UNCOMPRESSED_SYNTAXES));
+            nb++;
+        }
+        // Then, one context by SOP class and source syntax, the SCP accepts or rejects each one
+        for (Map.Entry<String, Set<String>> entry : sopClasses.entrySet()) {
+            for (String ts : entry.getValue()) {
+                if (UID.ImplicitVRLittleEndian.equals(ts) || UID.ExplicitVRLittleEndian.equals(ts)) {
+                    continue;
+                }
+                if (nb >= MAX_PRESENTATION_CONTEXTS) {
+                    LOGGER.warn("Too many presentation contexts, the instances will be decompressed"); //$NON-NLS-1$
+                    return rq;
+                }
+                rq.addPresentationContext(new PresentationContext(2 * nb + 1, entry.getKey(), ts));
+                nb++;
+            }
+        }
+        // Finally, JPEG Baseline for the SCP accepting only this compression (8-bit images)
+        for (Map.Entry<String, Set<String>> entry : sopClasses.entrySet()) {
+            if (!lossyCompressionAllowed || entry.getValue().contains(UID.JPEGBaseline1)) {
+                continue;
+            }
+            if (nb >= MAX_PRESENTATION_CONTEXTS) {
+                return rq;
+            }
+            rq.addPresentationContext(new PresentationContext(2 * nb + 1, entry.getKey(), UID.JPEGBaseline1));
+            nb++;
+        }
+        return rq;
+    }
+
+    private void updateProgress(DicomProgress progress) {
+        if (progress != null) {
+            int done = completed.get() + failed.get() + warning.get();
+            Attributes cmd = new Attributes(4);
+            // The instances sent with a warning are also completed
+            cmd.setInt(Tag.NumberOfCompletedSuboperations, VR.US, completed.get() + warning.get());
+            cmd.setInt(Tag.NumberOfFailedSuboperations, VR.US, failed.get());
+            cmd.setInt(Tag.NumberOfWarningSuboperations, VR.US, warning.get());
+            cmd.setInt(Tag.NumberOfRemainingSuboperations, VR.US, Math.max(0, instances.size() - done));
+            progress.setAttributes(cmd);
+        }
+    }
+
+    static boolean isWarning(int status) {
+        return status == Status.CoercionOfDataElements || status == Status.ElementsDiscarded
+            || status == Status.DataSetDoesNotMatchSOPClassWarning;
+    }
+
+    static boolean isRetryable(int status) {
+        // Network error or out of resources of the SCP
+        return status == -1 || (status & 0xFF00) == Status.OutOfResources;
+    }
+}
@@ -15,6 +15,7 @@ import java.awt.FlowLayout;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
 
@@ -59,9 +60,6 @@ import org.weasis.dicom.explorer.pref.node.AbstractDicomNode;
 import org.weasis.dicom.explorer.pref.node.AbstractDicomNode.UsageType;
 import org.weasis.dicom.explorer.pref.node.DefaultDicomNode;
 import org.weasis.dicom.explorer.pref.node.DicomWebNode;
-import org.weasis.dicom.op.CStore;
-import org.weasis.dicom.param.AdvancedParams;
-import org.weasis.dicom.param.ConnectOptions;
 import org.weasis.dicom.param.DicomNode;
 import org.weasis.dicom.param.DicomProgress;
 import org.weasis.dicom.param.DicomState;
@@ -73,6 +71,17 @@ public class SendDicomView extends AbstractItemDialogPage implements ExportDicom
     private static final Logger LOGGER = LoggerFactory.getLogger(SendDicomView.class);
 
     private static final String LAST_SEL_NODE = "lastSelNode"; //$NON-NLS-1$
+    /**
+     * Number of simultaneous associations for sending the instances
+     */
+    public static final String SEND_ASSOCIATIONS = "weasis.dicom.send.associations"; //$NON-NLS-1$
+    public static final String SEND_RETRIES = "weasis.dicom.send.retries"; //$NON-NLS-1$
+    /**
+     * Allow a lossy compression (JPEG Baseline) when the destination accepts only this syntax, false by default
+     */
+    public static final String SEND_LOSSY = "weasis.dicom.send.lossy"; //$NON-NLS-1$
+    // Number of failed instances listed in the error message
+    private static final int MAX_LISTED_ERRORS = 10;
 
     private final DicomModel dicomModel;
     private final ExportTree exportTree;
@@ -197,16 +206,24 @@ public class SendDicomView extends AbstractItemDialogPage implements ExportDicom
             Object selectedItem = comboNode.getSelectedItem();
             if (selectedItem instanceof DefaultDicomNode) {
                 final DefaultDicomNode node = (DefaultDicomNode) selectedItem;
-                AdvancedParams params = new AdvancedParams();
-                ConnectOptions connectOptions = new ConnectOptions();
-                connectOptions.setConnectTimeout(3000);
-                connectOptions.setAcceptTimeout(5000);
-                params.setConnectOptions(connectOptions);
-                final DicomState state =
-                    CStore.process(params, new DicomNode(weasisAet), node.getDicomNode(), files, dicomProgress);
-                if (state.getStatus() != Status.Success && state.getStatus() != Status.Cancel) {
+                DicomStoreSender sender = new DicomStoreSender(new DicomNode(weasisAet), node.getDicomNode(),
+                    BundleTools.SYSTEM_PREFERENCES.getIntProperty(SEND_ASSOCIATIONS,
+                        DicomStoreSender.DEFAULT_ASSOCIATIONS),
+                    BundleTools.SYSTEM_PREFERENCES.getIntProperty(SEND_RETRIES, DicomStoreSender.DEFAULT_RETRIES));
+                sender.setLossyCompressionAllowed(BundleTools.SYSTEM_PREFERENCES.getBooleanProperty(SEND_LOSSY, false));
+                final DicomState state = sender.send(Arrays.asList(exportDir), dicomProgress);
+                long lossy =
+                    sender.getInstances().stream().filter(DicomStoreSender.Instance::isLossyCompressed).count();
+                if (lossy > 0) {
+                    final String message = String.format(Messages.getString("SendDicomView.lossy_instances"), lossy); //$NON-NLS-1$
+                    GuiExecutor.instance().execute(() -> JOptionPane.showMessageDialog(exportTree, message,
+                        getTitle(), JOptionPane.WARNING_MESSAGE));
+                }
+                if (state.getStatus() != Status.Success && state.getStatus() != Status.Cancel
+                    && !DicomStoreSender.isWarning(state.getStatus())) {
                     LOGGER.error("Dicom send error: {}", state.getMessage()); //$NON-NLS-1$
-                    GuiExecutor.instance().execute(() -> JOptionPane.showMessageDialog(exportTree, state.getMessage(),
+                    final String message = buildErrorMessage(sender.getFailedInstances(), sender.getInstances().size());
+                    GuiExecutor.instance().execute(() -> JOptionPane.showMessageDialog(exportTree, message,
                         getTitle(), JOptionPane.ERROR_MESSAGE));
                 }
             } else if (selectedItem instanceof DicomWebNode) {
@@ -226,6 +243,27 @@ public class SendDicomView extends AbstractItemDialogPage implements ExportDicom
         return true;
     }
 
+    private static String buildErrorMessage(List<DicomStoreSender.Instance> failedInstances, int total) {
+        StringBuilder buf = new StringBuilder(
+            String.format(Messages.getString("SendDicomView.failed_instances"), failedInstances.size(), total)); //$NON-NLS-1$
+        for (int i = 0; i < failedInstances.size() && i < MAX_LISTED_ERRORS; i++) {
+            DicomStoreSender.Instance inst = failedInstances.get(i);
+            buf.append("\n"); //$NON-NLS-1$
+            buf.append(inst.getSopInstanceUID());
+            buf.append(" [0x"); //$NON-NLS-1$
+            buf.append(Integer.toHexString(inst.getStatus() & 0xFFFF).toUpperCase());
+            buf.append("]"); //$NON-NLS-1$
+            if (StringUtil.hasText(inst.getError())) {
+                buf.append(StringUtil.COLON_AND_SPACE);
+                buf.append(inst.getError());
+            }
+        }
+        if (failedInstances.size() > MAX_LISTED_ERRORS) {
+            buf.append("\n..."); //$NON-NLS-1$
+        }
+        return buf.toString();
+    }
+
     private void writeDicom(ExplorerTask<Boolean, String> task, File writeDir, CheckTreeModel model)
         throws IOException {
         synchronized (this) {
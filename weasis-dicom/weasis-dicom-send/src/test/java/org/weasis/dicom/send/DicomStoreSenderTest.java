@@ -0,0 +1,197 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2018 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.dicom.send;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.dcm4che3.data.Attributes;
+import org.dcm4che3.data.Tag;
+import org.dcm4che3.data.UID;
+import org.dcm4che3.data.VR;
+import org.dcm4che3.io.DicomInputStream;
+import org.dcm4che3.io.DicomOutputStream;
+import org.dcm4che3.net.Status;
+import org.dcm4che3.util.UIDUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.weasis.dicom.explorer.scp.StoreSCP;
+import org.weasis.dicom.param.DicomNode;
+import org.weasis.dicom.param.DicomState;
+
+/**
+ * Sends instances to the Storage SCP with a loopback association.
+ */
+public class DicomStoreSenderTest {
+    private static final String SCP_AET = "STORE_SCP"; //$NON-NLS-1$
+    private static final String SCU_AET = "STORE_SCU"; //$NON-NLS-1$
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private StoreSCP scp;
+    private File sourceDir;
+    private final Set<File> receivedFiles = ConcurrentHashMap.newKeySet();
+
+    @Before
+    public void setUp() throws Exception {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        scp = new StoreSCP(SCP_AET, "127.0.0.1", port, folder.newFolder("store")); //$NON-NLS-1$ //$NON-NLS-2$
+        scp.setStoreListener(receivedFiles::add);
+        sourceDir = folder.newFolder("source"); //$NON-NLS-1$
+    }
+
+    @After
+    public void tearDown() {
+        scp.close();
+    }
+
+    @Test
+    public void testParallelAssociations() throws Exception {
+        // Fewer associations accepted than opened by the sender, the rejected ones are retried or given up
+        scp.setMaxAssociations(2);
+        scp.start();
+        List<String> uids = writeInstances(20, UID.ExplicitVRLittleEndian);
+
+        DicomStoreSender sender = buildSender(4, DicomStoreSender.DEFAULT_RETRIES);
+        DicomState state = sender.send(Collections.singletonList(sourceDir), null);
+
+        assertThat(state.getStatus()).isEqualTo(Status.Success);
+        assertThat(sender.getFailedInstances()).isEmpty();
+        assertThat(receivedFiles).hasSize(uids.size());
+        assertThat(scp.getReceivedInstances()).isEqualTo(uids.size());
+        for (String uid : uids) {
+            assertThat(new File(scp.getStorageDir(), uid + ".dcm")).exists(); //$NON-NLS-1$
+        }
+    }
+
+    @Test
+    public void testRetryFailedInstance() throws Exception {
+        scp.start();
+        List<String> uids = writeInstances(3, UID.ExplicitVRLittleEndian);
+        // A directory with the name of the received file: the SCP cannot store the instance (out of resources)
+        File blocked = new File(scp.getStorageDir(), uids.get(1) + ".dcm"); //$NON-NLS-1$
+        assertThat(new File(blocked, "lock").mkdirs()).isTrue(); //$NON-NLS-1$
+
+        DicomStoreSender sender = buildSender(1, 2);
+        DicomState state = sender.send(Collections.singletonList(sourceDir), null);
+
+        assertThat(state.getStatus()).isEqualTo(Status.UnableToProcess);
+        List<DicomStoreSender.Instance> failed = sender.getFailedInstances();
+        assertThat(failed).hasSize(1);
+        DicomStoreSender.Instance inst = failed.get(0);
+        assertThat(inst.getSopInstanceUID()).isEqualTo(uids.get(1));
+        assertThat(inst.getStatus() & 0xFF00).isEqualTo(Status.OutOfResources);
+        // First attempt and two retries
+        assertThat(inst.getAttempts()).isEqualTo(3);
+        assertThat(receivedFiles).hasSize(2);
+    }
+
+    @Test
+    public void testFallbackToUncompressedSyntax() throws Exception {
+        scp.setTransferSyntaxes(UID.ExplicitVRLittleEndian);
+        scp.start();
+        List<String> uids = writeInstances(2, UID.DeflatedExplicitVRLittleEndian);
+
+        DicomStoreSender sender = buildSender(1, 0);
+        DicomState state = sender.send(Collections.singletonList(sourceDir), null);
+
+        assertThat(state.getStatus()).isEqualTo(Status.Success);
+        for (DicomStoreSender.Instance inst : sender.getInstances()) {
+            assertThat(inst.getSentTransferSyntax()).isEqualTo(UID.ExplicitVRLittleEndian);
+        }
+        File file = new File(scp.getStorageDir(), uids.get(0) + ".dcm"); //$NON-NLS-1$
+        try (DicomInputStream in = new DicomInputStream(file)) {
+            Attributes fmi = in.readFileMetaInformation();
+            Attributes dataset = in.readDataset(-1, -1);
+            assertThat(fmi.getString(Tag.TransferSyntaxUID)).isEqualTo(UID.ExplicitVRLittleEndian);
+            assertThat(dataset.getString(Tag.SOPInstanceUID)).isEqualTo(uids.get(0));
+            assertThat(dataset.getBytes(Tag.PixelData)).isEqualTo(buildPixels());
+        }
+    }
+
+    @Test
+    public void testNoLossyCompressionByDefault() throws Exception {
+        scp.setTransferSyntaxes(UID.JPEGBaseline1);
+        scp.start();
+        List<String> uids = writeInstances(1, UID.ExplicitVRLittleEndian);
+
+        DicomStoreSender sender = buildSender(1, 0);
+        DicomState state = sender.send(Collections.singletonList(sourceDir), null);
+
+        assertThat(state.getStatus()).isEqualTo(Status.UnableToProcess);
+        DicomStoreSender.Instance inst = sender.getFailedInstances().get(0);
+        assertThat(inst.getSopInstanceUID()).isEqualTo(uids.get(0));
+        assertThat(inst.isSent()).isFalse();
+        assertThat(inst.isLossyCompressed()).isFalse();
+        assertThat(receivedFiles).isEmpty();
+    }
+
+    private DicomStoreSender buildSender(int nbAssociations, int maxRetries) {
+        DicomNode calledNode = new DicomNode(SCP_AET, "127.0.0.1", scp.getPort()); //$NON-NLS-1$
+        return new DicomStoreSender(new DicomNode(SCU_AET), calledNode, nbAssociations, maxRetries);
+    }
+
+    private List<String> writeInstances(int nb, String tsuid) throws Exception {
+        String studyUID = UIDUtils.createUID();
+        List<String> uids = new ArrayList<>(nb);
+        for (int i = 0; i < nb; i++) {
+            String iuid = UIDUtils.createUID();
+            Attributes attrs = buildInstance(UID.SecondaryCaptureImageStorage, studyUID, iuid);
+            try (DicomOutputStream out = new DicomOutputStream(new File(sourceDir, iuid))) {
+                out.writeDataset(attrs.createFileMetaInformation(tsuid), attrs);
+            }
+            uids.add(iuid);
+        }
+        return uids;
+    }
+
+    private static Attributes buildInstance(String cuid, String studyUID, String iuid) {
+        Attributes attrs = new Attributes();
+        attrs.setString(Tag.SOPClassUID, VR.UI, cuid);
+        attrs.setString(Tag.SOPInstanceUID, VR.UI, iuid);
+        attrs.setString(Tag.StudyInstanceUID, VR.UI, studyUID);
+        attrs.setString(Tag.SeriesInstanceUID, VR.UI, studyUID + ".1"); //$NON-NLS-1$
+        attrs.setString(Tag.PatientID, VR.LO, "SEND_TEST"); //$NON-NLS-1$
+        attrs.setString(Tag.Modality, VR.CS, "OT"); //$NON-NLS-1$
+        attrs.setInt(Tag.SamplesPerPixel, VR.US, 1);
+        attrs.setString(Tag.PhotometricInterpretation, VR.CS, "MONOCHROME2"); //$NON-NLS-1$
+        attrs.setInt(Tag.Rows, VR.US, 16);
+        attrs.setInt(Tag.Columns, VR.US, 16);
+        attrs.setInt(Tag.BitsAllocated, VR.US, 8);
+        attrs.setInt(Tag.BitsStored, VR.US, 8);
+        attrs.setInt(Tag.HighBit, VR.US, 7);
+        attrs.setInt(Tag.PixelRepresentation, VR.US, 0);
+        attrs.setBytes(Tag.PixelData, VR.OB, buildPixels());
+        return attrs;
+    }
+
+    private static byte[] buildPixels() {
+        byte[] pixels = new byte[16 * 16];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = (byte) i;
+        }
+        return pixels;
+    }
+}
@@ -327,7 +327,7 @@ public class SRContainer extends ImageViewerPlugin<DicomImageElement> implements
                 PageFormat pageFormat = pj.defaultPage();
                 // Force to print in black and white
                 EditorPanePrinter pnlPreview =
-                    new EditorPanePrinter(srview.getHtmlPanel(), pageFormat, new Insets(18, 18, 18, 18));
+                    new EditorPanePrinter(srview.buildPrintablePanel(), pageFormat, new Insets(18, 18, 18, 18));
                 pj.setPageable(pnlPreview);
                 try {
                     pj.print();
@@ -10,14 +10,42 @@
  *******************************************************************************/
 package org.weasis.dicom.sr;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 import org.dcm4che3.data.Attributes;
+import org.dcm4che3.data.Sequence;
 import org.dcm4che3.data.Tag;
 import org.weasis.dicom.codec.utils.DicomMediaUtils;
 
+/**
+ * A content item of the SR document. The child items are only built when they are requested, so the content tree can
+ * be displayed before reading the whole document.
+ */
 public class SRDocumentContent extends SRDocumentContentModule {
 
+    private final String level;
+    private final boolean continuous;
+    private List<SRDocumentContent> children;
+    private String label;
+
     public SRDocumentContent(Attributes dcmobj) {
+        this(dcmobj, null, false);
+    }
+
+    /**
+     * @param dcmobj
+     *            the content item
+     * @param level
+     *            the position in the document (e.g. 1.2.1), null for the root of the document
+     * @param continuous
+     *            true when the parent has a continuous content (no concept name displayed)
+     */
+    public SRDocumentContent(Attributes dcmobj, String level, boolean continuous) {
         super(dcmobj);
+        this.level = level;
+        this.continuous = continuous;
     }
 
     public String getRelationshipType() {
@@ -28,4 +56,74 @@ public class SRDocumentContent extends SRDocumentContentModule {
         return DicomMediaUtils.getIntAyrrayFromDicomElement(dcmItems, Tag.ReferencedContentItemIdentifier, null);
     }
 
-}
\ No newline at end of file
+    public String getLevel() {
+        return level;
+    }
+
+    public boolean isContinuous() {
+        return continuous;
+    }
+
+    public synchronized List<SRDocumentContent> getChildren() {
+        if (children == null) {
+            Sequence cts = getContent();
+            if (cts == null || cts.isEmpty()) {
+                children = Collections.emptyList();
+            } else {
+                boolean continuity = "CONTINUOUS".equals(getContinuityOfContent()); //$NON-NLS-1$
+                String prefix = level == null ? "1" : level; //$NON-NLS-1$
+                List<SRDocumentContent> list = new ArrayList<>(cts.size());
+                for (int i = 0; i < cts.size(); i++) {
+                    list.add(new SRDocumentContent(cts.get(i), prefix + "." + (i + 1), continuity)); //$NON-NLS-1$
+                }
+                children = list;
+            }
+        }
+        return children;
+    }
+
+    /**
+     * Find the path of the content item from its level.
+     *
+     * @param level
+     *            the position in the document (e.g. 1.2.1)
+     * @return the path from this item (included) to the content item or null if not found
+     */
+    public List<SRDocumentContent> findPath(String level) {
+        if (level == null) {
+            return null;
+        }
+        String[] indexes = level.split("\\."); //$NON-NLS-1$
+        List<SRDocumentContent> path = new ArrayList<>(indexes.length);
+        path.add(this);
+        SRDocumentContent node = this;
+        // The first number is the document root
+        for (int i = 1; i < indexes.length; i++) {
+            try {
+                int index = Integer.parseInt(indexes[i]) - 1;
+                List<SRDocumentContent> list = node.getChildren();
+                if (index < 0 || index >= list.size()) {
+                    return null;
+                }
+                node = list.get(index);
+                path.add(node);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return path;
+    }
+
+    String getLabel() {
+        return label;
+    }
+
+    void setLabel(String label) {
+        this.label = label;
+    }
+
+    @Override
+    public String toString() {
+        return level == null ? "" : level; //$NON-NLS-1$
+    }
+}
@@ -13,12 +13,18 @@ package org.weasis.dicom.sr;
 import java.awt.Color;
 import java.time.LocalDateTime;
 import java.time.temporal.TemporalAccessor;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.dcm4che3.data.Attributes;
 import org.dcm4che3.data.Code;
 import org.dcm4che3.data.Sequence;
 import org.dcm4che3.data.Tag;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.weasis.core.api.media.data.MediaElement;
 import org.weasis.core.api.media.data.Series;
 import org.weasis.core.api.media.data.TagUtil;
@@ -34,6 +40,7 @@ import org.weasis.dicom.codec.macro.SeriesAndInstanceReference;
 import org.weasis.dicom.explorer.pr.PrGraphicUtil;
 
 public class SRReader {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SRReader.class);
 
     private final DicomSpecialElement dicomSR;
     private final Attributes dcmItems;
@@ -61,7 +68,42 @@ public class SRReader {
         return null;
     }
 
+    /**
+     * Build the content tree of the document. Only the first level is read, the child items are read on demand.
+     *
+     * @return the root of the content tree
+     */
+    public SRDocumentContent getContentTree() {
+        return new SRDocumentContent(dcmItems, null, false);
+    }
+
+    /**
+     * Write the whole document in HTML (header and content).
+     */
     public void readDocumentGeneralModule(StringBuilder html, Map<String, SRImageReference> map) {
+        if (dcmItems != null) {
+            readDocumentHeader(html);
+            SRDocumentContent root = getContentTree();
+            List<SRDocumentContent> children = root.getChildren();
+            for (SRDocumentContent c : children) {
+                html.append("<BR>"); //$NON-NLS-1$
+                html.append("<B>"); //$NON-NLS-1$
+                html.append(c.getLevel());
+                html.append(" </B>"); //$NON-NLS-1$
+                Code code = c.getConceptNameCode();
+                addCodeMeaning(html, code, "<B>", "</B>"); //$NON-NLS-1$ //$NON-NLS-2$
+                addAnchor(html, c.getLevel());
+                convertContentToHTML(html, c, false, code == null, map, c.getLevel());
+                html.append("<BR>"); //$NON-NLS-1$
+                addContent(html, c, map);
+            }
+        }
+    }
+
+    /**
+     * Write the header of the document in HTML (title, patient, study and report status).
+     */
+    public void readDocumentHeader(StringBuilder html) {
         if (dcmItems != null) {
             SRDocumentContentModule content = new SRDocumentContentModule(dcmItems);
             addCodeMeaning(html, content.getConceptNameCode(), "<h1>", "</h1>"); //$NON-NLS-1$ //$NON-NLS-2$
@@ -137,31 +179,80 @@ public class SRReader {
 
             html.append("</table>"); //$NON-NLS-1$
             html.append("<hr size=2>"); //$NON-NLS-1$
-            Sequence cts = content.getContent();
-            if (cts != null) {
-                for (int i = 0; i < cts.size(); i++) {
-                    SRDocumentContent c = new SRDocumentContent(cts.get(i));
-                    html.append("<BR>"); //$NON-NLS-1$
-                    html.append("<B>"); //$NON-NLS-1$
-                    String level = "1." + (i + 1); //$NON-NLS-1$
-                    html.append(level);
-                    html.append(" </B>"); //$NON-NLS-1$
-                    Code code = c.getConceptNameCode();
-                    addCodeMeaning(html, code, "<B>", "</B>"); //$NON-NLS-1$ //$NON-NLS-2$
-                    convertContentToHTML(html, c, false, code == null, map, level);
-                    html.append("<BR>"); //$NON-NLS-1$
-                    addContent(html, c, map, level);
+        }
+    }
+
+    /**
+     * Build the label of a content item for the tree view, in HTML.
+     *
+     * @param c
+     *            the content item
+     * @return the HTML label
+     */
+    public static String buildNodeLabel(SRDocumentContent c) {
+        String label = c.getLabel();
+        if (label == null) {
+            StringBuilder html = new StringBuilder("<html>"); //$NON-NLS-1$
+            html.append("<B>"); //$NON-NLS-1$
+            html.append(c.getLevel());
+            html.append(" </B>"); //$NON-NLS-1$
+            Code code = null;
+            if (!c.isContinuous()) {
+                code = c.getConceptNameCode();
+                addCodeMeaning(html, code, "<B>", "</B>"); //$NON-NLS-1$ //$NON-NLS-2$
+            }
+            convertContentToHTML(html, c, c.isContinuous(), code == null, null, c.getLevel());
+            html.append("</html>"); //$NON-NLS-1$
+            label = html.toString();
+            c.setLabel(label);
+        }
+        return label;
+    }
+
+    /**
+     * Index the image references (IMAGE and SCOORD content items) of the whole content tree. The key is the level of
+     * the content item or the referenced content item identifier.
+     *
+     * @param root
+     *            the root of the content tree
+     * @return the image references
+     */
+    public static Map<String, SRImageReference> buildImageReferences(SRDocumentContent root) {
+        Map<String, SRImageReference> map = new HashMap<>();
+        Deque<SRDocumentContent> stack = new ArrayDeque<>(root.getChildren());
+        while (!stack.isEmpty()) {
+            if (Thread.currentThread().isInterrupted()) {
+                break;
+            }
+            SRDocumentContent c = stack.pop();
+            String type = c.getValueType();
+            if ("IMAGE".equals(type)) { //$NON-NLS-1$
+                getReferencedImage(map, c.getLevel(), c.getAttributes());
+            } else if ("SCOORD".equals(type)) { //$NON-NLS-1$
+                Sequence sc = c.getContent();
+                if (sc != null) {
+                    for (Attributes attributes : sc) {
+                        addGraphicReference(map, c.getLevel(), c.getAttributes(), attributes);
+                    }
                 }
             }
+            List<SRDocumentContent> children = c.getChildren();
+            for (int i = children.size() - 1; i >= 0; i--) {
+                stack.push(children.get(i));
+            }
         }
+        return map;
+    }
+
+    private static void addAnchor(StringBuilder html, String level) {
+        html.append("<A name=\""); //$NON-NLS-1$
+        html.append(level);
+        html.append("\"<></A>"); //$NON-NLS-1$
     }
 
     private static void convertContentToHTML(StringBuilder html, SRDocumentContent c, boolean continuous,
         boolean noCodeName, Map<String, SRImageReference> map, String level) {
         if (c != null) {
-            html.append("<A name=\""); //$NON-NLS-1$
-            html.append(level);
-            html.append("\"<></A>"); //$NON-NLS-1$
             String type = c.getValueType();
 
             if ("TEXT".equals(type)) { //$NON-NLS-1$
@@ -189,8 +280,9 @@ public class SRReader {
                 return;
             } else if ("IMAGE".equals(type)) { //$NON-NLS-1$
                 html.append(continuous || noCodeName ? " " : StringUtil.COLON_AND_SPACE); //$NON-NLS-1$
-                SRImageReference imgRef = getReferencedImage(map, level, c.getAttributes());
-                if (imgRef != null) {
+                boolean hasRef = map == null ? c.getAttributes().getNestedDataset(Tag.ReferencedSOPSequence) != null
+                    : getReferencedImage(map, level, c.getAttributes()) != null;
+                if (hasRef) {
                     html.append("<a href=\"http://"); //$NON-NLS-1$
                     html.append(level);
                     html.append("\" style=\"color:#FF9900\">"); //$NON-NLS-1$
@@ -228,31 +320,10 @@ public class SRReader {
                 Sequence sc = c.getContent();
                 if (sc != null) {
                     for (Attributes attributes : sc) {
-                        SRDocumentContent c2 = new SRDocumentContent(attributes);
-                        String id = getReferencedContentItemIdentifier(c2.getReferencedContentItemIdentifier());
-                        SRImageReference imgRef = null;
-                        if (id == null) {
-                            imgRef = getReferencedImage(map, level, attributes);
-                            id = level;
-                        } else {
-                            imgRef = map.get(id);
-                            if (imgRef == null) {
-                                imgRef = new SRImageReference(id);
-                                map.put(id, imgRef);
-                            }
-                        }
-
-                        if (imgRef != null) {
-                            try {
-                                Graphic graphic = PrGraphicUtil.buildGraphic(graphicsItems, Color.MAGENTA, false, 1, 1,
-                                    false, null, true);
-                                if (graphic != null) {
-                                    imgRef.addGraphic(graphic);
-                                }
-                            } catch (InvalidShapeException e) {
-                                e.printStackTrace();
-                            }
-
+                        // Without map, only write the link (the graphics are built by buildImageReferences())
+                        String id = map == null ? getGraphicReferenceId(level, attributes)
+                            : addGraphicReference(map, level, graphicsItems, attributes);
+                        if (id != null) {
                             html.append(continuous || noCodeName ? " " : StringUtil.COLON_AND_SPACE); //$NON-NLS-1$
 
                             html.append("<a href=\"http://"); //$NON-NLS-1$
@@ -309,6 +380,41 @@ public class SRReader {
         return imgRef;
     }
 
+    private static String getGraphicReferenceId(String level, Attributes attributes) {
+        SRDocumentContent c2 = new SRDocumentContent(attributes);
+        String id = getReferencedContentItemIdentifier(c2.getReferencedContentItemIdentifier());
+        if (id == null) {
+            return attributes.getNestedDataset(Tag.ReferencedSOPSequence) == null ? null : level;
+        }
+        return id;
+    }
+
+    private static String addGraphicReference(Map<String, SRImageReference> map, String level,
+        Attributes graphicsItems, Attributes attributes) {
+        SRDocumentContent c2 = new SRDocumentContent(attributes);
+        String id = getReferencedContentItemIdentifier(c2.getReferencedContentItemIdentifier());
+        SRImageReference imgRef;
+        if (id == null) {
+            imgRef = getReferencedImage(map, level, attributes);
+            id = level;
+        } else {
+            imgRef = map.computeIfAbsent(id, SRImageReference::new);
+        }
+
+        if (imgRef == null) {
+            return null;
+        }
+        try {
+            Graphic graphic = PrGraphicUtil.buildGraphic(graphicsItems, Color.MAGENTA, false, 1, 1, false, null, true);
+            if (graphic != null) {
+                imgRef.addGraphic(graphic);
+            }
+        } catch (InvalidShapeException e) {
+            LOGGER.error("Cannot build SCOORD graphic", e); //$NON-NLS-1$
+        }
+        return id;
+    }
+
     private static String getReferencedContentItemIdentifier(int[] refs) {
         if (refs != null) {
             StringBuilder r = new StringBuilder();
@@ -324,25 +430,23 @@ public class SRReader {
         return null;
     }
 
-    private static void addContent(StringBuilder html, SRDocumentContent c, Map<String, SRImageReference> map,
-        String level) {
-        Sequence cts = c.getContent();
-        if (cts != null) {
+    private static void addContent(StringBuilder html, SRDocumentContent c, Map<String, SRImageReference> map) {
+        List<SRDocumentContent> children = c.getChildren();
+        if (!children.isEmpty()) {
             boolean continuity = "CONTINUOUS".equals(c.getContinuityOfContent()); //$NON-NLS-1$
             if (!continuity) {
                 html.append("<OL>"); //$NON-NLS-1$
             }
-            for (int i = 0; i < cts.size(); i++) {
-                SRDocumentContent srContent = new SRDocumentContent(cts.get(i));
+            for (SRDocumentContent srContent : children) {
                 html.append(continuity ? " " : "<LI>"); //$NON-NLS-1$ //$NON-NLS-2$
                 Code code = null;
                 if (!continuity) {
                     code = srContent.getConceptNameCode();
                     addCodeMeaning(html, code, "<B>", "</B>"); //$NON-NLS-1$ //$NON-NLS-2$
                 }
-                String level2 = level + "." + (i + 1); //$NON-NLS-1$
-                convertContentToHTML(html, srContent, continuity, code == null, map, level2);
-                addContent(html, srContent, map, level2);
+                addAnchor(html, srContent.getLevel());
+                convertContentToHTML(html, srContent, continuity, code == null, map, srContent.getLevel());
+                addContent(html, srContent, map);
                 html.append(continuity ? " " : "</LI>"); //$NON-NLS-1$ //$NON-NLS-2$
             }
             if (!continuity) {
@@ -31,7 +31,7 @@ public class SRSpecialElement extends DicomSpecialElement {
          */
         StringBuilder buf = new StringBuilder(getLabelPrefix());
 
-        Attributes dicom = ((DicomMediaIO) mediaIO).getDicomObject();
+        Attributes dicom = ((DicomMediaIO) mediaIO).getDicomHeader();
         Attributes item = dicom.getNestedDataset(Tag.ConceptNameCodeSequence);
         if (item != null) {
             Code code = new Code(item);
@@ -11,7 +11,13 @@
 package org.weasis.dicom.sr;
 
 import java.awt.BorderLayout;
+import java.awt.Component;
 import java.awt.Dimension;
+import java.awt.Point;
+import java.awt.event.ActionEvent;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
 import java.beans.PropertyChangeListener;
 import java.net.URL;
 import java.util.ArrayList;
@@ -20,18 +26,30 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
 
+import javax.swing.AbstractAction;
 import javax.swing.BorderFactory;
 import javax.swing.ImageIcon;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JTextPane;
+import javax.swing.JTree;
+import javax.swing.KeyStroke;
+import javax.swing.SwingWorker;
 import javax.swing.border.EmptyBorder;
 import javax.swing.event.HyperlinkEvent;
+import javax.swing.event.TreeModelListener;
+import javax.swing.tree.DefaultTreeCellRenderer;
+import javax.swing.tree.TreeModel;
+import javax.swing.tree.TreePath;
 
 import org.dcm4che3.data.Attributes;
+import org.dcm4che3.data.Sequence;
 import org.dcm4che3.data.Tag;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.weasis.core.api.explorer.DataExplorerView;
 import org.weasis.core.api.explorer.ObservableEvent;
 import org.weasis.core.api.gui.util.JMVUtils;
@@ -70,10 +88,22 @@ import org.weasis.dicom.explorer.DicomModel;
 import org.weasis.dicom.explorer.LoadDicomObjects;
 import org.weasis.dicom.explorer.MimeSystemAppFactory;
 
+/**
+ * Display a structured report. The header is rendered in HTML and the content items are displayed in a tree whose
+ * nodes are read on demand, so a large report can be displayed immediately. The image references are indexed in a
+ * background thread.
+ */
 public class SRView extends JScrollPane implements SeriesViewerListener {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SRView.class);
+
+    // Expand automatically the first levels until this number of rows
+    private static final int MAX_EXPANDED_ROWS = 200;
 
     private final JTextPane htmlPanel = new JTextPane();
-    private final Map<String, SRImageReference> map = new HashMap<>();
+    private final JTree contentTree = new JTree(new SRTreeModel(null));
+    private volatile Map<String, SRImageReference> map = Collections.emptyMap();
+    private SwingWorker<Map<String, SRImageReference>, Void> indexWorker;
+    private SRReader reader;
     private Series<?> series;
     private KOSpecialElement keyReferences;
 
@@ -99,12 +129,55 @@ public class SRView extends JScrollPane implements SeriesViewerListener {
                 String desc = e.getDescription();
                 URL url = e.getURL();
                 if (url == null && desc != null && desc.startsWith("#")) { //$NON-NLS-1$
-                    htmlPanel.scrollToReference(desc.substring(1));
+                    selectContent(desc.substring(1));
                 } else {
                     openRelatedSeries(e.getURL().getHost());
                 }
             }
         });
+        contentTree.setRootVisible(false);
+        contentTree.setShowsRootHandles(true);
+        // Variable row height for the multi-line text items
+        contentTree.setRowHeight(0);
+        contentTree.setBorder(new EmptyBorder(0, 5, 5, 5));
+        contentTree.setCellRenderer(new DefaultTreeCellRenderer() {
+            @Override
+            public Component getTreeCellRendererComponent(JTree tree, Object value, boolean sel, boolean expanded,
+                boolean leaf, int row, boolean hasFocus) {
+                super.getTreeCellRendererComponent(tree, value, sel, expanded, leaf, row, hasFocus);
+                if (value instanceof SRDocumentContent && ((SRDocumentContent) value).getLevel() != null) {
+                    setText(SRReader.buildNodeLabel((SRDocumentContent) value));
+                }
+                setIcon(null);
+                return this;
+            }
+        });
+        contentTree.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (e.getClickCount() == 2) {
+                    TreePath path = contentTree.getPathForLocation(e.getX(), e.getY());
+                    if (path != null) {
+                        openContentReference((SRDocumentContent) path.getLastPathComponent());
+                    }
+                }
+            }
+        });
+        contentTree.getInputMap().put(KeyStroke.getKeyStroke(KeyEvent.VK_ENTER, 0), "openReference"); //$NON-NLS-1$
+        contentTree.getActionMap().put("openReference", new AbstractAction() { //$NON-NLS-1$
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                TreePath path = contentTree.getSelectionPath();
+                if (path != null) {
+                    openContentReference((SRDocumentContent) path.getLastPathComponent());
+                }
+            }
+        });
+
+        panel.add(htmlPanel, BorderLayout.NORTH);
+        panel.add(contentTree, BorderLayout.CENTER);
+        setViewportView(panel);
+        getVerticalScrollBar().setUnitIncrement(16);
         setPreferredSize(new Dimension(1024, 1024));
         setSeries(series);
     }
@@ -113,6 +186,25 @@ public class SRView extends JScrollPane implements SeriesViewerListener {
         return htmlPanel;
     }
 
+    /**
+     * Build the whole document in HTML, only for printing.
+     *
+     * @return the text pane containing the document
+     */
+    public JTextPane buildPrintablePanel() {
+        JTextPane pane = new JTextPane();
+        pane.setBorder(new EmptyBorder(5, 5, 5, 5));
+        pane.setEditorKit(JMVUtils.buildHTMLEditorKit(pane));
+        pane.setContentType("text/html"); //$NON-NLS-1$
+        pane.setEditable(false);
+        StringBuilder html = new StringBuilder();
+        if (reader != null) {
+            reader.readDocumentGeneralModule(html, new HashMap<>());
+        }
+        pane.setText(html.toString());
+        return pane;
+    }
+
     public synchronized Series<?> getSeries() {
         return series;
     }
@@ -167,6 +259,7 @@ public class SRView extends JScrollPane implements SeriesViewerListener {
     }
 
     public void dispose() {
+        cancelIndexing();
         if (series != null) {
             closingSeries(series);
             series = null;
@@ -182,18 +275,111 @@ public class SRView extends JScrollPane implements SeriesViewerListener {
     }
 
     private void displayLimitedDicomInfo(DicomSpecialElement media) {
+        cancelIndexing();
+        map = Collections.emptyMap();
 
         StringBuilder html = new StringBuilder();
+        SRDocumentContent root = null;
         if (media != null) {
-            SRReader reader = new SRReader(series, media);
-            map.clear();
-            reader.readDocumentGeneralModule(html, map);
+            reader = new SRReader(series, media);
+            reader.readDocumentHeader(html);
+            root = reader.getContentTree();
+            startIndexing(root);
+        } else {
+            reader = null;
         }
         htmlPanel.setText(html.toString());
-        this.setViewportView(htmlPanel);
+        contentTree.setModel(new SRTreeModel(root));
+        expandFirstLevels();
+        getViewport().setViewPosition(new Point(0, 0));
+    }
+
+    private void startIndexing(SRDocumentContent root) {
+        indexWorker = new SwingWorker<Map<String, SRImageReference>, Void>() {
+
+            @Override
+            protected Map<String, SRImageReference> doInBackground() throws Exception {
+                return SRReader.buildImageReferences(root);
+            }
+
+            @Override
+            protected void done() {
+                if (!isCancelled()) {
+                    try {
+                        map = get();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } catch (ExecutionException e) {
+                        LOGGER.error("Indexing SR image references", e); //$NON-NLS-1$
+                    }
+                }
+            }
+        };
+        indexWorker.execute();
+    }
+
+    private void cancelIndexing() {
+        if (indexWorker != null) {
+            indexWorker.cancel(true);
+            indexWorker = null;
+        }
+    }
+
+    private void expandFirstLevels() {
+        // Breadth-first, a large level stays collapsed
+        for (int row = 0; row < contentTree.getRowCount(); row++) {
+            TreePath path = contentTree.getPathForRow(row);
+            int childCount = contentTree.getModel().getChildCount(path.getLastPathComponent());
+            if (childCount > 0 && contentTree.getRowCount() + childCount > MAX_EXPANDED_ROWS) {
+                break;
+            }
+            contentTree.expandPath(path);
+        }
+    }
+
+    private void selectContent(String level) {
+        SRTreeModel model = (SRTreeModel) contentTree.getModel();
+        if (model.getRoot() != null) {
+            List<SRDocumentContent> path = ((SRDocumentContent) model.getRoot()).findPath(level);
+            if (path != null) {
+                TreePath treePath = new TreePath(path.toArray());
+                contentTree.setSelectionPath(treePath);
+                contentTree.scrollPathToVisible(treePath);
+            }
+        }
+    }
+
+    private void openContentReference(SRDocumentContent c) {
+        String type = c.getValueType();
+        if ("IMAGE".equals(type)) { //$NON-NLS-1$
+            openRelatedSeries(c.getLevel());
+        } else if ("SCOORD".equals(type)) { //$NON-NLS-1$
+            Sequence sc = c.getContent();
+            if (sc != null && !sc.isEmpty()) {
+                int[] refs = new SRDocumentContent(sc.get(0)).getReferencedContentItemIdentifier();
+                openRelatedSeries(refs == null ? c.getLevel() : toLevel(refs));
+            }
+        } else {
+            int[] refs = c.getReferencedContentItemIdentifier();
+            if (refs != null) {
+                selectContent(toLevel(refs));
+            }
+        }
+    }
+
+    private static String toLevel(int[] refs) {
+        StringBuilder r = new StringBuilder();
+        for (int i = 0; i < refs.length; i++) {
+            if (i > 0) {
+                r.append('.');
+            }
+            r.append(refs[i]);
+        }
+        return r.toString();
     }
 
     private void openRelatedSeries(String reference) {
+        // Empty while the background indexing is not finished
         SRImageReference imgRef = map.get(reference);
         if (imgRef != null) {
             SOPInstanceReference ref = imgRef.getSopInstanceReference();
@@ -372,4 +558,54 @@ public class SRView extends JScrollPane implements SeriesViewerListener {
         return null;
     }
 
+    static class SRTreeModel implements TreeModel {
+        private final SRDocumentContent root;
+
+        SRTreeModel(SRDocumentContent root) {
+            this.root = root;
+        }
+
+        @Override
+        public Object getRoot() {
+            return root;
+        }
+
+        @Override
+        public Object getChild(Object parent, int index) {
+            return ((SRDocumentContent) parent).getChildren().get(index);
+        }
+
+        @Override
+        public int getChildCount(Object parent) {
+            return ((SRDocumentContent) parent).getChildren().size();
+        }
+
+        @Override
+        public boolean isLeaf(Object node) {
+            return getChildCount(node) == 0;
+        }
+
+        @Override
+        public void valueForPathChanged(TreePath path, Object newValue) {
+            // Not editable
+        }
+
+        @Override
+        public int getIndexOfChild(Object parent, Object child) {
+            if (parent instanceof SRDocumentContent) {
+                return ((SRDocumentContent) parent).getChildren().indexOf(child);
+            }
+            return -1;
+        }
+
+        @Override
+        public void addTreeModelListener(TreeModelListener l) {
+            // Immutable model
+        }
+
+        @Override
+        public void removeTreeModelListener(TreeModelListener l) {
+            // Immutable model
+        }
+    }
 }
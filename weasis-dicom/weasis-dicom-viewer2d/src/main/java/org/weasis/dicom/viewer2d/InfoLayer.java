@@ -17,7 +17,10 @@ import java.awt.GridBagConstraints;
 import java.awt.Rectangle;
 import java.awt.font.TextAttribute;
 import java.awt.geom.Point2D;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 
 import javax.swing.Icon;
@@ -38,6 +41,7 @@ import org.weasis.core.api.media.data.TagView;
 import org.weasis.core.api.media.data.TagW;
 import org.weasis.core.api.util.FontTools;
 import org.weasis.core.api.util.LangUtil;
+import org.weasis.core.api.util.LocalUtil;
 import org.weasis.core.api.util.StringUtil;
 import org.weasis.core.api.util.StringUtil.Suffix;
 import org.weasis.core.ui.editor.image.SynchData;
@@ -70,6 +74,9 @@ public class InfoLayer extends AbstractInfoLayer<DicomImageElement> {
 
     private static final Color highlight = new Color(255, 153, 153);
 
+    // Formatted values of the last image, the tags are not read at each repaint (e.g. in cine mode)
+    private transient CornerAnnotations cornerAnnotations;
+
     public InfoLayer(ViewCanvas<DicomImageElement> view2DPane) {
         super(view2DPane);
         displayPreferences.put(ANNOTATIONS, true);
@@ -301,82 +308,29 @@ public class InfoLayer extends AbstractInfoLayer<DicomImageElement> {
         positions[3] = new Point2D.Float(border, drawY - 5);
 
         if (getDisplayPreferences(ANNOTATIONS) && image != null) {
-            Series series = (Series) view2DPane.getSeries();
-            MediaSeriesGroup study = getParent(series, DicomModel.study);
-            MediaSeriesGroup patient = getParent(series, DicomModel.patient);
-            CornerInfoData corner = modality.getCornerInfo(CornerDisplay.TOP_LEFT);
-            boolean anonymize = getDisplayPreferences(ANONYM_ANNOTATIONS);
+            CornerAnnotations annotations = getCornerAnnotations(image, modality, hideMin);
             drawY = fontHeight;
-            TagView[] infos = corner.getInfos();
-            for (int j = 0; j < infos.length; j++) {
-                if (infos[j] != null) {
-                    if (hideMin || infos[j].containsTag(TagD.get(Tag.PatientName))) {
-                        for (TagW tag : infos[j].getTag()) {
-                            if (!anonymize || tag.getAnonymizationType() != 1) {
-                                Object value = getTagValue(tag, patient, study, series, image);
-                                if (value != null) {
-                                    String str = tag.getFormattedTagValue(value, infos[j].getFormat());
-                                    if (StringUtil.hasText(str)) {
-                                        AbstractGraphicLabel.paintFontOutline(g2, str, border, drawY);
-                                        drawY += fontHeight;
-                                    }
-                                    break;
-                                }
-                            }
-                        }
-                    }
-                }
+            for (String str : annotations.topLeft) {
+                AbstractGraphicLabel.paintFontOutline(g2, str, border, drawY);
+                drawY += fontHeight;
             }
             positions[0] = new Point2D.Float(border, drawY - fontHeight + 5);
 
-            corner = modality.getCornerInfo(CornerDisplay.TOP_RIGHT);
             drawY = fontHeight;
-            infos = corner.getInfos();
-            for (int j = 0; j < infos.length; j++) {
-                if (infos[j] != null) {
-                    if (hideMin || infos[j].containsTag(TagD.get(Tag.SeriesDate))) {
-                        Object value;
-                        for (TagW tag : infos[j].getTag()) {
-                            if (!anonymize || tag.getAnonymizationType() != 1) {
-                                value = getTagValue(tag, patient, study, series, image);
-                                if (value != null) {
-                                    String str = tag.getFormattedTagValue(value, infos[j].getFormat());
-                                    if (StringUtil.hasText(str)) {
-                                        AbstractGraphicLabel.paintFontOutline(g2, str,
-                                            bound.width - g2.getFontMetrics().stringWidth(str) - (float) border, drawY);
-                                        drawY += fontHeight;
-                                    }
-                                    break;
-                                }
-                            }
-                        }
-                    }
-                }
+            for (String str : annotations.topRight) {
+                AbstractGraphicLabel.paintFontOutline(g2, str,
+                    bound.width - g2.getFontMetrics().stringWidth(str) - (float) border, drawY);
+                drawY += fontHeight;
             }
             positions[1] = new Point2D.Float(bound.width - border, drawY - fontHeight + 5);
 
             drawY = bound.height - border - 1.5f; // -1.5 for outline
             if (hideMin) {
-                corner = modality.getCornerInfo(CornerDisplay.BOTTOM_RIGHT);
-                infos = corner.getInfos();
-                for (int j = infos.length - 1; j >= 0; j--) {
-                    if (infos[j] != null) {
-                        Object value;
-                        for (TagW tag : infos[j].getTag()) {
-                            if (!anonymize || tag.getAnonymizationType() != 1) {
-                                value = getTagValue(tag, patient, study, series, image);
-                                if (value != null) {
-                                    String str = tag.getFormattedTagValue(value, infos[j].getFormat());
-                                    if (StringUtil.hasText(str)) {
-                                        AbstractGraphicLabel.paintFontOutline(g2, str,
-                                            bound.width - g2.getFontMetrics().stringWidth(str) - (float) border, drawY);
-                                        drawY -= fontHeight;
-                                    }
-                                    break;
-                                }
-                            }
-                        }
-                    }
+                for (int j = annotations.bottomRight.length - 1; j >= 0; j--) {
+                    String str = annotations.bottomRight[j];
+                    AbstractGraphicLabel.paintFontOutline(g2, str,
+                        bound.width - g2.getFontMetrics().stringWidth(str) - (float) border, drawY);
+                    drawY -= fontHeight;
                 }
                 drawY -= 5;
                 drawSeriesInMemoryState(g2, view2DPane.getSeries(), bound.width - border, (int) (drawY));
@@ -502,6 +456,54 @@ public class InfoLayer extends AbstractInfoLayer<DicomImageElement> {
         drawExtendedActions(g2, positions);
     }
 
+    private CornerAnnotations getCornerAnnotations(DicomImageElement image, ModalityInfoData modality,
+        boolean hideMin) {
+        Series series = (Series) view2DPane.getSeries();
+        boolean anonymize = getDisplayPreferences(ANONYM_ANNOTATIONS);
+        Locale locale = LocalUtil.getLocaleFormat();
+        CornerAnnotations annotations = cornerAnnotations;
+        if (annotations == null || annotations.image != image || annotations.series != series
+            || annotations.modality != modality || annotations.anonymize != anonymize || annotations.hideMin != hideMin
+            || !annotations.locale.equals(locale)) {
+            MediaSeriesGroup study = getParent(series, DicomModel.study);
+            MediaSeriesGroup patient = getParent(series, DicomModel.patient);
+            TagView[] infos = modality.getCornerInfo(CornerDisplay.TOP_LEFT).getInfos();
+            String[] topLeft = getCornerValues(infos, hideMin ? null : TagD.get(Tag.PatientName), anonymize, patient,
+                study, series, image);
+            infos = modality.getCornerInfo(CornerDisplay.TOP_RIGHT).getInfos();
+            String[] topRight = getCornerValues(infos, hideMin ? null : TagD.get(Tag.SeriesDate), anonymize, patient,
+                study, series, image);
+            String[] bottomRight = hideMin ? getCornerValues(modality.getCornerInfo(CornerDisplay.BOTTOM_RIGHT)
+                .getInfos(), null, anonymize, patient, study, series, image) : new String[0];
+            annotations = new CornerAnnotations(image, series, modality, anonymize, hideMin, locale, topLeft,
+                topRight, bottomRight);
+            cornerAnnotations = annotations;
+        }
+        return annotations;
+    }
+
+    private String[] getCornerValues(TagView[] infos, TagW minTag, boolean anonymize, MediaSeriesGroup patient,
+        MediaSeriesGroup study, Series series, ImageElement image) {
+        List<String> values = new ArrayList<>(infos.length);
+        for (TagView info : infos) {
+            if (info != null && (minTag == null || info.containsTag(minTag))) {
+                for (TagW tag : info.getTag()) {
+                    if (!anonymize || tag.getAnonymizationType() != 1) {
+                        Object value = getTagValue(tag, patient, study, series, image);
+                        if (value != null) {
+                            String str = tag.getFormattedTagValue(value, info.getFormat());
+                            if (StringUtil.hasText(str)) {
+                                values.add(str);
+                            }
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+        return values.toArray(new String[values.size()]);
+    }
+
     private MediaSeriesGroup getParent(Series series, TreeModelNode node) {
         if (series != null) {
             Object tagValue = series.getTagValue(TagW.ExplorerModel);
@@ -1014,4 +1016,32 @@ public class InfoLayer extends AbstractInfoLayer<DicomImageElement> {
         }
     }
 
+    /**
+     * Formatted values of the corners. They are built again only when the image, the series or the preferences
+     * change.
+     */
+    private static final class CornerAnnotations {
+        private final ImageElement image;
+        private final Series series;
+        private final ModalityInfoData modality;
+        private final boolean anonymize;
+        private final boolean hideMin;
+        private final Locale locale;
+        private final String[] topLeft;
+        private final String[] topRight;
+        private final String[] bottomRight;
+
+        CornerAnnotations(ImageElement image, Series series, ModalityInfoData modality, boolean anonymize,
+            boolean hideMin, Locale locale, String[] topLeft, String[] topRight, String[] bottomRight) {
+            this.image = image;
+            this.series = series;
+            this.modality = modality;
+            this.anonymize = anonymize;
+            this.hideMin = hideMin;
+            this.locale = locale;
+            this.topLeft = topLeft;
+            this.topRight = topRight;
+            this.bottomRight = bottomRight;
+        }
+    }
 }
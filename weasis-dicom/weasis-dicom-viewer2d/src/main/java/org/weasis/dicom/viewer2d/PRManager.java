@@ -15,12 +15,19 @@ import java.awt.Rectangle;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
+import java.beans.PropertyChangeListener;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
 
 import javax.swing.ButtonGroup;
 import javax.swing.JPopupMenu;
@@ -33,6 +40,7 @@ import org.slf4j.LoggerFactory;
 import org.weasis.core.api.gui.util.ActionState;
 import org.weasis.core.api.gui.util.ActionW;
 import org.weasis.core.api.gui.util.ComboItemListener;
+import org.weasis.core.api.gui.util.GuiExecutor;
 import org.weasis.core.api.gui.util.MathUtil;
 import org.weasis.core.api.gui.util.RadioMenuItem;
 import org.weasis.core.api.image.CropOp;
@@ -46,6 +54,7 @@ import org.weasis.core.api.image.util.Unit;
 import org.weasis.core.api.media.data.MediaSeries;
 import org.weasis.core.api.util.EscapeChars;
 import org.weasis.core.api.util.LangUtil;
+import org.weasis.core.api.util.ThreadUtil;
 import org.weasis.core.ui.editor.image.ViewButton;
 import org.weasis.core.ui.editor.image.ViewCanvas;
 import org.weasis.core.ui.editor.image.dockable.MeasureTool;
@@ -81,6 +90,13 @@ public class PRManager {
     public static final String TAG_PR_ZOOM = "original.zoom"; //$NON-NLS-1$
     public static final String TAG_DICOM_LAYERS = "pr.layers"; //$NON-NLS-1$
 
+    private static final int MAX_CACHED_INDEXES = 20;
+    private static final int MAX_CACHED_ANNOTATIONS = 100;
+
+    private static final ExecutorService PR_LOADER = ThreadUtil.buildNewSingleThreadExecutor("PR Graphics"); //$NON-NLS-1$
+    private static final Map<String, AnnotationIndex> INDEXES = buildLruCache(MAX_CACHED_INDEXES);
+    private static final Map<AnnotationKey, List<PrLayer>> ANNOTATIONS = buildLruCache(MAX_CACHED_ANNOTATIONS);
+
     public static void applyPresentationState(ViewCanvas<DicomImageElement> view, PresentationStateReader reader,
         DicomImageElement img) {
         if (view == null || reader == null || img == null) {
@@ -119,12 +135,11 @@ public class PRManager {
         applyPixelSpacing(view, reader, img);
 
         GraphicModel graphicModel = PrGraphicUtil.getPresentationModel(reader.getDcmobj());
-        // GraphicModel graphicModel = null;
-        List<GraphicLayer> layers =
-            graphicModel == null ? readGraphicAnnotation(view, reader, img) : readXmlModel(view, graphicModel);
-
-        if (layers != null) {
-            view.setActionsInView(PRManager.TAG_DICOM_LAYERS, layers);
+        if (graphicModel == null) {
+            // The layers are added asynchronously
+            readGraphicAnnotation(view, reader, img);
+        } else {
+            view.setActionsInView(PRManager.TAG_DICOM_LAYERS, readXmlModel(view, graphicModel));
         }
     }
 
@@ -270,193 +285,469 @@ public class PRManager {
 
     }
 
-    private static ArrayList<GraphicLayer> readGraphicAnnotation(ViewCanvas<DicomImageElement> view,
-        PresentationStateReader reader, DicomImageElement img) {
+    private static void readGraphicAnnotation(ViewCanvas<DicomImageElement> view, PresentationStateReader reader,
+        DicomImageElement img) {
+        Attributes dcmobj = reader.getDcmobj();
+        if (dcmobj == null || dcmobj.getSequence(Tag.GraphicAnnotationSequence) == null
+            || dcmobj.getSequence(Tag.GraphicLayerSequence) == null) {
+            return;
+        }
         Map<String, Object> actionsInView = view.getActionsInView();
+        /*
+         * Apply spatial transformations (rotation, flip) AFTER when graphics are in PIXEL mode and BEFORE when graphics
+         * are in DISPLAY mode.
+         */
+        int rotation = (Integer) actionsInView.getOrDefault(PresentationStateReader.TAG_PR_ROTATION, 0);
+        boolean flip = (Boolean) actionsInView.getOrDefault(PresentationStateReader.TAG_PR_FLIP, false);
+        Rectangle area = (Rectangle) actionsInView.get(ActionW.CROP.cmd());
+        Rectangle2D modelArea = view.getViewModel().getModelArea();
+        double width = area == null ? modelArea.getWidth() : area.getWidth();
+        double height = area == null ? modelArea.getHeight() : area.getHeight();
+        AnnotationKey key = new AnnotationKey(dcmobj.getString(Tag.SOPInstanceUID),
+            TagD.getTagValue(img, Tag.SOPInstanceUID, String.class), img.getKey(), rotation, flip, area, width,
+            height);
+        // The color of the layers by default
+        Color defColor = Optional.ofNullable(MeasureTool.viewSetting.getLineColor()).orElse(Color.YELLOW);
+
+        // Parsing and building the graphics can be long with thousands of annotations, do not block the EDT
+        PR_LOADER.execute(() -> {
+            List<PrLayer> prLayers = ANNOTATIONS.get(key);
+            if (prLayers == null) {
+                prLayers = buildAnnotationLayers(key, dcmobj, defColor);
+                ANNOTATIONS.put(key, prLayers);
+            }
+            List<List<Graphic>> graphics = new ArrayList<>(prLayers.size());
+            for (PrLayer prLayer : prLayers) {
+                List<Graphic> list = new ArrayList<>(prLayer.graphics.size());
+                for (PrGraphic prGraphic : prLayer.graphics) {
+                    list.add(prGraphic.buildGraphic(key));
+                }
+                graphics.add(list);
+            }
+            List<PrLayer> layers = prLayers;
+            GuiExecutor.instance().execute(() -> addAnnotationGraphics(view, reader, img, layers, graphics));
+        });
+    }
 
-        ArrayList<GraphicLayer> layers = null;
-        Attributes dcmobj = reader.getDcmobj();
-        if (dcmobj != null) {
-            Sequence gams = dcmobj.getSequence(Tag.GraphicAnnotationSequence);
-            Sequence layerSeqs = dcmobj.getSequence(Tag.GraphicLayerSequence);
+    private static void addAnnotationGraphics(ViewCanvas<DicomImageElement> view, PresentationStateReader reader,
+        DicomImageElement img, List<PrLayer> prLayers, List<List<Graphic>> graphics) {
+        // The image or the PR has been changed in the meantime
+        if (view.getImage() != img || view.getActionValue(PresentationStateReader.TAG_PR_READER) != reader) {
+            return;
+        }
 
-            if (gams != null && layerSeqs != null) {
-                Map<String, Attributes> glms = new HashMap<>(layerSeqs.size());
-                for (Attributes a : layerSeqs) {
-                    glms.put(a.getString(Tag.GraphicLayer), a);
-                }
-                /*
-                 * Apply spatial transformations (rotation, flip) AFTER when graphics are in PIXEL mode and BEFORE when
-                 * graphics are in DISPLAY mode.
-                 */
-                int rotation = (Integer) actionsInView.getOrDefault(PresentationStateReader.TAG_PR_ROTATION, 0);
-                boolean flip = (Boolean) actionsInView.getOrDefault(PresentationStateReader.TAG_PR_FLIP, false);
-                Rectangle area = (Rectangle) actionsInView.get(ActionW.CROP.cmd());
-                Rectangle2D modelArea = view.getViewModel().getModelArea();
-                double width = area == null ? modelArea.getWidth() : area.getWidth();
-                double height = area == null ? modelArea.getHeight() : area.getHeight();
-                AffineTransform inverse = null;
-                if (rotation != 0 || flip) {
-                    double offsetx = area == null ? 0.0 : area.getX() / area.getWidth();
-                    double offsety = area == null ? 0.0 : area.getY() / area.getHeight();
-                    // Create inverse transformation for display coordinates (will convert in real coordinates)
-                    inverse = AffineTransform.getTranslateInstance(offsetx, offsety);
-                    if (flip) {
-                        inverse.scale(-1.0, 1.0);
-                        inverse.translate(-1.0, 0.0);
+        ArrayList<GraphicLayer> layers = new ArrayList<>(prLayers.size());
+        List<Graphic> models = new ArrayList<>();
+        List<PropertyChangeListener> listeners = view.getGraphicManager().getGraphicsListeners();
+        for (int i = 0; i < prLayers.size(); i++) {
+            PrLayer prLayer = prLayers.get(i);
+            GraphicLayer layer = prLayer.buildLayer();
+            layers.add(layer);
+            List<Graphic> list = graphics.get(i);
+            for (int j = 0; j < list.size(); j++) {
+                Graphic g = list.get(j);
+                if (g != null) {
+                    PrGraphic prGraphic = prLayer.graphics.get(j);
+                    if (!prGraphic.isTextBox()) {
+                        prGraphic.setLabel(g, view);
                     }
-                    if (rotation != 0) {
-                        inverse.rotate(Math.toRadians(rotation), 0.5, 0.5);
+                    g.setLayer(layer);
+                    g.updateLabel(Boolean.TRUE, view);
+                    for (PropertyChangeListener listener : listeners) {
+                        g.addPropertyChangeListener(listener);
                     }
+                    if (prGraphic.isTextBox()) {
+                        prGraphic.setLabel(g, view);
+                    }
+                    models.add(g);
                 }
+            }
+        }
+        view.setActionsInView(PRManager.TAG_DICOM_LAYERS, layers);
+        view.getGraphicManager().addGraphics(models);
+        view.getJComponent().repaint();
+    }
 
-                layers = new ArrayList<>();
+    private static List<PrLayer> buildAnnotationLayers(AnnotationKey key, Attributes dcmobj, Color defColor) {
+        Sequence layerSeqs = dcmobj.getSequence(Tag.GraphicLayerSequence);
+        Map<String, Attributes> glms = new HashMap<>(layerSeqs.size());
+        for (Attributes a : layerSeqs) {
+            glms.put(a.getString(Tag.GraphicLayer), a);
+        }
 
-                for (Attributes gram : gams) {
-                    String graphicLayerName = gram.getString(Tag.GraphicLayer);
-                    Attributes glm = glms.get(graphicLayerName);
-                    if (glm == null || !PresentationStateReader.isModuleAppicable(gram, img)) {
-                        continue;
-                    }
+        AffineTransform inverse = key.getInverseTransform();
+        double width = key.width;
+        double height = key.height;
+        List<PrLayer> layers = new ArrayList<>();
+        for (Attributes gram : getAnnotationIndex(key.prUID, dcmobj).getApplicableAnnotations(key.sopUID, key.frame)) {
+            String graphicLayerName = gram.getString(Tag.GraphicLayer);
+            Attributes glm = glms.get(graphicLayerName);
+            if (glm == null) {
+                continue;
+            }
 
-                    GraphicLayer layer = new DefaultLayer(LayerType.DICOM_PR);
-                    layer.setName(graphicLayerName + " [DICOM]"); //$NON-NLS-1$
-                    layer.setSerializable(false);
-                    layer.setLocked(true);
-                    layer.setSelectable(false);
-                    layer.setLevel(310 + glm.getInt(Tag.GraphicLayerOrder, 0));
-                    layers.add(layer);
-
-                    Integer grayVal = DicomMediaUtils.getIntegerFromDicomElement(glm,
-                        Tag.GraphicLayerRecommendedDisplayGrayscaleValue, null);
-                    float[] colorLab = CIELab.convertToFloatLab(DicomMediaUtils.getIntAyrrayFromDicomElement(glm,
-                        Tag.GraphicLayerRecommendedDisplayCIELabValue, null));
-                    int[] colorRgb = DicomMediaUtils.getIntAyrrayFromDicomElement(glm,
-                        Tag.GraphicLayerRecommendedDisplayRGBValue, null);
-                    if (colorRgb == null && colorLab == null && grayVal == null) {
-                        Color c = Optional.ofNullable(MeasureTool.viewSetting.getLineColor()).orElse(Color.YELLOW);
-                        colorRgb = new int[] { c.getRed(), c.getGreen(), c.getBlue() };
-                    }
+            PrLayer layer = new PrLayer(graphicLayerName, 310 + glm.getInt(Tag.GraphicLayerOrder, 0));
+            layers.add(layer);
+
+            Integer grayVal =
+                DicomMediaUtils.getIntegerFromDicomElement(glm, Tag.GraphicLayerRecommendedDisplayGrayscaleValue, null);
+            float[] colorLab = CIELab.convertToFloatLab(
+                DicomMediaUtils.getIntAyrrayFromDicomElement(glm, Tag.GraphicLayerRecommendedDisplayCIELabValue, null));
+            int[] colorRgb =
+                DicomMediaUtils.getIntAyrrayFromDicomElement(glm, Tag.GraphicLayerRecommendedDisplayRGBValue, null);
+            if (colorRgb == null && colorLab == null && grayVal == null) {
+                colorRgb = new int[] { defColor.getRed(), defColor.getGreen(), defColor.getBlue() };
+            }
 
-                    Color rgb =
-                        PresentationStateReader.getRGBColor(grayVal == null ? 255 : grayVal, colorLab, colorRgb);
+            Color rgb = PresentationStateReader.getRGBColor(grayVal == null ? 255 : grayVal, colorLab, colorRgb);
 
-                    Sequence gos = gram.getSequence(Tag.GraphicObjectSequence);
+            Sequence gos = gram.getSequence(Tag.GraphicObjectSequence);
+            if (gos != null) {
+                for (Attributes go : gos) {
+                    layer.graphics.add(new PrGraphic(go, rgb));
+                }
+            }
 
-                    if (gos != null) {
-                        for (Attributes go : gos) {
-                            Graphic graphic;
-                            try {
-                                graphic =
-                                    PrGraphicUtil.buildGraphic(go, rgb, false, width, height, true, inverse, false);
-                                if (graphic != null) {
-                                    AbstractGraphicModel.addGraphicToModel(view, layer, graphic);
-                                }
-                            } catch (InvalidShapeException e) {
-                                LOGGER.error("Cannot create graphic: " + e.getMessage(), e); //$NON-NLS-1$
-                            }
+            Sequence txos = gram.getSequence(Tag.TextObjectSequence);
+            if (txos != null) {
+                for (Attributes txo : txos) {
+                    Attributes style = txo.getNestedDataset(Tag.LineStyleSequence);
+                    Float thickness = DicomMediaUtils.getFloatFromDicomElement(style, Tag.LineThickness, 1.0f);
+                    if (style != null) {
+                        float[] lab = CIELab.convertToFloatLab(style.getInts(Tag.PatternOnColorCIELabValue));
+                        if (lab != null) {
+                            rgb = PresentationStateReader.getRGBColor(255, lab, (int[]) null);
                         }
                     }
 
-                    Sequence txos = gram.getSequence(Tag.TextObjectSequence);
-                    if (txos != null) {
-                        for (Attributes txo : txos) {
-                            Attributes style = txo.getNestedDataset(Tag.LineStyleSequence);
-                            Float thickness = DicomMediaUtils.getFloatFromDicomElement(style, Tag.LineThickness, 1.0f);
-                            if (style != null) {
-                                float[] lab = CIELab.convertToFloatLab(style.getInts(Tag.PatternOnColorCIELabValue));
-                                if (lab != null) {
-                                    rgb = PresentationStateReader.getRGBColor(255, lab, (int[]) null);
-                                }
+                    String[] textLines = EscapeChars.convertToLines(txo.getString(Tag.UnformattedTextValue));
+                    // MATRIX not implemented
+                    boolean isDisp = "DISPLAY".equalsIgnoreCase(txo.getString(Tag.BoundingBoxAnnotationUnits)); //$NON-NLS-1$
+                    float[] topLeft = txo.getFloats(Tag.BoundingBoxTopLeftHandCorner);
+                    float[] bottomRight = txo.getFloats(Tag.BoundingBoxBottomRightHandCorner);
+                    Rectangle2D rect = null;
+                    if (topLeft != null && bottomRight != null) {
+                        if (topLeft[0] > bottomRight[0]) {
+                            float b = topLeft[0];
+                            topLeft[0] = bottomRight[0];
+                            bottomRight[0] = b;
+                        }
+                        if (topLeft[1] > bottomRight[1]) {
+                            float b = topLeft[1];
+                            topLeft[1] = bottomRight[1];
+                            bottomRight[1] = b;
+                        }
+                        rect = new Rectangle2D.Double(topLeft[0], topLeft[1], bottomRight[0] - topLeft[0],
+                            bottomRight[1] - topLeft[1]);
+                        if (isDisp) {
+                            rect.setRect(rect.getX() * width, rect.getY() * height, rect.getWidth() * width,
+                                rect.getHeight() * height);
+                            if (inverse != null) {
+                                float[] dstPt1 = new float[2];
+                                float[] dstPt2 = new float[2];
+                                inverse.transform(topLeft, 0, dstPt1, 0, 1);
+                                inverse.transform(bottomRight, 0, dstPt2, 0, 1);
+                                rect.setFrameFromDiagonal(dstPt1[0] * width, dstPt1[1] * height, dstPt2[0] * width,
+                                    dstPt2[1] * height);
                             }
+                        }
+                    }
 
-                            String[] textLines = EscapeChars.convertToLines(txo.getString(Tag.UnformattedTextValue));
-                            // MATRIX not implemented
-                            boolean isDisp = "DISPLAY".equalsIgnoreCase(txo.getString(Tag.BoundingBoxAnnotationUnits)); //$NON-NLS-1$
-                            float[] topLeft = txo.getFloats(Tag.BoundingBoxTopLeftHandCorner);
-                            float[] bottomRight = txo.getFloats(Tag.BoundingBoxBottomRightHandCorner);
-                            Rectangle2D rect = null;
-                            if (topLeft != null && bottomRight != null) {
-                                if (topLeft[0] > bottomRight[0]) {
-                                    float b = topLeft[0];
-                                    topLeft[0] = bottomRight[0];
-                                    bottomRight[0] = b;
-                                }
-                                if (topLeft[1] > bottomRight[1]) {
-                                    float b = topLeft[1];
-                                    topLeft[1] = bottomRight[1];
-                                    bottomRight[1] = b;
-                                }
-                                rect = new Rectangle2D.Double(topLeft[0], topLeft[1], bottomRight[0] - topLeft[0],
-                                    bottomRight[1] - topLeft[1]);
-                                if (isDisp) {
-                                    rect.setRect(rect.getX() * width, rect.getY() * height, rect.getWidth() * width,
-                                        rect.getHeight() * height);
-                                    if (inverse != null) {
-                                        float[] dstPt1 = new float[2];
-                                        float[] dstPt2 = new float[2];
-                                        inverse.transform(topLeft, 0, dstPt1, 0, 1);
-                                        inverse.transform(bottomRight, 0, dstPt2, 0, 1);
-                                        rect.setFrameFromDiagonal(dstPt1[0] * width, dstPt1[1] * height,
-                                            dstPt2[0] * width, dstPt2[1] * height);
-                                    }
-                                }
-                            }
+                    float[] anchor = txo.getFloats(Tag.AnchorPoint);
+                    if (anchor != null && anchor.length == 2) {
+                        // MATRIX not implemented
+                        boolean disp = "DISPLAY".equalsIgnoreCase(txo.getString(Tag.AnchorPointAnnotationUnits)); //$NON-NLS-1$
+                        double x = disp ? anchor[0] * width : anchor[0];
+                        double y = disp ? anchor[1] * height : anchor[1];
+                        Point2D.Double ptAnchor = new Point2D.Double(x, y);
+                        /*
+                         * Use the center of the box. Do not follow DICOM specs: displaying the bounding box even the
+                         * text doesn't match. Does not make sense!
+                         */
+                        Point2D.Double ptBox =
+                            rect == null ? ptAnchor : new Point2D.Double(rect.getCenterX(), rect.getCenterY());
+                        if (!PrGraphicUtil.getBooleanValue(txo, Tag.AnchorPointVisibility)) {
+                            ptAnchor = null;
+                        }
+                        if (ptAnchor != null && ptAnchor.equals(ptBox)) {
+                            ptBox = new Point2D.Double(ptAnchor.getX() + 20, ptAnchor.getY() + 50);
+                        }
+                        layer.graphics.add(new PrGraphic(ptAnchor, ptBox, rgb, thickness, textLines));
+                    } else if (rect != null) {
+                        layer.graphics.add(new PrGraphic(new Point2D.Double(rect.getMinX(), rect.getMinY()), null,
+                            null, thickness, textLines));
+                    }
+                }
+            }
+        }
+        return layers;
+    }
 
-                            float[] anchor = txo.getFloats(Tag.AnchorPoint);
-                            if (anchor != null && anchor.length == 2) {
-                                // MATRIX not implemented
-                                boolean disp =
-                                    "DISPLAY".equalsIgnoreCase(txo.getString(Tag.AnchorPointAnnotationUnits)); //$NON-NLS-1$
-                                double x = disp ? anchor[0] * width : anchor[0];
-                                double y = disp ? anchor[1] * height : anchor[1];
-                                Point2D.Double ptAnchor = new Point2D.Double(x, y);
-                                /*
-                                 * Use the center of the box. Do not follow DICOM specs: displaying the bounding box
-                                 * even the text doesn't match. Does not make sense!
-                                 */
-                                Point2D.Double ptBox =
-                                    rect == null ? ptAnchor : new Point2D.Double(rect.getCenterX(), rect.getCenterY());
-                                if (!PrGraphicUtil.getBooleanValue(txo, Tag.AnchorPointVisibility)) {
-                                    ptAnchor = null;
-                                }
-                                if (ptAnchor != null && ptAnchor.equals(ptBox)) {
-                                    ptBox = new Point2D.Double(ptAnchor.getX() + 20, ptAnchor.getY() + 50);
-                                }
+    private static AnnotationIndex getAnnotationIndex(String prUID, Attributes dcmobj) {
+        AnnotationIndex index = prUID == null ? null : INDEXES.get(prUID);
+        if (index == null || index.dcmobj != dcmobj) {
+            index = new AnnotationIndex(dcmobj);
+            if (prUID != null) {
+                INDEXES.put(prUID, index);
+            }
+        }
+        return index;
+    }
 
-                                try {
-                                    List<Point2D.Double> pts = new ArrayList<>(2);
-                                    pts.add(ptAnchor);
-                                    pts.add(ptBox);
-                                    Graphic g = new AnnotationGraphic().buildGraphic(pts);
-                                    g.setPaint(rgb);
-                                    g.setLineThickness(thickness);
-                                    g.setLabelVisible(Boolean.TRUE);
-                                    g.setLabel(textLines, view);
-                                    AbstractGraphicModel.addGraphicToModel(view, layer, g);
-                                } catch (InvalidShapeException e) {
-                                    LOGGER.error("Cannot create annotation: " + e.getMessage(), e); //$NON-NLS-1$
-                                }
-                            } else if (rect != null) {
-                                try {
-                                    Point2D.Double point = new Point2D.Double(rect.getMinX(), rect.getMinY());
-                                    AbstractGraphic pt =
-                                        (AbstractGraphic) new PointGraphic().buildGraphic(Arrays.asList(point));
-                                    pt.setLineThickness(thickness);
-                                    pt.setLabelVisible(Boolean.TRUE);
-                                    AbstractGraphicModel.addGraphicToModel(view, layer, pt);
-                                    pt.setShape(null, null);
-                                    pt.setLabel(textLines, view, point);
-                                } catch (InvalidShapeException e) {
-                                    LOGGER.error("Cannot create annotation: " + e.getMessage(), e); //$NON-NLS-1$
+    private static <K, V> Map<K, V> buildLruCache(final int maxEntries) {
+        return Collections.synchronizedMap(new LinkedHashMap<K, V>(maxEntries + 1, 0.75f, true) {
+            private static final long serialVersionUID = 2594937262813470428L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > maxEntries;
+            }
+        });
+    }
+
+    /**
+     * Index of the Graphic Annotation Sequence by referenced SOP Instance UID. With a PR referencing hundreds of
+     * images, the annotations of an image are found without iterating over all the Referenced Image Sequences.
+     */
+    private static final class AnnotationIndex {
+        private final Attributes dcmobj;
+        // Annotations without Referenced Image Sequence are applicable to all the images
+        private final List<Integer> allImages = new ArrayList<>();
+        private final Map<String, List<int[]>> bySopUID = new HashMap<>();
+
+        AnnotationIndex(Attributes dcmobj) {
+            this.dcmobj = dcmobj;
+            Sequence gams = dcmobj.getSequence(Tag.GraphicAnnotationSequence);
+            if (gams != null) {
+                for (int i = 0; i < gams.size(); i++) {
+                    Sequence sops = gams.get(i).getSequence(Tag.ReferencedImageSequence);
+                    if (sops == null || sops.isEmpty()) {
+                        allImages.add(i);
+                    } else {
+                        Set<String> uids = new HashSet<>();
+                        for (Attributes sop : sops) {
+                            String uid = sop.getString(Tag.ReferencedSOPInstanceUID);
+                            // Like PresentationStateReader.isModuleAppicable(), only the first reference is considered
+                            if (uid != null && uids.add(uid)) {
+                                int[] frames =
+                                    DicomMediaUtils.getIntAyrrayFromDicomElement(sop, Tag.ReferencedFrameNumber, null);
+                                int[] ref = new int[frames == null ? 1 : frames.length + 1];
+                                ref[0] = i;
+                                if (frames != null) {
+                                    System.arraycopy(frames, 0, ref, 1, frames.length);
                                 }
+                                bySopUID.computeIfAbsent(uid, k -> new ArrayList<>()).add(ref);
                             }
                         }
                     }
                 }
             }
         }
-        return layers;
+
+        /**
+         * @return the items of the Graphic Annotation Sequence applicable to the image, in the order of the sequence
+         */
+        List<Attributes> getApplicableAnnotations(String sopUID, Object key) {
+            Sequence gams = dcmobj.getSequence(Tag.GraphicAnnotationSequence);
+            if (gams == null) {
+                return Collections.emptyList();
+            }
+            int dicomFrame = key instanceof Integer ? (Integer) key + 1 : 1;
+            List<Integer> indexes = new ArrayList<>(allImages);
+            List<int[]> refs = sopUID == null ? null : bySopUID.get(sopUID);
+            if (refs != null) {
+                for (int[] ref : refs) {
+                    if (isFrameReferenced(ref, dicomFrame)) {
+                        indexes.add(ref[0]);
+                    }
+                }
+                Collections.sort(indexes);
+            }
+            List<Attributes> list = new ArrayList<>(indexes.size());
+            for (Integer i : indexes) {
+                list.add(gams.get(i));
+            }
+            return list;
+        }
+
+        private static boolean isFrameReferenced(int[] ref, int dicomFrame) {
+            if (ref.length == 1) {
+                return true;
+            }
+            for (int i = 1; i < ref.length; i++) {
+                if (ref[i] == dicomFrame) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Key of the annotations of a PR applied to an image. The geometry of the view is part of the key because the
+     * coordinates in DISPLAY mode depend on it.
+     */
+    private static final class AnnotationKey {
+        private final String prUID;
+        private final String sopUID;
+        private final Object frame;
+        private final int rotation;
+        private final boolean flip;
+        private final Rectangle area;
+        private final double width;
+        private final double height;
+
+        AnnotationKey(String prUID, String sopUID, Object frame, int rotation, boolean flip, Rectangle area,
+            double width, double height) {
+            this.prUID = prUID;
+            this.sopUID = sopUID;
+            this.frame = frame;
+            this.rotation = rotation;
+            this.flip = flip;
+            this.area = area == null ? null : new Rectangle(area);
+            this.width = width;
+            this.height = height;
+        }
+
+        AffineTransform getInverseTransform() {
+            if (rotation == 0 && !flip) {
+                return null;
+            }
+            double offsetx = area == null ? 0.0 : area.getX() / area.getWidth();
+            double offsety = area == null ? 0.0 : area.getY() / area.getHeight();
+            // Create inverse transformation for display coordinates (will convert in real coordinates)
+            AffineTransform inverse = AffineTransform.getTranslateInstance(offsetx, offsety);
+            if (flip) {
+                inverse.scale(-1.0, 1.0);
+                inverse.translate(-1.0, 0.0);
+            }
+            if (rotation != 0) {
+                inverse.rotate(Math.toRadians(rotation), 0.5, 0.5);
+            }
+            return inverse;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof AnnotationKey)) {
+                return false;
+            }
+            AnnotationKey other = (AnnotationKey) obj;
+            return rotation == other.rotation && flip == other.flip && Double.compare(width, other.width) == 0
+                && Double.compare(height, other.height) == 0 && Objects.equals(prUID, other.prUID)
+                && Objects.equals(sopUID, other.sopUID) && Objects.equals(frame, other.frame)
+                && Objects.equals(area, other.area);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(prUID, sopUID, frame, rotation, flip, area, width, height);
+        }
+    }
+
+    /**
+     * The graphics of a layer parsed from the PR. The graphic instances are built for each view because they belong to
+     * only one graphic model.
+     */
+    private static final class PrLayer {
+        private final String name;
+        private final int level;
+        private final List<PrGraphic> graphics = new ArrayList<>();
+
+        PrLayer(String name, int level) {
+            this.name = name;
+            this.level = level;
+        }
+
+        GraphicLayer buildLayer() {
+            GraphicLayer layer = new DefaultLayer(LayerType.DICOM_PR);
+            layer.setName(name + " [DICOM]"); //$NON-NLS-1$
+            layer.setSerializable(false);
+            layer.setLocked(true);
+            layer.setSelectable(false);
+            layer.setLevel(level);
+            return layer;
+        }
+    }
+
+    /**
+     * An item of the Graphic Object Sequence or of the Text Object Sequence.
+     */
+    private static final class PrGraphic {
+        private final Attributes graphicObject;
+        private final Point2D.Double ptAnchor;
+        private final Point2D.Double ptBox;
+        private final Color color;
+        private final Float thickness;
+        private final String[] textLines;
+
+        PrGraphic(Attributes graphicObject, Color color) {
+            this.graphicObject = graphicObject;
+            this.color = color;
+            this.ptAnchor = null;
+            this.ptBox = null;
+            this.thickness = null;
+            this.textLines = null;
+        }
+
+        /**
+         * @param ptBox
+         *            the center of the text box or null when the text is displayed at ptAnchor without graphic
+         */
+        PrGraphic(Point2D.Double ptAnchor, Point2D.Double ptBox, Color color, Float thickness, String[] textLines) {
+            this.graphicObject = null;
+            this.ptAnchor = ptAnchor;
+            this.ptBox = ptBox;
+            this.color = color;
+            this.thickness = thickness;
+            this.textLines = textLines;
+        }
+
+        boolean isTextBox() {
+            return graphicObject == null && ptBox == null;
+        }
+
+        Graphic buildGraphic(AnnotationKey key) {
+            try {
+                if (graphicObject != null) {
+                    return PrGraphicUtil.buildGraphic(graphicObject, color, false, key.width, key.height, true,
+                        key.getInverseTransform(), false);
+                } else if (ptBox != null) {
+                    List<Point2D.Double> pts = new ArrayList<>(2);
+                    pts.add(ptAnchor == null ? null : (Point2D.Double) ptAnchor.clone());
+                    pts.add((Point2D.Double) ptBox.clone());
+                    Graphic g = new AnnotationGraphic().buildGraphic(pts);
+                    g.setPaint(color);
+                    g.setLineThickness(thickness);
+                    g.setLabelVisible(Boolean.TRUE);
+                    return g;
+                } else {
+                    AbstractGraphic pt = (AbstractGraphic) new PointGraphic()
+                        .buildGraphic(Arrays.asList((Point2D.Double) ptAnchor.clone()));
+                    pt.setLineThickness(thickness);
+                    pt.setLabelVisible(Boolean.TRUE);
+                    return pt;
+                }
+            } catch (InvalidShapeException e) {
+                LOGGER.error("Cannot create graphic: " + e.getMessage(), e); //$NON-NLS-1$
+            }
+            return null;
+        }
+
+        void setLabel(Graphic g, ViewCanvas<DicomImageElement> view) {
+            if (graphicObject != null) {
+                return;
+            }
+            if (isTextBox()) {
+                ((AbstractGraphic) g).setShape(null, null);
+                ((AbstractGraphic) g).setLabel(textLines, view, ptAnchor);
+            } else {
+                g.setLabel(textLines, view);
+            }
+        }
     }
 
     /** Indicate if the graphic is to be filled in */
@@ -0,0 +1,783 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2018 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.dicom.viewer2d;
+
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.GridLayout;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Area;
+import java.awt.geom.FlatteningPathIterator;
+import java.awt.geom.Path2D;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import javax.swing.BorderFactory;
+import javax.swing.JComponent;
+import javax.swing.JLabel;
+import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.vecmath.Vector3d;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.weasis.core.api.gui.util.DecFormater;
+import org.weasis.core.api.gui.util.GuiExecutor;
+import org.weasis.core.api.image.util.Unit;
+import org.weasis.core.api.media.data.MediaSeries;
+import org.weasis.core.api.media.data.TagW;
+import org.weasis.core.api.util.ThreadUtil;
+import org.weasis.core.ui.model.GraphicModel;
+import org.weasis.core.ui.model.graphic.Graphic;
+import org.weasis.core.ui.model.graphic.GraphicArea;
+import org.weasis.core.ui.model.utils.ImageStatistics;
+import org.weasis.core.ui.util.ColorLayerUI;
+import org.weasis.dicom.codec.DicomImageElement;
+import org.weasis.dicom.codec.geometry.GeometryOfSlice;
+import org.weasis.opencv.data.LookupTableCV;
+import org.weasis.opencv.data.PlanarImage;
+import org.weasis.opencv.op.RoiStatistics;
+
+/**
+ * Statistics of a region of interest drawn on several slices of a series.
+ *
+ * <ul>
+ * <li>The region is made of the contours of the selected graphic drawn on the parallel slices of the series: on each
+ * slice, the area graphic of the same type and color which overlaps the contour of the nearest selected slice. The
+ * other graphics are ignored. The contours of the slices between two drawn slices are interpolated.</li>
+ * <li>The statistics are weighted by the number of voxels and are in modality units (or in SUV when the selected image
+ * has a SUV factor). The volume is computed from the pixel spacing and from the distance between the slices.</li>
+ * <li>The slices are read and processed by a pool of threads in one pass: the extrema, the power sums and a histogram
+ * between the min and the max values of each image. The histograms of the slices are merged at the end.</li>
+ * </ul>
+ */
+public class RoiVolumeStatistics {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RoiVolumeStatistics.class);
+
+    public static final int HISTOGRAM_BINS = 256;
+    // The median is interpolated in the fine histogram
+    private static final int FINE_HISTOGRAM_BINS = HISTOGRAM_BINS * 64;
+    private static final int CONTOUR_POINTS = 128;
+
+    private static final ExecutorService VOLUME_LOADER = ThreadUtil.buildNewSingleThreadExecutor("Volume Statistics"); //$NON-NLS-1$
+    private static final ExecutorService SLICE_EXECUTOR = ThreadUtil.buildNewFixedThreadExecutor(
+        Math.max(1, Runtime.getRuntime().availableProcessors() - 1), "Volume Statistics Slice"); //$NON-NLS-1$
+
+    private final int drawnSlices;
+    private final int interpolatedSlices;
+    private final long voxelCount;
+    private final Double volume;
+    private final String unit;
+    private double min;
+    private double max;
+    private double mean;
+    private double std;
+    private double skewness;
+    private double kurtosis;
+    private double median;
+    private final int[] histogram = new int[HISTOGRAM_BINS];
+
+    private RoiVolumeStatistics(int drawnSlices, int interpolatedSlices, long voxelCount, Double volume,
+        String unit) {
+        this.drawnSlices = drawnSlices;
+        this.interpolatedSlices = interpolatedSlices;
+        this.voxelCount = voxelCount;
+        this.volume = volume;
+        this.unit = unit;
+    }
+
+    public int getDrawnSlices() {
+        return drawnSlices;
+    }
+
+    public int getInterpolatedSlices() {
+        return interpolatedSlices;
+    }
+
+    public long getVoxelCount() {
+        return voxelCount;
+    }
+
+    /**
+     * @return the volume in ml or null when the pixel spacing is not calibrated
+     */
+    public Double getVolume() {
+        return volume;
+    }
+
+    public String getUnit() {
+        return unit;
+    }
+
+    public double getMin() {
+        return min;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    public double getStd() {
+        return std;
+    }
+
+    public double getSkewness() {
+        return skewness;
+    }
+
+    /**
+     * @return the excess kurtosis (0 for a normal distribution)
+     */
+    public double getKurtosis() {
+        return kurtosis;
+    }
+
+    /**
+     * @return the median, interpolated in a histogram of {@value #FINE_HISTOGRAM_BINS} bins
+     */
+    public double getMedian() {
+        return median;
+    }
+
+    /**
+     * @return the histogram of {@value #HISTOGRAM_BINS} bins between the min and the max
+     */
+    public int[] getHistogram() {
+        return histogram;
+    }
+
+    /**
+     * Compute in background the statistics of the region drawn on the slices of the series and show the result. Must
+     * be called from the EDT.
+     *
+     * @param view
+     *            the view of the series
+     * @param graphic
+     *            the selected area graphic
+     */
+    public static void showStatistics(View2d view, Graphic graphic) {
+        List<RoiSlice> slices = buildSlices(view, graphic);
+        if (slices.isEmpty()) {
+            JOptionPane.showMessageDialog(view,
+                Messages.getString("RoiVolumeStatistics.no_slice"), Messages.getString("RoiVolumeStatistics.title"), //$NON-NLS-1$ //$NON-NLS-2$
+                JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+        Double suvFactor = (Double) view.getImage().getTagValue(TagW.SuvFactor);
+
+        VOLUME_LOADER.execute(() -> {
+            RoiVolumeStatistics stats = null;
+            try {
+                stats = compute(slices, suvFactor != null);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                LOGGER.error("Computing volume statistics", e); //$NON-NLS-1$
+            }
+            RoiVolumeStatistics result = stats;
+            GuiExecutor.instance().execute(() -> showResult(view, result));
+        });
+    }
+
+    /**
+     * Collect the parallel slices of the series, from the first to the last slice with a drawn region, and interpolate
+     * the regions of the other slices.
+     */
+    private static List<RoiSlice> buildSlices(View2d view, Graphic graphic) {
+        MediaSeries<DicomImageElement> series = view.getSeries();
+        DicomImageElement current = view.getImage();
+        GeometryOfSlice reference = current == null ? null : current.getDispSliceGeometry();
+        if (series == null || reference == null) {
+            return new ArrayList<>();
+        }
+        Vector3d normal = reference.getNormal();
+        if (graphic.getShape() == null) {
+            return new ArrayList<>();
+        }
+
+        List<RoiSlice> all = new ArrayList<>();
+        for (DicomImageElement img : series.copyOfMedias(null, null)) {
+            GeometryOfSlice geometry = img.getDispSliceGeometry();
+            if (geometry != null && Math.abs(geometry.getNormal().dot(normal)) > 0.999) {
+                RoiSlice slice = new RoiSlice(img, geometry, normal.dot(new Vector3d(geometry.getTLHC())));
+                if (img == current) {
+                    slice.shape = graphic.getShape();
+                } else {
+                    slice.candidates =
+                        getCandidateAreas((GraphicModel) img.getTagValue(TagW.PresentationModel), graphic);
+                }
+                all.add(slice);
+            }
+        }
+        all.sort(Comparator.comparingDouble(s -> s.position));
+
+        // Keep one slice by position (e.g. several phases in the same series), the displayed slice or a drawn one
+        List<RoiSlice> stack = new ArrayList<>(all.size());
+        int selected = -1;
+        for (RoiSlice s : all) {
+            RoiSlice last = stack.isEmpty() ? null : stack.get(stack.size() - 1);
+            if (last != null && Math.abs(s.position - last.position) < 1.0E-3) {
+                if (s.image == current || last.image != current && last.candidates.isEmpty()) {
+                    stack.set(stack.size() - 1, s);
+                }
+            } else {
+                stack.add(s);
+            }
+            if (s.image == current) {
+                selected = stack.size() - 1;
+            }
+        }
+        if (selected < 0) {
+            return new ArrayList<>();
+        }
+        selectContours(stack, selected, 1);
+        selectContours(stack, selected, -1);
+
+        int first = -1;
+        int last = -1;
+        for (int i = 0; i < stack.size(); i++) {
+            if (stack.get(i).shape != null) {
+                if (first < 0) {
+                    first = i;
+                }
+                last = i;
+            }
+        }
+        if (first < 0) {
+            return new ArrayList<>();
+        }
+
+        for (int i = first; i <= last; i++) {
+            RoiSlice s = stack.get(i);
+            // The voxel depth is the distance between the middle of the neighbor slices
+            double before = i > 0 ? s.position - stack.get(i - 1).position : -1.0;
+            double after = i < stack.size() - 1 ? stack.get(i + 1).position - s.position : -1.0;
+            if (before > 0 && after > 0) {
+                s.thickness = (before + after) / 2.0;
+            } else if (before > 0 || after > 0) {
+                s.thickness = Math.max(before, after);
+            } else {
+                s.thickness = s.geometry.getSliceThickness();
+            }
+        }
+
+        int previous = first;
+        for (int i = first + 1; i <= last; i++) {
+            if (stack.get(i).shape != null) {
+                for (int k = previous + 1; k < i; k++) {
+                    RoiSlice s = stack.get(k);
+                    s.shape = interpolate(stack.get(previous), stack.get(i), s);
+                    s.interpolated = true;
+                }
+                previous = i;
+            }
+        }
+        return new ArrayList<>(stack.subList(first, last + 1));
+    }
+
+    /**
+     * @return the area graphics of the slice which can be a contour of the same region as the selected graphic
+     */
+    private static List<Shape> getCandidateAreas(GraphicModel model, Graphic graphic) {
+        List<Shape> list = new ArrayList<>();
+        if (model != null) {
+            for (Graphic g : model.getModels()) {
+                if (g instanceof GraphicArea && g.getClass() == graphic.getClass()
+                    && g.getLayerType() == graphic.getLayerType()
+                    && Objects.equals(g.getColorPaint(), graphic.getColorPaint()) && g.getShape() != null) {
+                    list.add(g.getShape());
+                }
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Go from the selected slice in one direction and take on each slice the candidate overlapping the most the
+     * contour of the last slice with a contour.
+     */
+    private static void selectContours(List<RoiSlice> stack, int selected, int direction) {
+        RoiSlice reference = stack.get(selected);
+        for (int i = selected + direction; i >= 0 && i < stack.size(); i += direction) {
+            RoiSlice s = stack.get(i);
+            if (s.candidates.isEmpty()) {
+                continue;
+            }
+            Rectangle2D bounds = projectShape(reference, s).getBounds2D();
+            Shape best = null;
+            double bestOverlap = 0.0;
+            for (Shape c : s.candidates) {
+                Rectangle2D overlap = bounds.createIntersection(c.getBounds2D());
+                double area = overlap.isEmpty() ? 0.0 : overlap.getWidth() * overlap.getHeight();
+                if (area > bestOverlap) {
+                    bestOverlap = area;
+                    best = c;
+                }
+            }
+            if (best != null) {
+                s.shape = best;
+                reference = s;
+            }
+        }
+    }
+
+    /**
+     * Interpolate linearly the contours of two slices. The contours are resampled with the same number of points,
+     * oriented in the same direction and their starting points are aligned. The regions made of several contours are
+     * not interpolated, the closest region is projected.
+     */
+    static Shape interpolate(RoiSlice a, RoiSlice b, RoiSlice target) {
+        double t = (target.position - a.position) / (b.position - a.position);
+        Point2D[] pa = resampleContour(projectShape(a, target));
+        Point2D[] pb = resampleContour(projectShape(b, target));
+        if (pa == null || pb == null) {
+            return projectShape(t < 0.5 ? a : b, target);
+        }
+        if (signedArea(pa) * signedArea(pb) < 0.0) {
+            for (int i = 0, j = pb.length - 1; i < j; i++, j--) {
+                Point2D tmp = pb[i];
+                pb[i] = pb[j];
+                pb[j] = tmp;
+            }
+        }
+        int n = pa.length;
+        int shift = 0;
+        double best = Double.MAX_VALUE;
+        for (int s = 0; s < n; s++) {
+            double dist = 0.0;
+            for (int i = 0; i < n && dist < best; i++) {
+                dist += pa[i].distanceSq(pb[(i + s) % n]);
+            }
+            if (dist < best) {
+                best = dist;
+                shift = s;
+            }
+        }
+
+        Path2D path = new Path2D.Double(Path2D.WIND_NON_ZERO, n + 1);
+        for (int i = 0; i < n; i++) {
+            Point2D p1 = pa[i];
+            Point2D p2 = pb[(i + shift) % n];
+            double x = p1.getX() + t * (p2.getX() - p1.getX());
+            double y = p1.getY() + t * (p2.getY() - p1.getY());
+            if (i == 0) {
+                path.moveTo(x, y);
+            } else {
+                path.lineTo(x, y);
+            }
+        }
+        path.closePath();
+        return path;
+    }
+
+    /**
+     * @return the region of the slice in the image coordinates of the target slice
+     */
+    private static Shape projectShape(RoiSlice slice, RoiSlice target) {
+        PathIterator it = new FlatteningPathIterator(slice.shape.getPathIterator(null), 0.5);
+        Path2D path = new Path2D.Double(it.getWindingRule());
+        double[] pts = new double[6];
+        while (!it.isDone()) {
+            int type = it.currentSegment(pts);
+            if (type == PathIterator.SEG_CLOSE) {
+                path.closePath();
+            } else {
+                Point2D p = target.geometry
+                    .getImagePosition(slice.geometry.getPosition(new Point2D.Double(pts[0], pts[1])));
+                if (p == null) {
+                    return slice.shape;
+                }
+                if (type == PathIterator.SEG_MOVETO) {
+                    path.moveTo(p.getX(), p.getY());
+                } else {
+                    path.lineTo(p.getX(), p.getY());
+                }
+            }
+            it.next();
+        }
+        return path;
+    }
+
+    /**
+     * @return the contour resampled by {@value #CONTOUR_POINTS} points equally spaced, or null when the region is not
+     *         made of one contour
+     */
+    private static Point2D[] resampleContour(Shape shape) {
+        Area area = new Area(shape);
+        if (!area.isSingular()) {
+            return null;
+        }
+        List<Point2D> pts = new ArrayList<>();
+        PathIterator it = new FlatteningPathIterator(area.getPathIterator(null), 0.25);
+        double[] coords = new double[6];
+        while (!it.isDone()) {
+            int type = it.currentSegment(coords);
+            if (type == PathIterator.SEG_MOVETO || type == PathIterator.SEG_LINETO) {
+                pts.add(new Point2D.Double(coords[0], coords[1]));
+            }
+            it.next();
+        }
+        if (pts.size() < 3) {
+            return null;
+        }
+        pts.add(pts.get(0));
+
+        double[] cumul = new double[pts.size()];
+        for (int i = 1; i < pts.size(); i++) {
+            cumul[i] = cumul[i - 1] + pts.get(i).distance(pts.get(i - 1));
+        }
+        double length = cumul[cumul.length - 1];
+        if (length <= 0.0) {
+            return null;
+        }
+        Point2D[] result = new Point2D[CONTOUR_POINTS];
+        int seg = 1;
+        for (int i = 0; i < CONTOUR_POINTS; i++) {
+            double d = length * i / CONTOUR_POINTS;
+            while (seg < cumul.length - 1 && cumul[seg] < d) {
+                seg++;
+            }
+            Point2D p0 = pts.get(seg - 1);
+            Point2D p1 = pts.get(seg);
+            double segLength = cumul[seg] - cumul[seg - 1];
+            double r = segLength <= 0.0 ? 0.0 : (d - cumul[seg - 1]) / segLength;
+            result[i] = new Point2D.Double(p0.getX() + r * (p1.getX() - p0.getX()),
+                p0.getY() + r * (p1.getY() - p0.getY()));
+        }
+        return result;
+    }
+
+    private static double signedArea(Point2D[] pts) {
+        double area = 0.0;
+        for (int i = 0; i < pts.length; i++) {
+            Point2D p1 = pts[i];
+            Point2D p2 = pts[(i + 1) % pts.length];
+            area += p1.getX() * p2.getY() - p2.getX() * p1.getY();
+        }
+        return area / 2.0;
+    }
+
+    static RoiVolumeStatistics compute(List<RoiSlice> slices, boolean suv)
+        throws InterruptedException, ExecutionException {
+        // The power sums are centered on a value of the first slice to limit the loss of precision
+        double shift = slices.get(0).getCenterValue(suv);
+        List<Callable<SliceSums>> tasks = new ArrayList<>(slices.size());
+        for (RoiSlice s : slices) {
+            tasks.add(() -> s.computeSums(suv, shift));
+        }
+        List<SliceSums> sums = new ArrayList<>(slices.size());
+        long n = 0;
+        double s1 = 0.0;
+        double s2 = 0.0;
+        double s3 = 0.0;
+        double s4 = 0.0;
+        double min = Double.MAX_VALUE;
+        double max = -Double.MAX_VALUE;
+        for (Future<SliceSums> f : SLICE_EXECUTOR.invokeAll(tasks)) {
+            SliceSums m = f.get();
+            sums.add(m);
+            n += m.count;
+            s1 += m.s1;
+            s2 += m.s2;
+            s3 += m.s3;
+            s4 += m.s4;
+            if (m.count > 0) {
+                min = Math.min(min, m.min);
+                max = Math.max(max, m.max);
+            }
+        }
+        if (n == 0) {
+            return null;
+        }
+        // Central moments from the raw moments around the shift
+        double a = s1 / n;
+        double r2 = s2 / n;
+        double r3 = s3 / n;
+        double r4 = s4 / n;
+        double mean = shift + a;
+        double var = Math.max(0.0, r2 - a * a);
+        double mu3 = r3 - 3.0 * a * r2 + 2.0 * a * a * a;
+        double mu4 = r4 - 4.0 * a * r3 + 6.0 * a * a * r2 - 3.0 * a * a * a * a;
+
+        // The histograms of the slices are between the min and the max of their image
+        double range = max - min;
+        long[] fine = new long[FINE_HISTOGRAM_BINS];
+        for (SliceSums m : sums) {
+            for (int i = 0; i < FINE_HISTOGRAM_BINS; i++) {
+                if (m.histogram[i] > 0) {
+                    double v = Math.min(m.max, Math.max(m.min, m.low + (i + 0.5) * m.binWidth));
+                    int bin = range <= 0.0 ? 0 : (int) ((v - min) / range * FINE_HISTOGRAM_BINS);
+                    fine[Math.min(Math.max(bin, 0), FINE_HISTOGRAM_BINS - 1)] += m.histogram[i];
+                }
+            }
+        }
+
+        int drawn = 0;
+        Double volume = 0.0;
+        for (int i = 0; i < slices.size(); i++) {
+            RoiSlice s = slices.get(i);
+            if (!s.interpolated) {
+                drawn++;
+            }
+            Double v = s.getVoxelVolume();
+            volume = v == null || volume == null ? null : volume + v * sums.get(i).count;
+        }
+        DicomImageElement img = slices.get(0).image;
+        String unit = suv ? "SUVbw" : img.getPixelValueUnit(); //$NON-NLS-1$
+        // mm3 to ml
+        RoiVolumeStatistics stats = new RoiVolumeStatistics(drawn, slices.size() - drawn, n,
+            volume == null ? null : volume / 1000.0, unit);
+        stats.min = min;
+        stats.max = max;
+        stats.mean = mean;
+        stats.std = Math.sqrt(var);
+        if (var > 0.0) {
+            stats.skewness = mu3 / Math.pow(var, 1.5);
+            stats.kurtosis = mu4 / (var * var) - 3.0;
+        }
+
+        double binWidth = range / FINE_HISTOGRAM_BINS;
+        double half = n / 2.0;
+        long cumul = 0;
+        for (int i = 0; i < FINE_HISTOGRAM_BINS; i++) {
+            long count = fine[i];
+            if (count > 0 && cumul + count >= half) {
+                stats.median = min + binWidth * (i + (half - cumul) / count);
+                break;
+            }
+            cumul += count;
+        }
+        int ratio = FINE_HISTOGRAM_BINS / HISTOGRAM_BINS;
+        for (int i = 0; i < FINE_HISTOGRAM_BINS; i++) {
+            stats.histogram[i / ratio] += fine[i];
+        }
+        return stats;
+    }
+
+    private static void showResult(View2d view, RoiVolumeStatistics stats) {
+        String title = Messages.getString("RoiVolumeStatistics.title"); //$NON-NLS-1$
+        if (stats == null) {
+            JOptionPane.showMessageDialog(view, Messages.getString("RoiVolumeStatistics.error"), //$NON-NLS-1$
+                title, JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        String unit = stats.unit == null ? "" : " " + stats.unit; //$NON-NLS-1$ //$NON-NLS-2$
+        JPanel values = new JPanel(new GridLayout(0, 2, 10, 2));
+        addValue(values, Messages.getString("RoiVolumeStatistics.slices"), //$NON-NLS-1$
+            stats.drawnSlices + " / " + stats.interpolatedSlices); //$NON-NLS-1$
+        addValue(values, Messages.getString("RoiVolumeStatistics.voxels"), String.valueOf(stats.voxelCount)); //$NON-NLS-1$
+        if (stats.volume != null) {
+            addValue(values, Messages.getString("RoiVolumeStatistics.volume"), //$NON-NLS-1$
+                DecFormater.twoDecimal(stats.volume) + " ml"); //$NON-NLS-1$
+        }
+        addValue(values, ImageStatistics.IMAGE_MIN.getName(), DecFormater.twoDecimal(stats.min) + unit);
+        addValue(values, ImageStatistics.IMAGE_MAX.getName(), DecFormater.twoDecimal(stats.max) + unit);
+        addValue(values, ImageStatistics.IMAGE_MEAN.getName(), DecFormater.twoDecimal(stats.mean) + unit);
+        addValue(values, ImageStatistics.IMAGE_MEDIAN.getName(), DecFormater.twoDecimal(stats.median) + unit);
+        addValue(values, ImageStatistics.IMAGE_STD.getName(), DecFormater.twoDecimal(stats.std) + unit);
+        addValue(values, ImageStatistics.IMAGE_SKEW.getName(), DecFormater.twoDecimal(stats.skewness));
+        addValue(values, ImageStatistics.IMAGE_KURTOSIS.getName(), DecFormater.twoDecimal(stats.kurtosis));
+
+        JPanel panel = new JPanel(new BorderLayout(0, 10));
+        panel.add(values, BorderLayout.NORTH);
+        panel.add(new HistogramComponent(stats), BorderLayout.CENTER);
+
+        ColorLayerUI layer = ColorLayerUI.createTransparentLayerUI(view);
+        JOptionPane.showMessageDialog(ColorLayerUI.getContentPane(layer), panel, title, JOptionPane.PLAIN_MESSAGE);
+        if (layer != null) {
+            layer.hideUI();
+        }
+    }
+
+    private static void addValue(JPanel panel, String name, String value) {
+        panel.add(new JLabel(name + ":")); //$NON-NLS-1$
+        panel.add(new JLabel(value));
+    }
+
+    static class RoiSlice {
+        final DicomImageElement image;
+        final GeometryOfSlice geometry;
+        final double position;
+        double thickness;
+        Shape shape;
+        List<Shape> candidates = Collections.emptyList();
+        boolean interpolated;
+
+        RoiSlice(DicomImageElement image, GeometryOfSlice geometry, double position) {
+            this.image = image;
+            this.geometry = geometry;
+            this.position = position;
+        }
+
+        /**
+         * @return the middle of the modality values of the image
+         */
+        double getCenterValue(boolean suv) {
+            return (image.getMinValue(null, true) + image.getMaxValue(null, true)) / 2.0 * getSuvFactor(suv);
+        }
+
+        private double getSuvFactor(boolean suv) {
+            Double suvFactor = suv ? (Double) image.getTagValue(TagW.SuvFactor) : null;
+            return suvFactor == null ? 1.0 : suvFactor;
+        }
+
+        /**
+         * Read the modality values of the voxels of the region in one pass: count, extrema, power sums and histogram.
+         * The padding values are excluded.
+         */
+        SliceSums computeSums(boolean suv, double shift) {
+            SliceSums sums = new SliceSums();
+            PlanarImage source = image.getImage(null);
+            if (source == null || shape == null) {
+                return sums;
+            }
+            // The graphics are in the coordinates of the image with square pixels
+            Shape roi = shape;
+            double sx = image.getRescaleX();
+            double sy = image.getRescaleY();
+            if (sx != 1.0 || sy != 1.0) {
+                roi = AffineTransform.getScaleInstance(1.0 / sx, 1.0 / sy).createTransformedShape(shape);
+            }
+
+            LookupTableCV lookup =
+                image.getTagValue(TagW.ModalityLUTData) == null ? null : image.getModalityLookup(null, false);
+            double slope = image.getRescaleSlope(null);
+            double intercept = image.getRescaleIntercept(null);
+            double factor = getSuvFactor(suv);
+            Integer paddingValue = image.getPaddingValue();
+            Integer paddingLimit = image.getPaddingLimit();
+            double padMin = paddingValue == null ? 1.0 : paddingValue;
+            double padMax = paddingValue == null ? 0.0 : paddingLimit == null ? paddingValue : paddingLimit;
+            if (padMin > padMax && paddingValue != null) {
+                double tmp = padMin;
+                padMin = padMax;
+                padMax = tmp;
+            }
+            double pMin = padMin;
+            double pMax = padMax;
+            // The image is decoded, its min and max values are known before reading the region
+            double low = image.getMinValue(null, true) * factor;
+            double high = image.getMaxValue(null, true) * factor;
+            sums.low = Math.min(low, high);
+            sums.binWidth = Math.abs(high - low) / FINE_HISTOGRAM_BINS;
+            RoiStatistics.forEachValue(source.toMat(), roi, v -> {
+                if (v >= pMin && v <= pMax) {
+                    return;
+                }
+                double val;
+                if (lookup != null && v >= lookup.getOffset() && v < lookup.getOffset() + lookup.getNumEntries()) {
+                    val = lookup.lookup(0, (int) v);
+                } else {
+                    val = v * slope + intercept;
+                }
+                sums.accept(val * factor, shift);
+            });
+            return sums;
+        }
+
+        /**
+         * @return the volume of a voxel in mm3 or null when the pixel spacing is not calibrated
+         */
+        Double getVoxelVolume() {
+            Unit spacingUnit = image.getPixelSpacingUnit();
+            if (spacingUnit == null || Unit.PIXEL.equals(spacingUnit) || thickness <= 0.0) {
+                return null;
+            }
+            double toMillimeter = spacingUnit.getConvFactor() / Unit.MILLIMETER.getConvFactor();
+            double[] pixelSize = image.getDisplayPixelSize();
+            return pixelSize[0] * toMillimeter * pixelSize[1] * toMillimeter * thickness;
+        }
+    }
+
+    private static class SliceSums {
+        long count;
+        double s1;
+        double s2;
+        double s3;
+        double s4;
+        double min = Double.MAX_VALUE;
+        double max = -Double.MAX_VALUE;
+        double low;
+        double binWidth;
+        final int[] histogram = new int[FINE_HISTOGRAM_BINS];
+
+        void accept(double val, double shift) {
+            double d = val - shift;
+            double d2 = d * d;
+            count++;
+            s1 += d;
+            s2 += d2;
+            s3 += d2 * d;
+            s4 += d2 * d2;
+            min = Math.min(min, val);
+            max = Math.max(max, val);
+            int bin = binWidth <= 0.0 ? 0 : (int) ((val - low) / binWidth);
+            histogram[Math.min(Math.max(bin, 0), FINE_HISTOGRAM_BINS - 1)]++;
+        }
+    }
+
+    private static class HistogramComponent extends JComponent {
+        private static final long serialVersionUID = 5374016453240735232L;
+
+        private final RoiVolumeStatistics stats;
+
+        HistogramComponent(RoiVolumeStatistics stats) {
+            this.stats = stats;
+            setPreferredSize(new Dimension(360, 160));
+            setBorder(BorderFactory.createEmptyBorder(5, 5, 20, 5));
+        }
+
+        @Override
+        protected void paintComponent(Graphics g) {
+            int[] bins = stats.histogram;
+            int maxCount = Arrays.stream(bins).max().orElse(0);
+            if (maxCount == 0) {
+                return;
+            }
+            int x0 = 5;
+            int y0 = getHeight() - 20;
+            double barWidth = (getWidth() - 10) / (double) bins.length;
+            double scale = (y0 - 5) / (double) maxCount;
+            g.setColor(Color.GRAY);
+            for (int i = 0; i < bins.length; i++) {
+                int h = (int) Math.ceil(bins[i] * scale);
+                int x = x0 + (int) (i * barWidth);
+                int w = Math.max(1, (int) ((i + 1) * barWidth) - (int) (i * barWidth));
+                g.fillRect(x, y0 - h, w, h);
+            }
+            g.setColor(getForeground());
+            g.drawLine(x0, y0, getWidth() - 5, y0);
+            String minLabel = DecFormater.twoDecimal(stats.min);
+            String maxLabel = DecFormater.twoDecimal(stats.max);
+            int textY = y0 + g.getFontMetrics().getAscent() + 2;
+            g.drawString(minLabel, x0, textY);
+            g.drawString(maxLabel, getWidth() - 5 - g.getFontMetrics().stringWidth(maxLabel), textY);
+        }
+    }
+}
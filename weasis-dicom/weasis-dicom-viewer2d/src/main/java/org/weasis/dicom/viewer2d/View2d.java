@@ -102,6 +102,7 @@ import org.weasis.core.ui.editor.image.ViewerToolBar;
 import org.weasis.core.ui.model.AbstractGraphicModel;
 import org.weasis.core.ui.model.graphic.DragGraphic;
 import org.weasis.core.ui.model.graphic.Graphic;
+import org.weasis.core.ui.model.graphic.GraphicArea;
 import org.weasis.core.ui.model.graphic.imp.area.PolygonGraphic;
 import org.weasis.core.ui.model.graphic.imp.area.RectangleGraphic;
 import org.weasis.core.ui.model.graphic.imp.line.LineGraphic;
@@ -647,6 +648,20 @@ public class View2d extends DefaultView2d<DicomImageElement> {
         if (newImg) {
             updatePrButtonState(img);
             updateKOselectedState(img);
+            updatePreloading(img);
+        }
+    }
+
+    private void updatePreloading(DicomImageElement img) {
+        if (series instanceof DicomSeries) {
+            DicomSeries dcmSeries = (DicomSeries) series;
+            // Preload around the current image of each displayed series
+            if (!DicomSeries.updatePreloading(dcmSeries, img)) {
+                DicomSeries.startPreloading(dcmSeries,
+                    dcmSeries.copyOfMedias((Filter<DicomImageElement>) actionsInView.get(ActionW.FILTERED_SERIES.cmd()),
+                        getCurrentSortComparator()),
+                    getFrameIndex());
+            }
         }
     }
 
@@ -1137,6 +1152,13 @@ public class View2d extends DefaultView2d<DicomImageElement> {
                     popupMenu.add(calibMenu);
                     popupMenu.add(new JSeparator());
                 }
+
+                if (graphicComplete && graph instanceof GraphicArea) {
+                    final JMenuItem volumeMenu = new JMenuItem(Messages.getString("View2d.volume_stats")); //$NON-NLS-1$
+                    volumeMenu.addActionListener(e -> RoiVolumeStatistics.showStatistics(View2d.this, graph));
+                    popupMenu.add(volumeMenu);
+                    popupMenu.add(new JSeparator());
+                }
             }
 
             if (!list.isEmpty()) {
@@ -11,10 +11,16 @@
 package org.weasis.launcher;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
 import java.net.URI;
 import java.net.URL;
+import java.net.URLConnection;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -24,6 +30,11 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.jar.JarFile;
 import java.util.jar.JarOutputStream;
 import java.util.jar.Pack200;
 import java.util.jar.Pack200.Unpacker;
@@ -80,6 +91,8 @@ public class AutoProcessor {
 
     public static final String PACK200_COMPRESSION = ".pack.gz"; //$NON-NLS-1$
 
+    private static final int DOWNLOAD_THREADS = 4;
+
     /**
      * Used to instigate auto-deploy directory process and auto-install/auto-start configuration property processing
      * during.
@@ -314,6 +327,24 @@ public class AutoProcessor {
             }
         }
 
+        // Download and unpack concurrently the bundles which are not in the OSGI cache
+        File stagingDir =
+            new File(FileUtil.getApplicationTempDir(), "bundles-" + System.currentTimeMillis()); //$NON-NLS-1$
+        ExecutorService executor = Executors.newFixedThreadPool(DOWNLOAD_THREADS, r -> {
+            // Do not prevent the JVM from exiting when a bundle cannot be installed
+            Thread t = new Thread(r, "Bundle Download"); //$NON-NLS-1$
+            t.setDaemon(true);
+            return t;
+        });
+        Map<String, Future<File>> stagedFiles = new HashMap<>();
+        for (Entry<String, BundleElement> element : bundleList.entrySet()) {
+            if (!installedBundleMap.containsKey(element.getKey())) {
+                String location = element.getValue().getLocation();
+                stagedFiles.put(element.getKey(), executor.submit(() -> downloadBundle(location, stagingDir)));
+            }
+        }
+        Map<String, Future<File>> stagedTranslations = new HashMap<>();
+
         int bundleIter = 0;
 
         // Parse and install the bundles associated with the key.
@@ -331,11 +362,11 @@ public class AutoProcessor {
                 // in cache from a previous version of Weasis
                 Bundle b = installedBundleMap.get(bundleName);
                 if (b == null) {
-                    b = installBundle(context, bundle.getLocation());
+                    b = installBundle(context, bundle.getLocation(), stagedFiles.get(bundleName));
                     installedBundleMap.put(bundleName, b);
                 }
                 sl.setBundleStartLevel(b, bundle.getStartLevel());
-                loadTranslationBundle(context, b, installedBundleMap);
+                stageTranslationBundle(b, installedBundleMap, stagingDir, executor, stagedTranslations);
             } catch (Exception ex) {
                 if (bundleName.contains(System.getProperty("native.library.spec"))) { //$NON-NLS-1$
                     System.err.println("Cannot install native bundle: " + bundleName); //$NON-NLS-1$
@@ -357,6 +388,14 @@ public class AutoProcessor {
 
         }
 
+        // The translation packs have been downloaded while installing the other bundles
+        for (Entry<String, Future<File>> element : stagedTranslations.entrySet()) {
+            loadTranslationBundle(context, installedBundleMap.get(element.getKey()), installedBundleMap,
+                element.getValue());
+        }
+        executor.shutdownNow();
+        FileUtil.recursiveDelete(stagingDir, true);
+
         weasisLoader.writeLabel(Messages.getString("AutoProcessor.start")); //$NON-NLS-1$
         // Now loop through the auto-start bundles and start them.
         for (Iterator<Entry<String, BundleElement>> iter = bundleList.entrySet().iterator(); iter.hasNext();) {
@@ -394,50 +433,71 @@ public class AutoProcessor {
         return null;
     }
 
+    private static String getTranslationFileName(Bundle b) {
+        if (WeasisLauncher.modulesi18n != null && b != null) {
+            StringBuilder p = new StringBuilder(b.getSymbolicName());
+            p.append("-i18n-"); //$NON-NLS-1$
+            // From 2.0.0, i18n module can be plugged in any version. The date (the qualifier)
+            // will update the version.
+            p.append("2.0.0"); //$NON-NLS-1$
+            p.append(".jar"); //$NON-NLS-1$
+            String filename = p.toString();
+            if (WeasisLauncher.modulesi18n.getProperty(filename) != null
+                && System.getProperty("weasis.i18n") != null) { //$NON-NLS-1$
+                return filename;
+            }
+        }
+        return null;
+    }
+
+    private static String getTranslationURI(String filename) {
+        String baseURL = System.getProperty("weasis.i18n"); //$NON-NLS-1$
+        return baseURL + (baseURL.endsWith("/") ? filename : "/" + filename); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    private static void stageTranslationBundle(Bundle b, Map<String, Bundle> installedBundleMap, File stagingDir,
+        ExecutorService executor, Map<String, Future<File>> stagedTranslations) {
+        String filename = getTranslationFileName(b);
+        if (filename != null) {
+            String uri = getTranslationURI(filename);
+            // Download in advance only the translation packs which are not in the OSGI cache
+            Future<File> staged = installedBundleMap.containsKey(getBundleNameFromLocation(filename)) ? null
+                : executor.submit(() -> downloadBundle(uri, stagingDir));
+            stagedTranslations.put(getBundleNameFromLocation(b.getLocation()), staged);
+        }
+    }
+
     private static void loadTranslationBundle(BundleContext context, Bundle b,
-        final Map<String, Bundle> installedBundleMap) {
-        if (WeasisLauncher.modulesi18n != null) {
-            if (b != null) {
-                StringBuilder p = new StringBuilder(b.getSymbolicName());
-                p.append("-i18n-"); //$NON-NLS-1$
-                // From 2.0.0, i18n module can be plugged in any version. The date (the qualifier)
-                // will update the version.
-                p.append("2.0.0"); //$NON-NLS-1$
-                p.append(".jar"); //$NON-NLS-1$
-                String filename = p.toString();
-                String value = WeasisLauncher.modulesi18n.getProperty(filename);
-                if (value != null) {
-                    String baseURL = System.getProperty("weasis.i18n"); //$NON-NLS-1$
-                    if (baseURL != null) {
-                        String uri = baseURL + (baseURL.endsWith("/") ? filename : "/" + filename); //$NON-NLS-1$ //$NON-NLS-2$
-                        String bundleName = getBundleNameFromLocation(filename);
+        final Map<String, Bundle> installedBundleMap, Future<File> staged) {
+        String filename = getTranslationFileName(b);
+        if (filename != null) {
+            String value = WeasisLauncher.modulesi18n.getProperty(filename);
+            String baseURL = System.getProperty("weasis.i18n"); //$NON-NLS-1$
+            String uri = getTranslationURI(filename);
+            String bundleName = getBundleNameFromLocation(filename);
+            try {
+                Bundle b2 = installedBundleMap.get(bundleName);
+                if (b2 == null) {
+                    b2 = installBundle(context, uri, staged);
+                    installedBundleMap.put(bundleName, b);
+                }
+                if (b2 != null && !value.equals(b2.getVersion().getQualifier())) {
+                    if (b2.getLocation().startsWith(baseURL)) {
+                        b2.update();
+                    } else {
+                        // Handle same bundle version with different location
                         try {
-                            Bundle b2 = installedBundleMap.get(bundleName);
-                            if (b2 == null) {
-                                b2 = context.installBundle(uri,
-                                    FileUtil.getAdaptedConnection(new URI(uri).toURL()).getInputStream());
-                                installedBundleMap.put(bundleName, b);
-                            }
-                            if (b2 != null && !value.equals(b2.getVersion().getQualifier())) {
-                                if (b2.getLocation().startsWith(baseURL)) {
-                                    b2.update();
-                                } else {
-                                    // Handle same bundle version with different location
-                                    try {
-                                        b2.uninstall();
-                                        context.installBundle(uri,
-                                            FileUtil.getAdaptedConnection(new URI(uri).toURL()).getInputStream());
-                                        installedBundleMap.put(bundleName, b);
-                                    } catch (Exception exc) {
-                                        System.err.println("Cannot install translation pack: " + uri); //$NON-NLS-1$
-                                    }
-                                }
-                            }
-                        } catch (Exception e) {
+                            b2.uninstall();
+                            context.installBundle(uri,
+                                FileUtil.getAdaptedConnection(new URI(uri).toURL()).getInputStream());
+                            installedBundleMap.put(bundleName, b);
+                        } catch (Exception exc) {
                             System.err.println("Cannot install translation pack: " + uri); //$NON-NLS-1$
                         }
                     }
                 }
+            } catch (Exception e) {
+                System.err.println("Cannot install translation pack: " + uri); //$NON-NLS-1$
             }
         }
     }
@@ -525,6 +585,72 @@ public class AutoProcessor {
             FileUtil.getAdaptedConnection(new URI(location).toURL()).getInputStream());
     }
 
+    private static Bundle installBundle(BundleContext context, String location, Future<File> staged)
+        throws Exception {
+        File file = null;
+        if (staged != null) {
+            try {
+                file = staged.get();
+            } catch (ExecutionException e) {
+                printError(e, "Cannot download bundle: " + location); //$NON-NLS-1$
+            }
+        }
+        if (file == null) {
+            // Not staged, download it again in the current thread
+            return installBundle(context, location);
+        }
+        String bundleLocation = location.endsWith(PACK200_COMPRESSION)
+            ? location.substring(0, location.length() - PACK200_COMPRESSION.length()) : location;
+        try (InputStream in = new FileInputStream(file)) {
+            return context.installBundle(bundleLocation, in);
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Download the bundle (and unpack it when it is a Pack200 archive) in the staging directory. This method can be
+     * called concurrently.
+     *
+     * @return the verified jar file
+     */
+    private static File downloadBundle(String location, File stagingDir) throws Exception {
+        stagingDir.mkdirs();
+        File file = File.createTempFile("bundle", ".jar", stagingDir); //$NON-NLS-1$ //$NON-NLS-2$
+        try {
+            URLConnection connection = FileUtil.getAdaptedConnection(new URI(location).toURL());
+            if (location.endsWith(PACK200_COMPRESSION)) {
+                try (JarOutputStream jarStream = new JarOutputStream(new FileOutputStream(file));
+                                GZIPInputStream gzStream = new GZIPInputStream(connection.getInputStream())) {
+                    Pack200.newUnpacker().unpack(gzStream, jarStream);
+                }
+            } else {
+                long length = connection.getContentLengthLong();
+                try (InputStream in = connection.getInputStream();
+                                OutputStream out = new FileOutputStream(file)) {
+                    byte[] buf = new byte[FileUtil.FILE_BUFFER];
+                    int offset;
+                    while ((offset = in.read(buf)) > 0) {
+                        out.write(buf, 0, offset);
+                    }
+                }
+                if (length >= 0 && length != file.length()) {
+                    throw new IOException("Incomplete download: " + location); //$NON-NLS-1$
+                }
+            }
+            // Check the jar structure before installing it
+            try (JarFile jar = new JarFile(file)) {
+                if (jar.getManifest() == null) {
+                    throw new IOException("No manifest in " + location); //$NON-NLS-1$
+                }
+            }
+            return file;
+        } catch (Exception e) {
+            file.delete();
+            throw e;
+        }
+    }
+
     static class BundleElement {
         private final int startLevel;
         private final String location;
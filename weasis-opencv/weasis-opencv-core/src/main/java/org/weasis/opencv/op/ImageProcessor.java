@@ -294,8 +294,23 @@ public class ImageProcessor {
     }
 
     public static ImageCV overlay(Mat source, RenderedImage imgOverlay, Color color) {
+        return overlay(source, ImageConversion.toMat(Objects.requireNonNull(imgOverlay)), color);
+    }
+
+    /**
+     * Paint the color on the source image where the mask is not zero.
+     *
+     * @param source
+     *            the source image
+     * @param mask
+     *            a single channel 8-bit mask with the same size as the source image
+     * @param color
+     *            the overlay color
+     * @return the image with the overlay
+     */
+    public static ImageCV overlay(Mat source, Mat mask, Color color) {
         ImageCV srcImg = ImageCV.toImageCV(Objects.requireNonNull(source));
-        Mat mask = ImageConversion.toMat(Objects.requireNonNull(imgOverlay));
+        Objects.requireNonNull(mask);
         if (isGray(color) && srcImg.channels() == 1) {
             Mat grayImg = new Mat(srcImg.size(), CvType.CV_8UC1, new Scalar(color.getRed()));
             ImageCV dstImg = new ImageCV();
@@ -358,8 +373,23 @@ public class ImageProcessor {
     }
 
     public static ImageCV applyShutter(Mat source, RenderedImage imgOverlay, Color color) {
+        return applyShutter(source, ImageConversion.toMat(Objects.requireNonNull(imgOverlay)), color);
+    }
+
+    /**
+     * Paint the shutter color on the source image where the mask is not zero.
+     *
+     * @param source
+     *            the source image
+     * @param mask
+     *            a single channel 8-bit mask with the same size as the source image
+     * @param color
+     *            the shutter color
+     * @return the image with the shutter
+     */
+    public static ImageCV applyShutter(Mat source, Mat mask, Color color) {
         ImageCV srcImg = ImageCV.toImageCV(Objects.requireNonNull(source));
-        Mat mask = ImageConversion.toMat(Objects.requireNonNull(imgOverlay));
+        Objects.requireNonNull(mask);
         if (isGray(color) && srcImg.channels() == 1) {
             Mat grayImg = new Mat(srcImg.size(), CvType.CV_8UC1, new Scalar(color.getRed()));
             ImageCV dstImg = new ImageCV();
@@ -456,33 +486,45 @@ public class ImageProcessor {
     }
 
     /**
-     * Computes Min/Max values from Image excluding range of values provided
+     * Computes Min/Max values from all the channels of the image
      *
-     * @param img
-     * @param paddingValueMin
-     * @param paddingValueMax
-     * @return
+     * @param source
+     * @return the min and max values, the locations are not relevant for a multi-channel image
      */
     public static MinMaxLocResult findMinMaxValues(Mat source) {
         if (source != null) {
+            if (source.channels() > 1 && source.isContinuous()) {
+                // Read all the channels at once without splitting them
+                return Core.minMaxLoc(source.reshape(1));
+            }
             return minMaxLoc(source, null);
         }
         return null;
     }
 
+    /**
+     * Computes Min/Max values from Image excluding range of values provided
+     *
+     * @param source
+     * @param paddingValue
+     * @param paddingLimit
+     * @return the min and max values
+     */
     public static MinMaxLocResult findMinMaxValues(Mat source, Integer paddingValue, Integer paddingLimit) {
         if (source != null) {
-            Mat mask = new Mat(source.size(), CvType.CV_8UC1, new Scalar(0));
-            if (paddingValue != null) {
-                if (paddingLimit == null) {
-                    paddingLimit = paddingValue;
-                } else if (paddingLimit < paddingValue) {
-                    int temp = paddingValue;
-                    paddingValue = paddingLimit;
-                    paddingLimit = temp;
-                }
-                exludePaddingValue(source, mask, paddingValue, paddingLimit);
+            if (paddingValue == null) {
+                return findMinMaxValues(source);
             }
+            if (paddingLimit == null) {
+                paddingLimit = paddingValue;
+            } else if (paddingLimit < paddingValue) {
+                int temp = paddingValue;
+                paddingValue = paddingLimit;
+                paddingLimit = temp;
+            }
+            // The padding values are excluded with a mask built natively
+            Mat mask = new Mat(source.size(), CvType.CV_8UC1, new Scalar(0));
+            exludePaddingValue(source, mask, paddingValue, paddingLimit);
             return minMaxLoc(source, mask);
         }
         return null;
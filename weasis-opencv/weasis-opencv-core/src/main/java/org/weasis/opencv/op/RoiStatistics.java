@@ -0,0 +1,799 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2018 Weasis Team and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *     Nicolas Roduit - initial API and implementation
+ *******************************************************************************/
+package org.weasis.opencv.op;
+
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.FlatteningPathIterator;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Objects;
+import java.util.function.DoubleConsumer;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.weasis.opencv.data.LookupTableCV;
+
+/**
+ * Statistics of the pixel values inside a region of interest (min, max, mean, standard deviation, skewness, excess
+ * kurtosis and median).
+ *
+ * <ul>
+ * <li>The region is rasterized by spans (intervals of pixels whose center is inside the shape): analytically for the
+ * rectangles and the ellipses, and with an active edge list for the other shapes. No mask image is allocated.</li>
+ * <li>The pixels of integer images are accumulated in a histogram in a single pass. All the statistics are computed
+ * from the histogram, so the modality lookup table is applied to the bins and not to each pixel.</li>
+ * <li>The pixels of the other images are collected for computing the median by selection.</li>
+ * </ul>
+ *
+ * The values are given by channel.
+ */
+public final class RoiStatistics {
+
+    private static final double FLATNESS = 0.25;
+
+    private final int channels;
+    private final long[] count;
+    private final double[] min;
+    private final double[] max;
+    private final double[] mean;
+    private final double[] std;
+    private final double[] skewness;
+    private final double[] kurtosis;
+    private final double[] median;
+
+    /**
+     * Consumer of the spans of a region, from the top to the bottom and from the left to the right.
+     */
+    @FunctionalInterface
+    public interface SpanConsumer {
+        /**
+         * @param y
+         *            the row
+         * @param x0
+         *            the first column (inclusive)
+         * @param x1
+         *            the last column (exclusive)
+         */
+        void accept(int y, int x0, int x1);
+    }
+
+    private RoiStatistics(int channels) {
+        this.channels = channels;
+        this.count = new long[channels];
+        this.min = new double[channels];
+        this.max = new double[channels];
+        this.mean = new double[channels];
+        this.std = new double[channels];
+        this.skewness = new double[channels];
+        this.kurtosis = new double[channels];
+        this.median = new double[channels];
+    }
+
+    public int getChannels() {
+        return channels;
+    }
+
+    public long[] getCount() {
+        return count;
+    }
+
+    public double[] getMin() {
+        return min;
+    }
+
+    public double[] getMax() {
+        return max;
+    }
+
+    public double[] getMean() {
+        return mean;
+    }
+
+    public double[] getStd() {
+        return std;
+    }
+
+    public double[] getSkewness() {
+        return skewness;
+    }
+
+    /**
+     * @return the excess kurtosis (0 for a normal distribution)
+     */
+    public double[] getKurtosis() {
+        return kurtosis;
+    }
+
+    public double[] getMedian() {
+        return median;
+    }
+
+    public static RoiStatistics compute(Mat source, Shape shape) {
+        return compute(source, shape, null, null, null);
+    }
+
+    /**
+     * @param source
+     *            the image
+     * @param shape
+     *            the region of interest in the image coordinates
+     * @param paddingValue
+     *            the pixel padding value, the padding values are excluded for the images with one channel. Can be null.
+     * @param paddingLimit
+     *            the pixel padding range limit. Can be null.
+     * @param modalityLookup
+     *            the lookup table applied to the pixel values of the integer images with one channel. Can be null.
+     * @return the statistics or null when the region does not contain any pixel
+     */
+    public static RoiStatistics compute(Mat source, Shape shape, Integer paddingValue, Integer paddingLimit,
+        LookupTableCV modalityLookup) {
+        Objects.requireNonNull(source);
+        Objects.requireNonNull(shape);
+        Rectangle b = new Rectangle(0, 0, source.width(), source.height()).intersection(shape.getBounds());
+        if (b.width < 1 || b.height < 1) {
+            return null;
+        }
+
+        int channels = source.channels();
+        int depth = CvType.depth(source.type());
+        Integer padMin = null;
+        Integer padMax = null;
+        if (paddingValue != null && channels == 1) {
+            int limit = paddingLimit == null ? paddingValue : paddingLimit;
+            padMin = Math.min(paddingValue, limit);
+            padMax = Math.max(paddingValue, limit);
+        }
+
+        RoiStatistics stats = new RoiStatistics(channels);
+        boolean valid;
+        if (depth <= CvType.CV_16S) {
+            HistogramAccumulator acc = new HistogramAccumulator(source, b, depth);
+            forEachSpan(shape, source.width(), source.height(), acc);
+            valid = acc.reduce(stats, padMin, padMax, channels == 1 ? modalityLookup : null);
+        } else {
+            ValueAccumulator acc = new ValueAccumulator(source, b, depth, padMin, padMax);
+            forEachSpan(shape, source.width(), source.height(), acc);
+            valid = acc.reduce(stats);
+        }
+        return valid ? stats : null;
+    }
+
+    /**
+     * Visit the values of the pixels inside the shape. Only the first channel is read.
+     *
+     * @param source
+     *            the image
+     * @param shape
+     *            the region of interest in the image coordinates
+     * @param consumer
+     *            the consumer of the pixel values
+     */
+    public static void forEachValue(Mat source, Shape shape, DoubleConsumer consumer) {
+        Objects.requireNonNull(source);
+        Objects.requireNonNull(consumer);
+        Rectangle b = new Rectangle(0, 0, source.width(), source.height()).intersection(shape.getBounds());
+        if (b.width >= 1 && b.height >= 1) {
+            forEachSpan(shape, source.width(), source.height(), new ValueReader(source, b, consumer));
+        }
+    }
+
+    /**
+     * Rasterize a shape by spans of pixels. A pixel belongs to the shape when its center is inside.
+     *
+     * @param shape
+     *            the shape in the image coordinates
+     * @param width
+     *            the width of the image
+     * @param height
+     *            the height of the image
+     * @param consumer
+     *            the consumer of the spans
+     */
+    public static void forEachSpan(Shape shape, int width, int height, SpanConsumer consumer) {
+        if (shape instanceof Rectangle2D) {
+            Rectangle2D r = (Rectangle2D) shape;
+            int x0 = Math.max(0, ceilCenter(r.getMinX()));
+            int x1 = Math.min(width, ceilCenter(r.getMaxX()));
+            int y0 = Math.max(0, ceilCenter(r.getMinY()));
+            int y1 = Math.min(height, ceilCenter(r.getMaxY()));
+            if (x0 < x1) {
+                for (int y = y0; y < y1; y++) {
+                    consumer.accept(y, x0, x1);
+                }
+            }
+        } else if (shape instanceof Ellipse2D) {
+            Ellipse2D e = (Ellipse2D) shape;
+            double rx = e.getWidth() / 2.0;
+            double ry = e.getHeight() / 2.0;
+            if (rx <= 0.0 || ry <= 0.0) {
+                return;
+            }
+            double cx = e.getCenterX();
+            double cy = e.getCenterY();
+            int y0 = Math.max(0, ceilCenter(e.getMinY()));
+            int y1 = Math.min(height, ceilCenter(e.getMaxY()));
+            for (int y = y0; y < y1; y++) {
+                double dy = (y + 0.5 - cy) / ry;
+                double d = 1.0 - dy * dy;
+                if (d > 0.0) {
+                    double hw = rx * Math.sqrt(d);
+                    int x0 = Math.max(0, ceilCenter(cx - hw));
+                    int x1 = Math.min(width, ceilCenter(cx + hw));
+                    if (x0 < x1) {
+                        consumer.accept(y, x0, x1);
+                    }
+                }
+            }
+        } else {
+            new EdgeTable(shape).scan(width, height, consumer);
+        }
+    }
+
+    /**
+     * @return the first pixel index whose center is greater or equal to the coordinate
+     */
+    private static int ceilCenter(double coordinate) {
+        return (int) Math.ceil(coordinate - 0.5);
+    }
+
+    private static void setMoments(RoiStatistics stats, int c, long n, double m2, double m3, double m4) {
+        stats.std[c] = Math.sqrt(m2 / n);
+        if (m2 > 0.0) {
+            double var = m2 / n;
+            stats.skewness[c] = (m3 / n) / Math.pow(var, 1.5);
+            stats.kurtosis[c] = (m4 / n) / (var * var) - 3.0;
+        } else {
+            stats.skewness[c] = 0.0;
+            stats.kurtosis[c] = 0.0;
+        }
+    }
+
+    /**
+     * Polygon scan conversion with an active edge list. The edges are sorted by their top coordinate and are activated
+     * and removed incrementally from one row to the next.
+     */
+    private static final class EdgeTable {
+        private final boolean evenOdd;
+        private double[] yTop = new double[32];
+        private double[] yBottom = new double[32];
+        private double[] xTop = new double[32];
+        private double[] slope = new double[32];
+        private int[] direction = new int[32];
+        private int size = 0;
+
+        EdgeTable(Shape shape) {
+            PathIterator it = new FlatteningPathIterator(shape.getPathIterator(null), FLATNESS);
+            this.evenOdd = it.getWindingRule() == PathIterator.WIND_EVEN_ODD;
+            double[] pts = new double[6];
+            double startX = 0;
+            double startY = 0;
+            double lastX = 0;
+            double lastY = 0;
+            boolean open = false;
+            while (!it.isDone()) {
+                switch (it.currentSegment(pts)) {
+                    case PathIterator.SEG_MOVETO:
+                        if (open) {
+                            addEdge(lastX, lastY, startX, startY);
+                        }
+                        startX = lastX = pts[0];
+                        startY = lastY = pts[1];
+                        open = true;
+                        break;
+                    case PathIterator.SEG_LINETO:
+                        addEdge(lastX, lastY, pts[0], pts[1]);
+                        lastX = pts[0];
+                        lastY = pts[1];
+                        break;
+                    case PathIterator.SEG_CLOSE:
+                        addEdge(lastX, lastY, startX, startY);
+                        lastX = startX;
+                        lastY = startY;
+                        break;
+                    default:
+                        break; // should never append with FlatteningPathIterator
+                }
+                it.next();
+            }
+            if (open) {
+                addEdge(lastX, lastY, startX, startY);
+            }
+        }
+
+        private void addEdge(double x0, double y0, double x1, double y1) {
+            if (y0 == y1) {
+                return;
+            }
+            if (size == yTop.length) {
+                int capacity = size * 2;
+                yTop = Arrays.copyOf(yTop, capacity);
+                yBottom = Arrays.copyOf(yBottom, capacity);
+                xTop = Arrays.copyOf(xTop, capacity);
+                slope = Arrays.copyOf(slope, capacity);
+                direction = Arrays.copyOf(direction, capacity);
+            }
+            boolean down = y1 > y0;
+            yTop[size] = down ? y0 : y1;
+            yBottom[size] = down ? y1 : y0;
+            xTop[size] = down ? x0 : x1;
+            slope[size] = (x1 - x0) / (y1 - y0);
+            direction[size] = down ? 1 : -1;
+            size++;
+        }
+
+        void scan(int width, int height, SpanConsumer consumer) {
+            if (size < 2) {
+                return;
+            }
+            Integer[] order = new Integer[size];
+            double minY = Double.MAX_VALUE;
+            double maxY = -Double.MAX_VALUE;
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+                minY = Math.min(minY, yTop[i]);
+                maxY = Math.max(maxY, yBottom[i]);
+            }
+            Arrays.sort(order, Comparator.comparingDouble(i -> yTop[i]));
+
+            int[] active = new int[size];
+            int activeSize = 0;
+            double[] crossX = new double[size];
+            int[] crossDir = new int[size];
+            int next = 0;
+
+            int y0 = Math.max(0, ceilCenter(minY));
+            int y1 = Math.min(height, ceilCenter(maxY));
+            for (int y = y0; y < y1; y++) {
+                double sy = y + 0.5;
+                while (next < size && yTop[order[next]] <= sy) {
+                    active[activeSize++] = order[next++];
+                }
+                int n = 0;
+                int k = 0;
+                for (int a = 0; a < activeSize; a++) {
+                    int e = active[a];
+                    if (yBottom[e] <= sy) {
+                        continue; // The edge is removed
+                    }
+                    active[k++] = e;
+                    if (yTop[e] <= sy) {
+                        // Insertion sort, the number of crossings is small
+                        double x = xTop[e] + (sy - yTop[e]) * slope[e];
+                        int j = n++;
+                        while (j > 0 && crossX[j - 1] > x) {
+                            crossX[j] = crossX[j - 1];
+                            crossDir[j] = crossDir[j - 1];
+                            j--;
+                        }
+                        crossX[j] = x;
+                        crossDir[j] = direction[e];
+                    }
+                }
+                activeSize = k;
+
+                int winding = 0;
+                for (int j = 0; j < n - 1; j++) {
+                    winding += evenOdd ? 1 : crossDir[j];
+                    boolean inside = evenOdd ? (winding & 1) != 0 : winding != 0;
+                    if (inside) {
+                        int x0 = Math.max(0, ceilCenter(crossX[j]));
+                        int x1 = Math.min(width, ceilCenter(crossX[j + 1]));
+                        if (x0 < x1) {
+                            consumer.accept(y, x0, x1);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static final class ValueReader implements SpanConsumer {
+        private final Mat source;
+        private final Rectangle bounds;
+        private final int channels;
+        private final int depth;
+        private final DoubleConsumer consumer;
+        private final byte[] bytes;
+        private final short[] shorts;
+        private final int[] ints;
+        private final float[] floats;
+        private final double[] doubles;
+        private int loadedRow = -1;
+
+        ValueReader(Mat source, Rectangle bounds, DoubleConsumer consumer) {
+            this.source = source;
+            this.bounds = bounds;
+            this.channels = source.channels();
+            this.depth = CvType.depth(source.type());
+            this.consumer = consumer;
+            int length = bounds.width * channels;
+            this.bytes = depth == CvType.CV_8U || depth == CvType.CV_8S ? new byte[length] : null;
+            this.shorts = depth == CvType.CV_16U || depth == CvType.CV_16S ? new short[length] : null;
+            this.ints = depth == CvType.CV_32S ? new int[length] : null;
+            this.floats = depth == CvType.CV_32F ? new float[length] : null;
+            this.doubles = depth == CvType.CV_64F ? new double[length] : null;
+        }
+
+        @Override
+        public void accept(int y, int x0, int x1) {
+            if (y != loadedRow) {
+                if (bytes != null) {
+                    source.get(y, bounds.x, bytes);
+                } else if (shorts != null) {
+                    source.get(y, bounds.x, shorts);
+                } else if (ints != null) {
+                    source.get(y, bounds.x, ints);
+                } else if (floats != null) {
+                    source.get(y, bounds.x, floats);
+                } else {
+                    source.get(y, bounds.x, doubles);
+                }
+                loadedRow = y;
+            }
+            int end = (x1 - bounds.x) * channels;
+            for (int i = (x0 - bounds.x) * channels; i < end; i += channels) {
+                double v;
+                switch (depth) {
+                    case CvType.CV_8U:
+                        v = bytes[i] & 0xFF;
+                        break;
+                    case CvType.CV_8S:
+                        v = bytes[i];
+                        break;
+                    case CvType.CV_16U:
+                        v = shorts[i] & 0xFFFF;
+                        break;
+                    case CvType.CV_16S:
+                        v = shorts[i];
+                        break;
+                    case CvType.CV_32S:
+                        v = ints[i];
+                        break;
+                    case CvType.CV_32F:
+                        v = floats[i];
+                        break;
+                    default:
+                        v = doubles[i];
+                        break;
+                }
+                consumer.accept(v);
+            }
+        }
+    }
+
+    /**
+     * Histogram of the integer images (8 and 16 bits).
+     */
+    private static final class HistogramAccumulator implements SpanConsumer {
+        private final Mat source;
+        private final Rectangle bounds;
+        private final int channels;
+        private final int binOffset;
+        private final int[][] histogram;
+        private final byte[] bytes;
+        private final short[] shorts;
+        private final int mask;
+        private int loadedRow = -1;
+        private int minBin;
+        private int maxBin;
+
+        HistogramAccumulator(Mat source, Rectangle bounds, int depth) {
+            this.source = source;
+            this.bounds = bounds;
+            this.channels = source.channels();
+            boolean eightBits = depth == CvType.CV_8U || depth == CvType.CV_8S;
+            int bins = eightBits ? 256 : 65536;
+            this.histogram = new int[channels][bins];
+            this.bytes = eightBits ? new byte[bounds.width * channels] : null;
+            this.shorts = eightBits ? null : new short[bounds.width * channels];
+            boolean signed = depth == CvType.CV_8S || depth == CvType.CV_16S;
+            // Index of the bin: the bits of unsigned values, the bits of signed values shifted to be positive
+            this.mask = bins - 1;
+            this.binOffset = signed ? -(bins >> 1) : 0;
+            this.minBin = bins;
+            this.maxBin = -1;
+        }
+
+        @Override
+        public void accept(int y, int x0, int x1) {
+            if (y != loadedRow) {
+                if (bytes == null) {
+                    source.get(y, bounds.x, shorts);
+                } else {
+                    source.get(y, bounds.x, bytes);
+                }
+                loadedRow = y;
+            }
+            int start = (x0 - bounds.x) * channels;
+            int end = (x1 - bounds.x) * channels;
+            int low = minBin;
+            int high = maxBin;
+            for (int c = 0; c < channels; c++) {
+                int[] h = histogram[c];
+                for (int i = start + c; i < end; i += channels) {
+                    int v = bytes == null ? shorts[i] : bytes[i];
+                    int bin = (v - binOffset) & mask;
+                    h[bin]++;
+                    if (bin < low) {
+                        low = bin;
+                    }
+                    if (bin > high) {
+                        high = bin;
+                    }
+                }
+            }
+            minBin = low;
+            maxBin = high;
+        }
+
+        private int rawValue(int bin) {
+            return binOffset == 0 ? bin : bin + binOffset;
+        }
+
+        boolean reduce(RoiStatistics stats, Integer padMin, Integer padMax, LookupTableCV lookup) {
+            if (maxBin < 0) {
+                return false;
+            }
+            int nbBins = maxBin - minBin + 1;
+            double[] values = new double[nbBins];
+            boolean sorted = true;
+            for (int b = 0; b < nbBins; b++) {
+                int raw = rawValue(minBin + b);
+                double v = raw;
+                if (lookup != null && raw >= lookup.getOffset()
+                    && raw < lookup.getOffset() + lookup.getNumEntries()) {
+                    v = lookup.lookup(0, raw);
+                }
+                values[b] = v;
+                if (b > 0 && v < values[b - 1]) {
+                    sorted = false;
+                }
+            }
+
+            for (int c = 0; c < channels; c++) {
+                int[] h = histogram[c];
+                if (padMin != null) {
+                    for (int b = 0; b < nbBins; b++) {
+                        int raw = rawValue(minBin + b);
+                        if (raw >= padMin && raw <= padMax) {
+                            h[minBin + b] = 0;
+                        }
+                    }
+                }
+
+                long n = 0;
+                double sum = 0.0;
+                double vmin = Double.MAX_VALUE;
+                double vmax = -Double.MAX_VALUE;
+                for (int b = 0; b < nbBins; b++) {
+                    int count = h[minBin + b];
+                    if (count > 0) {
+                        double v = values[b];
+                        n += count;
+                        sum += count * v;
+                        vmin = Math.min(vmin, v);
+                        vmax = Math.max(vmax, v);
+                    }
+                }
+                if (n == 0) {
+                    return false;
+                }
+                double mean = sum / n;
+                double m2 = 0.0;
+                double m3 = 0.0;
+                double m4 = 0.0;
+                for (int b = 0; b < nbBins; b++) {
+                    int count = h[minBin + b];
+                    if (count > 0) {
+                        double d = values[b] - mean;
+                        double d2 = d * d;
+                        m2 += count * d2;
+                        m3 += count * d2 * d;
+                        m4 += count * d2 * d2;
+                    }
+                }
+
+                stats.count[c] = n;
+                stats.min[c] = vmin;
+                stats.max[c] = vmax;
+                stats.mean[c] = mean;
+                setMoments(stats, c, n, m2, m3, m4);
+                stats.median[c] = median(h, values, sorted, n);
+            }
+            return true;
+        }
+
+        private double median(int[] h, double[] values, boolean sorted, long n) {
+            Integer[] order = null;
+            if (!sorted) {
+                // The lookup table is not monotonic
+                order = new Integer[values.length];
+                for (int i = 0; i < order.length; i++) {
+                    order[i] = i;
+                }
+                Arrays.sort(order, Comparator.comparingDouble(i -> values[i]));
+            }
+            long lowRank = (n - 1) / 2;
+            long highRank = n / 2;
+            double low = Double.NaN;
+            long cumul = 0;
+            for (int k = 0; k < values.length; k++) {
+                int b = order == null ? k : order[k];
+                int count = h[minBin + b];
+                if (count > 0) {
+                    cumul += count;
+                    if (Double.isNaN(low) && cumul > lowRank) {
+                        low = values[b];
+                    }
+                    if (cumul > highRank) {
+                        return (low + values[b]) / 2.0;
+                    }
+                }
+            }
+            return low;
+        }
+    }
+
+    /**
+     * Values of the other images (32 bits integer, float and double).
+     */
+    private static final class ValueAccumulator implements SpanConsumer {
+        private final Mat source;
+        private final Rectangle bounds;
+        private final int channels;
+        private final Integer padMin;
+        private final Integer padMax;
+        private final int[] ints;
+        private final float[] floats;
+        private final double[] doubles;
+        private final double[][] values;
+        private final int[] sizes;
+        private int loadedRow = -1;
+
+        ValueAccumulator(Mat source, Rectangle bounds, int depth, Integer padMin, Integer padMax) {
+            this.source = source;
+            this.bounds = bounds;
+            this.channels = source.channels();
+            this.padMin = padMin;
+            this.padMax = padMax;
+            int length = bounds.width * channels;
+            this.ints = depth == CvType.CV_32S ? new int[length] : null;
+            this.floats = depth == CvType.CV_32F ? new float[length] : null;
+            this.doubles = ints == null && floats == null ? new double[length] : null;
+            this.values = new double[channels][Math.max(16, bounds.width * Math.min(bounds.height, 64))];
+            this.sizes = new int[channels];
+        }
+
+        @Override
+        public void accept(int y, int x0, int x1) {
+            if (y != loadedRow) {
+                if (ints != null) {
+                    source.get(y, bounds.x, ints);
+                } else if (floats != null) {
+                    source.get(y, bounds.x, floats);
+                } else {
+                    source.get(y, bounds.x, doubles);
+                }
+                loadedRow = y;
+            }
+            int start = (x0 - bounds.x) * channels;
+            int end = (x1 - bounds.x) * channels;
+            for (int c = 0; c < channels; c++) {
+                double[] buf = values[c];
+                int size = sizes[c];
+                if (size + (x1 - x0) > buf.length) {
+                    buf = Arrays.copyOf(buf, Math.max(buf.length * 2, size + (x1 - x0)));
+                    values[c] = buf;
+                }
+                for (int i = start + c; i < end; i += channels) {
+                    double v = ints != null ? ints[i] : floats != null ? floats[i] : doubles[i];
+                    if (padMin == null || v < padMin || v > padMax) {
+                        buf[size++] = v;
+                    }
+                }
+                sizes[c] = size;
+            }
+        }
+
+        boolean reduce(RoiStatistics stats) {
+            for (int c = 0; c < channels; c++) {
+                double[] buf = values[c];
+                int n = sizes[c];
+                if (n == 0) {
+                    return false;
+                }
+                double sum = 0.0;
+                double vmin = Double.MAX_VALUE;
+                double vmax = -Double.MAX_VALUE;
+                for (int i = 0; i < n; i++) {
+                    double v = buf[i];
+                    sum += v;
+                    vmin = Math.min(vmin, v);
+                    vmax = Math.max(vmax, v);
+                }
+                double mean = sum / n;
+                double m2 = 0.0;
+                double m3 = 0.0;
+                double m4 = 0.0;
+                for (int i = 0; i < n; i++) {
+                    double d = buf[i] - mean;
+                    double d2 = d * d;
+                    m2 += d2;
+                    m3 += d2 * d;
+                    m4 += d2 * d2;
+                }
+
+                stats.count[c] = n;
+                stats.min[c] = vmin;
+                stats.max[c] = vmax;
+                stats.mean[c] = mean;
+                setMoments(stats, c, n, m2, m3, m4);
+                double high = select(buf, n, n / 2);
+                if ((n & 1) == 0) {
+                    // After the selection, the lower half is before the index n / 2
+                    double low = -Double.MAX_VALUE;
+                    for (int i = 0; i < n / 2; i++) {
+                        low = Math.max(low, buf[i]);
+                    }
+                    stats.median[c] = (low + high) / 2.0;
+                } else {
+                    stats.median[c] = high;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Quickselect: reorder the array so that the k-th smallest value is at the index k.
+         */
+        private static double select(double[] a, int n, int k) {
+            int left = 0;
+            int right = n - 1;
+            while (left < right) {
+                int mid = (left + right) >>> 1;
+                double pivot = median3(a[left], a[mid], a[right]);
+                int i = left;
+                int j = right;
+                while (i <= j) {
+                    while (a[i] < pivot) {
+                        i++;
+                    }
+                    while (a[j] > pivot) {
+                        j--;
+                    }
+                    if (i <= j) {
+                        double tmp = a[i];
+                        a[i] = a[j];
+                        a[j] = tmp;
+                        i++;
+                        j--;
+                    }
+                }
+                if (k <= j) {
+                    right = j;
+                } else if (k >= i) {
+                    left = i;
+                } else {
+                    break;
+                }
+            }
+            return a[k];
+        }
+
+        private static double median3(double a, double b, double c) {
+            return Math.max(Math.min(a, b), Math.min(Math.max(a, b), c));
+        }
+    }
+}